@@ -0,0 +1,179 @@
+package de.idealo.mongodb.perf;
+
+import de.idealo.mongodb.perf.operations.IOperation;
+import de.idealo.mongodb.perf.stats.LatencySeries;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Raises the load, i.e. either the number of threads or the target rate, step by step until a step breaches the
+ * latency SLO or the error budget. Each step is appended to a csv-file as soon as it has been evaluated, so the
+ * csv-file contains the throughput/latency curve.
+ *
+ * The knee is the compliant step with the highest throughput, i.e. the capacity to be reported.
+ */
+public class CapacitySearch {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CapacitySearch.class);
+
+    public static final String FILE_PREFIX = "capacity-search-";
+    static final String CSV_HEADER = "step,threads,target_rate,count,throughput,docs_rate,p50,p95,p99,p999,max,errors,error_percent,slo_met,duration_unit";
+    // a step at a target rate is sustained if it achieved at least this fraction of the target rate
+    static final double SUSTAINED_RATE_FRACTION = 0.95;
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    public enum Dimension {THREADS, RATE}
+
+    private final Dimension dimension;
+    private final double start;
+    private final double step;
+    private final boolean multiplicative;
+    private final double max;
+    private final double sloP99Ms;
+    private final double errorBudgetPercent;
+
+    private PrintWriter csvWriter;
+    private int steps;
+    private String knee;
+    private double kneeThroughput = -1;
+
+    /**
+     *
+     * @param specification THREADS|RATE:START:STEP:MAX where STEP is added to the load of the previous step, or multiplied if preceded by 'x'
+     * @param sloP99Ms maximum 99th percentile of the latency in milliseconds of a compliant step
+     * @param errorBudgetPercent maximum percentage of failed operations of a compliant step
+     * @throws IllegalArgumentException if the specification is invalid
+     */
+    public CapacitySearch(String specification, double sloP99Ms, double errorBudgetPercent) {
+        final String[] parts = specification.trim().split(":");
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("Capacity search must be defined as THREADS|RATE:START:STEP:MAX but was: " + specification);
+        }
+        this.dimension = Dimension.valueOf(parts[0].toUpperCase(Locale.ENGLISH));
+        this.start = Double.parseDouble(parts[1]);
+        this.multiplicative = parts[2].toLowerCase(Locale.ENGLISH).startsWith("x");
+        this.step = Double.parseDouble(multiplicative ? parts[2].substring(1) : parts[2]);
+        this.max = Double.parseDouble(parts[3]);
+        if (!(start >= 1) || max < start || (multiplicative ? !(step > 1) : !(step > 0))) {
+            throw new IllegalArgumentException("Capacity search requires START >= 1, MAX >= START and STEP > 0, or STEP > 1 if multiplied, but was: " + specification);
+        }
+        if (!(sloP99Ms > 0)) {
+            throw new IllegalArgumentException("SLO must be > 0!");
+        }
+        if (!(errorBudgetPercent >= 0 && errorBudgetPercent <= 100)) {
+            throw new IllegalArgumentException("Error budget must be between 0 and 100!");
+        }
+        this.sloP99Ms = sloP99Ms;
+        this.errorBudgetPercent = errorBudgetPercent;
+    }
+
+    public Dimension getDimension() {
+        return dimension;
+    }
+
+    public double getStart() {
+        return start;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * @return load of the step following the step with the given load, may exceed {@link #getMax()}
+     */
+    public double next(double load) {
+        final double next = multiplicative ? load * step : load + step;
+        // the number of threads is integral, so make sure that rounding doesn't get stuck
+        return dimension == Dimension.THREADS ? Math.max(Math.floor(next), Math.floor(load) + 1) : next;
+    }
+
+    /**
+     * Evaluates a step whose executor and operation have terminated.
+     *
+     * @return true if the step met the SLO and the error budget, thus the search should continue
+     */
+    public boolean addStep(int threads, double targetRate, OperationExecutor executor, IOperation operation) {
+        if (csvWriter == null) {
+            csvWriter = openCsv(executor.getCsvFolder(), FILE_PREFIX + operation.getName());
+        }
+        steps++;
+        final double duration = executor.getRunDurationInSeconds();
+        final Histogram service = executor.getServiceTime().getRunHistogram();
+        // in open loop, clients experience the response time, which includes the time operations waited to be started
+        final LatencySeries latencySeries = executor.getResponseTime() != null ? executor.getResponseTime() : executor.getServiceTime();
+        final Histogram latency = latencySeries.getRunHistogram();
+        // count and throughput cover successful operations only, so failing fast does not raise the capacity
+        final long count = service.getTotalCount();
+        final double throughput = count / duration;
+        final double p99Ms = latency.getValueAtPercentile(99) / NANOS_PER_MILLI;
+        final long errors = executor.getServiceTime().getRunErrors();
+        final double errorPercent = count + errors > 0 ? 100d * errors / (count + errors) : 0;
+
+        final boolean sloMet = count > 0 && p99Ms <= sloP99Ms;
+        final boolean budgetMet = errorPercent <= errorBudgetPercent;
+        final boolean sustained = targetRate <= 0 || throughput >= SUSTAINED_RATE_FRACTION * targetRate;
+        final boolean compliant = sloMet && budgetMet && sustained;
+
+        csvWriter.println(String.format(Locale.US, "%d,%d,%f,%d,%f,%f,%f,%f,%f,%f,%f,%d,%f,%b,milliseconds",
+                steps, threads, targetRate, count, throughput, executor.getServiceTime().getRunDocs() / duration,
+                latency.getValueAtPercentile(50) / NANOS_PER_MILLI,
+                latency.getValueAtPercentile(95) / NANOS_PER_MILLI,
+                p99Ms,
+                latency.getValueAtPercentile(99.9) / NANOS_PER_MILLI,
+                latency.getMaxValue() / NANOS_PER_MILLI,
+                errors, errorPercent, compliant));
+
+        final String description = String.format(Locale.US, "threads: %d, target rate: %.1f ops/s, throughput: %.1f ops/s, p99: %.3f ms, errors: %.3f%%",
+                threads, targetRate, throughput, p99Ms, errorPercent);
+        if (compliant) {
+            LOG.info("CAPACITY SEARCH: step {} met the SLO - {}", steps, description);
+            if (throughput > kneeThroughput) {
+                kneeThroughput = throughput;
+                knee = "step " + steps + " - " + description;
+            }
+        } else {
+            LOG.info("CAPACITY SEARCH: step {} breached the SLO (p99 <= {} ms: {}, errors <= {}%: {}, rate sustained: {}) - {}",
+                    steps, sloP99Ms, sloMet, errorBudgetPercent, budgetMet, sustained, description);
+        }
+        return compliant;
+    }
+
+    /**
+     * Logs the knee and closes the csv-file.
+     */
+    public void finish() {
+        if (knee != null) {
+            LOG.info("CAPACITY SEARCH: knee at {}", knee);
+        } else {
+            LOG.info("CAPACITY SEARCH: no step met the SLO of p99 <= {} ms with errors <= {}%", sloP99Ms, errorBudgetPercent);
+        }
+        if (csvWriter != null) {
+            csvWriter.close();
+        }
+    }
+
+    private static PrintWriter openCsv(File folder, String name) {
+        final File file = new File(folder, name + "-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".csv");
+        try {
+            final PrintWriter writer = new PrintWriter(new FileWriter(file), true);
+            writer.println(CSV_HEADER);
+            LOG.info("CAPACITY SEARCH: throughput/latency curve is saved in csv-file: {}", file.getAbsolutePath());
+            return writer;
+        } catch (IOException e) {
+            LOG.error("Error while opening csv-file '{}'", file.getAbsolutePath(), e);
+            return new PrintWriter(Writer.nullWriter());
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package de.idealo.mongodb.perf;
+
+import de.idealo.mongodb.perf.stats.ClientMetrics;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends the {@link ClientMetrics} of each second to a csv-file while a test runs: the number of connections checked
+ * out of the pool and their wait, the number of commands and their round-trip time, and the bytes sent and received.
+ * Its column t is the same as in the csv-files of the statistics, so the latency of an operation can be broken down
+ * into pool wait, round-trip and the remaining time spent in the client.
+ *
+ * Durations are reported in milliseconds, all other columns as deltas to the previous second.
+ */
+public class ClientMetricsReporter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ClientMetricsReporter.class);
+
+    public static final String FILE_PREFIX = "client-per-second-";
+    static final String CSV_HEADER = "t,checkouts,checkout_wait_mean,checkout_wait_p99,checkout_wait_max,commands,failed_commands,command_mean,command_p50,command_p99,command_max,"
+            + "bytes_sent,bytes_received,connections_added,connections_removed";
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final ClientMetrics metrics;
+    private final File file;
+    private final ScheduledExecutorService scheduler;
+    private final Histogram runCheckoutWait = new Histogram(3);
+    private final Histogram runCommands = new Histogram(3);
+    private PrintWriter writer;
+    private long[] previous;
+    private long startMs;
+    private long[] start;
+
+    /**
+     *
+     * @param folder folder of the csv-file, the same as the one of the statistics
+     * @param name name of the csv-file, completed by {@link #FILE_PREFIX}, usually the names of the modes reported for
+     */
+    public ClientMetricsReporter(ClientMetrics metrics, File folder, String name) {
+        this.metrics = metrics;
+        this.file = new File(folder, FILE_PREFIX + name + ".csv");
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "client-metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start() {
+        final boolean exists = file.exists() && file.length() > 0;
+        try {
+            writer = new PrintWriter(new FileWriter(file, true), true);
+        } catch (IOException e) {
+            LOG.error("Error while opening csv-file '{}'", file.getAbsolutePath(), e);
+            writer = new PrintWriter(Writer.nullWriter());
+        }
+        if (!exists) {
+            writer.println(CSV_HEADER);
+        }
+        // discard what was recorded before, e.g. by a previous set of modes
+        metrics.collectCheckoutWait();
+        metrics.collectCommands();
+        startMs = System.currentTimeMillis();
+        previous = counters();
+        start = previous;
+        scheduler.scheduleAtFixedRate(this::report, 1, 1, TimeUnit.SECONDS);
+    }
+
+    public void stop() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        report();
+        if (writer != null) {
+            writer.close();
+        }
+        final long[] end = counters();
+        LOG.info("Client: {} commands, {} failed, mean: {} ms, p99: {} ms, max: {} ms; pool checkout wait mean: {} ms, p99: {} ms, max: {} ms; {} bytes sent, {} bytes received in {} s",
+                runCommands.getTotalCount(), end[0] - start[0],
+                format(runCommands.getMean() / NANOS_PER_MILLI),
+                format(runCommands.getValueAtPercentile(99) / NANOS_PER_MILLI),
+                format(runCommands.getMaxValue() / NANOS_PER_MILLI),
+                format(runCheckoutWait.getMean() / NANOS_PER_MILLI),
+                format(runCheckoutWait.getValueAtPercentile(99) / NANOS_PER_MILLI),
+                format(runCheckoutWait.getMaxValue() / NANOS_PER_MILLI),
+                end[1] - start[1], end[2] - start[2], format((System.currentTimeMillis() - startMs) / 1000d));
+        LOG.info("Client metrics per second saved in csv-file '{}'", file.getAbsolutePath());
+    }
+
+    private synchronized void report() {
+        try {
+            final long nowMs = System.currentTimeMillis();
+            final Histogram checkoutWait = metrics.collectCheckoutWait();
+            final Histogram commands = metrics.collectCommands();
+            runCheckoutWait.add(checkoutWait);
+            runCommands.add(commands);
+            final long[] values = counters();
+            writer.println(String.format(Locale.US, "%d,%d,%f,%f,%f,%d,%d,%f,%f,%f,%f,%d,%d,%d,%d",
+                    TimeUnit.MILLISECONDS.toSeconds(nowMs),
+                    checkoutWait.getTotalCount(),
+                    checkoutWait.getMean() / NANOS_PER_MILLI,
+                    checkoutWait.getValueAtPercentile(99) / NANOS_PER_MILLI,
+                    checkoutWait.getMaxValue() / NANOS_PER_MILLI,
+                    commands.getTotalCount(),
+                    values[0] - previous[0],
+                    commands.getMean() / NANOS_PER_MILLI,
+                    commands.getValueAtPercentile(50) / NANOS_PER_MILLI,
+                    commands.getValueAtPercentile(99) / NANOS_PER_MILLI,
+                    commands.getMaxValue() / NANOS_PER_MILLI,
+                    values[1] - previous[1],
+                    values[2] - previous[2],
+                    values[3] - previous[3],
+                    values[4] - previous[4]));
+            previous = values;
+        } catch (RuntimeException e) {
+            // an exception would cancel all further executions of the scheduler
+            LOG.error("Error while reporting client metrics", e);
+        }
+    }
+
+    private long[] counters() {
+        return new long[]{metrics.getFailedCommands(), metrics.getBytesSent(), metrics.getBytesReceived(),
+                metrics.getConnectionsAdded(), metrics.getConnectionsRemoved()};
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.US, "%.3f", value);
+    }
+}
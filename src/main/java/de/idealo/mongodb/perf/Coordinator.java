@@ -0,0 +1,277 @@
+package de.idealo.mongodb.perf;
+
+import de.idealo.mongodb.perf.stats.LatencySeries;
+import de.idealo.mongodb.perf.stats.StatsReporter;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Coordinator of a distributed test: waits for the given number of {@link Worker}s to connect, sends them the options
+ * of the test and starts each set of modes on all of them at a common start time, thus the clocks of the workers must be
+ * synchronized (e.g. by NTP), otherwise their starts differ by the offsets of their clocks. The intervals received from the workers
+ * are merged per second into the same csv-files and histogram log as if the test were executed by a single process,
+ * thus threads, rates and operations are per worker.
+ */
+public class Coordinator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Coordinator.class);
+    // time to send START to all workers before they start, so the start isn't skewed by the order of the workers
+    static final long START_DELAY_MS = 500;
+
+    private final int port;
+    private final int workerCount;
+    private final int runSets;
+    private final String[] workerArgs;
+    private final List<Connection> connections = new ArrayList<>();
+
+    /**
+     * @param port port the workers connect to
+     * @param workerCount number of workers to wait for
+     * @param runSets number of sets of simultaneously running modes the workers execute one after the other
+     * @param workerArgs options of the test executed by each worker
+     */
+    public Coordinator(int port, int workerCount, int runSets, String[] workerArgs) {
+        this.port = port;
+        this.workerCount = workerCount;
+        this.runSets = runSets;
+        this.workerArgs = workerArgs;
+    }
+
+    public void run() throws IOException, InterruptedException {
+        try {
+            try (ServerSocket serverSocket = new ServerSocket(port)) {
+                LOG.info("COORDINATOR: waiting for {} workers on port {}", workerCount, port);
+                for (int i = 0; i < workerCount; i++) {
+                    final Connection connection = new Connection(i, serverSocket.accept());
+                    connection.sendConfig(workerCount, workerArgs);
+                    connections.add(connection);
+                    LOG.info("COORDINATOR: worker {} connected from {}", i, connection.socket.getRemoteSocketAddress());
+                }
+            }
+            for (int runSet = 0; runSet < runSets; runSet++) {
+                executeRunSet();
+            }
+        } finally {
+            for (Connection connection : connections) {
+                connection.close();
+            }
+        }
+    }
+
+    private void executeRunSet() throws IOException, InterruptedException {
+        // prepared one after the other, so only the first worker may drop the database and all of them see the same max id
+        List<DeclaredExecutor> declared = null;
+        final List<String> workerHosts = new ArrayList<>();
+        for (Connection connection : connections) {
+            connection.send(WorkerProtocol.PREPARE);
+            final List<DeclaredExecutor> ready = connection.readReady();
+            if (declared == null) {
+                declared = ready;
+            } else if (!DeclaredExecutor.sameSeries(declared, ready)) {
+                throw new IOException("Worker " + connection.index + " declared other modes than worker 0");
+            }
+            workerHosts.add(ready.isEmpty() ? "" : ready.get(0).metadata.getOrDefault("client_host", ""));
+        }
+
+        final List<StatsReporter> statsReporters = new ArrayList<>();
+        final List<List<LatencySeries>> seriesPerExecutor = new ArrayList<>();
+        final AtomicBoolean[] started = new AtomicBoolean[declared.size()];
+        for (int e = 0; e < declared.size(); e++) {
+            final DeclaredExecutor executor = declared.get(e);
+            final List<LatencySeries> series = new ArrayList<>();
+            for (String[] names : executor.series) {
+                series.add(new LatencySeries(names[0], names[1], names[2], 0));
+            }
+            final Map<String, String> metadata = new LinkedHashMap<>(executor.metadata);
+            metadata.put("workers", String.valueOf(workerCount));
+            metadata.put("worker_hosts", String.join(",", workerHosts));
+            final StatsReporter statsReporter = new StatsReporter(OperationExecutor.getJarLocation(), executor.prefix, series);
+            statsReporter.setRunMetadata(metadata);
+            statsReporters.add(statsReporter);
+            seriesPerExecutor.add(series);
+            started[e] = new AtomicBoolean();
+        }
+
+        final List<Thread> readers = new ArrayList<>();
+        for (Connection connection : connections) {
+            final Thread reader = new Thread(() -> connection.readIntervals(seriesPerExecutor, statsReporters, started), "coordinator-worker-" + connection.index);
+            reader.start();
+            readers.add(reader);
+        }
+        final long startAtMs = System.currentTimeMillis() + START_DELAY_MS;
+        LOG.info("COORDINATOR: starting {} modes on {} workers in {} ms", declared.size(), workerCount, START_DELAY_MS);
+        for (Connection connection : connections) {
+            connection.sendStart(startAtMs);
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        for (int e = 0; e < statsReporters.size(); e++) {
+            if (!started[e].get()) {
+                LOG.warn("COORDINATOR: no interval received for {}", declared.get(e).prefix);
+                continue;
+            }
+            final StatsReporter statsReporter = statsReporters.get(e);
+            statsReporter.stop();
+            statsReporter.reportRun();
+            final double durationInSeconds = Math.max(statsReporter.getLastReportMs() - statsReporter.getStartMs(), 1) / 1000d;
+            for (LatencySeries series : seriesPerExecutor.get(e)) {
+                final Histogram histogram = series.getRunHistogram();
+                final double toMs = 1.0 / TimeUnit.MILLISECONDS.toNanos(1);
+                LOG.info("COORDINATOR: {} count: {}, errors: {}, MeanRate: {}, Mean: {}, 50p: {}, 99p: {}, Max: {}", series.getPerSecondName(),
+                        histogram.getTotalCount(), series.getRunErrors(), histogram.getTotalCount() / durationInSeconds, histogram.getMean() * toMs,
+                        histogram.getValueAtPercentile(50) * toMs, histogram.getValueAtPercentile(99) * toMs, histogram.getMaxValue() * toMs);
+            }
+        }
+    }
+
+    /**
+     * Mode declared by a worker when it's ready.
+     */
+    private static final class DeclaredExecutor {
+        private final String prefix;
+        private final Map<String, String> metadata;
+        // per series: name of the csv-file per second, name of the csv-file per run, tag
+        private final List<String[]> series = new ArrayList<>();
+
+        private DeclaredExecutor(String prefix, Map<String, String> metadata) {
+            this.prefix = prefix;
+            this.metadata = metadata;
+        }
+
+        private static boolean sameSeries(List<DeclaredExecutor> a, List<DeclaredExecutor> b) {
+            if (a.size() != b.size()) {
+                return false;
+            }
+            for (int i = 0; i < a.size(); i++) {
+                if (!a.get(i).prefix.equals(b.get(i).prefix) || a.get(i).series.size() != b.get(i).series.size()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class Connection {
+        private final int index;
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+
+        private Connection(int index, Socket socket) throws IOException {
+            this.index = index;
+            this.socket = socket;
+            socket.setTcpNoDelay(true);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        private void sendConfig(int count, String[] args) throws IOException {
+            out.writeByte(WorkerProtocol.CONFIG);
+            out.writeInt(index);
+            out.writeInt(count);
+            out.writeInt(args.length);
+            for (String arg : args) {
+                out.writeUTF(arg);
+            }
+            out.flush();
+        }
+
+        private void send(byte type) throws IOException {
+            out.writeByte(type);
+            out.flush();
+        }
+
+        private void sendStart(long startAtMs) throws IOException {
+            out.writeByte(WorkerProtocol.START);
+            out.writeLong(startAtMs);
+            out.flush();
+        }
+
+        private List<DeclaredExecutor> readReady() throws IOException {
+            final byte type = WorkerProtocol.readType(in);
+            if (type == WorkerProtocol.FAILED) {
+                throw new IOException("Worker " + index + " failed: " + in.readUTF());
+            }
+            if (type != WorkerProtocol.READY) {
+                throw new IOException("Expected message '" + (char) WorkerProtocol.READY + "' but received '" + (char) type + "' from worker " + index);
+            }
+            final int executors = in.readInt();
+            final List<DeclaredExecutor> declared = new ArrayList<>(executors);
+            for (int e = 0; e < executors; e++) {
+                final DeclaredExecutor executor = new DeclaredExecutor(in.readUTF(), WorkerProtocol.readMap(in));
+                final int series = in.readInt();
+                for (int s = 0; s < series; s++) {
+                    executor.series.add(new String[]{in.readUTF(), in.readUTF(), in.readUTF()});
+                }
+                declared.add(executor);
+            }
+            return declared;
+        }
+
+        /**
+         * Adds the received intervals to the series until the worker is done. The reporter of a mode is started by its
+         * first interval, thus once the first worker has finished its warm-up.
+         */
+        private void readIntervals(List<List<LatencySeries>> seriesPerExecutor, List<StatsReporter> statsReporters, AtomicBoolean[] started) {
+            try {
+                while (true) {
+                    final byte type = WorkerProtocol.readType(in);
+                    if (type == WorkerProtocol.DONE) {
+                        LOG.info("COORDINATOR: worker {} done", index);
+                        return;
+                    }
+                    if (type == WorkerProtocol.FAILED) {
+                        LOG.error("COORDINATOR: worker {} failed: {}", index, in.readUTF());
+                        return;
+                    }
+                    if (type != WorkerProtocol.INTERVAL) {
+                        throw new IOException("Unexpected message '" + (char) type + "'");
+                    }
+                    final int executor = in.readInt();
+                    final int series = in.readInt();
+                    final long affectedDocs = in.readLong();
+                    final long[] errorCounts = new long[in.readInt()];
+                    for (int i = 0; i < errorCounts.length; i++) {
+                        errorCounts[i] = in.readLong();
+                    }
+                    final Histogram interval = WorkerProtocol.readHistogram(in);
+                    final Histogram errors = WorkerProtocol.readHistogram(in);
+                    if (started[executor].compareAndSet(false, true)) {
+                        statsReporters.get(executor).start();
+                    }
+                    seriesPerExecutor.get(executor).get(series).add(interval, affectedDocs, errors, errorCounts);
+                }
+            } catch (EOFException e) {
+                LOG.error("COORDINATOR: lost connection to worker {}", index);
+            } catch (IOException e) {
+                LOG.error("COORDINATOR: error while reading from worker {}", index, e);
+            }
+        }
+
+        private void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                LOG.warn("COORDINATOR: error while closing connection to worker {}", index, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,378 @@
+package de.idealo.mongodb.perf;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ReadPreference;
+import com.mongodb.ServerAddress;
+import com.mongodb.WriteConcern;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.InsertManyOptions;
+import de.idealo.mongodb.perf.operations.DocumentGenerator;
+import de.idealo.mongodb.perf.operations.DocumentTemplate;
+import de.idealo.mongodb.perf.operations.IOperation;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.gte;
+import static com.mongodb.client.model.Filters.lte;
+import static com.mongodb.client.model.Projections.include;
+import static com.mongodb.client.model.Sorts.descending;
+
+/**
+ * Subcommand {@value #COMMAND}: prepares a collection for the performance test by inserting the same documents as mode
+ * INSERT, but much faster. The _id space is split into one contiguous range per thread, each of them loaded by unordered
+ * bulk inserts, so threads neither share an id sequence nor wait for each other. An interrupted load can be resumed,
+ * each range continuing from its highest loaded _id.
+ */
+public class DataLoader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DataLoader.class);
+
+    public static final String COMMAND = "load";
+    static final int DEFAULT_THREADS = 8;
+    static final int DEFAULT_BATCH_SIZE = 1000;
+    static final long DEFAULT_START_ID = 1;
+    private static final long PROGRESS_INTERVAL_SECONDS = 10;
+
+    private final MongoDbAccessor mongoDbAccessor;
+    private final String database;
+    private final String collection;
+    private final long documents;
+    private final long startId;
+    private final int ranges;
+    private final int batchSize;
+    private DocumentGenerator documentGenerator = new DocumentTemplate(0);
+    private boolean deferIndexes = false;
+    private IndexSet indexSet = null;
+    private boolean resume = false;
+    private final LongAdder loaded = new LongAdder();
+    // documents found to be loaded already when resuming
+    private final LongAdder skipped = new LongAdder();
+
+    /**
+     * @param documents number of documents to load
+     * @param startId _id of the first document
+     * @param ranges number of ranges, each loaded by its own thread
+     * @param batchSize number of documents per bulk insert
+     */
+    DataLoader(MongoDbAccessor mongoDbAccessor, String database, String collection, long documents, long startId, int ranges, int batchSize) {
+        this.mongoDbAccessor = mongoDbAccessor;
+        this.database = database;
+        this.collection = collection;
+        this.documents = documents;
+        this.startId = startId;
+        this.ranges = ranges;
+        this.batchSize = batchSize;
+    }
+
+    void setRandomFieldLength(int randomFieldLength) {
+        this.documentGenerator = new DocumentTemplate(randomFieldLength);
+    }
+
+    void setDocumentGenerator(DocumentGenerator documentGenerator) {
+        this.documentGenerator = documentGenerator;
+    }
+
+    /**
+     * @param deferIndexes build the secondary indexes after the load instead of maintaining them while loading
+     */
+    void setDeferIndexes(boolean deferIndexes) {
+        this.deferIndexes = deferIndexes;
+    }
+
+    /**
+     * @param indexSet declared secondary indexes to be created besides the index of field threadRunCount, or null for none
+     */
+    void setIndexSet(IndexSet indexSet) {
+        this.indexSet = indexSet;
+    }
+
+    /**
+     * @param resume continue each range from its highest loaded _id, requires the same number of documents, start id and threads as the interrupted load
+     */
+    void setResume(boolean resume) {
+        this.resume = resume;
+    }
+
+    /**
+     * @return true if all ranges have been loaded
+     */
+    boolean load() throws InterruptedException {
+        // read from the primary, so resuming doesn't miss documents not yet replicated
+        final MongoCollection<RawBsonDocument> rawCollection = mongoDbAccessor.getMongoDatabase(database)
+                .getCollection(collection, RawBsonDocument.class).withReadPreference(ReadPreference.primary());
+        if (!deferIndexes) {
+            createIndexes(rawCollection);
+        }
+        final long rangeSize = rangeSize(documents, ranges);
+        LOG.info("LOAD: {} documents with _id {} to {} in {} ranges of {} documents by bulk inserts of {} documents", documents, startId, startId + documents - 1, ranges, rangeSize, batchSize);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(ranges);
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int range = 0; range < ranges; range++) {
+            final int r = range;
+            final long firstId = firstId(startId, rangeSize, range);
+            final long lastId = lastId(startId, documents, rangeSize, range);
+            if (firstId <= lastId) {
+                futures.add(executor.submit(() -> loadRange(rawCollection, r, firstId, lastId)));
+            }
+        }
+        executor.shutdown();
+
+        final long startMs = System.currentTimeMillis();
+        final long[] previous = {0, startMs};
+        final ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "load-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        progress.scheduleAtFixedRate(() -> logProgress(startMs, previous), PROGRESS_INTERVAL_SECONDS, PROGRESS_INTERVAL_SECONDS, TimeUnit.SECONDS);
+
+        int failed = 0;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                LOG.error("LOAD: error while loading a range", e.getCause());
+                failed++;
+            }
+        }
+        progress.shutdownNow();
+        final double seconds = Math.max(System.currentTimeMillis() - startMs, 1) / 1000d;
+        LOG.info("LOAD: {} documents loaded in {} seconds, {} docs/s", loaded.sum(), seconds, loaded.sum() / seconds);
+        if (failed > 0) {
+            LOG.error("LOAD: {} of {} ranges failed, run the load again with option -resume to complete them", failed, futures.size());
+            return false;
+        }
+        if (deferIndexes) {
+            createIndexes(rawCollection);
+        }
+        return true;
+    }
+
+    private void loadRange(MongoCollection<RawBsonDocument> rawCollection, int range, long firstId, long lastId) {
+        long nextId = firstId;
+        if (resume) {
+            final Document last = rawCollection.withDocumentClass(Document.class)
+                    .find(and(gte(IOperation.ID, firstId), lte(IOperation.ID, lastId)))
+                    .sort(descending(IOperation.ID)).projection(include(IOperation.ID)).first();
+            final Long lastLoadedId = mongoDbAccessor.getLong(last, IOperation.ID);
+            if (lastLoadedId != null) {
+                nextId = resumeId(firstId, lastLoadedId, batchSize);
+                skipped.add(nextId - firstId);
+                LOG.info("LOAD: range {} resumes at _id {}", range, nextId);
+            }
+        }
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final InsertManyOptions options = new InsertManyOptions().ordered(false);
+        while (nextId <= lastId) {
+            final int size = (int) Math.min(batchSize, lastId - nextId + 1);
+            final List<RawBsonDocument> batch = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                // like mode INSERT, each thread counts its inserts, so threadRunCount is the position within the range
+                batch.add(documentGenerator.createDocument(nextId + i, range + 1, nextId + i - firstId + 1, random.nextLong()));
+            }
+            loaded.add(insert(rawCollection, batch, options));
+            nextId += size;
+        }
+    }
+
+    /**
+     * @return number of documents per range, the last range may be smaller
+     */
+    static long rangeSize(long documents, int ranges) {
+        return (documents + ranges - 1) / ranges;
+    }
+
+    /**
+     * @return _id of the first document of the range
+     */
+    static long firstId(long startId, long rangeSize, int range) {
+        return startId + range * rangeSize;
+    }
+
+    /**
+     * @return _id of the last document of the range, smaller than its first _id if the range is empty
+     */
+    static long lastId(long startId, long documents, long rangeSize, int range) {
+        return Math.min(firstId(startId, rangeSize, range) + rangeSize, startId + documents) - 1;
+    }
+
+    /**
+     * The documents of an unordered bulk insert may be inserted in any order, so the batch of the highest loaded _id is inserted again.
+     *
+     * @return _id the range resumes at, which is the first _id of the batch containing the highest loaded _id
+     */
+    static long resumeId(long firstId, long lastLoadedId, int batchSize) {
+        return firstId + (lastLoadedId - firstId) / batchSize * batchSize;
+    }
+
+    /**
+     * @return number of inserted documents
+     */
+    private int insert(MongoCollection<RawBsonDocument> rawCollection, List<RawBsonDocument> batch, InsertManyOptions options) {
+        try {
+            rawCollection.insertMany(batch, options);
+            return batch.size();
+        } catch (MongoBulkWriteException e) {
+            if (!resume) {
+                throw e;
+            }
+            for (BulkWriteError error : e.getWriteErrors()) {
+                if (ErrorCategory.fromErrorCode(error.getCode()) != ErrorCategory.DUPLICATE_KEY) {
+                    throw e;
+                }
+            }
+            // documents already inserted before the interruption
+            return e.getWriteResult().getInsertedCount();
+        }
+    }
+
+    /**
+     * Builds the index of field threadRunCount, queried by the modes "...MANY", and the declared indexes, if any,
+     * in the foreground like the modes do.
+     */
+    private void createIndexes(MongoCollection<RawBsonDocument> rawCollection) {
+        LOG.info("LOAD: creating index on field '{}'", IOperation.THREAD_RUN_COUNT);
+        final long startMs = System.currentTimeMillis();
+        rawCollection.createIndex(new BasicDBObject(IOperation.THREAD_RUN_COUNT, 1), new IndexOptions().background(false));
+        LOG.info("LOAD: index on field '{}' created in {} ms", IOperation.THREAD_RUN_COUNT, System.currentTimeMillis() - startMs);
+        if (indexSet != null) {
+            indexSet.create(rawCollection.withDocumentClass(Document.class), indexSet.size());
+        }
+    }
+
+    /**
+     * @param previous number of documents loaded and time of the previous call
+     */
+    private void logProgress(long startMs, long[] previous) {
+        final long nowMs = System.currentTimeMillis();
+        final long loadedNow = loaded.sum();
+        final long done = loadedNow + skipped.sum();
+        final double rate = (loadedNow - previous[0]) * 1000d / Math.max(nowMs - previous[1], 1);
+        final double meanRate = loadedNow * 1000d / Math.max(nowMs - startMs, 1);
+        final long etaSeconds = meanRate > 0 ? (long) ((documents - done) / meanRate) : -1;
+        previous[0] = loadedNow;
+        previous[1] = nowMs;
+        LOG.info("LOAD: {}% ({} of {} documents), {} docs/s, mean {} docs/s, ETA {}", String.format("%.1f", done * 100d / documents), done, documents,
+                (long) rate, (long) meanRate, etaSeconds < 0 ? "unknown" : String.format("%d:%02d:%02d", etaSeconds / 3600, etaSeconds / 60 % 60, etaSeconds % 60));
+    }
+
+    public static void main(String... args) {
+        final Options cliOptions = new Options()
+                .addOption(new Option("H", "help", false, "print this help"))
+                .addOption(Option.builder("n").longOpt("documents").hasArg().argName("DOCUMENTS").desc("number of documents to load").build())
+                .addOption(Option.builder("t").longOpt("threads").hasArg().argName("THREADS")
+                        .desc("number of threads, each loading its own range of _id values (default " + DEFAULT_THREADS + ")").build())
+                .addOption(Option.builder("bs").longOpt("batchsize").hasArg().argName("BATCH_SIZE")
+                        .desc("number of documents per unordered bulk insert (default " + DEFAULT_BATCH_SIZE + ")").build())
+                .addOption(Option.builder("startid").longOpt("startid").hasArg().argName("ID")
+                        .desc("_id of the first document (default " + DEFAULT_START_ID + "), e.g. beyond the highest _id of the collection to add documents to it").build())
+                .addOption(Option.builder("s").longOpt("randomtextsize").hasArg().argName("RANDOM_TEXT_SIZE")
+                        .desc("Size in bytes of random text field, absent if 0 (default 0)").build())
+                .addOption(Option.builder("schema").longOpt("schema").hasArg().argName("FILE")
+                        .desc("file containing the JSON schema of the documents, see option -schema of the performance test").build())
+                .addOption(Option.builder("indexes").longOpt("indexes").hasArg().argName("FILE")
+                        .desc("file containing the JSON array of secondary indexes to be created, see option -indexes of the performance test").build())
+                .addOption(new Option("deferindexes", "deferindexes", false, "build the index of field '" + IOperation.THREAD_RUN_COUNT + "' and the declared indexes (-indexes)"
+                        + " after the load instead of maintaining them while loading"))
+                .addOption(new Option("resume", "resume", false, "resume an interrupted load, each range continuing from its highest loaded _id."
+                        + " Requires the same number of documents (-n), threads (-t), batch size (-bs) and start id (-startid) as the interrupted load"))
+                .addOption(new Option("dropdb", "dropdatabase", false, "drop database before loading documents"))
+                .addOption(Option.builder("h").longOpt("host").hasArg().argName("HOST").desc("mongoDB host (default localhost)").build())
+                .addOption(Option.builder("port").longOpt("port").hasArg().argName("PORT").desc("mongoDB port (default 27017)").build())
+                .addOption(Option.builder("db").longOpt("database").hasArg().argName("DB").desc("mongoDB database to load the documents into").build())
+                .addOption(Option.builder("c").longOpt("collection").hasArg().argName("COLLECTION").desc("mongoDB collection to load the documents into").build())
+                .addOption(Option.builder("url").longOpt("url").hasArg().argName("URL").desc("mongoDB URL").build())
+                .addOption(Option.builder("u").longOpt("user").hasArg().argName("USER").desc("mongoDB user").build())
+                .addOption(Option.builder("p").longOpt("password").hasArg().argName("PASSWORD").desc("mongoDB password").build())
+                .addOption(Option.builder("adb").longOpt("authdb").hasArg().argName("AUTH_DB").desc("mongoDB database to be authenticated against (default: value of parameter -db)").build())
+                .addOption(new Option("ssl", "ssl", false, "use SSL to connect to mongoDB"));
+        boolean helpRequested = false;
+        try {
+            final CommandLine cmdLine = new DefaultParser().parse(cliOptions, args);
+            helpRequested = cmdLine.hasOption("H");
+            if (!helpRequested) {
+                final String database = cmdLine.getOptionValue("db");
+                final String collection = cmdLine.getOptionValue("c");
+                if (database == null || database.isEmpty() || collection == null || collection.isEmpty()) {
+                    throw new IllegalArgumentException("Database (-db) and collection (-c) must not be empty!");
+                }
+                if (!cmdLine.hasOption("n")) {
+                    throw new IllegalArgumentException("Number of documents (-n) is required!");
+                }
+                final long documents = Long.parseLong(cmdLine.getOptionValue("n"));
+                final int threads = cmdLine.hasOption("t") ? Integer.parseInt(cmdLine.getOptionValue("t")) : DEFAULT_THREADS;
+                final int batchSize = cmdLine.hasOption("bs") ? Integer.parseInt(cmdLine.getOptionValue("bs")) : DEFAULT_BATCH_SIZE;
+                if (documents < 1 || threads < 1 || batchSize < 1) {
+                    throw new IllegalArgumentException("Number of documents (-n), threads (-t) and batch size (-bs) must be at least 1!");
+                }
+                if (cmdLine.hasOption("resume") && cmdLine.hasOption("dropdb")) {
+                    throw new IllegalArgumentException("A load can't be resumed (-resume) after dropping the database (-dropdb)!");
+                }
+                final long startId = cmdLine.hasOption("startid") ? Long.parseLong(cmdLine.getOptionValue("startid")) : DEFAULT_START_ID;
+                final ServerAddress serverAddress = new ServerAddress(cmdLine.getOptionValue("h", "localhost"), Integer.parseInt(cmdLine.getOptionValue("port", "27017")));
+                final MongoDbAccessor mongoDbAccessor = new MongoDbAccessor(-1, cmdLine.getOptionValue("u"), cmdLine.getOptionValue("p"), cmdLine.getOptionValue("adb"),
+                        cmdLine.hasOption("ssl"), cmdLine.getOptionValue("url"), WriteConcern.ACKNOWLEDGED, threads,
+                        MongoDbAccessor.DEFAULT_THREADS_ALLOWED_TO_BLOCK_FOR_CONNECTION_MULTIPLIER, serverAddress);
+                // read before the database may be dropped, so an invalid declaration doesn't cost the existing data
+                final IndexSet indexSet = cmdLine.hasOption("indexes")
+                        ? new IndexSet(new String(Files.readAllBytes(Paths.get(cmdLine.getOptionValue("indexes"))), StandardCharsets.UTF_8)) : null;
+                boolean complete = false;
+                try {
+                    if (cmdLine.hasOption("dropdb")) {
+                        LOG.info("LOAD: drop database '{}'", database);
+                        mongoDbAccessor.getMongoDatabase(database).drop();
+                    }
+                    final DataLoader loader = new DataLoader(mongoDbAccessor, database, collection, documents, startId, threads, batchSize);
+                    if (cmdLine.hasOption("s")) {
+                        loader.setRandomFieldLength(Integer.parseInt(cmdLine.getOptionValue("s")));
+                    }
+                    if (cmdLine.hasOption("schema")) {
+                        loader.setDocumentGenerator(Main.readSchema(cmdLine.getOptionValue("schema")));
+                    }
+                    loader.setIndexSet(indexSet);
+                    loader.setDeferIndexes(cmdLine.hasOption("deferindexes"));
+                    loader.setResume(cmdLine.hasOption("resume"));
+                    complete = loader.load();
+                } finally {
+                    mongoDbAccessor.closeConnections();
+                }
+                System.exit(complete ? 0 : 1);
+                return;
+            }
+        } catch (Exception e) {
+            LOG.error(e.getMessage());
+        }
+        final HelpFormatter hf = new HelpFormatter();
+        hf.setOptionComparator(null);
+        hf.printHelp(160, COMMAND + " [options]", "Loads the given number of documents, the same ones as inserted by mode INSERT, by several threads"
+                + " each inserting its own range of _id values by unordered bulk inserts. Progress and ETA are logged every " + PROGRESS_INTERVAL_SECONDS + " seconds.\nOptions:", cliOptions, "", false);
+        System.exit(helpRequested ? 0 : 1);
+    }
+}
@@ -0,0 +1,22 @@
+package de.idealo.mongodb.perf;
+
+/**
+ * Defines how the {@link OperationExecutor} executes the operations of a mode concurrently.
+ */
+public enum ExecutionEngine {
+    /**
+     * each thread executes one operation after the other by the sync driver
+     */
+    THREADS,
+    /**
+     * same as {@link #THREADS} but each thread is a virtual thread, available as of java 21
+     */
+    VIRTUAL_THREADS,
+    /**
+     * a single dispatcher keeps the same number of operations in flight by the async driver, whose callbacks run on a few event loop threads.
+     * The callback based async driver is deprecated in the 3.x line but kept, since the reactive streams driver would add a
+     * dependency and a publisher with a subscription per operation; its deprecation warnings are suppressed where it is used.
+     * Only operations implementing {@link de.idealo.mongodb.perf.operations.IAsyncOperation} can be executed this way.
+     */
+    ASYNC
+}
@@ -0,0 +1,141 @@
+package de.idealo.mongodb.perf;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Collation;
+import com.mongodb.client.model.IndexModel;
+import com.mongodb.client.model.IndexOptions;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Indexes declared by the user, created before each set of modes in addition to the index of the queried field.
+ * Each index is declared by a document like those of the command createIndexes, e.g.
+ * <code>[{"key": {"customer.name": 1, "total": -1}}, {"key": {"rnd": "hashed"}}, {"key": {"created": 1}, "expireAfterSeconds": 86400},
+ * {"key": {"status": 1}, "partialFilterExpression": {"status": "open"}, "name": "open_status"}]</code>.
+ */
+public class IndexSet {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IndexSet.class);
+
+    private static final int NAMESPACE_NOT_FOUND = 26;
+    private static final int INDEX_NOT_FOUND = 27;
+
+    private final List<IndexModel> indexes;
+    private final List<String> names;
+
+    /**
+     * @param json JSON array of index declarations, each with a key and optionally name, unique, sparse, partialFilterExpression, expireAfterSeconds and collation
+     * @throws IllegalArgumentException if the JSON is not an array of index declarations
+     */
+    public IndexSet(String json) {
+        final BsonArray array;
+        try {
+            array = BsonArray.parse(json);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Indexes must be a JSON array of index declarations: " + e.getMessage(), e);
+        }
+        final List<IndexModel> indexes = new ArrayList<>();
+        final List<String> names = new ArrayList<>();
+        for (BsonValue value : array) {
+            if (!value.isDocument() || !value.asDocument().isDocument("key") || value.asDocument().getDocument("key").isEmpty()) {
+                throw new IllegalArgumentException("Each index must be declared by a document with a non-empty key, but was: " + value);
+            }
+            final BsonDocument declaration = value.asDocument();
+            final BsonDocument key = declaration.getDocument("key");
+            final String name = declaration.isString("name") ? declaration.getString("name").getValue() : defaultName(key);
+            final IndexOptions options = new IndexOptions().name(name).background(false);
+            for (Map.Entry<String, BsonValue> option : declaration.entrySet()) {
+                switch (option.getKey()) {
+                    case "key":
+                    case "name":
+                        break;
+                    case "unique":
+                        options.unique(option.getValue().asBoolean().getValue());
+                        break;
+                    case "sparse":
+                        options.sparse(option.getValue().asBoolean().getValue());
+                        break;
+                    case "partialFilterExpression":
+                        options.partialFilterExpression(option.getValue().asDocument());
+                        break;
+                    case "expireAfterSeconds":
+                        options.expireAfter(option.getValue().asNumber().longValue(), TimeUnit.SECONDS);
+                        break;
+                    case "collation":
+                        options.collation(Collation.builder()
+                                .locale(option.getValue().asDocument().getString("locale").getValue()).build());
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unsupported option '" + option.getKey() + "' of index '" + name + "'!");
+                }
+            }
+            indexes.add(new IndexModel(key, options));
+            names.add(name);
+        }
+        this.indexes = Collections.unmodifiableList(indexes);
+        this.names = Collections.unmodifiableList(names);
+    }
+
+    /**
+     * @return name given by the server to an index without name, e.g. customer.name_1_total_-1
+     */
+    static String defaultName(BsonDocument key) {
+        final StringBuilder name = new StringBuilder();
+        for (Map.Entry<String, BsonValue> field : key.entrySet()) {
+            if (name.length() > 0) {
+                name.append('_');
+            }
+            final BsonValue direction = field.getValue();
+            name.append(field.getKey()).append('_').append(direction.isString() ? direction.asString().getValue() : String.valueOf(direction.asNumber().intValue()));
+        }
+        return name.toString();
+    }
+
+    public int size() {
+        return indexes.size();
+    }
+
+    public List<String> getNames() {
+        return names;
+    }
+
+    /**
+     * Creates the first given number of declared indexes in the foreground, existing ones are left as they are.
+     */
+    public void create(MongoCollection<Document> collection, int count) {
+        if (count <= 0) {
+            return;
+        }
+        final long startMs = System.currentTimeMillis();
+        collection.createIndexes(indexes.subList(0, Math.min(count, indexes.size())));
+        LOG.info("INDEXES: {} declared indexes of collection '{}' created resp. already existing after {} ms: {}", Math.min(count, indexes.size()),
+                collection.getNamespace(), System.currentTimeMillis() - startMs, names.subList(0, Math.min(count, indexes.size())));
+    }
+
+    /**
+     * Drops all declared indexes which exist.
+     */
+    public void drop(MongoCollection<Document> collection) {
+        for (String name : names) {
+            try {
+                collection.dropIndex(name);
+                LOG.info("INDEXES: index '{}' of collection '{}' dropped", name, collection.getNamespace());
+            } catch (MongoCommandException e) {
+                if (e.getErrorCode() != INDEX_NOT_FOUND && e.getErrorCode() != NAMESPACE_NOT_FOUND) {
+                    throw e;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package de.idealo.mongodb.perf;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.ReadPreference;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Polls collStats of the tested collection once per second while a test runs and appends the size of each index
+ * and the number of documents to a csv-file, one row per index and second. The row of index {@link #TOTAL} holds
+ * the size of all indexes. Its column t is the same as in the csv-files of the statistics.
+ *
+ * When stopped, the growth of each index is logged together with the bytes it grew per added document, i.e. the
+ * write amplification caused by the index.
+ */
+public class IndexSizeSampler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IndexSizeSampler.class);
+
+    public static final String FILE_PREFIX = "index-sizes-per-second-";
+    static final String CSV_HEADER = "t,index,size,documents";
+    static final String TOTAL = "_total";
+
+    private final MongoDbAccessor mongoDbAccessor;
+    private final String database;
+    private final String collection;
+    private final File file;
+    private final ScheduledExecutorService scheduler;
+    private PrintWriter writer;
+    // index sizes including the total and the number of documents of the first and the last sample
+    private Map<String, Long> first;
+    private Map<String, Long> last;
+    private long firstDocuments;
+    private long lastDocuments;
+    private boolean failing;
+
+    /**
+     *
+     * @param folder folder of the csv-file, the same as the one of the statistics
+     * @param name name of the csv-file, completed by {@link #FILE_PREFIX}, usually the names of the modes sampled for
+     */
+    public IndexSizeSampler(MongoDbAccessor mongoDbAccessor, String database, String collection, File folder, String name) {
+        this.mongoDbAccessor = mongoDbAccessor;
+        this.database = database;
+        this.collection = collection;
+        this.file = new File(folder, FILE_PREFIX + name + ".csv");
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "index-size-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return collStats of the collection, read from the primary if available
+     */
+    static Document collStats(MongoDbAccessor mongoDbAccessor, String database, String collection) {
+        return mongoDbAccessor.runCommand(database, new BasicDBObject("collStats", collection), ReadPreference.primaryPreferred());
+    }
+
+    /**
+     * @return size in bytes of each index of the collStats, followed by {@link #TOTAL}
+     */
+    static Map<String, Long> indexSizes(Document stats) {
+        final Map<String, Long> sizes = new LinkedHashMap<>();
+        final Object indexSizes = stats.get("indexSizes");
+        if (indexSizes instanceof Document) {
+            for (Map.Entry<String, Object> index : ((Document) indexSizes).entrySet()) {
+                sizes.put(index.getKey(), index.getValue() instanceof Number ? ((Number) index.getValue()).longValue() : 0);
+            }
+        }
+        sizes.put(TOTAL, longValue(stats, "totalIndexSize"));
+        return sizes;
+    }
+
+    static long longValue(Document stats, String key) {
+        final Object value = stats.get(key);
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+
+    public void start() {
+        final boolean exists = file.exists() && file.length() > 0;
+        try {
+            writer = new PrintWriter(new FileWriter(file, true), true);
+        } catch (IOException e) {
+            LOG.error("Error while opening csv-file '{}'", file.getAbsolutePath(), e);
+            writer = new PrintWriter(Writer.nullWriter());
+        }
+        if (!exists) {
+            writer.println(CSV_HEADER);
+        }
+        scheduler.scheduleAtFixedRate(this::sample, 0, 1, TimeUnit.SECONDS);
+    }
+
+    public void stop() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer != null) {
+            writer.close();
+        }
+        LOG.info("Index sizes saved in csv-file '{}'", file.getAbsolutePath());
+        if (first != null) {
+            final long addedDocuments = lastDocuments - firstDocuments;
+            for (Map.Entry<String, Long> index : last.entrySet()) {
+                final long growth = index.getValue() - first.getOrDefault(index.getKey(), 0L);
+                LOG.info("INDEX SIZES: index '{}' grew by {} bytes to {} bytes, {} bytes per added document", index.getKey(), growth, index.getValue(),
+                        addedDocuments > 0 ? String.valueOf(growth / addedDocuments) : "n/a");
+            }
+        }
+    }
+
+    private void sample() {
+        try {
+            final Document stats = collStats(mongoDbAccessor, database, collection);
+            final long t = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+            final Map<String, Long> sizes = indexSizes(stats);
+            final long documents = longValue(stats, "count");
+            for (Map.Entry<String, Long> index : sizes.entrySet()) {
+                writer.println(t + "," + index.getKey() + "," + index.getValue() + "," + documents);
+            }
+            if (first == null) {
+                first = sizes;
+                firstDocuments = documents;
+            }
+            last = sizes;
+            lastDocuments = documents;
+            failing = false;
+        } catch (RuntimeException e) {
+            // an exception would cancel all further executions of the scheduler
+            if (!failing) {
+                LOG.warn("Error while sampling collStats, retrying every second", e);
+                failing = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package de.idealo.mongodb.perf;
+
+import com.mongodb.client.MongoCollection;
+import de.idealo.mongodb.perf.stats.LatencySeries;
+import org.HdrHistogram.Histogram;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executes each set of modes once per number of declared indexes, from none to all of them, so the csv-file shows
+ * how the latency of e.g. inserts and updates and the index size per document grow with each additional index.
+ * Before each step, the declared indexes are dropped and the first ones of the step are created. In a distributed
+ * test, only the first worker prepares and reports the steps, which all workers execute.
+ */
+public class IndexSweep {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IndexSweep.class);
+
+    public static final String FILE_PREFIX = "index-sweep-";
+    static final String CSV_HEADER = "indexes,mode,count,mean_rate,mean,p50,p99,max,errors,docs,documents_before,documents_after,index_size_before,index_size_after,index_bytes_per_doc,duration_unit";
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final IndexSet indexSet;
+    private final MongoDbAccessor mongoDbAccessor;
+    private final String database;
+    private final String collection;
+    private PrintWriter csvWriter;
+    private long indexSizeBefore;
+    private long documentsBefore;
+
+    public IndexSweep(IndexSet indexSet, MongoDbAccessor mongoDbAccessor, String database, String collection) {
+        this.indexSet = indexSet;
+        this.mongoDbAccessor = mongoDbAccessor;
+        this.database = database;
+        this.collection = collection;
+    }
+
+    /**
+     * @return number of steps, i.e. one more than the number of declared indexes
+     */
+    public static int getSteps(IndexSet indexSet) {
+        return indexSet.size() + 1;
+    }
+
+    /**
+     * Drops the declared indexes, creates the first ones and takes the index size before the step.
+     */
+    public void prepare(int indexes) {
+        final MongoCollection<Document> mongoCollection = mongoDbAccessor.getMongoDatabase(database).getCollection(collection);
+        indexSet.drop(mongoCollection);
+        indexSet.create(mongoCollection, indexes);
+        final Document stats = IndexSizeSampler.collStats(mongoDbAccessor, database, collection);
+        indexSizeBefore = IndexSizeSampler.longValue(stats, "totalIndexSize");
+        documentsBefore = IndexSizeSampler.longValue(stats, "count");
+        LOG.info("INDEX SWEEP: step with {} of {} declared indexes, index size {} bytes", indexes, indexSet.size(), indexSizeBefore);
+    }
+
+    /**
+     * Appends a row per mode of the terminated step to the csv-file.
+     *
+     * @param operationNames names of the modes, in the order of their executors
+     */
+    public void report(int indexes, List<String> operationNames, List<OperationExecutor> operationExecutors) {
+        final Document stats = IndexSizeSampler.collStats(mongoDbAccessor, database, collection);
+        final long indexSizeAfter = IndexSizeSampler.longValue(stats, "totalIndexSize");
+        final long documentsAfter = IndexSizeSampler.longValue(stats, "count");
+        final long addedDocuments = documentsAfter - documentsBefore;
+        final double bytesPerDocument = addedDocuments > 0 ? (indexSizeAfter - indexSizeBefore) / (double) addedDocuments : 0;
+        for (int i = 0; i < operationExecutors.size(); i++) {
+            final OperationExecutor executor = operationExecutors.get(i);
+            if (csvWriter == null) {
+                csvWriter = openCsv(executor.getCsvFolder());
+            }
+            final LatencySeries series = executor.getServiceTime();
+            final Histogram histogram = series.getRunHistogram();
+            final double duration = executor.getRunDurationInSeconds();
+            csvWriter.println(String.format(Locale.US, "%d,%s,%d,%f,%f,%f,%f,%f,%d,%d,%d,%d,%d,%d,%f,milliseconds",
+                    indexes, operationNames.get(i), histogram.getTotalCount(), histogram.getTotalCount() / duration,
+                    histogram.getMean() / NANOS_PER_MILLI,
+                    histogram.getValueAtPercentile(50) / NANOS_PER_MILLI,
+                    histogram.getValueAtPercentile(99) / NANOS_PER_MILLI,
+                    histogram.getMaxValue() / NANOS_PER_MILLI,
+                    series.getRunErrors(), series.getRunDocs(),
+                    documentsBefore, documentsAfter, indexSizeBefore, indexSizeAfter, bytesPerDocument));
+            LOG.info("INDEX SWEEP: {} with {} indexes - mean rate: {} ops/s, mean: {} ms, p99: {} ms", operationNames.get(i), indexes,
+                    String.format(Locale.US, "%.1f", histogram.getTotalCount() / duration), String.format(Locale.US, "%.3f", histogram.getMean() / NANOS_PER_MILLI),
+                    String.format(Locale.US, "%.3f", histogram.getValueAtPercentile(99) / NANOS_PER_MILLI));
+        }
+        LOG.info("INDEX SWEEP: indexes grew by {} bytes for {} added documents, {} bytes per document", indexSizeAfter - indexSizeBefore, addedDocuments,
+                String.format(Locale.US, "%.1f", bytesPerDocument));
+    }
+
+    public void finish() {
+        if (csvWriter != null) {
+            csvWriter.close();
+        }
+    }
+
+    private static PrintWriter openCsv(File folder) {
+        final File file = new File(folder, FILE_PREFIX + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".csv");
+        try {
+            final PrintWriter writer = new PrintWriter(new FileWriter(file), true);
+            writer.println(CSV_HEADER);
+            LOG.info("INDEX SWEEP: latency and index size per number of indexes is saved in csv-file: {}", file.getAbsolutePath());
+            return writer;
+        } catch (IOException e) {
+            LOG.error("Error while opening csv-file '{}'", file.getAbsolutePath(), e);
+            return new PrintWriter(Writer.nullWriter());
+        }
+    }
+}
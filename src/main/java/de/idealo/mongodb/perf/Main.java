@@ -1,16 +1,40 @@
 package de.idealo.mongodb.perf;
 
 import com.mongodb.ServerAddress;
+import com.mongodb.ReadConcern;
+import com.mongodb.ReadConcernLevel;
+import com.mongodb.ReadPreference;
 import com.mongodb.WriteConcern;
+import com.mongodb.internal.build.MongoDriverVersion;
+import de.idealo.mongodb.perf.distribution.KeyDistribution;
+import de.idealo.mongodb.perf.distribution.KeySpace;
 import de.idealo.mongodb.perf.operations.*;
+import de.idealo.mongodb.perf.report.RunReport;
+import de.idealo.mongodb.perf.stats.StatsReporter;
+import org.bson.BsonDocument;
 import org.apache.commons.cli.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
+import java.util.regex.Pattern;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Created by kay.agahd on 23.11.16.
@@ -23,6 +47,36 @@ public class Main {
     private static final int DEFAULT_PORT = 27017;
     private static final int DEFAULT_THREADS = 10;
     private static final long DEFAULT_MAX_DURATION_IN_SECONDS = 3600;
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    private static final double DEFAULT_ERROR_BUDGET_PERCENT = 0.1;
+    private static final long DEFAULT_RANGE_WIDTH = 100;
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int DEFAULT_PAGES = 10;
+    private static final int DEFAULT_IN_KEYS = 10;
+    private static final Pattern CREDENTIALS_IN_URL = Pattern.compile("(mongodb(?:\\+srv)?://)[^@/]*@");
+    private static final OperationModes[] SUPPORTED_MODES = {
+            OperationModes.INSERT,
+            OperationModes.INSERT_BULK,
+            OperationModes.UPDATE_ONE,
+            OperationModes.UPDATE_MANY,
+            OperationModes.COUNT_ONE,
+            OperationModes.COUNT_MANY,
+            OperationModes.ITERATE_ONE,
+            OperationModes.ITERATE_MANY,
+            OperationModes.ITERATE_IN,
+            OperationModes.DELETE_ONE,
+            OperationModes.DELETE_MANY,
+            OperationModes.RANGE_SCAN,
+            OperationModes.PAGE_SKIP,
+            OperationModes.PAGE_KEYSET,
+            OperationModes.AGGREGATE,
+            OperationModes.QUERY,
+            OperationModes.TRANSACTION,
+            OperationModes.CHANGE_STREAM,
+            OperationModes.VISIBILITY,
+            OperationModes.MIX,
+            OperationModes.NOOP
+    };
 
 
     String host = DEFAULT_HOST;
@@ -37,17 +91,60 @@ public class Main {
     ArrayList<String> modes = new ArrayList<String>();
     ArrayList<Long> operationsCounts = new ArrayList<Long>();
     ArrayList<Integer> threadCounts = new ArrayList<Integer>();
+    ArrayList<Double> targetRates = new ArrayList<Double>();
+    ArrayList<String> distributions = new ArrayList<String>();
+    ArrayList<String> readPreferences = new ArrayList<String>();
+    ArrayList<String> readConcerns = new ArrayList<String>();
+    ArrayList<String> mixModes = new ArrayList<String>();
+    ArrayList<Double> mixWeights = new ArrayList<Double>();
     long maxDurationInSeconds = DEFAULT_MAX_DURATION_IN_SECONDS;
     boolean dropDb = false;
     private final String version;
     private int randomFieldLength = 0;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private boolean unordered = false;
+    private ExecutionEngine engine = ExecutionEngine.THREADS;
+    private int eventLoopThreads = Runtime.getRuntime().availableProcessors();
+    private int connectionsPerHost = MongoDbAccessor.DEFAULT_CONNECTIONS_PER_HOST;
     private WriteConcern writeConcern = WriteConcern.ACKNOWLEDGED;
+    private CapacitySearch capacitySearch = null;
+    private long warmupOperations = 0;
+    private long warmupSeconds = 0;
+    private boolean sampleServerStatus = false;
+    private boolean reportClientMetrics = false;
+    private SchemaTemplate schema = null;
+    private String pipeline = null;
+    private String pipelineName = null;
+    private String pipelineField = IOperation.ID;
+    private boolean allowDiskUse = false;
+    private int cursorBatchSize = 0;
+    private long rangeWidth = DEFAULT_RANGE_WIDTH;
+    private String sort = null;
+    private String projection = null;
+    private int pageSize = DEFAULT_PAGE_SIZE;
+    private int pages = DEFAULT_PAGES;
+    private int inKeys = DEFAULT_IN_KEYS;
+    private boolean inContiguous = false;
+    private String filter = null;
+    private String filterName = null;
+    private String hint = null;
+    private int limit = 0;
+    private String transactionSteps = TransactionOperation.DEFAULT_STEPS;
+    private long hotSet = 0;
+    private IndexSet indexSet = null;
+    private boolean indexSweep = false;
+    private boolean sampleIndexSizes = false;
+    private Map<String, String> runMetadata = Collections.emptyMap();
+    private int coordinatorPort = 0;
+    private int workerCount = 1;
+    private Worker worker = null;
+    private String[] originalArgs = new String[0];
 
     public Main(){
         version = getClass().getPackage().getImplementationVersion();
     }
 
-    private void validateInput(String... args){
+    void validateInput(String... args){
         boolean helpRequested = false;
         boolean exception = false;
         Options cliOptions = cliOptions();
@@ -78,32 +175,39 @@ public class Main {
                 final String[] m_arg = cmdLine.getOptionValues("m");
                 for (int i = 0; i < m_arg.length; i++) {
                     final String mode = m_arg[i].toUpperCase();
-                    if(!(mode.equals(OperationModes.INSERT.name()) ||
-                            mode.equals(OperationModes.UPDATE_ONE.name()) ||
-                            mode.equals(OperationModes.UPDATE_MANY.name()) ||
-                            mode.equals(OperationModes.COUNT_ONE.name()) ||
-                            mode.equals(OperationModes.COUNT_MANY.name()) ||
-                            mode.equals(OperationModes.ITERATE_ONE.name()) ||
-                            mode.equals(OperationModes.ITERATE_MANY.name()) ||
-                            mode.equals(OperationModes.DELETE_ONE.name()) ||
-                            mode.equals(OperationModes.DELETE_MANY.name())
-                    )){
-                        throw new IllegalArgumentException("Mode must be either " + OperationModes.INSERT.name() + ", "
-                                + OperationModes.UPDATE_ONE.name() + ", "
-                                + OperationModes.UPDATE_MANY.name() + ", "
-                                + OperationModes.COUNT_ONE.name() + ", "
-                                + OperationModes.COUNT_MANY.name() + ", "
-                                + OperationModes.ITERATE_ONE.name() + ", "
-                                + OperationModes.ITERATE_MANY.name() + ", "
-                                + OperationModes.DELETE_ONE.name() + " or "
-                                + OperationModes.DELETE_MANY.name()
-                        );
+                    if(!isSupportedMode(mode)){
+                        throw new IllegalArgumentException("Mode must be either " + supportedModes(", ", " or "));
                     }
                     modes.add(mode);
                 }
+            }else if (cmdLine.hasOption("mix")) {
+                modes.add(OperationModes.MIX.name());
             }else{
                 modes.add(OperationModes.INSERT.name());
             }
+            if (cmdLine.hasOption("mix")) {
+                for (String entry : cmdLine.getOptionValue("mix").split(",")) {
+                    final String[] modeAndWeight = entry.trim().split(":");
+                    final String mode = modeAndWeight[0].toUpperCase();
+                    if(modeAndWeight.length != 2 || !isSupportedMode(mode) || mode.equals(OperationModes.MIX.name()) || mode.equals(OperationModes.CHANGE_STREAM.name())
+                            || mode.equals(OperationModes.VISIBILITY.name())){
+                        throw new IllegalArgumentException("Each entry of the mix must consist of a mode except " + OperationModes.MIX.name() + ", " + OperationModes.CHANGE_STREAM.name()
+                                + " and " + OperationModes.VISIBILITY.name()
+                                + " and its weight, separated by colon, but was: " + entry);
+                    }
+                    final Double weight = Double.valueOf(modeAndWeight[1]);
+                    if (!(weight > 0)) {
+                        throw new IllegalArgumentException("Weight of mode " + mode + " in the mix must be > 0!");
+                    }
+                    mixModes.add(mode);
+                    mixWeights.add(weight);
+                }
+                if(!modes.contains(OperationModes.MIX.name())){
+                    throw new IllegalArgumentException("Option mix (-mix) requires mode " + OperationModes.MIX.name() + "!");
+                }
+            }else if(modes.contains(OperationModes.MIX.name())){
+                throw new IllegalArgumentException("Mode " + OperationModes.MIX.name() + " requires option mix (-mix)!");
+            }
 
             if (cmdLine.hasOption("o")) {
                 final String[] o_arg = cmdLine.getOptionValues("o");
@@ -121,6 +225,54 @@ public class Main {
                 operationsCounts.add(0l);
             }
 
+            if (cmdLine.hasOption("r")) {
+                final String[] r_arg = cmdLine.getOptionValues("r");
+                for (int i = 0; i < r_arg.length; i++) {
+                    final Double targetRate = Double.valueOf(r_arg[i]);
+                    if (targetRate < 0) {
+                        throw new IllegalArgumentException("Rate must be >= 0!");
+                    }
+                    targetRates.add(targetRate);
+                }
+                if(modes.size() != targetRates.size()){
+                    throw new IllegalArgumentException("Number of mode parameters (-m) must be equal to number of rate parameters (-r) but was "+modes.size()+" and "+targetRates.size()+".");
+                }
+            }else{
+                targetRates.add(0d);
+            }
+
+            if (cmdLine.hasOption("dist")) {
+                final String[] dist_arg = cmdLine.getOptionValues("dist");
+                for (int i = 0; i < dist_arg.length; i++) {
+                    KeyDistribution.parse(dist_arg[i]);//fail fast on invalid distributions
+                    distributions.add(dist_arg[i]);
+                }
+                if(distributions.size() != 1 && modes.size() != distributions.size()){
+                    throw new IllegalArgumentException("Number of distribution parameters (-dist) must be 1 or equal to number of mode parameters (-m) but was "+distributions.size()+" and "+modes.size()+".");
+                }
+            }else{
+                distributions.add(KeyDistribution.UNIFORM);
+            }
+
+            if (cmdLine.hasOption("rp")) {
+                for (String readPreference : cmdLine.getOptionValues("rp")) {
+                    parseReadPreference(readPreference);//fail fast on invalid read preferences
+                    readPreferences.add(readPreference);
+                }
+                if(readPreferences.size() != 1 && modes.size() != readPreferences.size()){
+                    throw new IllegalArgumentException("Number of read preference parameters (-rp) must be 1 or equal to number of mode parameters (-m) but was "+readPreferences.size()+" and "+modes.size()+".");
+                }
+            }
+            if (cmdLine.hasOption("rc")) {
+                for (String readConcern : cmdLine.getOptionValues("rc")) {
+                    parseReadConcern(readConcern);//fail fast on invalid read concerns
+                    readConcerns.add(readConcern);
+                }
+                if(readConcerns.size() != 1 && modes.size() != readConcerns.size()){
+                    throw new IllegalArgumentException("Number of read concern parameters (-rc) must be 1 or equal to number of mode parameters (-m) but was "+readConcerns.size()+" and "+modes.size()+".");
+                }
+            }
+
             if (cmdLine.hasOption("d")) {
                 final String d_arg = cmdLine.getOptionValue("d");
                 maxDurationInSeconds = Long.valueOf(d_arg);
@@ -167,6 +319,195 @@ public class Main {
                 }
             }
 
+            if (cmdLine.hasOption("bs")) {
+                final String bs_arg = cmdLine.getOptionValue("bs");
+                batchSize = Integer.valueOf(bs_arg);
+                if (batchSize < 1) {
+                    throw new IllegalArgumentException("Batch size must be >= 1!");
+                }
+            }
+            if (cmdLine.hasOption("unordered")) {
+                unordered = true;
+            }
+
+            if (cmdLine.hasOption("async")) {
+                engine = ExecutionEngine.ASYNC;
+            }
+            if (cmdLine.hasOption("vt")) {
+                if (engine == ExecutionEngine.ASYNC) {
+                    throw new IllegalArgumentException("Options async and virtual-threads can't be combined!");
+                }
+                if (OperationExecutor.isVirtualThreadsSupported()) {
+                    engine = ExecutionEngine.VIRTUAL_THREADS;
+                } else {
+                    LOG.warn("Virtual threads require java 21 or newer but runtime is java {}, using platform threads instead", System.getProperty("java.version"));
+                }
+            }
+            if (cmdLine.hasOption("maxcon")) {
+                connectionsPerHost = Integer.valueOf(cmdLine.getOptionValue("maxcon"));
+                if (connectionsPerHost < 1) {
+                    throw new IllegalArgumentException("Number of connections must be >= 1!");
+                }
+            }
+            if (cmdLine.hasOption("elt")) {
+                eventLoopThreads = Integer.valueOf(cmdLine.getOptionValue("elt"));
+                if (eventLoopThreads < 1) {
+                    throw new IllegalArgumentException("Number of event loop threads must be >= 1!");
+                }
+            }
+
+            if (cmdLine.hasOption("w")) {
+                final String w_arg = cmdLine.getOptionValue("w").trim().toLowerCase();
+                if (w_arg.endsWith("s")) {
+                    warmupSeconds = Long.valueOf(w_arg.substring(0, w_arg.length() - 1));
+                } else {
+                    warmupOperations = Long.valueOf(w_arg);
+                }
+                if (warmupSeconds < 0 || warmupOperations < 0) {
+                    throw new IllegalArgumentException("Warm-up must be >= 0!");
+                }
+            }
+
+            if (cmdLine.hasOption("schema")) {
+                if (randomFieldLength > 0) {
+                    throw new IllegalArgumentException("Random text size (-s) can't be combined with a schema (-schema), define a string field in the schema instead!");
+                }
+                schema = readSchema(cmdLine.getOptionValue("schema"));
+            }
+
+            if (cmdLine.hasOption("pipeline")) {
+                final Path pipelineFile = Paths.get(cmdLine.getOptionValue("pipeline"));
+                pipeline = new String(Files.readAllBytes(pipelineFile), StandardCharsets.UTF_8);
+                final String fileName = pipelineFile.getFileName().toString();
+                pipelineName = fileName.contains(".") ? fileName.substring(0, fileName.lastIndexOf('.')) : fileName;
+            } else if (modes.contains(OperationModes.AGGREGATE.name()) || mixModes.contains(OperationModes.AGGREGATE.name())) {
+                throw new IllegalArgumentException("Mode " + OperationModes.AGGREGATE.name() + " requires a pipeline (-pipeline)!");
+            }
+            if (cmdLine.hasOption("filter")) {
+                final Path filterFile = Paths.get(cmdLine.getOptionValue("filter"));
+                filter = parseJsonDocument("filter", new String(Files.readAllBytes(filterFile), StandardCharsets.UTF_8));
+                final String fileName = filterFile.getFileName().toString();
+                filterName = fileName.contains(".") ? fileName.substring(0, fileName.lastIndexOf('.')) : fileName;
+            } else if (modes.contains(OperationModes.QUERY.name()) || mixModes.contains(OperationModes.QUERY.name())) {
+                throw new IllegalArgumentException("Mode " + OperationModes.QUERY.name() + " requires a filter (-filter)!");
+            }
+            hint = cmdLine.getOptionValue("hint");
+            if (cmdLine.hasOption("limit")) {
+                limit = Integer.valueOf(cmdLine.getOptionValue("limit"));
+                if (limit < 0) {
+                    throw new IllegalArgumentException("Limit must be >= 0!");
+                }
+            }
+            if (cmdLine.hasOption("txsteps")) {
+                transactionSteps = cmdLine.getOptionValue("txsteps");
+                if (!transactionSteps.matches("[rRwW]+")) {
+                    throw new IllegalArgumentException("Steps of a transaction (-txsteps) must be a sequence of 'r' and 'w' but were: " + transactionSteps);
+                }
+            }
+            if (cmdLine.hasOption("hotset")) {
+                hotSet = Long.valueOf(cmdLine.getOptionValue("hotset"));
+                if (hotSet < 0) {
+                    throw new IllegalArgumentException("Hot set must be >= 0!");
+                }
+            }
+            if (cmdLine.hasOption("pf")) {
+                pipelineField = cmdLine.getOptionValue("pf");
+            }
+            if (cmdLine.hasOption("allowdiskuse")) {
+                allowDiskUse = true;
+            }
+            if (cmdLine.hasOption("cbs")) {
+                cursorBatchSize = Integer.valueOf(cmdLine.getOptionValue("cbs"));
+                if (cursorBatchSize < 0) {
+                    throw new IllegalArgumentException("Cursor batch size must be >= 0!");
+                }
+            }
+
+            if (cmdLine.hasOption("rw")) {
+                rangeWidth = Long.valueOf(cmdLine.getOptionValue("rw"));
+                if (rangeWidth < 1) {
+                    throw new IllegalArgumentException("Range width must be >= 1!");
+                }
+            }
+            if (cmdLine.hasOption("sort")) {
+                sort = parseJsonDocument("sort", cmdLine.getOptionValue("sort"));
+            }
+            if (cmdLine.hasOption("projection")) {
+                projection = parseJsonDocument("projection", cmdLine.getOptionValue("projection"));
+            }
+            if (cmdLine.hasOption("ps")) {
+                pageSize = Integer.valueOf(cmdLine.getOptionValue("ps"));
+                if (pageSize < 1) {
+                    throw new IllegalArgumentException("Page size must be >= 1!");
+                }
+            }
+            if (cmdLine.hasOption("pages")) {
+                pages = Integer.valueOf(cmdLine.getOptionValue("pages"));
+                if (pages < 1) {
+                    throw new IllegalArgumentException("Number of pages must be >= 1!");
+                }
+            }
+
+            if (cmdLine.hasOption("inkeys")) {
+                inKeys = Integer.valueOf(cmdLine.getOptionValue("inkeys"));
+                if (inKeys < 1) {
+                    throw new IllegalArgumentException("Number of keys must be >= 1!");
+                }
+            }
+            if (cmdLine.hasOption("incontiguous")) {
+                inContiguous = true;
+            }
+
+            if (cmdLine.hasOption("ss")) {
+                sampleServerStatus = true;
+            }
+            if (cmdLine.hasOption("cm")) {
+                reportClientMetrics = true;
+            }
+
+            if (cmdLine.hasOption("indexes")) {
+                indexSet = new IndexSet(new String(Files.readAllBytes(Paths.get(cmdLine.getOptionValue("indexes"))), StandardCharsets.UTF_8));
+            }
+            if (cmdLine.hasOption("indexsweep")) {
+                if (indexSet == null || indexSet.size() == 0) {
+                    throw new IllegalArgumentException("Index sweep (-indexsweep) requires declared indexes (-indexes)!");
+                }
+                if (cmdLine.hasOption("coord") || cmdLine.hasOption("search")) {
+                    throw new IllegalArgumentException("Index sweep (-indexsweep) can't be combined with a coordinator (-coord) or a capacity search (-search)!");
+                }
+                indexSweep = true;
+            }
+            if (cmdLine.hasOption("is")) {
+                sampleIndexSizes = true;
+            }
+
+            if (cmdLine.hasOption("coord")) {
+                coordinatorPort = Integer.parseInt(cmdLine.getOptionValue("coord"));
+                if (coordinatorPort <= 0) {
+                    throw new IllegalArgumentException("Invalid coordinator port!");
+                }
+                if (cmdLine.hasOption("workers")) {
+                    workerCount = Integer.parseInt(cmdLine.getOptionValue("workers"));
+                    if (workerCount < 1) {
+                        throw new IllegalArgumentException("Number of workers (-workers) must be at least 1!");
+                    }
+                }
+                if (cmdLine.hasOption("search")) {
+                    throw new IllegalArgumentException("Capacity search (-search) can't be coordinated (-coord)!");
+                }
+            }
+
+            if (cmdLine.hasOption("search")) {
+                if (modes.size() != 1 || threadCounts.size() != 1) {
+                    throw new IllegalArgumentException("Capacity search (-search) requires exactly one mode (-m) and at most one number of threads (-t)!");
+                }
+                if (!cmdLine.hasOption("slo")) {
+                    throw new IllegalArgumentException("Capacity search (-search) requires an SLO (-slo)!");
+                }
+                final double errorBudget = cmdLine.hasOption("eb") ? Double.parseDouble(cmdLine.getOptionValue("eb")) : DEFAULT_ERROR_BUDGET_PERCENT;
+                capacitySearch = new CapacitySearch(cmdLine.getOptionValue("search"), Double.parseDouble(cmdLine.getOptionValue("slo")), errorBudget);
+            }
+
             if (cmdLine.hasOption("writeconcern")) {
                 String wcOption = cmdLine.getOptionValue("writeconcern").toUpperCase();
                 switch (wcOption) {
@@ -186,6 +527,8 @@ public class Main {
                         throw new IllegalArgumentException("Invalid WriteConcern value: " + wcOption);
                 }
             }
+            runMetadata = runMetadata(args);
+            originalArgs = args;
 
         } catch (Exception e) {
             LOG.error(e.getMessage());
@@ -195,9 +538,9 @@ public class Main {
             HelpFormatter hf = new HelpFormatter();
             hf.setOptionComparator(null);
             hf.printHelp(160, Main.class.getName(), "*** mongoDB performance test (version "+version+")***\n" +
-                            "Please run first mode="+ OperationModes.INSERT.name()+" in order to have a non-empty collection to test on.\n" +
+                            "Please run first mode="+ OperationModes.INSERT.name()+" in order to have a non-empty collection to test on, or, much faster for big collections, run '" + DataLoader.COMMAND + " -H' as first argument to see how to load it.\n" +
                             "You may add option 'dropdb' in order to drop the database before inserting documents.\n" +
-                            "Documents are inserted one by one (no bulk insert).\n" +
+                            "Documents are inserted one by one in mode="+ OperationModes.INSERT.name()+" and by batches of 'batchsize' documents in mode="+ OperationModes.INSERT_BULK.name()+".\n" +
                             "Once documents are inserted, run mode=" +
                             OperationModes.UPDATE_ONE.name() + ", mode=" +
                             OperationModes.UPDATE_MANY.name() + ", mode=" +
@@ -205,8 +548,17 @@ public class Main {
                             OperationModes.COUNT_MANY.name()+", mode=" +
                             OperationModes.ITERATE_ONE.name() + ", mode=" +
                             OperationModes.ITERATE_MANY.name()+", mode=" +
-                            OperationModes.DELETE_ONE.name() + " or mode=" +
-                            OperationModes.DELETE_MANY.name()+" or a whole set of modes simultaneously." +
+                            OperationModes.ITERATE_IN.name() + ", mode=" +
+                            OperationModes.DELETE_ONE.name() + ", mode=" +
+                            OperationModes.DELETE_MANY.name()+", mode=" +
+                            OperationModes.RANGE_SCAN.name() + ", mode=" +
+                            OperationModes.PAGE_SKIP.name() + ", mode=" +
+                            OperationModes.PAGE_KEYSET.name() + ", mode=" +
+                            OperationModes.AGGREGATE.name() + ", mode=" +
+                            OperationModes.QUERY.name() + ", mode=" +
+                            OperationModes.TRANSACTION.name() + ", mode=" +
+                            OperationModes.CHANGE_STREAM.name() + ", mode=" +
+                            OperationModes.VISIBILITY.name() + " or mode=" + OperationModes.MIX.name() + " or a whole set of modes simultaneously." +
                             "\n  Modes explained:" +
                             "\n  " + OperationModes.INSERT.name() + " inserts documents with the following fields:" +
                             "\n     " + IOperation.ID + ": incremented long number starting from max(_id)+1, reflecting the number of inserts being executed" +
@@ -215,6 +567,7 @@ public class Main {
                             "\n     " + IOperation.RANDOM_LONG + ": a random long number" +
                             "\n     " + IOperation.RANDOM_TEXT + ": a random text, size defined by user (default 0, thus absent)" +
                             "\n     " + IOperation.VERSION + ": version number of the document, starting from 1" +
+                            "\n  " + OperationModes.INSERT_BULK.name() + " inserts the same documents as " + OperationModes.INSERT.name() + " but 'batchsize' documents per operation by a single, ordered or unordered, bulk insert." +
                             "\n  " + OperationModes.UPDATE_ONE.name() + " updates one document randomly queried on field '" + IOperation.ID + "'" +
                                  " by incrementing the field '"+IOperation.VERSION + "' and updating the field '"+IOperation.RANDOM_LONG+"' to a random value." +
                             "\n  " + OperationModes.UPDATE_MANY.name() + " updates all documents randomly queried on field '" + IOperation.THREAD_RUN_COUNT + "'" +
@@ -223,12 +576,39 @@ public class Main {
                             "\n  " + OperationModes.COUNT_MANY.name() + " counts all documents randomly queried on field '" + IOperation.THREAD_RUN_COUNT + "'." +
                             "\n  " + OperationModes.ITERATE_ONE.name() + " finds one document randomly queried on field '" + IOperation.ID + "'." +
                             "\n  " + OperationModes.ITERATE_MANY.name() + " finds and iterates all documents randomly queried on field '" + IOperation.THREAD_RUN_COUNT + "'." +
+                            "\n  " + OperationModes.ITERATE_IN.name() + " finds and iterates the documents of 'inkeys' values of field '" + IOperation.ID + "' by $in, the values either randomly selected or contiguous." +
                             "\n  " + OperationModes.DELETE_ONE.name() + " deletes one document randomly queried on field '" + IOperation.ID + "'." +
                             "\n  " + OperationModes.DELETE_MANY.name() + " deletes all documents randomly queried on field '" + IOperation.THREAD_RUN_COUNT + "'." +
+                            "\n  " + OperationModes.RANGE_SCAN.name() + " finds and iterates all documents whose field '" + IOperation.ID + "' is within a range of 'rangewidth' values, starting at a randomly selected value, optionally sorted and projected." +
+                            "\n  " + OperationModes.PAGE_SKIP.name() + " finds one page of 'pagesize' documents sorted by field '" + IOperation.ID + "' per operation, each thread paging from a randomly selected value by skip and limit." +
+                            "\n  " + OperationModes.PAGE_KEYSET.name() + " is the same as " + OperationModes.PAGE_SKIP.name() + " but continues after the last value of the previous page instead of skipping the documents of the previous pages." +
+                            "\n  " + OperationModes.AGGREGATE.name() + " runs the aggregation pipeline of option pipeline (-pipeline), its placeholders replaced per operation, and counts the documents and bytes returned." +
+                            "\n  " + OperationModes.QUERY.name() + " finds and iterates the documents matching the filter of option filter (-filter), its placeholders replaced per operation, optionally hinted to use an index (-hint)." +
+                            "\n  " + OperationModes.TRANSACTION.name() + " reads and updates documents randomly queried on field '" + IOperation.ID + "' by the steps of option txsteps (-txsteps) within a multi-document transaction," +
+                                 " retried on transient errors like write conflicts, and reports commit latency, retries, write conflicts and aborts. Requires a replica set." +
+                            "\n  " + OperationModes.CHANGE_STREAM.name() + " consumes the change stream of the collection by one cursor per thread while other modes write. Inserts and updates of the same set of modes" +
+                                 " stamp the client time into field '" + IOperation.CLIENT_TIME + "', so the lag from the write to the delivery of its event is saved in files '" +
+                                 "change-stream-lag" + OperationExecutor.LAG_PER_SECOND_INFIX + "[mode].csv' and 'change-stream-lag" + OperationExecutor.LAG_PER_RUN_INFIX + "[mode].csv'. Requires a replica set." +
+                            "\n  " + OperationModes.VISIBILITY.name() + " writes a marker document per thread on the primary and polls each member of the replica set by a direct connection until the marker is visible." +
+                                 " The lag from the acknowledged write to the first read returning it is saved per member in files '" + VisibilityOperation.LAG_PREFIX + "[host_port]" +
+                                 OperationExecutor.LAG_PER_SECOND_INFIX + "[mode].csv' and '" + VisibilityOperation.LAG_PREFIX + "[host_port]" + OperationExecutor.LAG_PER_RUN_INFIX + "[mode].csv'." +
+                            "\n  " + OperationModes.NOOP.name() + " executes nothing, so it measures how many operations per second this load generator is able to execute and record at most." +
+                            "\n  " + OperationModes.MIX.name() + " executes the modes defined by option mix (-mix), choosing one of them per operation by their weights." +
+                            "\n     Besides the statistics of all operations, each mixed mode gets its own statistics files, named [mode]-[mixed mode]." +
+                            "\nBy default, queried values are uniformly distributed between the smallest and biggest value of the queried field. Use option distribution (-dist) to skew them." +
+                            "\nBy default, reads are sent to a secondary if available (secondaryPreferred), or as defined by the url (-url), with the read concern of the server. Use options readpreference (-rp) and readconcern (-rc) to change them per mode." +
                             "\nThe queried field is indexed in the forground before the test is run, so on first run it may take time to build the index." +
                             "\nAt the end of each run, 2 csv-files with performance statistics are generated:"  +
                             "\n  1) File '"+OperationExecutor.TIMER_PER_SECOND_PREFIX +"[mode].csv' contains aggregated time series of 1 second per row for the defined [mode]." +
                             "\n  2) File '"+OperationExecutor.TIMER_PER_RUN_PREFIX +"[mode].csv' contains 1 row of aggregated data over the whole runtime for the defined [mode]." +
+                            "\nIf a rate (-r) is defined, operations are started on a fixed schedule regardless of how long previous operations took (open loop)." +
+                            "\n  In this case, the files above contain the service time, measured from the actual start of each operation, whereas" +
+                            "\n  the files '"+OperationExecutor.RESPONSE_TIME_PER_SECOND_PREFIX +"[mode].csv' and '"+OperationExecutor.RESPONSE_TIME_PER_RUN_PREFIX +"[mode].csv' contain the response time, measured from the scheduled start." +
+                            "\nBesides the number and rate of operations, both files contain the number and rate of affected documents. Percentiles are exact, not sampled." +
+                            "\nEach run also writes the interval histograms per second into file '"+OperationExecutor.TIMER_PER_SECOND_PREFIX +"[mode]-[start time]"+ StatsReporter.HISTOGRAM_LOG_SUFFIX +"' which can be post-processed by the HdrHistogram tools." +
+                            "\n  Its comments describe the run, e.g. options, server, driver and JVM. Run '" + RunReport.COMMAND + " -H' as first argument to see how to report and compare runs by their histogram logs." +
+                            "\nFor mode " + OperationModes.INSERT_BULK.name() + ", [mode] is followed by the batch size (and '-unordered' for unordered bulk inserts), so runs with different batch sizes are saved in different files." +
+                            "\nLikewise, [mode] is followed by the distribution of the queried values, unless they are uniformly distributed, and by the read preference and read concern, if set." +
                             "\nOptions:", cliOptions,
                     "@author kay.agahd@idealo.de", true);
             System.exit(helpRequested ? 0 : 1);
@@ -244,18 +624,14 @@ public class Main {
                 .addOption(new Option("H", "help", false, "print this message (overrides all other options and exits)"))
                 .addOption(new Option("v", "version", false, "print version (overrides all other options and exits)"))
                 .addOption(Option.builder("m").longOpt("mode").hasArgs().argName("MODE")
-                        .desc("mode, " + OperationModes.INSERT.name() + ", "
-                                + OperationModes.UPDATE_ONE.name() + ", "
-                                + OperationModes.UPDATE_MANY.name() + ", "
-                                + OperationModes.COUNT_ONE.name() + ", "
-                                + OperationModes.COUNT_MANY.name() + ", "
-                                + OperationModes.ITERATE_ONE.name() + ", "
-                                + OperationModes.ITERATE_MANY.name() + ", "
-                                + OperationModes.DELETE_ONE.name() + " or "
-                                + OperationModes.DELETE_MANY.name()
+                        .desc("mode, " + supportedModes(", ", " or ")
                                 + " (default: " + OperationModes.INSERT.name() + "), for a set of modes to be executed simultaneously, separate multiple values by space,"
                                 + " first value must be preceded by space too and number of thread parameters (-t) must be equal or be a multiple of number of mode parameters (-m)."
                                 + " Defined modes are executed simultaneously with their corresponding number of threads as soon as all modes of the current run are terminated.").build())
+                .addOption(Option.builder("mix").longOpt("mix").hasArg().argName("MIX")
+                        .desc("modes and their weights executed by mode " + OperationModes.MIX.name() + ", e.g. " + OperationModes.ITERATE_ONE.name() + ":95," + OperationModes.UPDATE_ONE.name() + ":5"
+                         + " to execute 95% finds and 5% updates. Each thread chooses the mode per operation by weight, so the ratio holds however slow a mode gets."
+                         + " Implies mode " + OperationModes.MIX.name() + " if no mode (-m) is defined.").build())
                 .addOption(Option.builder("o").longOpt("operationscount").hasArgs().argName("OPERATIONS_COUNT")
                         .desc("number of operations to be executed - Enter as many values as modes (-m) since each mode has its own operation count, separated by space, first value must be preceded by space too."
                          + " May be left out in order to exclusively rely on parameter duration (-d).").type(Number.class).build())
@@ -265,13 +641,123 @@ public class Main {
                          + " 2nd value defines number of threads of 2nd mode (-m) etc."
                          + " If number of thread parameters (-t) is a multiple of mode parameters (-m), it restarts all modes simultaneously with their corresponding number of threads as soon as all modes of the current run are terminated.")
                         .type(Number.class).build())
+                .addOption(Option.builder("r").longOpt("rate").hasArgs().argName("RATE")
+                        .desc("number of operations per second to be started on a fixed schedule (open loop), 0 to start the next operation as soon as the previous one returned (closed loop, default)"
+                         + " - Enter as many values as modes (-m) since each mode has its own rate, separated by space, first value must be preceded by space too."
+                         + " The rate is shared by all threads of the mode, so there must be enough threads to sustain it.").type(Number.class).build())
+                .addOption(Option.builder("dist").longOpt("distribution").hasArgs().argName("DISTRIBUTION")
+                        .desc("distribution of the queried values of all modes except inserts: " + KeyDistribution.UNIFORM + " (default), "
+                         + KeyDistribution.ZIPFIAN + "[:SKEW] (few keys are popular, default skew 0.99), "
+                         + KeyDistribution.HOTSPOT + "[:HOT_OPS_PERCENT:HOT_KEYS_PERCENT] (e.g. " + KeyDistribution.HOTSPOT + ":90:10 to run 90% of the operations on the smallest 10% of keys), "
+                         + KeyDistribution.LATEST + "[:SKEW] (recently inserted keys are popular) or " + KeyDistribution.SEQUENTIAL + " (one key after the other)"
+                         + " - Enter one value for all modes or as many values as modes (-m), separated by space, first value must be preceded by space too.").build())
+                .addOption(Option.builder("rp").longOpt("readpreference").hasArgs().argName("READ_PREFERENCE")
+                        .desc("members of the replica set the reads of a mode are sent to: primary, primaryPreferred, secondary, secondaryPreferred (default, unless defined by the url) or nearest"
+                         + " - Enter one value for all modes or as many values as modes (-m), separated by space, first value must be preceded by space too.").build())
+                .addOption(Option.builder("rc").longOpt("readconcern").hasArgs().argName("READ_CONCERN")
+                        .desc("read concern of the reads of a mode: local, available, majority, linearizable or snapshot (default: the one of the server)"
+                         + " - Enter one value for all modes or as many values as modes (-m), separated by space, first value must be preceded by space too.").build())
                 .addOption(Option.builder("d").longOpt("duration").hasArg().argName("DURATION")
                         .desc("maximum duration in seconds of the performance test for each set of modes (default " + DEFAULT_MAX_DURATION_IN_SECONDS + ")")
                         .type(Number.class).build())
+                .addOption(Option.builder("w").longOpt("warmup").hasArg().argName("WARMUP")
+                        .desc("warm-up of each mode before its operations are measured, either a number of operations or, if followed by 's', a number of seconds, e.g. 30s."
+                         + " Operations of the warm-up are executed at full load but neither recorded nor counted towards the operations count (-o) and the duration (-d)."
+                         + " Simultaneously running modes start measuring at the same time, as soon as all of them are warmed up (default 0, thus no warm-up).").build())
                 .addOption(new Option("dropdb", "dropdatabase", false, "drop database before inserting documents"))
                 .addOption(Option.builder("s").longOpt("randomtextsize").hasArg().argName("RANDOM_TEXT_SIZE")
                         .desc("Size in bytes of random text field, absent if 0 (default 0)")
                         .type(Number.class).build())
+                .addOption(Option.builder("bs").longOpt("batchsize").hasArg().argName("BATCH_SIZE")
+                        .desc("number of documents inserted per operation in mode " + OperationModes.INSERT_BULK.name() + " (default " + DEFAULT_BATCH_SIZE + ")")
+                        .type(Number.class).build())
+                .addOption(new Option("unordered", "unordered", false, "use unordered instead of ordered bulk inserts in mode " + OperationModes.INSERT_BULK.name()))
+                .addOption(Option.builder("schema").longOpt("schema").hasArg().argName("FILE")
+                        .desc("file containing the JSON schema of the documents inserted by modes " + OperationModes.INSERT.name() + " and " + OperationModes.INSERT_BULK.name() + " instead of the default documents."
+                         + " Values are copied, except documents like {\"#gen\": \"string\", \"min\": 10, \"max\": 200} which are generated per document: int, long, double, decimal, string, binary, date, bool, objectId, choice or array."
+                         + " The fields of the default document except the random text are added, so all modes work on the generated documents. The schema name is appended to the mode.").build())
+                .addOption(Option.builder("pipeline").longOpt("pipeline").hasArg().argName("FILE")
+                        .desc("file containing the aggregation pipeline of mode " + OperationModes.AGGREGATE.name() + " as JSON array of stages."
+                         + " String values '#selector', '#random', '#threadId' and '#threadRunCount' are replaced per operation by a value selected from the pipeline field (-pf),"
+                         + " a random long, the number of the thread resp. the number of operations executed by the thread, e.g. [{\"$match\": {\"_id\": {\"$gte\": \"#selector\"}}}, {\"$limit\": 100}]").build())
+                .addOption(Option.builder("txsteps").longOpt("transactionsteps").hasArg().argName("STEPS")
+                        .desc("steps of each transaction of mode " + OperationModes.TRANSACTION.name() + ", each either 'r' to read or 'w' to update a randomly selected document,"
+                         + " e.g. rrww (default " + TransactionOperation.DEFAULT_STEPS + ")").build())
+                .addOption(Option.builder("hotset").longOpt("hotset").hasArg().argName("DOCUMENTS")
+                        .desc("number of documents, those with the smallest " + IOperation.ID + " values, the documents of mode " + OperationModes.TRANSACTION.name()
+                         + " are selected from; the smaller, the more transactions conflict (default 0, thus all documents)")
+                        .type(Number.class).build())
+                .addOption(Option.builder("pf").longOpt("pipelinefield").hasArg().argName("FIELD")
+                        .desc("indexed field whose values replace '#selector' in the pipeline (-pipeline) and the filter (-filter), selected by the distribution (-dist) (default " + IOperation.ID + ")").build())
+                .addOption(new Option("allowdiskuse", "allowdiskuse", false, "allow the stages of the pipeline (-pipeline) to write temporary data to disk"))
+                .addOption(Option.builder("filter").longOpt("filter").hasArg().argName("FILE")
+                        .desc("file containing the filter of mode " + OperationModes.QUERY.name() + " as JSON document, its placeholders replaced like those of the pipeline (-pipeline),"
+                         + " e.g. {\"status\": \"open\", \"" + IOperation.RANDOM_LONG + "\": {\"$gte\": \"#random\"}}. The filter name is appended to the mode.").build())
+                .addOption(Option.builder("hint").longOpt("hint").hasArg().argName("INDEX_NAME")
+                        .desc("name of the index mode " + OperationModes.QUERY.name() + " is forced to use (default: chosen by the query planner)").build())
+                .addOption(Option.builder("limit").longOpt("limit").hasArg().argName("LIMIT")
+                        .desc("maximum number of documents returned per operation of mode " + OperationModes.QUERY.name() + " (default 0, thus all)")
+                        .type(Number.class).build())
+                .addOption(Option.builder("cbs").longOpt("cursorbatchsize").hasArg().argName("CURSOR_BATCH_SIZE")
+                        .desc("number of documents per batch of the cursor of modes " + OperationModes.RANGE_SCAN.name() + ", " + OperationModes.PAGE_SKIP.name() + ", " + OperationModes.PAGE_KEYSET.name()
+                         + ", " + OperationModes.AGGREGATE.name() + " and " + OperationModes.QUERY.name() + " (default 0, thus the server's default)")
+                        .type(Number.class).build())
+                .addOption(Option.builder("inkeys").longOpt("inkeys").hasArg().argName("KEYS")
+                        .desc("number of " + IOperation.ID + " values queried by $in per operation of mode " + OperationModes.ITERATE_IN.name() + " (default " + DEFAULT_IN_KEYS + ")")
+                        .type(Number.class).build())
+                .addOption(new Option("incontiguous", "incontiguous", false, "query the values following the selected one in mode " + OperationModes.ITERATE_IN.name()
+                        + " instead of selecting each value by the distribution (-dist)"))
+                .addOption(Option.builder("rw").longOpt("rangewidth").hasArg().argName("RANGE_WIDTH")
+                        .desc("number of " + IOperation.ID + " values covered by the range of mode " + OperationModes.RANGE_SCAN.name() + ", starting at the selected value (default " + DEFAULT_RANGE_WIDTH + ")")
+                        .type(Number.class).build())
+                .addOption(Option.builder("sort").longOpt("sort").hasArg().argName("SORT")
+                        .desc("sort order of modes " + OperationModes.RANGE_SCAN.name() + " and " + OperationModes.QUERY.name() + " as JSON document, e.g. {\"" + IOperation.RANDOM_LONG + "\": -1} (default: order of the index)").build())
+                .addOption(Option.builder("projection").longOpt("projection").hasArg().argName("PROJECTION")
+                        .desc("fields returned by modes " + OperationModes.RANGE_SCAN.name() + ", " + OperationModes.PAGE_SKIP.name() + ", " + OperationModes.PAGE_KEYSET.name() + " and " + OperationModes.QUERY.name()
+                         + " as JSON document, e.g. {\"" + IOperation.ID + "\": 1, \"" + IOperation.VERSION + "\": 1} (default: whole documents)").build())
+                .addOption(Option.builder("ps").longOpt("pagesize").hasArg().argName("PAGE_SIZE")
+                        .desc("number of documents per page of modes " + OperationModes.PAGE_SKIP.name() + " and " + OperationModes.PAGE_KEYSET.name() + " (default " + DEFAULT_PAGE_SIZE + ")")
+                        .type(Number.class).build())
+                .addOption(Option.builder("pages").longOpt("pages").hasArg().argName("PAGES")
+                        .desc("number of pages each thread fetches one after the other in modes " + OperationModes.PAGE_SKIP.name() + " and " + OperationModes.PAGE_KEYSET.name()
+                         + " before starting over at a newly selected value (default " + DEFAULT_PAGES + ")")
+                        .type(Number.class).build())
+                .addOption(new Option("async", "async", false, "execute the operations by the async driver instead of one thread per concurrent operation."
+                        + " The number of threads (-t) then defines the number of operations kept in flight for each mode."))
+                .addOption(new Option("vt", "virtual-threads", false, "run each thread (-t) as a virtual thread, requires java 21 or newer, otherwise platform threads are used."
+                        + " Allows to simulate tens of thousands of clients, e.g. in combination with a rate (-r) to keep most of them idle."))
+                .addOption(Option.builder("maxcon").longOpt("maxconnections").hasArg().argName("MAX_CONNECTIONS")
+                        .desc("maximum number of connections per host (default " + MongoDbAccessor.DEFAULT_CONNECTIONS_PER_HOST + ")."
+                         + " Threads exceeding the connections wait for a connection to become available, so the number of threads allowed to wait is adapted to the number of threads of the largest set of modes.")
+                        .type(Number.class).build())
+                .addOption(Option.builder("elt").longOpt("eventloopthreads").hasArg().argName("EVENT_LOOP_THREADS")
+                        .desc("number of threads handling network I/O and callbacks of the async driver (default: number of available processors)")
+                        .type(Number.class).build())
+                .addOption(new Option("ss", "serverstatus", false, "sample serverStatus of the primary once per second while the modes are running and save cache, ticket, queue, connection, network and opcounter metrics"
+                        + " in file '" + ServerStatusSampler.FILE_PREFIX + "[modes].csv', counters as deltas to the previous second"))
+                .addOption(new Option("cm", "clientmetrics", false, "report the driver's metrics per second while the modes are running: connection pool checkout wait (sync client only), command round-trip time,"
+                        + " bytes sent and received and connections added and removed in file '" + ClientMetricsReporter.FILE_PREFIX + "[modes].csv'"))
+                .addOption(Option.builder("indexes").longOpt("indexes").hasArg().argName("FILE")
+                        .desc("file containing a JSON array of secondary indexes created before each set of modes, each declared like {\"key\": {\"status\": 1, \"total\": -1}} or {\"key\": {\"" + IOperation.RANDOM_LONG + "\": \"hashed\"}}"
+                         + " and optionally name, unique, sparse, partialFilterExpression, expireAfterSeconds and collation").build())
+                .addOption(new Option("indexsweep", "indexsweep", false, "execute each set of modes once per number of declared indexes (-indexes), from none to all of them, and save latency,"
+                        + " index size and index bytes per inserted document of each step in file '" + IndexSweep.FILE_PREFIX + "[timestamp].csv'"))
+                .addOption(new Option("is", "indexsizes", false, "sample the size of each index of the collection once per second while the modes are running"
+                        + " in file '" + IndexSizeSampler.FILE_PREFIX + "[modes].csv' and log the bytes each index grew per added document"))
+                .addOption(Option.builder("coord").longOpt("coordinator").hasArg().argName("PORT")
+                        .desc("coordinate a distributed test: wait for the number of workers (-workers) to connect to this port, send them all other options and start each set of modes"
+                         + " on all of them at a common start time, thus their clocks must be synchronized. Workers are started by '" + Worker.COMMAND + " HOST:PORT'. Their intervals are merged into the csv-files and histogram log of the coordinator,"
+                         + " thus threads (-t), rates (-r) and operations (-o) are per worker.").build())
+                .addOption(Option.builder("workers").longOpt("workers").hasArg().argName("WORKERS")
+                        .desc("number of workers the coordinator (-coord) waits for (default 1)").build())
+                .addOption(Option.builder("search").longOpt("capacitysearch").hasArg().argName("SEARCH")
+                        .desc("search the capacity of the only mode (-m) by raising either the number of threads or the rate step by step, each step lasting the duration (-d),"
+                         + " until a step breaches the SLO (-slo) or the error budget (-eb). Format: THREADS:START:STEP:MAX or RATE:START:STEP:MAX,"
+                         + " STEP is added to the previous step or, if preceded by 'x', multiplied, e.g. THREADS:8:x2:1024. When raising the rate, the number of threads (-t) is kept.").build())
+                .addOption(Option.builder("slo").longOpt("slo").hasArg().argName("P99_MS")
+                        .desc("maximum 99th percentile of the latency in milliseconds of a step of the capacity search (-search), which is the response time if a rate is defined, otherwise the service time").build())
+                .addOption(Option.builder("eb").longOpt("errorbudget").hasArg().argName("PERCENT")
+                        .desc("maximum percentage of failed operations of a step of the capacity search (-search) (default " + DEFAULT_ERROR_BUDGET_PERCENT + ")").build())
                 .addOption(Option.builder("h").longOpt("host").hasArg().argName("HOST").desc("mongoDB host (default " + DEFAULT_HOST + ")").build())
                 .addOption(Option.builder("port").longOpt("port").hasArg().argName("PORT").desc("mongoDB port (default " + DEFAULT_PORT + ")").type(Number.class)
                         .build())
@@ -288,8 +774,114 @@ public class Main {
         return options;
     }
 
-    private void executeOperations() {
+    /**
+     * The driver refuses to let more than connectionsPerHost * multiplier threads wait for a connection,
+     * so the multiplier must be big enough to let all threads of the largest set of simultaneously running modes wait.
+     */
+    private int getThreadsAllowedToBlockForConnectionMultiplier() {
+        int maxConcurrentThreads = 0;
+        for (int i = 0; i < threadCounts.size(); i += modes.size()) {
+            int concurrentThreads = 0;
+            for (int j = i; j < i + modes.size() && j < threadCounts.size(); j++) {
+                concurrentThreads += threadCounts.get(j);
+            }
+            maxConcurrentThreads = Math.max(maxConcurrentThreads, concurrentThreads);
+        }
+        if (capacitySearch != null && capacitySearch.getDimension() == CapacitySearch.Dimension.THREADS) {
+            maxConcurrentThreads = Math.max(maxConcurrentThreads, (int) capacitySearch.getMax());
+        }
+        final int multiplier = (maxConcurrentThreads + connectionsPerHost - 1) / connectionsPerHost;
+        return Math.max(MongoDbAccessor.DEFAULT_THREADS_ALLOWED_TO_BLOCK_FOR_CONNECTION_MULTIPLIER, multiplier);
+    }
+
+    /**
+     * Reads and compiles the schema, named by its file name without extension, and logs the size of its documents.
+     */
+    static SchemaTemplate readSchema(String file) throws IOException {
+        final Path schemaFile = Paths.get(file);
+        final String fileName = schemaFile.getFileName().toString();
+        final SchemaTemplate schema = new SchemaTemplate(fileName.contains(".") ? fileName.substring(0, fileName.lastIndexOf('.')) : fileName,
+                new String(Files.readAllBytes(schemaFile), StandardCharsets.UTF_8));
+        final long[] sizes = schema.sampleSizes(1000);
+        LOG.info("SCHEMA: documents of schema '{}' have {} bytes on average, from {} to {} bytes by a sample of 1000 documents", schema.getName(), sizes[0], sizes[1], sizes[2]);
+        return schema;
+    }
+
+    /**
+     * @return the given JSON document, so that an invalid one is rejected before the test is run
+     */
+    private static String parseJsonDocument(String option, String json) {
+        try {
+            BsonDocument.parse(json);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Option " + option + " must be a JSON document but was: " + json);
+        }
+        return json;
+    }
+
+    private static boolean isSupportedMode(String mode) {
+        for (OperationModes supportedMode : SUPPORTED_MODES) {
+            if (supportedMode.name().equals(mode)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String supportedModes(String separator, String lastSeparator) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < SUPPORTED_MODES.length; i++) {
+            if (i > 0) {
+                sb.append(i == SUPPORTED_MODES.length - 1 ? lastSeparator : separator);
+            }
+            sb.append(SUPPORTED_MODES[i].name());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return description of the test written into the histogram log of each run: options without password, server, client and versions
+     */
+    private Map<String, String> runMetadata(String... args) {
+        final Map<String, String> metadata = new LinkedHashMap<>();
+        final List<String> options = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            final boolean password = i > 0 && (args[i - 1].equals("-p") || args[i - 1].equals("--password"));
+            options.add(password ? "***" : maskCredentials(args[i]));
+        }
+        metadata.put("tool_version", String.valueOf(version));
+        metadata.put("options", String.join(" ", options));
+        metadata.put("server", url != null && !url.isEmpty() ? maskCredentials(url) : host + ":" + port);
+        metadata.put("database", database);
+        metadata.put("collection", collection);
+        metadata.put("write_concern", writeConcern.asDocument().toJson());
+        metadata.put("driver", MongoDriverVersion.NAME + " " + MongoDriverVersion.VERSION);
+        metadata.put("jvm", System.getProperty("java.vm.name") + " " + System.getProperty("java.runtime.version"));
+        metadata.put("os", System.getProperty("os.name") + " " + System.getProperty("os.version") + " " + System.getProperty("os.arch"));
+        metadata.put("cpus", String.valueOf(Runtime.getRuntime().availableProcessors()));
+        metadata.put("max_heap_mb", String.valueOf(Runtime.getRuntime().maxMemory() / (1024 * 1024)));
+        try {
+            metadata.put("client_host", InetAddress.getLocalHost().getHostName());
+        } catch (UnknownHostException e) {
+            metadata.put("client_host", "unknown");
+        }
+        return metadata;
+    }
+
+    private static String maskCredentials(String s) {
+        return s.startsWith("--password=") ? "--password=***" : CREDENTIALS_IN_URL.matcher(s).replaceAll("$1***@");
+    }
+
+    void setWorker(Worker worker) {
+        this.worker = worker;
+    }
+
+    void executeOperations() {
 
+        if (coordinatorPort > 0 && worker == null) {
+            executeCoordinated();
+            return;
+        }
         final ServerAddress serverAddress = new ServerAddress(host, port);
         final MongoDbAccessor mongoDbAccessor = new MongoDbAccessor(
                 -1, // socketTimeOut
@@ -299,75 +891,399 @@ public class Main {
                 ssl,
                 url,
                 writeConcern,
+                connectionsPerHost,
+                getThreadsAllowedToBlockForConnectionMultiplier(),
                 serverAddress
         );
+        mongoDbAccessor.setEventLoopThreads(eventLoopThreads);
 
-        int run=0;
-        CountDownLatch runModeLatch = new CountDownLatch(modes.size());
-
+        final Map<String, KeySpace> keySpaces = new HashMap<>();
+        if (capacitySearch != null) {
+            try {
+                executeCapacitySearch(mongoDbAccessor, keySpaces);
+            } finally {
+                mongoDbAccessor.closeConnections();
+            }
+            return;
+        }
         final ExecutorService executor = Executors.newFixedThreadPool(modes.size());
+        final List<String> operationNames = new ArrayList<>();
+        final List<OperationExecutor> operationExecutors = new ArrayList<>();
+        final List<Future<?>> futures = new ArrayList<>();
+        ServerStatusSampler serverStatusSampler = null;
+        ClientMetricsReporter clientMetricsReporter = null;
+        IndexSizeSampler indexSizeSampler = null;
+        // like the declared indexes, the sweep is prepared and reported only once for all workers, but all of them execute its steps
+        final IndexSweep sweep = indexSweep && (worker == null || worker.getIndex() == 0) ? new IndexSweep(indexSet, mongoDbAccessor, database, collection) : null;
+        // without sweep, each set of modes is executed once with all declared indexes
+        final int steps = indexSweep ? IndexSweep.getSteps(indexSet) : 1;
 
         LOG.info("OPERATION SETUP: Total modes {}", modes.size());
 
         try {
-            for(int threadCount : threadCounts) {
-                if(run >= modes.size()){
-                    run = 0;
-                    LOG.info("OPERATION SETUP: All run modes are running with their specified number of threads. Waiting on finishing of each run mode before continuing...");
-                    runModeLatch.await();
-                    runModeLatch = new CountDownLatch(modes.size());
-                }
-
-                final String mode = modes.get(run);
-                final long operationsCount = operationsCounts.size()>run?operationsCounts.get(run):operationsCounts.get(0);
-                IOperation operation = null;
-                LOG.info("OPERATION SETUP: Adding run mode {}", mode);
-                if (mode.equals(OperationModes.UPDATE_ONE.name())) {
-                    operation = new UpdateOperation(mongoDbAccessor, database, collection, IOperation.ID);
-                } else if (mode.equals(OperationModes.UPDATE_MANY.name())) {
-                    operation = new UpdateOperation(mongoDbAccessor, database, collection, IOperation.THREAD_RUN_COUNT);
-                } else if (mode.equals(OperationModes.COUNT_ONE.name())) {
-                    operation = new CountOperation(mongoDbAccessor, database, collection, IOperation.ID);
-                } else if (mode.equals(OperationModes.COUNT_MANY.name())) {
-                    operation = new CountOperation(mongoDbAccessor, database, collection, IOperation.THREAD_RUN_COUNT);
-                } else if (mode.equals(OperationModes.ITERATE_ONE.name())) {
-                    operation = new IterateOperation(mongoDbAccessor, database, collection, IOperation.ID);
-                } else if (mode.equals(OperationModes.ITERATE_MANY.name())) {
-                    operation = new IterateOperation(mongoDbAccessor, database, collection, IOperation.THREAD_RUN_COUNT);
-                } else if (mode.equals(OperationModes.DELETE_ONE.name())) {
-                    operation = new DeleteOperation(mongoDbAccessor, database, collection, IOperation.ID);
-                } else if (mode.equals(OperationModes.DELETE_MANY.name())) {
-                    operation = new DeleteOperation(mongoDbAccessor, database, collection, IOperation.THREAD_RUN_COUNT);
-                } else {
-                    InsertOperation insertOperation = new InsertOperation(mongoDbAccessor, database, collection, IOperation.ID);
-                    if (dropDb) {
-                        LOG.info("OPERATION SETUP: drop database '{}'", database);
-                        mongoDbAccessor.getMongoDatabase(database).drop();
-                        LOG.info("OPERATION SETUP: database '{}' dropped", database);
+            for (int setStep = 0; setStep < threadCounts.size() / modes.size() * steps; setStep++) {
+                final int set = setStep / steps * modes.size();
+                final int indexCount = indexSweep ? setStep % steps : indexSet != null ? indexSet.size() : 0;
+                if (worker != null) {
+                    worker.awaitPrepare();
+                }
+                final CountDownLatch runModeLatch = new CountDownLatch(modes.size());
+                final CountDownLatch warmupBarrier = new CountDownLatch(modes.size());
+                operationNames.clear();
+                operationExecutors.clear();
+                futures.clear();
+                for (int run = 0; run < modes.size(); run++) {
+                    final int threadCount = threadCounts.get(set + run);
+                    final String mode = modes.get(run);
+                    final long operationsCount = operationsCounts.size()>run?operationsCounts.get(run):operationsCounts.get(0);
+                    final double targetRate = targetRates.size()>run?targetRates.get(run):targetRates.get(0);
+                    final String distribution = distributions.size()>run?distributions.get(run):distributions.get(0);
+                    final String readPreference = readPreferences.isEmpty() ? null : readPreferences.size()>run?readPreferences.get(run):readPreferences.get(0);
+                    final String readConcern = readConcerns.isEmpty() ? null : readConcerns.size()>run?readConcerns.get(run):readConcerns.get(0);
+                    LOG.info("OPERATION SETUP: Adding run mode {}", mode);
+                    final IOperation operation = createModeOperation(mode, mongoDbAccessor, keySpaces, distribution, readPreference, readConcern);
+
+                    OperationExecutor operationExecutor = new OperationExecutor(threadCount, operationsCount, maxDurationInSeconds, targetRate, operation, runModeLatch);
+                    operationExecutor.setEngine(engine);
+                    operationExecutor.setWarmup(warmupOperations, warmupSeconds, warmupBarrier);
+                    operationExecutor.setRunMetadata(indexSet != null ? withIndexes(indexCount) : runMetadata);
+                    operationExecutors.add(operationExecutor);
+                    operationNames.add(operation.getName());
+                }
+                // created after the database may have been dropped by an insert mode, and only once for all workers
+                if (sweep != null) {
+                    sweep.prepare(indexCount);
+                } else if (indexSet != null && !indexSweep && (worker == null || worker.getIndex() == 0)) {
+                    indexSet.create(mongoDbAccessor.getMongoDatabase(database).getCollection(collection), indexCount);
+                }
+                if (worker != null) {
+                    worker.ready(operationExecutors);
+                }
+                for (OperationExecutor operationExecutor : operationExecutors) {
+                    futures.add(executor.submit(operationExecutor));
+                }
+                // all workers of a distributed test sample the same server, so only the first one does
+                if (worker == null || worker.getIndex() == 0) {
+                    serverStatusSampler = startServerStatusSampler(mongoDbAccessor, operationNames);
+                }
+                clientMetricsReporter = startClientMetricsReporter(mongoDbAccessor, operationNames);
+                if (worker == null || worker.getIndex() == 0) {
+                    indexSizeSampler = startIndexSizeSampler(mongoDbAccessor, operationNames);
+                }
+
+                LOG.info("OPERATION SETUP: All run modes are running with their specified number of threads. Waiting on finishing of each run mode before continuing...");
+                runModeLatch.await();
+                serverStatusSampler = stopServerStatusSampler(serverStatusSampler);
+                clientMetricsReporter = stopClientMetricsReporter(clientMetricsReporter);
+                indexSizeSampler = stopIndexSizeSampler(indexSizeSampler);
+                if (sweep != null) {
+                    // the statistics of a run are complete once its executor has stopped its reporter
+                    for (Future<?> future : futures) {
+                        future.get();
                     }
-                    if(randomFieldLength > 0){
-                        insertOperation.setRandomFieldLength(randomFieldLength);
+                    sweep.report(indexCount, operationNames, operationExecutors);
+                }
+                if (worker != null) {
+                    // the last interval is sent when the executor stops its reporter, after having counted down the latch
+                    for (Future<?> future : futures) {
+                        future.get();
                     }
-                    operation = insertOperation;
+                    worker.done();
                 }
-
-                OperationExecutor operationExecutor = new OperationExecutor(threadCount, operationsCount, maxDurationInSeconds, operation, runModeLatch);
-                executor.execute(operationExecutor);
-                run++;
             }
 
-            runModeLatch.await();
-
         } catch (Exception e) {
             LOG.error("OPERATION SETUP: Error while waiting on thread... exiting now.", e);
+            if (worker != null) {
+                worker.failed(e.getMessage());
+                worker.close();
+            }
             System.exit(-1);
         }finally {
+            stopServerStatusSampler(serverStatusSampler);
+            stopClientMetricsReporter(clientMetricsReporter);
+            stopIndexSizeSampler(indexSizeSampler);
+            if (sweep != null) {
+                sweep.finish();
+            }
             executor.shutdown();
             mongoDbAccessor.closeConnections();
         }
     }
 
+    /**
+     * Lets the workers execute the test, each set of modes at the same time, and reports their merged intervals.
+     * The workers receive the same options, so they execute the same sets of modes.
+     */
+    private void executeCoordinated() {
+        try {
+            new Coordinator(coordinatorPort, workerCount, threadCounts.size() / modes.size(), originalArgs).run();
+        } catch (Exception e) {
+            LOG.error("COORDINATOR: Error while coordinating workers... exiting now.", e);
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * @param operationNames names of the modes running simultaneously, naming the csv-file
+     * @return the started sampler or null if serverStatus is not sampled
+     */
+    private ServerStatusSampler startServerStatusSampler(MongoDbAccessor mongoDbAccessor, List<String> operationNames) {
+        if (!sampleServerStatus) {
+            return null;
+        }
+        final ServerStatusSampler sampler = new ServerStatusSampler(mongoDbAccessor, OperationExecutor.getJarLocation(), String.join("+", operationNames));
+        sampler.start();
+        return sampler;
+    }
+
+    /**
+     * @return null, so the stopped sampler is not stopped again
+     */
+    private static ServerStatusSampler stopServerStatusSampler(ServerStatusSampler sampler) {
+        if (sampler != null) {
+            sampler.stop();
+        }
+        return null;
+    }
+
+    /**
+     * @param operationNames names of the modes running simultaneously, naming the csv-file
+     * @return the started sampler or null if the index sizes are not sampled
+     */
+    private IndexSizeSampler startIndexSizeSampler(MongoDbAccessor mongoDbAccessor, List<String> operationNames) {
+        if (!sampleIndexSizes) {
+            return null;
+        }
+        final IndexSizeSampler sampler = new IndexSizeSampler(mongoDbAccessor, database, collection, OperationExecutor.getJarLocation(), String.join("+", operationNames));
+        sampler.start();
+        return sampler;
+    }
+
+    /**
+     * @return null, so the stopped sampler is not stopped again
+     */
+    private static IndexSizeSampler stopIndexSizeSampler(IndexSizeSampler sampler) {
+        if (sampler != null) {
+            sampler.stop();
+        }
+        return null;
+    }
+
+    /**
+     * @return the run metadata completed by the names of the declared indexes existing while the modes run
+     */
+    private Map<String, String> withIndexes(int indexCount) {
+        final Map<String, String> metadata = new LinkedHashMap<>(runMetadata);
+        metadata.put("indexes", String.join(",", indexSet.getNames().subList(0, indexCount)));
+        return metadata;
+    }
+
+    /**
+     * @param operationNames names of the modes running simultaneously, naming the csv-file
+     * @return the started reporter or null if the client metrics are not reported
+     */
+    private ClientMetricsReporter startClientMetricsReporter(MongoDbAccessor mongoDbAccessor, List<String> operationNames) {
+        if (!reportClientMetrics) {
+            return null;
+        }
+        final ClientMetricsReporter reporter = new ClientMetricsReporter(mongoDbAccessor.getClientMetrics(), OperationExecutor.getJarLocation(), String.join("+", operationNames));
+        reporter.start();
+        return reporter;
+    }
+
+    /**
+     * @return null, so the stopped reporter is not stopped again
+     */
+    private static ClientMetricsReporter stopClientMetricsReporter(ClientMetricsReporter reporter) {
+        if (reporter != null) {
+            reporter.stop();
+        }
+        return null;
+    }
+
+    /**
+     * Executes the only mode with the load of each step of the capacity search, one step after the other, until a step breaches the SLO.
+     */
+    private void executeCapacitySearch(MongoDbAccessor mongoDbAccessor, Map<String, KeySpace> keySpaces) {
+        final String mode = modes.get(0);
+        LOG.info("CAPACITY SEARCH: mode {}, {} from {} to {}", mode, capacitySearch.getDimension(), capacitySearch.getStart(), capacitySearch.getMax());
+        final ServerStatusSampler serverStatusSampler = startServerStatusSampler(mongoDbAccessor, Collections.singletonList(CapacitySearch.FILE_PREFIX + mode));
+        final ClientMetricsReporter clientMetricsReporter = startClientMetricsReporter(mongoDbAccessor, Collections.singletonList(CapacitySearch.FILE_PREFIX + mode));
+        final IndexSizeSampler indexSizeSampler = startIndexSizeSampler(mongoDbAccessor, Collections.singletonList(CapacitySearch.FILE_PREFIX + mode));
+        try {
+            for (double load = capacitySearch.getStart(); load <= capacitySearch.getMax(); load = capacitySearch.next(load)) {
+                final boolean rateSearch = capacitySearch.getDimension() == CapacitySearch.Dimension.RATE;
+                final int threadCount = rateSearch ? threadCounts.get(0) : (int) load;
+                final double targetRate = rateSearch ? load : targetRates.get(0);
+                final IOperation operation = createModeOperation(mode, mongoDbAccessor, keySpaces, distributions.get(0),
+                        readPreferences.isEmpty() ? null : readPreferences.get(0), readConcerns.isEmpty() ? null : readConcerns.get(0));
+                if (indexSet != null) {
+                    indexSet.create(mongoDbAccessor.getMongoDatabase(database).getCollection(collection), indexSet.size());
+                }
+                final OperationExecutor operationExecutor = new OperationExecutor(threadCount, operationsCounts.get(0), maxDurationInSeconds, targetRate, operation, new CountDownLatch(1));
+                operationExecutor.setEngine(engine);
+                operationExecutor.setWarmup(warmupOperations, warmupSeconds, new CountDownLatch(1));
+                operationExecutor.setRunMetadata(indexSet != null ? withIndexes(indexSet.size()) : runMetadata);
+                operationExecutor.run();
+                if (!capacitySearch.addStep(threadCount, targetRate, operationExecutor, operation)) {
+                    break;
+                }
+            }
+        } finally {
+            stopServerStatusSampler(serverStatusSampler);
+            stopClientMetricsReporter(clientMetricsReporter);
+            stopIndexSizeSampler(indexSizeSampler);
+        }
+        capacitySearch.finish();
+    }
+
+    /**
+     * @param readPreference read preference of the mode, or null to read as configured for the client
+     * @param readConcern read concern of the mode, or null to read as configured for the client
+     */
+    private IOperation createModeOperation(String mode, MongoDbAccessor mongoDbAccessor, Map<String, KeySpace> keySpaces, String distribution,
+                                           String readPreference, String readConcern) {
+        if (mode.equals(OperationModes.MIX.name())) {
+            final ArrayList<IOperation> mixedOperations = new ArrayList<IOperation>();
+            for (String mixMode : mixModes) {
+                mixedOperations.add(createModeOperation(mixMode, mongoDbAccessor, keySpaces, distribution, readPreference, readConcern));
+            }
+            return MixedOperation.of(mixedOperations, mixWeights);
+        }
+        if (mode.equals(OperationModes.NOOP.name())) {
+            return new NoopOperation();
+        }
+        return createOperation(mode, mongoDbAccessor, keySpaces, distribution, readPreference, readConcern);
+    }
+
+    private AbstractOperation createOperation(String mode, MongoDbAccessor mongoDbAccessor, Map<String, KeySpace> keySpaces, String distribution,
+                                              String readPreference, String readConcern) {
+        final AbstractOperation operation;
+        if (mode.equals(OperationModes.UPDATE_ONE.name())) {
+            final UpdateOperation updateOperation = new UpdateOperation(mongoDbAccessor, database, collection, IOperation.ID);
+            updateOperation.setStampClientTime(isChangeStreamConsumed());
+            operation = updateOperation;
+        } else if (mode.equals(OperationModes.UPDATE_MANY.name())) {
+            final UpdateOperation updateOperation = new UpdateOperation(mongoDbAccessor, database, collection, IOperation.THREAD_RUN_COUNT);
+            updateOperation.setStampClientTime(isChangeStreamConsumed());
+            operation = updateOperation;
+        } else if (mode.equals(OperationModes.COUNT_ONE.name())) {
+            operation = new CountOperation(mongoDbAccessor, database, collection, IOperation.ID);
+        } else if (mode.equals(OperationModes.COUNT_MANY.name())) {
+            operation = new CountOperation(mongoDbAccessor, database, collection, IOperation.THREAD_RUN_COUNT);
+        } else if (mode.equals(OperationModes.ITERATE_ONE.name())) {
+            operation = new IterateOperation(mongoDbAccessor, database, collection, IOperation.ID);
+        } else if (mode.equals(OperationModes.ITERATE_MANY.name())) {
+            operation = new IterateOperation(mongoDbAccessor, database, collection, IOperation.THREAD_RUN_COUNT);
+        } else if (mode.equals(OperationModes.ITERATE_IN.name())) {
+            final IterateOperation iterateOperation = new IterateOperation(mongoDbAccessor, database, collection, IOperation.ID);
+            iterateOperation.setInKeys(inKeys, inContiguous);
+            operation = iterateOperation;
+        } else if (mode.equals(OperationModes.DELETE_ONE.name())) {
+            operation = new DeleteOperation(mongoDbAccessor, database, collection, IOperation.ID);
+        } else if (mode.equals(OperationModes.DELETE_MANY.name())) {
+            operation = new DeleteOperation(mongoDbAccessor, database, collection, IOperation.THREAD_RUN_COUNT);
+        } else if (mode.equals(OperationModes.RANGE_SCAN.name())) {
+            final RangeScanOperation rangeScanOperation = new RangeScanOperation(mongoDbAccessor, database, collection, IOperation.ID, rangeWidth);
+            rangeScanOperation.setSort(sort);
+            rangeScanOperation.setProjection(projection);
+            rangeScanOperation.setBatchSize(cursorBatchSize);
+            operation = rangeScanOperation;
+        } else if (mode.equals(OperationModes.PAGE_SKIP.name()) || mode.equals(OperationModes.PAGE_KEYSET.name())) {
+            final PageOperation pageOperation = new PageOperation(mongoDbAccessor, database, collection, IOperation.ID, mode.equals(OperationModes.PAGE_KEYSET.name()), pageSize, pages);
+            pageOperation.setProjection(projection);
+            pageOperation.setBatchSize(cursorBatchSize);
+            operation = pageOperation;
+        } else if (mode.equals(OperationModes.AGGREGATE.name())) {
+            final AggregateOperation aggregateOperation = new AggregateOperation(mongoDbAccessor, database, collection, pipelineField, pipeline, pipelineName);
+            aggregateOperation.setAllowDiskUse(allowDiskUse);
+            aggregateOperation.setBatchSize(cursorBatchSize);
+            operation = aggregateOperation;
+        } else if (mode.equals(OperationModes.QUERY.name())) {
+            final QueryOperation queryOperation = new QueryOperation(mongoDbAccessor, database, collection, pipelineField, filter, filterName);
+            queryOperation.setHint(hint);
+            queryOperation.setSort(sort);
+            queryOperation.setProjection(projection);
+            queryOperation.setLimit(limit);
+            queryOperation.setBatchSize(cursorBatchSize);
+            operation = queryOperation;
+        } else if (mode.equals(OperationModes.TRANSACTION.name())) {
+            final TransactionOperation transactionOperation = new TransactionOperation(mongoDbAccessor, database, collection, transactionSteps);
+            transactionOperation.setHotSet(hotSet);
+            operation = transactionOperation;
+        } else if (mode.equals(OperationModes.CHANGE_STREAM.name())) {
+            operation = new ChangeStreamOperation(mongoDbAccessor, database, collection);
+        } else if (mode.equals(OperationModes.VISIBILITY.name())) {
+            operation = new VisibilityOperation(mongoDbAccessor, database, collection);
+        } else {
+            // all workers of a distributed test insert into the same collection, so only the first one drops it,
+            // before the operation reads the max id, so that all workers, prepared one after the other, see the same one
+            if (dropDb && (worker == null || worker.getIndex() == 0)) {
+                LOG.info("OPERATION SETUP: drop database '{}'", database);
+                mongoDbAccessor.getMongoDatabase(database).drop();
+                LOG.info("OPERATION SETUP: database '{}' dropped", database);
+            }
+            InsertOperation insertOperation = new InsertOperation(mongoDbAccessor, database, collection, IOperation.ID);
+            if (mode.equals(OperationModes.INSERT_BULK.name())) {
+                insertOperation.setBulk(batchSize, !unordered);
+            }
+            if (worker != null) {
+                insertOperation.setPartition(worker.getIndex(), worker.getCount());
+            }
+            if(randomFieldLength > 0){
+                insertOperation.setRandomFieldLength(randomFieldLength);
+            }
+            if (schema != null) {
+                insertOperation.setSchema(schema);
+            }
+            insertOperation.setStampClientTime(isChangeStreamConsumed());
+            operation = insertOperation;
+        }
+        operation.setKeySpace(keySpaces.computeIfAbsent(operation.getQueriedField(), field -> new KeySpace()));
+        if (!(operation instanceof InsertOperation)) {
+            operation.setKeyDistribution(KeyDistribution.parse(distribution));
+        }
+        if (readPreference != null || readConcern != null) {
+            operation.setReadSettings(readPreference != null ? parseReadPreference(readPreference) : null, readConcern != null ? parseReadConcern(readConcern) : null);
+        }
+        return operation;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the name is not one of a read preference, e.g. secondaryPreferred
+     */
+    static ReadPreference parseReadPreference(String name) {
+        return ReadPreference.valueOf(name);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the name is not one of a read concern level, e.g. majority
+     */
+    static ReadConcern parseReadConcern(String name) {
+        return new ReadConcern(ReadConcernLevel.fromString(name));
+    }
+
+    /**
+     * @return true if a mode consumes the change stream, so the writing modes stamp their client time into the documents
+     */
+    private boolean isChangeStreamConsumed() {
+        return modes.contains(OperationModes.CHANGE_STREAM.name());
+    }
+
     public static void main(String... args){
+        if (args.length > 0 && args[0].equals(RunReport.COMMAND)) {
+            RunReport.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals(DataLoader.COMMAND)) {
+            DataLoader.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals(Worker.COMMAND)) {
+            Worker.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         Main m = new Main();
         m.validateInput(args);
         m.executeOperations();
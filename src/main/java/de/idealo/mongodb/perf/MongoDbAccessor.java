@@ -2,19 +2,36 @@ package de.idealo.mongodb.perf;
 
 import com.google.common.collect.Lists;
 import com.mongodb.*;
+import com.mongodb.async.client.MongoClients;
+import com.mongodb.client.ClientSession;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.connection.AsynchronousSocketChannelStreamFactoryFactory;
+import com.mongodb.connection.StreamFactoryFactory;
+import com.mongodb.connection.TlsChannelStreamFactoryFactory;
+import de.idealo.mongodb.perf.stats.ClientMetrics;
 import org.bson.Document;
 import org.bson.conversions.Bson;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.net.UnknownHostException;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MongoDbAccessor {
 
     private static final Logger LOG = LoggerFactory.getLogger(MongoDbAccessor.class);
 
+    public static final int DEFAULT_CONNECTIONS_PER_HOST = 5000;
+    public static final int DEFAULT_THREADS_ALLOWED_TO_BLOCK_FOR_CONNECTION_MULTIPLIER = 10;
+
     private final ServerAddress[] serverAddress;
     private final int socketTimeOut;
     private final String user;
@@ -23,7 +40,17 @@ public class MongoDbAccessor {
     private final String authDb;
     private final boolean ssl;
     private final WriteConcern writeConcern;
+    private final int connectionsPerHost;
+    private final int threadsAllowedToBlockForConnectionMultiplier;
     private MongoClient mongo;
+    @SuppressWarnings("deprecation")
+    private com.mongodb.async.client.MongoClient asyncMongo;
+    private AsynchronousChannelGroup asyncChannelGroup;
+    private TlsChannelStreamFactoryFactory tlsStreamFactoryFactory;
+    private int eventLoopThreads = Runtime.getRuntime().availableProcessors();
+    private final ClientMetrics clientMetrics = new ClientMetrics();
+    // direct connections to the members of the replica set by their address, created on first use
+    private final Map<String, MongoClient> memberClients = new LinkedHashMap<>();
 
     private MongoDbAccessor() {
         this(-1, null, null, null, false, null, WriteConcern.ACKNOWLEDGED);
@@ -34,6 +61,18 @@ public class MongoDbAccessor {
     }
 
     public MongoDbAccessor(int socketTimeOut, String user, String pw, String authDb, boolean ssl, String url, WriteConcern writeConcern, ServerAddress... serverAddress) {
+        this(socketTimeOut, user, pw, authDb, ssl, url, writeConcern, DEFAULT_CONNECTIONS_PER_HOST, DEFAULT_THREADS_ALLOWED_TO_BLOCK_FOR_CONNECTION_MULTIPLIER, serverAddress);
+    }
+
+    /**
+     *
+     * @param connectionsPerHost maximum number of connections to each host
+     * @param threadsAllowedToBlockForConnectionMultiplier connectionsPerHost times this multiplier is the maximum number of threads resp. async operations waiting for a connection
+     */
+    public MongoDbAccessor(int socketTimeOut, String user, String pw, String authDb, boolean ssl, String url, WriteConcern writeConcern,
+                           int connectionsPerHost, int threadsAllowedToBlockForConnectionMultiplier, ServerAddress... serverAddress) {
+        this.connectionsPerHost = connectionsPerHost;
+        this.threadsAllowedToBlockForConnectionMultiplier = threadsAllowedToBlockForConnectionMultiplier;
         this.serverAddress = serverAddress;
         this.user = user;
         this.pw = pw;
@@ -53,16 +92,102 @@ public class MongoDbAccessor {
         return mongo.getDatabase(dbName);
     }
 
+    /**
+     * The async client is created on first use, so it costs nothing unless the async engine is used.
+     */
+    @SuppressWarnings("deprecation")
+    public synchronized com.mongodb.async.client.MongoDatabase getAsyncMongoDatabase(String dbName) {
+
+        if (asyncMongo == null)
+            initAsync();
+
+        return asyncMongo.getDatabase(dbName);
+    }
+
+    /**
+     * @param eventLoopThreads number of threads handling the network I/O and callbacks of the async client, must be set before its first use
+     */
+    public void setEventLoopThreads(int eventLoopThreads) {
+        this.eventLoopThreads = eventLoopThreads;
+    }
+
+    /**
+     * @return the metrics of both the sync and the async client, kept across reconnects
+     */
+    public ClientMetrics getClientMetrics() {
+        return clientMetrics;
+    }
+
+    @SuppressWarnings("deprecation")
+    private void initAsync() {
+        LOG.info(">>> initAsync {} with {} event loop threads", serverAddress, eventLoopThreads);
+        final MongoClientSettings.Builder builder = MongoClientSettings.builder()
+                .applyToSocketSettings(b -> b.connectTimeout(1000 * 10, TimeUnit.MILLISECONDS))
+                .applyToConnectionPoolSettings(b -> b.maxSize(connectionsPerHost).maxWaitQueueSize(connectionsPerHost * threadsAllowedToBlockForConnectionMultiplier))
+                .writeConcern(writeConcern)
+                .addCommandListener(clientMetrics)
+                .applyToSslSettings(b -> b.enabled(ssl).invalidHostNameAllowed(true));
+        boolean tls = ssl;
+        if (url != null && !url.isEmpty()) {
+            final ConnectionString connectionString = new ConnectionString(url);
+            builder.applyConnectionString(connectionString);
+            tls |= Boolean.TRUE.equals(connectionString.getSslEnabled());
+        } else {
+            builder.applyToClusterSettings(b -> b.hosts(Lists.newArrayList(serverAddress)));
+            builder.readPreference(ReadPreference.secondaryPreferred());
+            if (user != null && !user.isEmpty() && pw != null && !pw.isEmpty()) {
+                builder.credential(MongoCredential.createCredential(user, authDb, pw.toCharArray()));
+            }
+        }
+        StreamFactoryFactory streamFactoryFactory;
+        if (tls) {
+            // AsynchronousSocketChannel doesn't support TLS
+            tlsStreamFactoryFactory = new TlsChannelStreamFactoryFactory();
+            streamFactoryFactory = tlsStreamFactoryFactory;
+        } else {
+            final AtomicInteger threadNumber = new AtomicInteger();
+            try {
+                asyncChannelGroup = AsynchronousChannelGroup.withFixedThreadPool(eventLoopThreads, r -> {
+                    final Thread thread = new Thread(r, "async-event-loop-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                streamFactoryFactory = AsynchronousSocketChannelStreamFactoryFactory.builder().group(asyncChannelGroup).build();
+            } catch (IOException e) {
+                LOG.error("Error while creating event loop threads, using the default channel group", e);
+                streamFactoryFactory = AsynchronousSocketChannelStreamFactoryFactory.builder().build();
+            }
+        }
+        builder.streamFactoryFactory(clientMetrics.countingStreamFactoryFactory(streamFactoryFactory));
+        asyncMongo = MongoClients.create(builder.build());
+        LOG.info("<<< initAsync");
+    }
+
+    // the wait queue and the socket factory have no replacement in the options of the 3.x client
+    @SuppressWarnings("deprecation")
     public void init() {
-        LOG.info(">>> init {}", serverAddress);
+        LOG.info(">>> init {} with max {} connections per host", serverAddress, connectionsPerHost);
         try {
-            MongoClientOptions options = MongoClientOptions.builder().connectTimeout(1000 * 10) // fail fast, so we know this node is unavailable
-                    .readPreference(ReadPreference.secondaryPreferred()).connectionsPerHost(5000)
-                    .threadsAllowedToBlockForConnectionMultiplier(10).writeConcern(writeConcern) // Use configurable WriteConcern
-                    .sslEnabled(ssl).sslInvalidHostNameAllowed(true).build();
+            final MongoClientOptions.Builder builder = MongoClientOptions.builder().connectTimeout(1000 * 10) // fail fast, so we know this node is unavailable
+                    .readPreference(ReadPreference.secondaryPreferred()).connectionsPerHost(connectionsPerHost)
+                    .threadsAllowedToBlockForConnectionMultiplier(threadsAllowedToBlockForConnectionMultiplier).writeConcern(writeConcern) // Use configurable WriteConcern
+                    .sslEnabled(ssl).sslInvalidHostNameAllowed(true)
+                    .addCommandListener(clientMetrics).addConnectionPoolListener(clientMetrics);
+            if (!ssl) {
+                // TLS requires the sockets of the SSLSocketFactory, so their bytes can't be counted
+                builder.socketFactory(clientMetrics.countingSocketFactory());
+            }
+            final MongoClientOptions options = builder.build();
 
             if (url != null && !url.isEmpty()) {
-                mongo = new MongoClient(new MongoClientURI(url));
+                // the pool must be able to serve all threads, unless the url defines its own pool options
+                final MongoClientOptions.Builder urlBuilder = MongoClientOptions.builder().connectionsPerHost(connectionsPerHost)
+                        .threadsAllowedToBlockForConnectionMultiplier(threadsAllowedToBlockForConnectionMultiplier)
+                        .addCommandListener(clientMetrics).addConnectionPoolListener(clientMetrics);
+                if (!new MongoClientURI(url).getOptions().isSslEnabled()) {
+                    urlBuilder.socketFactory(clientMetrics.countingSocketFactory());
+                }
+                mongo = new MongoClient(new MongoClientURI(url, urlBuilder));
             } else {
                 if (user != null && !user.isEmpty() && pw != null && !pw.isEmpty()) {
                     MongoCredential mc = MongoCredential.createCredential(user, authDb, pw.toCharArray());
@@ -88,6 +213,70 @@ public class MongoDbAccessor {
         LOG.info("<<< init");
     }
 
+    /**
+     * @return a new session of the sync client, e.g. to execute a transaction
+     */
+    public ClientSession startSession() {
+        if (mongo == null)
+            init();
+
+        return mongo.startSession();
+    }
+
+    /**
+     * Connects directly to each data bearing, non-hidden member of the replica set as listed by isMaster, so reads
+     * are neither routed to another member nor subject to the read preference of the client. If not connected to a
+     * replica set, e.g. to a standalone server or a mongos, the only member is the server of the client.
+     *
+     * @return database of each member by its address host:port
+     */
+    public synchronized Map<String, MongoDatabase> getMemberDatabases(String dbName) {
+        final Map<String, MongoDatabase> result = new LinkedHashMap<>();
+        if (memberClients.isEmpty()) {
+            final Document isMaster = runCommand("admin", new BasicDBObject("isMaster", 1), ReadPreference.primaryPreferred());
+            final List<String> members = new ArrayList<>();
+            for (String key : new String[]{"hosts", "passives"}) {
+                final List<?> hosts = isMaster.get(key, List.class);
+                if (hosts != null) {
+                    for (Object host : hosts) {
+                        members.add(String.valueOf(host));
+                    }
+                }
+            }
+            if (members.isEmpty()) {
+                LOG.info("Not connected to a replica set, so the only member is the server itself");
+                result.put(serverAddress.length > 0 && (url == null || url.isEmpty()) ? serverAddress[0].toString() : "server", getMongoDatabase(dbName));
+                return result;
+            }
+            for (String member : members) {
+                LOG.info("Connecting directly to member {}", member);
+                memberClients.put(member, createDirectClient(new ServerAddress(member)));
+            }
+        }
+        for (Map.Entry<String, MongoClient> member : memberClients.entrySet()) {
+            result.put(member.getKey(), member.getValue().getDatabase(dbName));
+        }
+        return result;
+    }
+
+    @SuppressWarnings("deprecation")
+    private MongoClient createDirectClient(ServerAddress member) {
+        final MongoClientOptions.Builder builder;
+        final MongoCredential credential;
+        if (url != null && !url.isEmpty()) {
+            final MongoClientURI uri = new MongoClientURI(url);
+            builder = MongoClientOptions.builder(uri.getOptions());
+            credential = uri.getCredentials();
+        } else {
+            builder = MongoClientOptions.builder().writeConcern(writeConcern).sslEnabled(ssl).sslInvalidHostNameAllowed(true);
+            credential = user != null && !user.isEmpty() && pw != null && !pw.isEmpty() ? MongoCredential.createCredential(user, authDb, pw.toCharArray()) : null;
+        }
+        // a single address without replica set name connects to this member only, which may be a secondary
+        final MongoClientOptions options = builder.connectTimeout(1000 * 10).requiredReplicaSetName(null).readPreference(ReadPreference.nearest())
+                .connectionsPerHost(connectionsPerHost).threadsAllowedToBlockForConnectionMultiplier(threadsAllowedToBlockForConnectionMultiplier).build();
+        return credential != null ? new MongoClient(member, credential, options) : new MongoClient(member, options);
+    }
+
     public Long getLong(Document dbObj, String name) {
         if (dbObj != null) {
             Object obj = dbObj.get(name);
@@ -110,9 +299,16 @@ public class MongoDbAccessor {
     }
 
     public Document runCommand(String dbName, DBObject cmd) throws IllegalStateException {
+        return runCommand(dbName, (Bson) cmd, ReadPreference.secondaryPreferred());
+    }
+
+    /**
+     * @param readPreference selects the member of a replica set the command is run on
+     */
+    public Document runCommand(String dbName, Bson cmd, ReadPreference readPreference) throws IllegalStateException {
         checkMongo();
         if (dbName != null && !dbName.isEmpty()) {
-            return getMongoDatabase(dbName).runCommand((Bson) cmd, ReadPreference.secondaryPreferred());
+            return getMongoDatabase(dbName).runCommand(cmd, readPreference);
         }
         throw new IllegalStateException("Database not initialized");
     }
@@ -131,6 +327,24 @@ public class MongoDbAccessor {
                 mongo.close();
                 mongo = null;
             }
+            synchronized (this) {
+                for (MongoClient memberClient : memberClients.values()) {
+                    memberClient.close();
+                }
+                memberClients.clear();
+                if (asyncMongo != null) {
+                    asyncMongo.close();
+                    asyncMongo = null;
+                }
+                if (asyncChannelGroup != null) {
+                    asyncChannelGroup.shutdownNow();
+                    asyncChannelGroup = null;
+                }
+                if (tlsStreamFactoryFactory != null) {
+                    tlsStreamFactoryFactory.close();
+                    tlsStreamFactoryFactory = null;
+                }
+            }
         } catch (Throwable e) {
             LOG.error("Error while closing mongo ", e);
         }
@@ -4,21 +4,40 @@ package de.idealo.mongodb.perf;
  * Created by kay.agahd on 23.11.16.
  */
 
-import com.codahale.metrics.*;
 import com.mongodb.ServerAddress;
+import com.mongodb.async.SingleResultCallback;
+import de.idealo.mongodb.perf.operations.AsyncMixedOperation;
+import de.idealo.mongodb.perf.operations.IAsyncOperation;
 import de.idealo.mongodb.perf.operations.IOperation;
+import de.idealo.mongodb.perf.operations.LagRecording;
 import de.idealo.mongodb.perf.operations.InsertOperation;
+import de.idealo.mongodb.perf.operations.MixedOperation;
+import de.idealo.mongodb.perf.operations.TransactionOperation;
+import de.idealo.mongodb.perf.stats.ErrorLog;
+import de.idealo.mongodb.perf.stats.ErrorType;
+import de.idealo.mongodb.perf.stats.LatencySeries;
+import de.idealo.mongodb.perf.stats.StatsReporter;
+import org.HdrHistogram.Histogram;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
 
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static java.util.stream.IntStream.range;
@@ -29,85 +48,306 @@ public class OperationExecutor implements Runnable {
 
     public static final String TIMER_PER_SECOND_PREFIX = "stats-per-second-";
     public static final String TIMER_PER_RUN_PREFIX = "stats-per-run-";
+    public static final String RESPONSE_TIME_PER_SECOND_PREFIX = "response-time-per-second-";
+    public static final String RESPONSE_TIME_PER_RUN_PREFIX = "response-time-per-run-";
+    public static final String LAG_PER_SECOND_INFIX = "-per-second-";
+    public static final String LAG_PER_RUN_INFIX = "-per-run-";
 
     private final int threadCount;
     private final long opsCount;
     private final long maxDurationInSeconds;
-    private final Timer timerPerSecond;
-    private final Timer timerPerRun;
-    private final ConsoleReporter consoleReporterPerSecond;
-    private final ConsoleReporter consoleReporterPerRun;
-    private final CsvReporter csvReporterPerSecond;
-    private final CsvReporter csvReporterPerRun;
+    private final double targetRate;
+    private final LatencySeries serviceTime;
+    private final LatencySeries responseTime;
+    // per operation of a mixed operation, otherwise null
+    private final MixedOperation mixedOperation;
+    private final LatencySeries[] serviceTimes;
+    private final LatencySeries[] responseTimes;
+    // lags recorded by the operation besides its latency, e.g. of change events, otherwise null
+    private final LagRecording lagRecording;
+    private final List<LatencySeries> lags = new ArrayList<>();
+    private final List<LatencySeries> series = new ArrayList<>();
+    private final StatsReporter statsReporter;
+    private Map<String, String> runMetadata = Collections.emptyMap();
+    private final ErrorLog errorLog;
     private final IOperation operation;
     private final File csvFolder;
     private final CountDownLatch runModeLatch;
-    private final String timerPerSecondName;
-    private final String timerPerRunName;
+    private ExecutionEngine engine = ExecutionEngine.THREADS;
+    private long warmupOperations = 0;
+    private long warmupMillis = 0;
+    private CountDownLatch warmupBarrier = null;
+    // operations are recorded as soon as the warm-up is over
+    private volatile boolean measuring = true;
+    // during the warm-up, operations are not limited by opsCount
+    private volatile long operationsLimit;
+    // received bytes of the operation and, if mixed, of each mixed operation at the end of the warm-up
+    private final long[] receivedBytesAtMeasurementStart;
 
     public OperationExecutor(int threadCount, long opsCount, long maxDurationInSeconds, IOperation operation, CountDownLatch runModeLatch){
-        LOG.info(">>> OperationExecutor threadCount: {}, opsCount: {}, maxDurationInSeconds: {}, operation: {}", threadCount, opsCount, maxDurationInSeconds, operation.getClass().getSimpleName());
+        this(threadCount, opsCount, maxDurationInSeconds, 0, operation, runModeLatch);
+    }
+
+    /**
+     *
+     * @param threadCount
+     * @param opsCount
+     * @param maxDurationInSeconds
+     * @param targetRate operations per second to be started on a fixed schedule (open loop) or 0 to start the next operation as soon as the previous one returned (closed loop)
+     * @param operation
+     * @param runModeLatch
+     */
+    public OperationExecutor(int threadCount, long opsCount, long maxDurationInSeconds, double targetRate, IOperation operation, CountDownLatch runModeLatch){
+        LOG.info(">>> OperationExecutor threadCount: {}, opsCount: {}, maxDurationInSeconds: {}, targetRate: {}, operation: {}", threadCount, opsCount, maxDurationInSeconds, targetRate, operation.getName());
         this.csvFolder = getJarLocation();
         this.threadCount = threadCount;
         this.opsCount = opsCount;
         this.maxDurationInSeconds = maxDurationInSeconds;
+        this.targetRate = targetRate;
         this.operation = operation;
         this.runModeLatch = runModeLatch;
-        this.timerPerSecondName = TIMER_PER_SECOND_PREFIX + operation.getOperationMode();
-        this.timerPerRunName = TIMER_PER_RUN_PREFIX + operation.getOperationMode();
-        final MetricRegistry registry = new MetricRegistry();
-        final MetricRegistry registryAll = new MetricRegistry();
-        //timer1 = registry.register("dbTimer", new Timer(new SlidingWindowReservoir((int)opsCount)));
-        timerPerSecond = registry.register(timerPerSecondName, new Timer(new SlidingTimeWindowReservoir(1, TimeUnit.SECONDS)));
-        timerPerRun = registryAll.timer(timerPerRunName);
-        consoleReporterPerSecond = ConsoleReporter.forRegistry(registry)
-                .convertRatesTo(TimeUnit.SECONDS)
-                .convertDurationsTo(TimeUnit.MILLISECONDS)
-                .build();
-        csvReporterPerSecond = CsvReporter.forRegistry(registry)
-                .formatFor(java.util.Locale.US)
-                .convertRatesTo(TimeUnit.SECONDS)
-                .convertDurationsTo(TimeUnit.MILLISECONDS)
-                .build(csvFolder);
-        consoleReporterPerRun = ConsoleReporter.forRegistry(registryAll)
-                .convertRatesTo(TimeUnit.SECONDS)
-                .convertDurationsTo(TimeUnit.MILLISECONDS)
-                .build();
-        csvReporterPerRun = CsvReporter.forRegistry(registryAll)
-                .formatFor(java.util.Locale.US)
-                .convertRatesTo(TimeUnit.SECONDS)
-                .convertDurationsTo(TimeUnit.MILLISECONDS)
-                .build(csvFolder);
-
-        consoleReporterPerSecond.start(1, TimeUnit.SECONDS);
-
-        csvReporterPerSecond.start(1, TimeUnit.SECONDS);
-
+        this.operationsLimit = opsCount == 0 ? Long.MAX_VALUE : opsCount;
+        serviceTime = new LatencySeries(TIMER_PER_SECOND_PREFIX + operation.getName(), TIMER_PER_RUN_PREFIX + operation.getName(), "service-time", threadCount);
+        series.add(serviceTime);
+        if(targetRate > 0) {
+            // in open loop, the stats-series measures the service time while this one measures the response time i.e. including the time an operation waited to be started
+            responseTime = new LatencySeries(RESPONSE_TIME_PER_SECOND_PREFIX + operation.getName(), RESPONSE_TIME_PER_RUN_PREFIX + operation.getName(), "response-time", threadCount);
+            series.add(responseTime);
+        } else {
+            responseTime = null;
+        }
+        if(operation instanceof MixedOperation) {
+            // besides the aggregate of all mixed operations, each of them gets its own series
+            mixedOperation = (MixedOperation) operation;
+            serviceTimes = new LatencySeries[mixedOperation.getOperationCount()];
+            responseTimes = new LatencySeries[mixedOperation.getOperationCount()];
+            for (int i = 0; i < serviceTimes.length; i++) {
+                final String name = operation.getName() + "-" + mixedOperation.getOperation(i).getName();
+                serviceTimes[i] = new LatencySeries(TIMER_PER_SECOND_PREFIX + name, TIMER_PER_RUN_PREFIX + name, "service-time-" + mixedOperation.getOperation(i).getName(), threadCount);
+                series.add(serviceTimes[i]);
+                if(targetRate > 0) {
+                    responseTimes[i] = new LatencySeries(RESPONSE_TIME_PER_SECOND_PREFIX + name, RESPONSE_TIME_PER_RUN_PREFIX + name, "response-time-" + mixedOperation.getOperation(i).getName(), threadCount);
+                    series.add(responseTimes[i]);
+                }
+            }
+        } else {
+            mixedOperation = null;
+            serviceTimes = null;
+            responseTimes = null;
+        }
+        if(operation instanceof LagRecording) {
+            lagRecording = (LagRecording) operation;
+            for (String lagName : lagRecording.getLagNames()) {
+                lags.add(new LatencySeries(lagName + LAG_PER_SECOND_INFIX + operation.getName(), lagName + LAG_PER_RUN_INFIX + operation.getName(), lagName, threadCount));
+            }
+            series.addAll(lags);
+        } else {
+            lagRecording = null;
+        }
+        receivedBytesAtMeasurementStart = new long[mixedOperation != null ? mixedOperation.getOperationCount() + 1 : 1];
+        statsReporter = new StatsReporter(csvFolder, getHistogramLogPrefix(), series);
+        errorLog = new ErrorLog(operation.getName());
     }
 
     public void doOperation(int threadId, long threadRunCount, long globalRunCount) {
-        final Timer.Context context = timerPerSecond.time();
-        final Timer.Context allContext = timerPerRun.time();
+        final int index = mixedOperation != null ? mixedOperation.nextOperationIndex() : -1;
+        final long start = System.nanoTime();
+        try {
+            final long affectedDocs = index < 0 ? operation.operation(threadId, threadRunCount, globalRunCount) : mixedOperation.operation(index, threadId, threadRunCount);
+            record(threadId - 1, index, start, start, affectedDocs, null);
+        } catch (RuntimeException e) {
+            record(threadId - 1, index, start, start, 0, e);
+        }
+    }
+
+    /**
+     * Executes the operation not before its intended start time. The service time is measured from the actual start
+     * whereas the response time is measured from the intended start, so a stalled server is not hidden by the
+     * operations which could not be started in time (coordinated omission).
+     *
+     * @param intendedStartNanos point in time, as of System.nanoTime(), at which the operation should have been started
+     */
+    public void doScheduledOperation(int threadId, long threadRunCount, long globalRunCount, long intendedStartNanos) {
+        long now = System.nanoTime();
+        while (now < intendedStartNanos) {
+            LockSupport.parkNanos(intendedStartNanos - now);
+            now = System.nanoTime();
+        }
+        final int index = mixedOperation != null ? mixedOperation.nextOperationIndex() : -1;
+        try {
+            final long affectedDocs = index < 0 ? operation.operation(threadId, threadRunCount, globalRunCount) : mixedOperation.operation(index, threadId, threadRunCount);
+            record(threadId - 1, index, now, intendedStartNanos, affectedDocs, null);
+        } catch (RuntimeException e) {
+            record(threadId - 1, index, now, intendedStartNanos, 0, e);
+        }
+    }
+
+    /**
+     * Executes the operation by the async driver. The slot, which is the writer index of the series, is owned
+     * by this operation until it has been recorded, so each slot has at most one recording thread at a time.
+     */
+    @SuppressWarnings("deprecation")
+    private void doAsyncOperation(Integer slot, long slotRunCount, long globalRunCount, long intendedStartNanos, BlockingQueue<Integer> freeSlots) {
+        final int index = mixedOperation != null ? mixedOperation.nextOperationIndex() : -1;
+        final long start = System.nanoTime();
+        final SingleResultCallback<Long> callback = (affectedDocs, t) -> {
+            record(slot, index, start, intendedStartNanos, affectedDocs != null ? affectedDocs : 0, t);
+            freeSlots.offer(slot);
+        };
         try {
-            operation.operation(threadId, threadRunCount, globalRunCount);
-        } finally {
-            context.stop();
-            allContext.stop();
+            if(index < 0) {
+                ((IAsyncOperation) operation).operationAsync(slot + 1, slotRunCount, globalRunCount, callback);
+            } else {
+                ((AsyncMixedOperation) mixedOperation).operationAsync(index, slot + 1, slotRunCount, callback);
+            }
+        } catch (RuntimeException e) {
+            callback.onResult(null, e);
+        }
+    }
+
+    /**
+     * Records a finished operation into the series of successful operations or, if it failed, into their error
+     * counterparts, so failing fast does not improve the latencies.
+     *
+     * @param index index of the operation within the mixed operation or -1
+     * @param intendedStartNanos intended start of the operation, in closed loop its actual start
+     * @param error error the operation failed with or null if it succeeded
+     */
+    private void record(int writer, int index, long startNanos, long intendedStartNanos, long affectedDocs, Throwable error) {
+        final long end = System.nanoTime();
+        final ErrorType errorType;
+        if(error != null) {
+            errorLog.log(error);
+            errorType = ErrorType.of(error);
+        } else {
+            errorType = null;
+        }
+        if(!measuring) {
+            return;
+        }
+        record(serviceTime, writer, end - startNanos, affectedDocs, errorType);
+        if(responseTime != null) {
+            record(responseTime, writer, end - intendedStartNanos, affectedDocs, errorType);
+        }
+        if(index >= 0) {
+            record(serviceTimes[index], writer, end - startNanos, affectedDocs, errorType);
+            if(responseTimes[index] != null) {
+                record(responseTimes[index], writer, end - intendedStartNanos, affectedDocs, errorType);
+            }
+        }
+    }
+
+    private static void record(LatencySeries series, int writer, long latencyNanos, long affectedDocs, ErrorType errorType) {
+        if(errorType == null) {
+            series.record(writer, latencyNanos, affectedDocs);
+        } else {
+            series.recordError(writer, latencyNanos, errorType);
+        }
+    }
+
+    /**
+     * @param engine how to execute the operations concurrently, by default {@link ExecutionEngine#THREADS}
+     * @throws IllegalArgumentException if the engine is {@link ExecutionEngine#ASYNC} but the operation is no {@link IAsyncOperation}
+     */
+    public void setEngine(ExecutionEngine engine) {
+        if (engine == ExecutionEngine.ASYNC && !(operation instanceof IAsyncOperation)) {
+            throw new IllegalArgumentException("Mode " + operation.getName() + " can't be executed asynchronously (-async)!");
         }
+        this.engine = engine;
+    }
+
+    /**
+     * Executes operations at full load before measuring them. Operations executed during the warm-up are neither recorded
+     * nor count towards opsCount or maxDurationInSeconds. Once warmed up, the executor keeps executing operations unrecorded
+     * until all executors sharing the barrier are warmed up, so all of them start measuring at the same time.
+     *
+     * @param operations number of operations of the warm-up, ignored if seconds > 0
+     * @param seconds duration of the warm-up
+     * @param barrier latch counted down by each executor warmed up, thus initialized by the number of executors running simultaneously
+     */
+    public void setWarmup(long operations, long seconds, CountDownLatch barrier) {
+        this.warmupOperations = operations;
+        this.warmupMillis = SECONDS.toMillis(seconds);
+        this.warmupBarrier = barrier;
+        this.measuring = !isWarmupEnabled();
+        this.operationsLimit = isWarmupEnabled() || opsCount == 0 ? Long.MAX_VALUE : opsCount;
+    }
+
+    /**
+     * @param runMetadata description of the test, e.g. its options and the server, completed by the settings of this run and written into its histogram log
+     */
+    public void setRunMetadata(Map<String, String> runMetadata) {
+        final Map<String, String> metadata = new LinkedHashMap<>(runMetadata);
+        metadata.put("mode", operation.getName());
+        metadata.put("threads", String.valueOf(threadCount));
+        metadata.put("engine", engine.name());
+        metadata.put("rate", String.valueOf(targetRate));
+        metadata.put("operations", String.valueOf(opsCount));
+        metadata.put("max_duration_seconds", String.valueOf(maxDurationInSeconds));
+        metadata.put("warmup", warmupMillis > 0 ? SECONDS.convert(warmupMillis, TimeUnit.MILLISECONDS) + " seconds" : warmupOperations + " operations");
+        this.runMetadata = metadata;
+        statsReporter.setRunMetadata(metadata);
+    }
+
+    /**
+     * Sends the intervals to the given listener instead of writing csv-files and a histogram log, e.g. because this
+     * process is a worker of a distributed test whose coordinator reports the merged intervals of all workers.
+     */
+    public void setRemoteReporting(StatsReporter.IntervalListener intervalListener) {
+        statsReporter.setLocalOutput(false);
+        statsReporter.setIntervalListener(intervalListener);
+    }
+
+    private boolean isWarmupEnabled() {
+        return warmupBarrier != null && (warmupOperations > 0 || warmupMillis > 0);
+    }
+
+    private boolean isWarmedUp(long executedOperations, long warmupStartMs) {
+        return warmupMillis > 0 ? System.currentTimeMillis() - warmupStartMs >= warmupMillis : executedOperations >= warmupOperations;
+    }
+
+    /**
+     * Starts recording operations, from now on executing at most opsCount operations.
+     *
+     * @param executedOperations number of operations executed so far, read once the reporter has been started, so hardly any operation is missed
+     */
+    private void startMeasurement(LongSupplier executedOperations) {
+        statsReporter.start();
+        final long executed = executedOperations.getAsLong();
+        receivedBytesAtMeasurementStart[0] = operation.getReceivedBytes();
+        for (int i = 1; i < receivedBytesAtMeasurementStart.length; i++) {
+            receivedBytesAtMeasurementStart[i] = mixedOperation.getOperation(i - 1).getReceivedBytes();
+        }
+        for (TransactionOperation transactionOperation : getTransactionOperations()) {
+            transactionOperation.startMeasurement();
+        }
+        if(lagRecording != null) {
+            lagRecording.setLagSeries(lags);
+        }
+        operationsLimit = opsCount == 0 ? Long.MAX_VALUE : executed + opsCount;
+        measuring = true;
+        LOG.info("All simultaneously running modes warmed up, start measuring after {} operations", executed);
     }
 
     @Override
     public void run(){
+        if(lagRecording != null && measuring) {
+            lagRecording.setLagSeries(lags);
+        }
         try {
-            executeThreads();
+            if(engine == ExecutionEngine.ASYNC) {
+                executeAsync();
+            } else {
+                executeThreads();
+            }
         } catch (InterruptedException e) {
             LOG.error("InterruptedException while executing threads", e);
         }
-        analysis();
         stopReporters();
+        analysis();
     }
 
-    private File getJarLocation(){
+    static File getJarLocation(){
         try {
             final String s = OperationExecutor.class.getProtectionDomain().getCodeSource().getLocation().toURI().getPath();
             LOG.info("java execution path: {}", s);
@@ -124,17 +364,31 @@ public class OperationExecutor implements Runnable {
 
         final CountDownLatch startGate  = new CountDownLatch(1);
         final CountDownLatch endGate    = new CountDownLatch(threadCount);
-        final ExecutorService executor  = Executors.newFixedThreadPool(threadCount);
-        final long start = System.currentTimeMillis();
+        final CountDownLatch warmedUp   = new CountDownLatch(1);
+        final ExecutorService executor  = engine == ExecutionEngine.VIRTUAL_THREADS ? newVirtualThreadPerTaskExecutor() : Executors.newFixedThreadPool(threadCount);
         final AtomicLong runCounter = new AtomicLong(0L);
+        final double nanosPerOperation = targetRate > 0 ? SECONDS.toNanos(1) / targetRate : 0;
+        final long[] startNanos = new long[1];
 
         range(0, threadCount).forEach(t -> executor.submit(() -> {
                             try {
                                 startGate.await();
                                 int count = 1;
-                                while( (runCounter.get() < opsCount || opsCount == 0) && !finish.get() ){
-                                    // if opsCount==0 then it terminates when maxDurationInSeconds is reached
-                                    doOperation(t+1, count++, runCounter.incrementAndGet());
+                                while( !finish.get() ){
+                                    final long globalRunCount = runCounter.incrementAndGet();
+                                    if(globalRunCount > operationsLimit) {
+                                        // if opsCount==0 then it terminates when maxDurationInSeconds is reached
+                                        break;
+                                    }
+                                    if(globalRunCount == warmupOperations) {
+                                        warmedUp.countDown();
+                                    }
+                                    if(nanosPerOperation > 0) {
+                                        // open loop: the n-th operation is due at start + (n-1) * 1/targetRate, regardless of how long previous operations took
+                                        doScheduledOperation(t+1, count++, globalRunCount, startNanos[0] + (long)((globalRunCount-1) * nanosPerOperation));
+                                    } else {
+                                        doOperation(t+1, count++, globalRunCount);
+                                    }
                                 }
                             } catch (InterruptedException e) {
                                 Thread.currentThread().interrupt();
@@ -144,7 +398,23 @@ public class OperationExecutor implements Runnable {
                         }));
 
 
+        if(measuring) {
+            statsReporter.start();
+        }
+        startNanos[0] = System.nanoTime();
         startGate.countDown();
+        if(!measuring) {
+            if(warmupMillis > 0) {
+                Thread.sleep(warmupMillis);
+            } else {
+                warmedUp.await();
+            }
+            LOG.info("Warm-up done, waiting for all simultaneously running modes to be warmed up");
+            warmupBarrier.countDown();
+            warmupBarrier.await();
+            startMeasurement(runCounter::get);
+        }
+        final long start = System.currentTimeMillis();
 
         final boolean notTimedOut = endGate.await(maxDurationInSeconds, SECONDS);
         final long end = System.currentTimeMillis();
@@ -155,62 +425,247 @@ public class OperationExecutor implements Runnable {
         endGate.await();
 
         LOG.info("Done ({}) in {} ms ", notTimedOut ? "in time" : "timed out", durationInMs);
-        
+
         runModeLatch.countDown();
         executor.shutdownNow();
     }
 
+    /**
+     * Keeps up to threadCount operations in flight. Each operation occupies one of threadCount slots until its
+     * callback has been called, so the dispatching thread blocks as soon as all slots are in flight.
+     */
+    private void executeAsync() throws InterruptedException {
+
+        final BlockingQueue<Integer> freeSlots = new ArrayBlockingQueue<>(threadCount);
+        range(0, threadCount).forEach(freeSlots::add);
+        final long[] slotRunCounts = new long[threadCount];
+        final double nanosPerOperation = targetRate > 0 ? SECONDS.toNanos(1) / targetRate : 0;
+        long start = System.currentTimeMillis();
+        long deadline = measuring ? start + SECONDS.toMillis(maxDurationInSeconds) : Long.MAX_VALUE;
+        boolean notTimedOut = true;
+        boolean warmedUp = false;
+
+        if(measuring) {
+            statsReporter.start();
+        }
+        final long startNanos = System.nanoTime();
+        long globalRunCount = 0;
+        while(globalRunCount < operationsLimit){
+            // if opsCount==0 then it terminates when maxDurationInSeconds is reached
+            if(!measuring) {
+                // the dispatcher must not block while waiting for the other modes, so the load is kept up
+                if(!warmedUp && isWarmedUp(globalRunCount, start)) {
+                    warmedUp = true;
+                    LOG.info("Warm-up done, waiting for all simultaneously running modes to be warmed up");
+                    warmupBarrier.countDown();
+                }
+                if(warmedUp && warmupBarrier.getCount() == 0) {
+                    final long executed = globalRunCount;
+                    startMeasurement(() -> executed);
+                    start = System.currentTimeMillis();
+                    deadline = start + SECONDS.toMillis(maxDurationInSeconds);
+                }
+            }
+            final long intendedStartNanos = startNanos + (long)(globalRunCount * nanosPerOperation);
+            long now = System.nanoTime();
+            while (now < intendedStartNanos && System.currentTimeMillis() < deadline) {
+                LockSupport.parkNanos(intendedStartNanos - now);
+                now = System.nanoTime();
+            }
+            final Integer slot = freeSlots.poll(measuring ? Math.max(deadline - System.currentTimeMillis(), 0) : 100, TimeUnit.MILLISECONDS);
+            if(slot == null && !measuring) {
+                continue;
+            }
+            if(slot == null || System.currentTimeMillis() >= deadline) {
+                if(slot != null) {
+                    freeSlots.offer(slot);
+                }
+                notTimedOut = false;
+                break;
+            }
+            globalRunCount++;
+            doAsyncOperation(slot, ++slotRunCounts[slot], globalRunCount, nanosPerOperation > 0 ? intendedStartNanos : System.nanoTime(), freeSlots);
+        }
+        final long durationInMs = System.currentTimeMillis() - start;
+
+        // wait until all operations in flight have been finished
+        for (int i = 0; i < threadCount; i++) {
+            freeSlots.take();
+        }
+
+        LOG.info("Done ({}) in {} ms ", notTimedOut ? "in time" : "timed out", durationInMs);
+
+        runModeLatch.countDown();
+    }
+
+    /**
+     * The project is compiled for java 11, so virtual threads are created by reflection if the runtime supports them.
+     *
+     * @return an executor starting a new virtual thread for each task or, if not supported by the runtime, null
+     */
+    private static ExecutorService createVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    public static boolean isVirtualThreadsSupported() {
+        final ExecutorService executor = createVirtualThreadPerTaskExecutor();
+        if (executor != null) {
+            executor.shutdown();
+            return true;
+        }
+        return false;
+    }
+
+    private ExecutorService newVirtualThreadPerTaskExecutor() {
+        final ExecutorService executor = createVirtualThreadPerTaskExecutor();
+        if (executor == null) {
+            LOG.warn("Virtual threads require java 21 or newer but runtime is java {}, using a pool of {} platform threads instead", System.getProperty("java.version"), threadCount);
+            return Executors.newFixedThreadPool(threadCount);
+        }
+        return executor;
+    }
+
     private void stopReporters() {
         LOG.info("stopReporters");
-        if(consoleReporterPerSecond != null) {
-            consoleReporterPerSecond.stop();
-            LOG.info("consoleReporter stopped");
-        };
-        if(consoleReporterPerRun != null) {
-            consoleReporterPerRun.stop();
-            LOG.info("allConsoleReporter stopped");
-        };
-        if(csvReporterPerSecond != null) {
-            csvReporterPerSecond.stop();
-            LOG.info("csvReporter stopped");
-            LOG.info("If run took more than 1 second, csv-file '{}.csv' saved in folder: {}", timerPerSecondName, csvFolder.getAbsolutePath());
-        };
-        if(csvReporterPerRun != null) {
-            csvReporterPerRun.stop();
-            LOG.info("csvReporterAll stopped");
-            LOG.info("Summary of statistics saved in csv-file '{}.csv' located in folder: {}", timerPerRunName, csvFolder.getAbsolutePath());
-        };
-
+        statsReporter.stop();
+        LOG.info("statsReporter stopped");
     }
 
     private void analysis() {
-        TimeUnit durationUnit = TimeUnit.MILLISECONDS;
-        double durationFactor = 1.0 / durationUnit.toNanos(1);
-
         LOG.info("affected documents: {}", operation.getAffectedDocuments());
-        LOG.info("count: {}", timerPerRun.getCount());
-        LOG.info("FifteenMinuteRate: {}", timerPerRun.getFifteenMinuteRate());//operations per second during 15 minutes
-        LOG.info("FiveMinuteRate: {}", timerPerRun.getFiveMinuteRate());//operations per second during 5 minutes
-        LOG.info("OneMinuteRate: {}", timerPerRun.getOneMinuteRate());//operations per second during 1 minute
-        LOG.info("MeanRate: {}", timerPerRun.getMeanRate());//average operations per second
-        Snapshot snapshot = timerPerRun.getSnapshot();
-        LOG.info("Snapshot 75thPercentile: {}", snapshot.get75thPercentile()*durationFactor);//75% of all operations were faster than x milliseconds
-        LOG.info("Snapshot 95thPercentile: {}", snapshot.get95thPercentile()*durationFactor);//95% of all operations were faster than x milliseconds
-        LOG.info("Snapshot 98thPercentile: {}", snapshot.get98thPercentile()*durationFactor);//98% of all operations were faster than x milliseconds
-        LOG.info("Snapshot 99thPercentile: {}", snapshot.get99thPercentile()*durationFactor);//99% of all operations were faster than x milliseconds
-        LOG.info("Snapshot 999thPercentile: {}", snapshot.get999thPercentile()*durationFactor);//99.9% of all operations were faster than x milliseconds
-        LOG.info("Snapshot Min: {}", snapshot.getMin()*durationFactor);//duration in milliseconds of the fastest operation
-        LOG.info("Snapshot Max: {}", snapshot.getMax()*durationFactor);//duration in milliseconds of the slowest operation
-        LOG.info("Snapshot Mean: {}", snapshot.getMean()*durationFactor);//mean in milliseconds of duration of all operations
-        LOG.info("Snapshot Median: {}", snapshot.getMedian()*durationFactor);//median in milliseconds of duration of all operations
-        LOG.info("Snapshot StdDev: {}", snapshot.getStdDev()*durationFactor);//standard deviation of duration of all operations
-        LOG.info("Snapshot Size: {}", snapshot.size());
+        logReceivedBytes("", operation.getReceivedBytes() - receivedBytesAtMeasurementStart[0], serviceTime);
+        LOG.info("count: {}", serviceTime.getRunHistogram().getTotalCount());
+        LOG.info("errors: {}", serviceTime.getRunErrors());
+        for (ErrorType type : ErrorType.values()) {
+            if(serviceTime.getRunErrors(type) > 0) {
+                LOG.info("{}: {}", type.getColumnName(), serviceTime.getRunErrors(type));
+            }
+        }
+        errorLog.logSummary();
+        LOG.info("MeanRate: {}", serviceTime.getRunHistogram().getTotalCount() / getRunDurationInSeconds());//average operations per second
+        LOG.info("Docs MeanRate: {}", serviceTime.getRunDocs() / getRunDurationInSeconds());//average affected documents per second
+        logMeanPerDocument("", serviceTime);
+        logHistogram("", serviceTime.getRunHistogram());
+        if(responseTime != null) {
+            // response time includes the time operations waited to be started, so it's what clients would see at targetRate
+            LOG.info("TargetRate: {}", targetRate);
+            logHistogram("ResponseTime ", responseTime.getRunHistogram());
+        }
+        if(mixedOperation != null) {
+            for (int i = 0; i < serviceTimes.length; i++) {
+                final String name = mixedOperation.getOperation(i).getName();
+                LOG.info("{} affected documents: {}", name, mixedOperation.getOperation(i).getAffectedDocuments());
+                logReceivedBytes(name + " ", mixedOperation.getOperation(i).getReceivedBytes() - receivedBytesAtMeasurementStart[i + 1], serviceTimes[i]);
+                LOG.info("{} count: {}", name, serviceTimes[i].getRunHistogram().getTotalCount());
+                LOG.info("{} errors: {}", name, serviceTimes[i].getRunErrors());
+                LOG.info("{} MeanRate: {}", name, serviceTimes[i].getRunHistogram().getTotalCount() / getRunDurationInSeconds());
+                logMeanPerDocument(name + " ", serviceTimes[i]);
+                logHistogram(name + " ", serviceTimes[i].getRunHistogram());
+                if(responseTimes[i] != null) {
+                    logHistogram(name + " ResponseTime ", responseTimes[i].getRunHistogram());
+                }
+            }
+        }
+
+        for (TransactionOperation transactionOperation : getTransactionOperations()) {
+            transactionOperation.reportRun(csvFolder);
+        }
+        if(lagRecording != null) {
+            lagRecording.close(getRunDurationInSeconds());
+            for (LatencySeries lag : lags) {
+                LOG.info("{} count: {}", lag.getTag(), lag.getRunHistogram().getTotalCount());
+                logHistogram(lag.getTag() + " ", lag.getRunHistogram());
+            }
+        }
+
+        statsReporter.reportRun();
+
+    }
+
+    /**
+     * @return the operation resp. the mixed operations executing transactions, whose statistics go beyond the latency
+     */
+    private List<TransactionOperation> getTransactionOperations() {
+        final List<TransactionOperation> result = new ArrayList<>();
+        if (operation instanceof TransactionOperation) {
+            result.add((TransactionOperation) operation);
+        }
+        for (int i = 0; mixedOperation != null && i < mixedOperation.getOperationCount(); i++) {
+            if (mixedOperation.getOperation(i) instanceof TransactionOperation) {
+                result.add((TransactionOperation) mixedOperation.getOperation(i));
+            }
+        }
+        return result;
+    }
 
+    public LatencySeries getServiceTime() {
+        return serviceTime;
+    }
 
+    /**
+     * @return series of the response time or null if the operations were not started at a target rate
+     */
+    public LatencySeries getResponseTime() {
+        return responseTime;
+    }
 
-        consoleReporterPerRun.report();
-        csvReporterPerRun.report();
+    /**
+     * @return all series in the order of the reporter, starting with the service time
+     */
+    public List<LatencySeries> getSeries() {
+        return series;
+    }
 
+    public String getHistogramLogPrefix() {
+        return TIMER_PER_SECOND_PREFIX + operation.getName();
+    }
+
+    public Map<String, String> getRunMetadata() {
+        return runMetadata;
+    }
+
+    public File getCsvFolder() {
+        return csvFolder;
+    }
+
+    public double getRunDurationInSeconds() {
+        return Math.max(statsReporter.getLastReportMs() - statsReporter.getStartMs(), 1) / 1000d;
+    }
+
+    /**
+     * Logs the mean latency per affected document, if operations affect more than one document on average, e.g. scans and pages.
+     */
+    private static void logMeanPerDocument(String prefix, LatencySeries series) {
+        final Histogram histogram = series.getRunHistogram();
+        if(series.getRunDocs() > histogram.getTotalCount()) {
+            final double durationFactor = 1.0 / TimeUnit.MILLISECONDS.toNanos(1);
+            LOG.info("{}MeanPerDocument: {}", prefix, histogram.getMean() * histogram.getTotalCount() / series.getRunDocs() * durationFactor);//mean in milliseconds of duration per affected document
+        }
+    }
+
+    private static void logReceivedBytes(String prefix, long receivedBytes, LatencySeries series) {
+        if(receivedBytes > 0) {
+            LOG.info("{}received bytes: {}, per operation: {}", prefix, receivedBytes, receivedBytes / Math.max(series.getRunHistogram().getTotalCount(), 1));
+        }
+    }
+
+    private static void logHistogram(String prefix, Histogram histogram) {
+        final double durationFactor = 1.0 / TimeUnit.MILLISECONDS.toNanos(1);
+        LOG.info("{}75thPercentile: {}", prefix, histogram.getValueAtPercentile(75)*durationFactor);//75% of all operations were faster than x milliseconds
+        LOG.info("{}95thPercentile: {}", prefix, histogram.getValueAtPercentile(95)*durationFactor);//95% of all operations were faster than x milliseconds
+        LOG.info("{}98thPercentile: {}", prefix, histogram.getValueAtPercentile(98)*durationFactor);//98% of all operations were faster than x milliseconds
+        LOG.info("{}99thPercentile: {}", prefix, histogram.getValueAtPercentile(99)*durationFactor);//99% of all operations were faster than x milliseconds
+        LOG.info("{}999thPercentile: {}", prefix, histogram.getValueAtPercentile(99.9)*durationFactor);//99.9% of all operations were faster than x milliseconds
+        LOG.info("{}9999thPercentile: {}", prefix, histogram.getValueAtPercentile(99.99)*durationFactor);//99.99% of all operations were faster than x milliseconds
+        LOG.info("{}Min: {}", prefix, histogram.getMinValue()*durationFactor);//duration in milliseconds of the fastest operation
+        LOG.info("{}Max: {}", prefix, histogram.getMaxValue()*durationFactor);//duration in milliseconds of the slowest operation
+        LOG.info("{}Mean: {}", prefix, histogram.getMean()*durationFactor);//mean in milliseconds of duration of all operations
+        LOG.info("{}Median: {}", prefix, histogram.getValueAtPercentile(50)*durationFactor);//median in milliseconds of duration of all operations
+        LOG.info("{}StdDev: {}", prefix, histogram.getStdDeviation()*durationFactor);//standard deviation of duration of all operations
     }
 
     public static void main(String[] args) throws InterruptedException {
@@ -220,8 +675,8 @@ public class OperationExecutor implements Runnable {
         InsertOperation insertOperation = new InsertOperation(mongoDbAccessor, "testdb", "perf", IOperation.ID);
         OperationExecutor operationExecutor = new OperationExecutor(10, 1000000, 3600, insertOperation, new CountDownLatch(1));
         operationExecutor.executeThreads();
-        operationExecutor.analysis();
         operationExecutor.stopReporters();
+        operationExecutor.analysis();
         mongoDbAccessor.closeConnections();
     }
 }
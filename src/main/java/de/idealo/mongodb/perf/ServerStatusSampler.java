@@ -0,0 +1,193 @@
+package de.idealo.mongodb.perf;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.ReadPreference;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Polls serverStatus of the primary once per second while a test runs and appends the cache, ticket, queue,
+ * connection, network and opcounter metrics to a csv-file. Its column t is the same as in the csv-files of the
+ * statistics, so latency spikes can be lined up with e.g. cache eviction or ticket exhaustion.
+ *
+ * Counters are written as deltas to the previous sample, gauges as they are. Metrics the server doesn't report,
+ * e.g. the WiredTiger metrics of a mongos, are left empty.
+ */
+public class ServerStatusSampler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ServerStatusSampler.class);
+
+    public static final String FILE_PREFIX = "server-status-per-second-";
+
+    private static final Metric[] METRICS = {
+            counter("opcounters_insert", "opcounters", "insert"),
+            counter("opcounters_query", "opcounters", "query"),
+            counter("opcounters_update", "opcounters", "update"),
+            counter("opcounters_delete", "opcounters", "delete"),
+            counter("opcounters_getmore", "opcounters", "getmore"),
+            counter("opcounters_command", "opcounters", "command"),
+            gauge("cache_bytes", "wiredTiger", "cache", "bytes currently in the cache"),
+            gauge("cache_dirty_bytes", "wiredTiger", "cache", "tracked dirty bytes in the cache"),
+            gauge("cache_max_bytes", "wiredTiger", "cache", "maximum bytes configured"),
+            counter("cache_pages_read", "wiredTiger", "cache", "pages read into cache"),
+            counter("cache_pages_written", "wiredTiger", "cache", "pages written from cache"),
+            counter("cache_unmodified_pages_evicted", "wiredTiger", "cache", "unmodified pages evicted"),
+            counter("cache_modified_pages_evicted", "wiredTiger", "cache", "modified pages evicted"),
+            counter("cache_pages_evicted_by_app_threads", "wiredTiger", "cache", "pages evicted by application threads"),
+            // as of MongoDB 7.0, tickets are reported in queues.execution instead of wiredTiger.concurrentTransactions
+            gauge("read_tickets_out", "wiredTiger", "concurrentTransactions", "read", "out").or("queues", "execution", "read", "out"),
+            gauge("read_tickets_available", "wiredTiger", "concurrentTransactions", "read", "available").or("queues", "execution", "read", "available"),
+            gauge("write_tickets_out", "wiredTiger", "concurrentTransactions", "write", "out").or("queues", "execution", "write", "out"),
+            gauge("write_tickets_available", "wiredTiger", "concurrentTransactions", "write", "available").or("queues", "execution", "write", "available"),
+            gauge("queued_readers", "globalLock", "currentQueue", "readers"),
+            gauge("queued_writers", "globalLock", "currentQueue", "writers"),
+            gauge("active_readers", "globalLock", "activeClients", "readers"),
+            gauge("active_writers", "globalLock", "activeClients", "writers"),
+            gauge("connections_current", "connections", "current"),
+            gauge("connections_available", "connections", "available"),
+            counter("connections_created", "connections", "totalCreated"),
+            counter("network_bytes_in", "network", "bytesIn"),
+            counter("network_bytes_out", "network", "bytesOut"),
+            counter("network_requests", "network", "numRequests")
+    };
+    static final String CSV_HEADER = "t," + Arrays.stream(METRICS).map(m -> m.column).collect(Collectors.joining(","));
+
+    private final MongoDbAccessor mongoDbAccessor;
+    private final File file;
+    private final ScheduledExecutorService scheduler;
+    private PrintWriter writer;
+    // values of the previous sample, null if there is none, e.g. because the server was not reachable
+    private Long[] previous;
+    private boolean failing;
+
+    /**
+     *
+     * @param folder folder of the csv-file, the same as the one of the statistics
+     * @param name name of the csv-file, completed by {@link #FILE_PREFIX}, usually the names of the modes sampled for
+     */
+    public ServerStatusSampler(MongoDbAccessor mongoDbAccessor, File folder, String name) {
+        this.mongoDbAccessor = mongoDbAccessor;
+        this.file = new File(folder, FILE_PREFIX + name + ".csv");
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "server-status-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start() {
+        final boolean exists = file.exists() && file.length() > 0;
+        try {
+            writer = new PrintWriter(new FileWriter(file, true), true);
+        } catch (IOException e) {
+            LOG.error("Error while opening csv-file '{}'", file.getAbsolutePath(), e);
+            writer = new PrintWriter(Writer.nullWriter());
+        }
+        if (!exists) {
+            writer.println(CSV_HEADER);
+        }
+        scheduler.scheduleAtFixedRate(this::sample, 0, 1, TimeUnit.SECONDS);
+    }
+
+    public void stop() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer != null) {
+            writer.close();
+        }
+        LOG.info("serverStatus samples saved in csv-file '{}'", file.getAbsolutePath());
+    }
+
+    private void sample() {
+        try {
+            final BasicDBObject command = new BasicDBObject("serverStatus", 1).append("repl", 0).append("metrics", 0).append("locks", 0);
+            final Document status = mongoDbAccessor.runCommand("admin", command, ReadPreference.primaryPreferred());
+            final long nowMs = System.currentTimeMillis();
+            final Long[] values = new Long[METRICS.length];
+            final StringBuilder row = new StringBuilder().append(TimeUnit.MILLISECONDS.toSeconds(nowMs));
+            for (int i = 0; i < METRICS.length; i++) {
+                values[i] = METRICS[i].get(status);
+                row.append(',');
+                if (values[i] != null) {
+                    if (!METRICS[i].counter) {
+                        row.append(values[i]);
+                    } else if (previous != null && previous[i] != null && values[i] >= previous[i]) {
+                        // a smaller value means the server was restarted, so there's no delta
+                        row.append(values[i] - previous[i]);
+                    }
+                }
+            }
+            writer.println(row);
+            previous = values;
+            failing = false;
+        } catch (RuntimeException e) {
+            // an exception would cancel all further executions of the scheduler
+            if (!failing) {
+                LOG.warn("Error while sampling serverStatus, retrying every second", e);
+                failing = true;
+            }
+            previous = null;
+        }
+    }
+
+    private static Metric counter(String column, String... path) {
+        return new Metric(column, true, path);
+    }
+
+    private static Metric gauge(String column, String... path) {
+        return new Metric(column, false, path);
+    }
+
+    private static final class Metric {
+        private final String column;
+        private final boolean counter;
+        private final String[] path;
+        private String[] alternativePath;
+
+        private Metric(String column, boolean counter, String[] path) {
+            this.column = column;
+            this.counter = counter;
+            this.path = path;
+        }
+
+        /**
+         * @param alternativePath path of the metric if the server doesn't report it at the primary path
+         */
+        private Metric or(String... alternativePath) {
+            this.alternativePath = alternativePath;
+            return this;
+        }
+
+        private Long get(Document status) {
+            final Long value = get(status, path);
+            return value != null || alternativePath == null ? value : get(status, alternativePath);
+        }
+
+        private static Long get(Document status, String[] path) {
+            Object value = status;
+            for (String key : path) {
+                if (!(value instanceof Document)) {
+                    return null;
+                }
+                value = ((Document) value).get(key);
+            }
+            return value instanceof Number ? ((Number) value).longValue() : null;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package de.idealo.mongodb.perf;
+
+import de.idealo.mongodb.perf.stats.LatencySeries;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Worker of a distributed test: connects to the {@link Coordinator}, receives the options of the test from it and
+ * executes them. Each set of modes is started on all workers at the start time sent by the coordinator, and the intervals
+ * of all series are sent to the coordinator instead of being written into csv-files and histogram logs.
+ */
+public class Worker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Worker.class);
+
+    public static final String COMMAND = "worker";
+    private static final long CONNECT_TIMEOUT_MS = 60000;
+
+    private final Socket socket;
+    private final DataInputStream in;
+    // written by the stats reporter thread of each mode, thus synchronized
+    private final DataOutputStream out;
+    private final int index;
+    private final int count;
+    private final String[] args;
+
+    /**
+     * Connects to the coordinator, retrying until it accepts connections or the timeout is exceeded, and receives the options of the test.
+     */
+    Worker(String host, int port) throws IOException, InterruptedException {
+        final long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MS;
+        Socket connected = null;
+        while (connected == null) {
+            try {
+                connected = new Socket(host, port);
+            } catch (ConnectException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(1000);
+            }
+        }
+        socket = connected;
+        socket.setTcpNoDelay(true);
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        WorkerProtocol.expect(in, WorkerProtocol.CONFIG);
+        index = in.readInt();
+        count = in.readInt();
+        args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = in.readUTF();
+        }
+        LOG.info("WORKER: connected to coordinator {}:{} as worker {} of {}", host, port, index, count);
+    }
+
+    /**
+     * @return index of this worker, starting at 0
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return number of workers of the test
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Blocks until the coordinator requests to prepare the next set of modes.
+     */
+    void awaitPrepare() throws IOException {
+        WorkerProtocol.expect(in, WorkerProtocol.PREPARE);
+    }
+
+    /**
+     * Lets the executors send their intervals to the coordinator, declares their series to it and blocks until the
+     * start time sent by the coordinator. A start time already passed, e.g. because the clock of this worker is ahead
+     * of the one of the coordinator, starts them at once.
+     */
+    void ready(List<OperationExecutor> operationExecutors) throws IOException {
+        synchronized (out) {
+            out.writeByte(WorkerProtocol.READY);
+            out.writeInt(operationExecutors.size());
+            for (int e = 0; e < operationExecutors.size(); e++) {
+                final OperationExecutor operationExecutor = operationExecutors.get(e);
+                final int executorIndex = e;
+                operationExecutor.setRemoteReporting((seriesIndex, interval, affectedDocs, errors, errorCounts) ->
+                        sendInterval(executorIndex, seriesIndex, interval, affectedDocs, errors, errorCounts));
+                out.writeUTF(operationExecutor.getHistogramLogPrefix());
+                WorkerProtocol.writeMap(out, operationExecutor.getRunMetadata());
+                out.writeInt(operationExecutor.getSeries().size());
+                for (LatencySeries series : operationExecutor.getSeries()) {
+                    out.writeUTF(series.getPerSecondName());
+                    out.writeUTF(series.getPerRunName());
+                    out.writeUTF(series.getTag());
+                }
+            }
+            out.flush();
+        }
+        WorkerProtocol.expect(in, WorkerProtocol.START);
+        final long startAtMs = in.readLong();
+        final long lateMs = System.currentTimeMillis() - startAtMs;
+        if (lateMs > 0) {
+            LOG.warn("WORKER: start time passed {} ms ago, are the clocks of coordinator and worker synchronized?", lateMs);
+        }
+        while (System.currentTimeMillis() < startAtMs) {
+            LockSupport.parkUntil(startAtMs);
+        }
+        LOG.info("WORKER: started by coordinator");
+    }
+
+    private void sendInterval(int executorIndex, int seriesIndex, Histogram interval, long affectedDocs, Histogram errors, long[] errorCounts) {
+        try {
+            synchronized (out) {
+                out.writeByte(WorkerProtocol.INTERVAL);
+                out.writeInt(executorIndex);
+                out.writeInt(seriesIndex);
+                out.writeLong(affectedDocs);
+                out.writeInt(errorCounts.length);
+                for (long errorCount : errorCounts) {
+                    out.writeLong(errorCount);
+                }
+                WorkerProtocol.writeHistogram(out, interval);
+                WorkerProtocol.writeHistogram(out, errors);
+                out.flush();
+            }
+        } catch (IOException e) {
+            LOG.error("WORKER: error while sending interval to coordinator", e);
+        }
+    }
+
+    /**
+     * Tells the coordinator that all modes of the current set are terminated and their last interval has been sent.
+     */
+    void done() throws IOException {
+        synchronized (out) {
+            out.writeByte(WorkerProtocol.DONE);
+            out.flush();
+        }
+    }
+
+    void failed(String message) {
+        try {
+            synchronized (out) {
+                out.writeByte(WorkerProtocol.FAILED);
+                out.writeUTF(String.valueOf(message));
+                out.flush();
+            }
+        } catch (IOException e) {
+            LOG.error("WORKER: error while reporting failure to coordinator", e);
+        }
+    }
+
+    void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            LOG.warn("WORKER: error while closing connection to coordinator", e);
+        }
+    }
+
+    /**
+     * @param args HOST:PORT of the coordinator
+     */
+    public static void main(String... args) {
+        if (args.length != 1 || args[0].lastIndexOf(':') < 1) {
+            LOG.error("Usage: {} HOST:PORT of the coordinator", COMMAND);
+            System.exit(1);
+        }
+        final String host = args[0].substring(0, args[0].lastIndexOf(':'));
+        final int port = Integer.parseInt(args[0].substring(args[0].lastIndexOf(':') + 1));
+        final Worker worker;
+        try {
+            worker = new Worker(host, port);
+        } catch (IOException | InterruptedException e) {
+            LOG.error("WORKER: can't connect to coordinator {}:{}", host, port, e);
+            System.exit(1);
+            return;
+        }
+        try {
+            final Main m = new Main();
+            m.validateInput(worker.args);
+            m.setWorker(worker);
+            m.executeOperations();
+        } finally {
+            worker.close();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package de.idealo.mongodb.perf;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+
+/**
+ * Messages exchanged between the {@link Coordinator} and its {@link Worker}s, each starting with its type.
+ * <pre>
+ * coordinator to worker:
+ *   CONFIG    index, count, options
+ *   PREPARE   create the operations of the next set of modes
+ *   START     start time of the prepared set of modes, in milliseconds since the epoch
+ * worker to coordinator:
+ *   READY     per mode: histogram log prefix, run metadata and its series (csv-file names and tag)
+ *   INTERVAL  mode, series, affected documents, error counts, interval histogram, error histogram
+ *   DONE      all modes of the set are terminated and their last interval has been sent
+ *   FAILED    message
+ * </pre>
+ */
+final class WorkerProtocol {
+
+    static final byte CONFIG = 'C';
+    static final byte PREPARE = 'P';
+    static final byte START = 'S';
+    static final byte READY = 'R';
+    static final byte INTERVAL = 'I';
+    static final byte DONE = 'D';
+    static final byte FAILED = 'F';
+
+    private WorkerProtocol() {
+    }
+
+    static byte readType(DataInputStream in) throws IOException {
+        final int type = in.read();
+        if (type < 0) {
+            throw new EOFException("Connection closed");
+        }
+        return (byte) type;
+    }
+
+    static void expect(DataInputStream in, byte expected) throws IOException {
+        final byte type = readType(in);
+        if (type != expected) {
+            throw new IOException("Expected message '" + (char) expected + "' but received '" + (char) type + "'");
+        }
+    }
+
+    static void writeHistogram(DataOutputStream out, Histogram histogram) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+        final int length = histogram.encodeIntoCompressedByteBuffer(buffer);
+        out.writeInt(length);
+        out.write(buffer.array(), 0, length);
+    }
+
+    static Histogram readHistogram(DataInputStream in) throws IOException {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        try {
+            return Histogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(bytes), 0);
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid histogram: " + e.getMessage(), e);
+        }
+    }
+
+    static void writeMap(DataOutputStream out, Map<String, String> map) throws IOException {
+        out.writeInt(map.size());
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(entry.getValue());
+        }
+    }
+
+    static Map<String, String> readMap(DataInputStream in) throws IOException {
+        final int size = in.readInt();
+        final Map<String, String> map = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            map.put(in.readUTF(), in.readUTF());
+        }
+        return map;
+    }
+}
@@ -0,0 +1,50 @@
+package de.idealo.mongodb.perf.distribution;
+
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A given percentage of the operations query a hot set consisting of a given percentage of the keys, i.e. the smallest ones.
+ * The remaining operations query the remaining keys. Within both sets, keys are chosen uniformly.
+ */
+public class HotspotKeyDistribution implements KeyDistribution {
+
+    static final double DEFAULT_HOT_OPS_PERCENT = 90;
+    static final double DEFAULT_HOT_KEYS_PERCENT = 10;
+
+    private final double hotOpsFraction;
+    private final double hotKeysFraction;
+
+    /**
+     *
+     * @param hotOpsPercent percentage of operations querying the hot set
+     * @param hotKeysPercent percentage of keys belonging to the hot set
+     */
+    public HotspotKeyDistribution(double hotOpsPercent, double hotKeysPercent) {
+        if (!(hotOpsPercent >= 0 && hotOpsPercent <= 100) || !(hotKeysPercent > 0 && hotKeysPercent <= 100)) {
+            throw new IllegalArgumentException("Percentage of hot operations must be between 0 and 100 and percentage of hot keys must be > 0 and <= 100!");
+        }
+        this.hotOpsFraction = hotOpsPercent / 100;
+        this.hotKeysFraction = hotKeysPercent / 100;
+    }
+
+    @Override
+    public long nextKey(long min, long max) {
+        final ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        final long keys = max - min + 1;
+        final long hotKeys = Math.max(1, (long) (keys * hotKeysFraction));
+        if (hotKeys >= keys || rnd.nextDouble() < hotOpsFraction) {
+            return min + rnd.nextLong(hotKeys);
+        }
+        return min + hotKeys + rnd.nextLong(keys - hotKeys);
+    }
+
+    @Override
+    public String getName() {
+        return String.format(Locale.US, "%s-%s-%s", HOTSPOT, format(hotOpsFraction * 100), format(hotKeysFraction * 100));
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) ? Long.toString((long) value) : Double.toString(value);
+    }
+}
@@ -0,0 +1,75 @@
+package de.idealo.mongodb.perf.distribution;
+
+import java.util.Locale;
+
+/**
+ * Chooses the key to be queried by the next operation out of a range of keys.
+ *
+ * Implementations are called by all worker threads of a mode concurrently, so they must be thread-safe
+ * and should neither allocate nor block.
+ */
+public interface KeyDistribution {
+
+    String UNIFORM = "uniform";
+    String ZIPFIAN = "zipfian";
+    String HOTSPOT = "hotspot";
+    String LATEST = "latest";
+    String SEQUENTIAL = "sequential";
+
+    /**
+     *
+     * @param min smallest key (inclusive)
+     * @param max biggest key (inclusive), must be >= min
+     * @return key between min and max
+     */
+    long nextKey(long min, long max);
+
+    /**
+     * @return name and settings of the distribution, as used in the names of the statistics files
+     */
+    String getName();
+
+    /**
+     * Creates a distribution from its specification, i.e. its name optionally followed by its parameters, each separated by a colon:
+     * <ul>
+     * <li>uniform</li>
+     * <li>zipfian[:SKEW]</li>
+     * <li>hotspot[:HOT_OPS_PERCENT:HOT_KEYS_PERCENT]</li>
+     * <li>latest[:SKEW]</li>
+     * <li>sequential</li>
+     * </ul>
+     *
+     * @throws IllegalArgumentException if the specification is invalid
+     */
+    static KeyDistribution parse(String specification) {
+        final String[] parts = specification.trim().toLowerCase(Locale.ENGLISH).split(":");
+        switch (parts[0]) {
+            case UNIFORM:
+                checkParameterCount(specification, parts, 0);
+                return UniformKeyDistribution.INSTANCE;
+            case ZIPFIAN:
+                checkParameterCount(specification, parts, 1);
+                return new ZipfianKeyDistribution(parts.length > 1 ? Double.parseDouble(parts[1]) : ZipfianKeyDistribution.DEFAULT_SKEW);
+            case HOTSPOT:
+                if (parts.length != 1 && parts.length != 3) {
+                    throw new IllegalArgumentException("Distribution " + HOTSPOT + " requires either none or two parameters but got: " + specification);
+                }
+                return parts.length == 1 ? new HotspotKeyDistribution(HotspotKeyDistribution.DEFAULT_HOT_OPS_PERCENT, HotspotKeyDistribution.DEFAULT_HOT_KEYS_PERCENT)
+                        : new HotspotKeyDistribution(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+            case LATEST:
+                checkParameterCount(specification, parts, 1);
+                return new LatestKeyDistribution(parts.length > 1 ? Double.parseDouble(parts[1]) : ZipfianKeyDistribution.DEFAULT_SKEW);
+            case SEQUENTIAL:
+                checkParameterCount(specification, parts, 0);
+                return new SequentialKeyDistribution();
+            default:
+                throw new IllegalArgumentException("Unknown distribution: " + specification);
+        }
+    }
+
+    static void checkParameterCount(String specification, String[] parts, int maxParameters) {
+        if (parts.length - 1 > maxParameters) {
+            throw new IllegalArgumentException("Distribution " + parts[0] + " accepts at most " + maxParameters + " parameter(s) but got: " + specification);
+        }
+    }
+}
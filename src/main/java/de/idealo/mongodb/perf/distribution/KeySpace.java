@@ -0,0 +1,41 @@
+package de.idealo.mongodb.perf.distribution;
+
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Range of the values of a queried field, shared by all operations querying that field.
+ *
+ * The range grows while documents are inserted, so that key distributions like {@link LatestKeyDistribution}
+ * see the recently inserted documents of modes running simultaneously. Widening the range is cheap for keys lying
+ * within the range, so it may be called on every operation.
+ */
+public class KeySpace {
+
+    private final LongAccumulator min = new LongAccumulator(Math::min, Long.MAX_VALUE);
+    private final LongAccumulator max = new LongAccumulator(Math::max, Long.MIN_VALUE);
+
+    public void include(long minKey, long maxKey) {
+        min.accumulate(minKey);
+        max.accumulate(maxKey);
+    }
+
+    public void include(long key) {
+        max.accumulate(key);
+    }
+
+    /**
+     * @return smallest key, or 0 as long as the key space is empty
+     */
+    public long getMin() {
+        final long value = min.get();
+        return value == Long.MAX_VALUE ? 0 : value;
+    }
+
+    /**
+     * @return biggest key, or 0 as long as the key space is empty
+     */
+    public long getMax() {
+        final long value = max.get();
+        return value == Long.MIN_VALUE ? 0 : value;
+    }
+}
@@ -0,0 +1,25 @@
+package de.idealo.mongodb.perf.distribution;
+
+/**
+ * The most recently inserted keys, i.e. the biggest ones, are queried most often, the i-th biggest key being queried
+ * with a probability proportional to 1/i^skew. Since the key space grows while documents are inserted by a mode running
+ * simultaneously, the queries follow the inserts.
+ */
+public class LatestKeyDistribution implements KeyDistribution {
+
+    private final ZipfianSampler sampler;
+
+    public LatestKeyDistribution(double skew) {
+        this.sampler = new ZipfianSampler(skew);
+    }
+
+    @Override
+    public long nextKey(long min, long max) {
+        return max - sampler.nextRank(max - min + 1) + 1;
+    }
+
+    @Override
+    public String getName() {
+        return LATEST + "-" + sampler.getSkew();
+    }
+}
@@ -0,0 +1,22 @@
+package de.idealo.mongodb.perf.distribution;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Chooses one key after the other, starting again at the smallest key after the biggest one,
+ * e.g. to scan the whole collection once or to touch each document equally often.
+ */
+public class SequentialKeyDistribution implements KeyDistribution {
+
+    private final AtomicLong counter = new AtomicLong();
+
+    @Override
+    public long nextKey(long min, long max) {
+        return min + Math.floorMod(counter.getAndIncrement(), max - min + 1);
+    }
+
+    @Override
+    public String getName() {
+        return SEQUENTIAL;
+    }
+}
@@ -0,0 +1,24 @@
+package de.idealo.mongodb.perf.distribution;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Each key is equally likely to be chosen.
+ */
+public class UniformKeyDistribution implements KeyDistribution {
+
+    public static final UniformKeyDistribution INSTANCE = new UniformKeyDistribution();
+
+    private UniformKeyDistribution() {
+    }
+
+    @Override
+    public long nextKey(long min, long max) {
+        return ThreadLocalRandom.current().nextLong(min, max + 1l);//2nd paramter is exlusive, thus add 1
+    }
+
+    @Override
+    public String getName() {
+        return UNIFORM;
+    }
+}
@@ -0,0 +1,54 @@
+package de.idealo.mongodb.perf.distribution;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A few keys are queried very often and most keys rarely, the i-th most popular key being queried with a
+ * probability proportional to 1/i^skew. The bigger the skew, the smaller the hot set.
+ *
+ * The popular keys are scattered over the key space by hashing their rank, as they would be in production,
+ * so that they don't share the same few pages on disk. To keep the popular keys stable, they are chosen among
+ * the keys existing when the distribution is used for the first time. Keys inserted later, e.g. by a mode running
+ * simultaneously, are queried only once the key space has doubled, which chooses the popular keys anew among all keys.
+ * Use {@link LatestKeyDistribution} to query recently inserted keys.
+ */
+public class ZipfianKeyDistribution implements KeyDistribution {
+
+    static final double DEFAULT_SKEW = 0.99;
+
+    private final ZipfianSampler sampler;
+    private final AtomicLong keys = new AtomicLong();
+
+    public ZipfianKeyDistribution(double skew) {
+        this.sampler = new ZipfianSampler(skew);
+    }
+
+    @Override
+    public long nextKey(long min, long max) {
+        if (max < min) {
+            throw new IllegalArgumentException("Key range [" + min + ", " + max + "] is empty!");
+        }
+        final long range = max - min + 1;
+        long n = keys.get();
+        if (n == 0 || range / 2 >= n) {
+            keys.compareAndSet(n, range);
+            n = keys.get();
+        }
+        // the key space may have shrunk or another thread may have seen a bigger one
+        n = Math.min(n, range);
+        final long rank = sampler.nextRank(n);
+        return min + Long.remainderUnsigned(scramble(rank), n);
+    }
+
+    @Override
+    public String getName() {
+        return ZIPFIAN + "-" + sampler.getSkew();
+    }
+
+    // finalizer of SplitMix64, maps consecutive ranks to unrelated values
+    private static long scramble(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,85 @@
+package de.idealo.mongodb.perf.distribution;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Draws ranks from 1 to n where rank k is chosen with a probability proportional to 1/k^skew.
+ *
+ * Uses rejection-inversion sampling (W. Hörmann and G. Derflinger, "Rejection-inversion to generate variates
+ * from monotone discrete distributions", 1996) which takes constant time and memory, independently of n.
+ * Thus n may change from one call to the next, e.g. while documents are inserted.
+ */
+class ZipfianSampler {
+
+    private final double skew;
+    private final double hIntegralX1;
+    private final double s;
+
+    ZipfianSampler(double skew) {
+        if (!(skew > 0) || Double.isInfinite(skew)) {
+            throw new IllegalArgumentException("Skew must be > 0!");
+        }
+        this.skew = skew;
+        this.hIntegralX1 = hIntegral(1.5) - 1d;
+        this.s = 2d - hIntegralInverse(hIntegral(2.5) - h(2));
+    }
+
+    /**
+     * @param n number of ranks, must be >= 1
+     * @return rank between 1 and n, 1 being the most frequent one
+     */
+    long nextRank(long n) {
+        final ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        final double hIntegralN = hIntegral(n + 0.5);
+        while (true) {
+            final double u = hIntegralN + rnd.nextDouble() * (hIntegralX1 - hIntegralN);
+            final double x = hIntegralInverse(u);
+            long k = (long) (x + 0.5);
+            if (k < 1) {
+                k = 1;
+            } else if (k > n) {
+                k = n;
+            }
+            if (k - x <= s || u >= hIntegral(k + 0.5) - h(k)) {
+                return k;
+            }
+        }
+    }
+
+    double getSkew() {
+        return skew;
+    }
+
+    private double h(double x) {
+        return Math.exp(-skew * Math.log(x));
+    }
+
+    private double hIntegral(double x) {
+        final double logX = Math.log(x);
+        return helper2((1d - skew) * logX) * logX;
+    }
+
+    private double hIntegralInverse(double x) {
+        double t = x * (1d - skew);
+        if (t < -1d) {
+            t = -1d;
+        }
+        return Math.exp(helper1(t) * x);
+    }
+
+    // log(1+x)/x, numerically stable for x close to 0
+    private static double helper1(double x) {
+        if (Math.abs(x) > 1e-8) {
+            return Math.log1p(x) / x;
+        }
+        return 1d - x * (0.5 - x * (1d / 3d - 0.25 * x));
+    }
+
+    // (exp(x)-1)/x, numerically stable for x close to 0
+    private static double helper2(double x) {
+        if (Math.abs(x) > 1e-8) {
+            return Math.expm1(x) / x;
+        }
+        return 1d + x * 0.5 * (1d + x * (1d / 3d) * (1d + 0.25 * x));
+    }
+}
@@ -0,0 +1,76 @@
+package de.idealo.mongodb.perf.operations;
+
+import com.mongodb.async.SingleResultCallback;
+import de.idealo.mongodb.perf.MongoDbAccessor;
+import org.bson.RawBsonDocument;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * Base of the operations which can be executed by the sync as well as by the async driver.
+ */
+public abstract class AbstractAsyncOperation extends AbstractOperation implements IAsyncOperation {
+
+    public AbstractAsyncOperation(MongoDbAccessor mongoDbAccessor, String db, String collection, String queriedField) {
+        super(mongoDbAccessor, db, collection, queriedField);
+    }
+
+    /**
+     * Same as {@link #executeQuery(int, long, long, long, long)} but by the async driver, thus without blocking the calling thread.
+     *
+     * @param callback to be called with the number of affected documents once the query has been executed
+     */
+    @SuppressWarnings("deprecation")
+    abstract void executeQueryAsync(int threadId, long threadRunCount, long globalRunCount, long selectorId, long randomId, SingleResultCallback<Long> callback);
+
+    /**
+     * Same as {@link #drain(com.mongodb.client.MongoIterable, Consumer)} but by the async driver.
+     *
+     * @param callback to be called with the number of documents once all of them have been iterated, or with the error it failed with
+     */
+    @SuppressWarnings("deprecation")
+    void drainAsync(com.mongodb.async.client.MongoIterable<RawBsonDocument> iterable, Consumer<RawBsonDocument> onDocument, SingleResultCallback<Long> callback) {
+        // documents and bytes, updated by one event loop thread at a time
+        final long[] result = new long[2];
+        iterable.forEach(
+                document -> {
+                    if (onDocument != null) {
+                        onDocument.accept(document);
+                    }
+                    result[0]++;
+                    result[1] += document.getByteBuffer().remaining();
+                },
+                (v, t) -> {
+                    addReceivedBytes(result[1]);
+                    callback.onResult(result[0], t);
+                });
+    }
+
+    @SuppressWarnings("deprecation")
+    void drainAsync(com.mongodb.async.client.MongoIterable<RawBsonDocument> iterable, SingleResultCallback<Long> callback) {
+        drainAsync(iterable, null, callback);
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void operationAsync(int threadId, long threadRunCount, long globalRunCount, SingleResultCallback<Long> callback) {
+
+        final ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        final long selectorId = nextSelectorId();
+        final long randomId = rnd.nextLong();
+        try {
+            executeQueryAsync(threadId, threadRunCount, globalRunCount, selectorId, randomId, (lAffectedDocs, t) -> {
+                if (t != null) {
+                    callback.onResult(null, t);
+                } else {
+                    addAffectedDocuments(lAffectedDocs);
+                    callback.onResult(lAffectedDocs, null);
+                }
+            });
+        }
+        catch (RuntimeException e) {
+            callback.onResult(null, e);
+        }
+    }
+}
@@ -1,14 +1,23 @@
 package de.idealo.mongodb.perf.operations;
 
 import com.mongodb.BasicDBObject;
+import com.mongodb.ReadConcern;
+import com.mongodb.ReadPreference;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoIterable;
 import com.mongodb.client.model.IndexOptions;
 import de.idealo.mongodb.perf.MongoDbAccessor;
+import de.idealo.mongodb.perf.distribution.KeyDistribution;
+import de.idealo.mongodb.perf.distribution.KeySpace;
+import de.idealo.mongodb.perf.distribution.UniformKeyDistribution;
 import org.bson.Document;
+import org.bson.RawBsonDocument;
 
 import java.util.Random;
 import java.util.concurrent.ThreadLocalRandom;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 /**
  * Created by kay.agahd on 23.11.16.
@@ -17,7 +26,9 @@ public abstract class AbstractOperation implements IOperation{
 
 
     private final Random random = ThreadLocalRandom.current();
-    private final AtomicLong affectedDocs = new AtomicLong();
+    // striped counters, so threads don't contend for them
+    private final LongAdder affectedDocs = new LongAdder();
+    private final LongAdder receivedBytes = new LongAdder();
 
     final String db; 
     final String collection;
@@ -26,8 +37,15 @@ public abstract class AbstractOperation implements IOperation{
     final MongoDbAccessor mongoDbAccessor;
 
     MongoCollection<Document> mongoCollection;
+    @SuppressWarnings("deprecation")
+    volatile com.mongodb.async.client.MongoCollection<Document> asyncMongoCollection;
     long minId;
     long maxId;
+    KeySpace keySpace = new KeySpace();
+    private KeyDistribution keyDistribution = UniformKeyDistribution.INSTANCE;
+    // null to read as configured for the client
+    private ReadPreference readPreference = null;
+    private ReadConcern readConcern = null;
 
     public AbstractOperation(MongoDbAccessor mongoDbAccessor, String db, String collection, String queriedField){
         this.mongoDbAccessor = mongoDbAccessor;
@@ -40,13 +58,14 @@ public abstract class AbstractOperation implements IOperation{
 
     public void initCollectionInfo() 
     {
-        mongoCollection = mongoDbAccessor.getMongoDatabase(db).getCollection(collection);
+        mongoCollection = withReadSettings(mongoDbAccessor.getMongoDatabase(db).getCollection(collection));
 
         final IndexOptions options = new IndexOptions();
         options.background(false);
         mongoCollection.createIndex(new BasicDBObject(queriedField, 1), options);
         minId = getMinMax(mongoDbAccessor, queriedField, true);
         maxId = getMinMax(mongoDbAccessor, queriedField, false);
+        keySpace.include(minId, maxId);
     }
 
     /**
@@ -60,6 +79,34 @@ public abstract class AbstractOperation implements IOperation{
 
     abstract long executeQuery(int threadId, long threadRunCount, long globalRunCount, long selectorId, long randomId);
 
+    @SuppressWarnings("deprecation")
+    com.mongodb.async.client.MongoCollection<Document> getAsyncMongoCollection() {
+        if (asyncMongoCollection == null) {
+            final com.mongodb.async.client.MongoCollection<Document> asyncCollection = mongoDbAccessor.getAsyncMongoDatabase(db).getCollection(collection);
+            asyncMongoCollection = asyncCollection
+                    .withReadPreference(readPreference != null ? readPreference : asyncCollection.getReadPreference())
+                    .withReadConcern(readConcern != null ? readConcern : asyncCollection.getReadConcern());
+        }
+        return asyncMongoCollection;
+    }
+
+    /**
+     * @param readPreference members of a replica set the reads of this operation may be sent to, or null to read as configured for the client
+     * @param readConcern isolation and durability of the data read by this operation, or null to read as configured for the client
+     */
+    public void setReadSettings(ReadPreference readPreference, ReadConcern readConcern) {
+        this.readPreference = readPreference;
+        this.readConcern = readConcern;
+        mongoCollection = withReadSettings(mongoCollection);
+        asyncMongoCollection = null;
+    }
+
+    private MongoCollection<Document> withReadSettings(MongoCollection<Document> mongoCollection) {
+        return mongoCollection
+                .withReadPreference(readPreference != null ? readPreference : mongoCollection.getReadPreference())
+                .withReadConcern(readConcern != null ? readConcern : mongoCollection.getReadConcern());
+    }
+
 
     private long getMinMax(MongoDbAccessor mongoDbAccessor, String field, boolean min){
         final Document document = mongoDbAccessor.getMinMax(mongoCollection, field, min);
@@ -71,10 +118,10 @@ public abstract class AbstractOperation implements IOperation{
     }
 
     @Override
-    public void operation(int threadId, long threadRunCount, long globalRunCount) {
+    public long operation(int threadId, long threadRunCount, long globalRunCount) {
 
         final ThreadLocalRandom rnd = ThreadLocalRandom.current();
-        final long selectorId = rnd.nextLong(minId, maxId+1l);//2nd paramter is exlusive, thus add 1
+        final long selectorId = nextSelectorId();
         final long randomId = rnd.nextLong();
         LOG.debug("{}: {} {}: {} {}: {} selectorId:{} {}: {}",
                 THREAD_ID, threadId,
@@ -84,7 +131,8 @@ public abstract class AbstractOperation implements IOperation{
                 RANDOM_LONG, randomId);
         try {
             final long lAffectedDocs = executeQuery(threadId, threadRunCount, globalRunCount, selectorId, randomId);
-            affectedDocs.addAndGet(lAffectedDocs);
+            affectedDocs.add(lAffectedDocs);
+            return lAffectedDocs;
 
             // buggin'
             // if (random.nextInt(100) < 1) {
@@ -100,7 +148,8 @@ public abstract class AbstractOperation implements IOperation{
                     LOG.error("mongoDbAccessor in illegal state... attempting to fixup collection", ee);
                     initCollectionInfo();
                     final long lAffectedDocs = executeQuery(threadId, threadRunCount, globalRunCount, selectorId, randomId);
-                    affectedDocs.addAndGet(lAffectedDocs);
+                    affectedDocs.add(lAffectedDocs);
+                    return lAffectedDocs;
                 }
                 catch (IllegalStateException eee) {
                     
@@ -110,7 +159,8 @@ public abstract class AbstractOperation implements IOperation{
                         mongoDbAccessor.init();                    
                         initCollectionInfo();
                         final long lAffectedDocs = executeQuery(threadId, threadRunCount, globalRunCount, selectorId, randomId);
-                        affectedDocs.addAndGet(lAffectedDocs);
+                        affectedDocs.add(lAffectedDocs);
+                        return lAffectedDocs;
                     }
                     catch (IllegalStateException eeee) {
                         LOG.error("mongoDbAccessor in illegal state... can't seem to fix it", eee);
@@ -119,14 +169,105 @@ public abstract class AbstractOperation implements IOperation{
                 }
             }
         }
-        catch (Exception e) {
-            LOG.error("error while executing query on field '{}' with value '{}'", queriedField, selectorId, e);
-        } 
+        return 0;
+    }
+
+    public String getQueriedField() {
+        return queriedField;
+    }
+
+    long nextSelectorId() {
+        return keyDistribution.nextKey(keySpace.getMin(), keySpace.getMax());
+    }
+
+    /**
+     * @param keys number of the smallest values of the queried field to select from, or 0 to select from all values
+     */
+    long nextSelectorId(long keys) {
+        final long min = keySpace.getMin();
+        return keyDistribution.nextKey(min, keys > 0 ? Math.min(keySpace.getMax(), min + keys - 1) : keySpace.getMax());
+    }
+
+    /**
+     * Shares the key space of the queried field with other operations, so that all of them see the keys inserted by any of them.
+     */
+    public void setKeySpace(KeySpace keySpace) {
+        keySpace.include(minId, maxId);
+        this.keySpace = keySpace;
+    }
+
+    /**
+     * @param keyDistribution distribution of the values of the queried field, uniform by default
+     */
+    public void setKeyDistribution(KeyDistribution keyDistribution) {
+        this.keyDistribution = keyDistribution;
     }
 
     @Override
     public long getAffectedDocuments() {
-        return affectedDocs.get();
+        return affectedDocs.sum();
+    }
+
+    /**
+     * Iterates all documents of the cursor and counts their bytes as received.
+     *
+     * @param onDocument called with each document, or null
+     * @return number of documents
+     */
+    long drain(MongoIterable<RawBsonDocument> iterable, Consumer<RawBsonDocument> onDocument) {
+        long result = 0;
+        long bytes = 0;
+        try (MongoCursor<RawBsonDocument> cursor = iterable.iterator()) {
+            while (cursor.hasNext()) {
+                final RawBsonDocument document = cursor.next();
+                if (onDocument != null) {
+                    onDocument.accept(document);
+                }
+                bytes += document.getByteBuffer().remaining();
+                result++;
+            }
+        }
+        addReceivedBytes(bytes);
+        return result;
+    }
+
+    long drain(MongoIterable<RawBsonDocument> iterable) {
+        return drain(iterable, null);
+    }
+
+    void addAffectedDocuments(long docs) {
+        affectedDocs.add(docs);
+    }
+
+    void addReceivedBytes(long bytes) {
+        receivedBytes.add(bytes);
+    }
+
+    @Override
+    public long getReceivedBytes() {
+        return receivedBytes.sum();
+    }
+
+    /**
+     * @return name of the mode in the name of the operation, followed by its settings, if any
+     */
+    String getModeName() {
+        return getOperationMode().name();
+    }
+
+    @Override
+    public String getName() {
+        String name = getModeName();
+        if(keyDistribution != UniformKeyDistribution.INSTANCE){
+            name += "-" + keyDistribution.getName();
+        }
+        if(readPreference != null){
+            name += "-" + readPreference.getName();
+        }
+        if(readConcern != null && readConcern.getLevel() != null){
+            name += "-" + readConcern.getLevel().getValue();
+        }
+        return name;
     }
 
 
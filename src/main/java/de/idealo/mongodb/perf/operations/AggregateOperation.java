@@ -0,0 +1,78 @@
+package de.idealo.mongodb.perf.operations;
+
+import com.mongodb.async.SingleResultCallback;
+import com.mongodb.client.AggregateIterable;
+import de.idealo.mongodb.perf.MongoDbAccessor;
+import org.bson.RawBsonDocument;
+
+/**
+ * Runs a user defined aggregation pipeline whose placeholders are filled per operation, e.g. by the value selected
+ * from the queried field. Documents are returned as raw BSON, so they are counted and measured in bytes without
+ * being decoded.
+ */
+public class AggregateOperation extends AbstractAsyncOperation {
+
+    private final PipelineTemplate pipeline;
+    private final String pipelineName;
+    private boolean allowDiskUse = false;
+    private int batchSize = 0;
+
+    /**
+     * @param field field whose values replace the placeholder {@link PipelineTemplate#SELECTOR} in the pipeline
+     * @param pipeline JSON array of the stages of the pipeline
+     * @param pipelineName name of the pipeline within the name of the operation, e.g. the name of the file it was read from
+     * @throws IllegalArgumentException if the pipeline is not a JSON array of documents
+     */
+    public AggregateOperation(MongoDbAccessor mongoDbAccessor, String db, String collection, String field, String pipeline, String pipelineName){
+        super(mongoDbAccessor, db, collection, field);
+        this.pipeline = new PipelineTemplate(pipeline);
+        this.pipelineName = pipelineName;
+        LOG.info("Pipeline of {}: {}", pipelineName, this.pipeline);
+    }
+
+    /**
+     * @param allowDiskUse allow stages to write temporary data to disk if they exceed the memory limit
+     */
+    public void setAllowDiskUse(boolean allowDiskUse) {
+        this.allowDiskUse = allowDiskUse;
+    }
+
+    /**
+     * @param batchSize number of documents per batch of the cursor, 0 for the server's default
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    long executeQuery(int threadId, long threadRunCount, long globalRunCount, long selectorId, long randomId) {
+        final AggregateIterable<RawBsonDocument> iterable = mongoCollection.aggregate(pipeline.fill(selectorId, randomId, threadId, threadRunCount), RawBsonDocument.class)
+                .allowDiskUse(allowDiskUse);
+        if (batchSize > 0) {
+            iterable.batchSize(batchSize);
+        }
+        return drain(iterable);
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    void executeQueryAsync(int threadId, long threadRunCount, long globalRunCount, long selectorId, long randomId, SingleResultCallback<Long> callback) {
+        final com.mongodb.async.client.AggregateIterable<RawBsonDocument> iterable = getAsyncMongoCollection()
+                .aggregate(pipeline.fill(selectorId, randomId, threadId, threadRunCount), RawBsonDocument.class)
+                .allowDiskUse(allowDiskUse);
+        if (batchSize > 0) {
+            iterable.batchSize(batchSize);
+        }
+        drainAsync(iterable, callback);
+    }
+
+    @Override
+    public OperationModes getOperationMode() {
+        return OperationModes.AGGREGATE;
+    }
+
+    @Override
+    String getModeName() {
+        return getOperationMode().name() + "-" + pipelineName;
+    }
+}
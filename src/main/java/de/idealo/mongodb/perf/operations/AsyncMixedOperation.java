@@ -0,0 +1,26 @@
+package de.idealo.mongodb.perf.operations;
+
+import com.mongodb.async.SingleResultCallback;
+
+import java.util.List;
+
+/**
+ * Mixed operation whose operations can all be executed asynchronously, so the mix can be executed by the async engine (-async).
+ */
+public class AsyncMixedOperation extends MixedOperation implements IAsyncOperation {
+
+    public AsyncMixedOperation(List<? extends IAsyncOperation> operations, List<Double> weights) {
+        super(operations, weights);
+    }
+
+    @SuppressWarnings("deprecation")
+    public void operationAsync(int index, int threadId, long localRunCount, SingleResultCallback<Long> callback) {
+        ((IAsyncOperation) operations[index]).operationAsync(threadId, localRunCount, nextGlobalRunCount(index), callback);
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void operationAsync(int threadId, long localRunCount, long globalRunCount, SingleResultCallback<Long> callback) {
+        operationAsync(nextOperationIndex(), threadId, localRunCount, callback);
+    }
+}
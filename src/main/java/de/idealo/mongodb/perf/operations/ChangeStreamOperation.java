@@ -0,0 +1,123 @@
+package de.idealo.mongodb.perf.operations;
+
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import de.idealo.mongodb.perf.MongoDbAccessor;
+import de.idealo.mongodb.perf.stats.LatencySeries;
+import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+import org.bson.conversions.Bson;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Consumes the change stream of the collection by one cursor per thread while other modes write. Writers stamp their
+ * client time into field {@link IOperation#CLIENT_TIME} of each inserted resp. updated document, so the lag from the
+ * write to the delivery of its event is recorded into the lag series given by the executor.
+ *
+ * Each operation waits at most {@link #MAX_AWAIT_MS} for the next event and affects one document per event received,
+ * thus the docs rate is the event throughput. Events of writes of other processes are only lagged correctly if their
+ * clocks are synchronized.
+ */
+public class ChangeStreamOperation extends AbstractOperation implements LagRecording {
+
+    static final long MAX_AWAIT_MS = 1000;
+    static final String LAG_NAME = "change-stream-lag";
+    private static final List<Bson> PIPELINE = Collections.singletonList(Aggregates.match(Filters.in("operationType", Arrays.asList("insert", "update", "replace"))));
+
+    private final Map<Integer, Consumer> consumers = new ConcurrentHashMap<>();
+    // set by the executor once the warm-up is over
+    private volatile LatencySeries lagSeries = null;
+    private final LongAdder eventsWithoutClientTime = new LongAdder();
+
+    public ChangeStreamOperation(MongoDbAccessor mongoDbAccessor, String db, String collection){
+        super(mongoDbAccessor, db, collection, ID);
+    }
+
+    /**
+     * @return the time to be stamped into field {@link IOperation#CLIENT_TIME} by writers, in microseconds since the epoch
+     */
+    public static long clientTime() {
+        final Instant now = Instant.now();
+        return TimeUnit.SECONDS.toMicros(now.getEpochSecond()) + TimeUnit.NANOSECONDS.toMicros(now.getNano());
+    }
+
+    @Override
+    public List<String> getLagNames() {
+        return Collections.singletonList(LAG_NAME);
+    }
+
+    /**
+     * @param lagSeries the series the lag of each event is recorded into, its writer being the thread of the cursor
+     */
+    @Override
+    public void setLagSeries(List<LatencySeries> lagSeries) {
+        for (Consumer consumer : consumers.values()) {
+            consumer.events.reset();
+        }
+        eventsWithoutClientTime.reset();
+        this.lagSeries = lagSeries.get(0);
+    }
+
+    @Override
+    long executeQuery(int threadId, long threadRunCount, long globalRunCount, long selectorId, long randomId) {
+        final Consumer consumer = consumers.computeIfAbsent(threadId, id -> new Consumer(mongoCollection.watch(PIPELINE, RawBsonDocument.class)
+                .maxAwaitTime(MAX_AWAIT_MS, TimeUnit.MILLISECONDS).cursor()));
+        final ChangeStreamDocument<RawBsonDocument> event = consumer.cursor.tryNext();
+        if (event == null) {
+            return 0;
+        }
+        final long deliveredMicros = clientTime();
+        consumer.events.increment();
+        final BsonValue stamp = event.getFullDocument() != null ? event.getFullDocument().get(CLIENT_TIME)
+                : event.getUpdateDescription() != null ? event.getUpdateDescription().getUpdatedFields().get(CLIENT_TIME) : null;
+        if (stamp == null || !stamp.isInt64()) {
+            eventsWithoutClientTime.increment();
+        } else if (lagSeries != null) {
+            // clocks of other processes may be slightly ahead
+            lagSeries.record(threadId - 1, TimeUnit.MICROSECONDS.toNanos(Math.max(deliveredMicros - stamp.asInt64().getValue(), 0)), 1);
+        }
+        return 1;
+    }
+
+    /**
+     * Logs the events received by each cursor and closes the cursors.
+     */
+    @Override
+    public void close(double durationInSeconds) {
+        final Map<Integer, Consumer> sorted = new TreeMap<>(consumers);
+        for (Map.Entry<Integer, Consumer> consumer : sorted.entrySet()) {
+            final long events = consumer.getValue().events.sum();
+            LOG.info("{} cursor {} events: {}, per second: {}", getName(), consumer.getKey(), events, events / durationInSeconds);
+            consumer.getValue().cursor.close();
+        }
+        consumers.clear();
+        if (eventsWithoutClientTime.sum() > 0) {
+            LOG.info("{} events of documents without field '{}', thus without lag: {}", getName(), CLIENT_TIME, eventsWithoutClientTime.sum());
+        }
+    }
+
+    @Override
+    public OperationModes getOperationMode() {
+        return OperationModes.CHANGE_STREAM;
+    }
+
+    private static final class Consumer {
+        private final MongoCursor<ChangeStreamDocument<RawBsonDocument>> cursor;
+        private final LongAdder events = new LongAdder();
+
+        private Consumer(MongoCursor<ChangeStreamDocument<RawBsonDocument>> cursor) {
+            this.cursor = cursor;
+        }
+    }
+}
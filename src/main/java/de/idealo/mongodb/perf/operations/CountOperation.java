@@ -1,5 +1,6 @@
 package de.idealo.mongodb.perf.operations;
 
+import com.mongodb.async.SingleResultCallback;
 import de.idealo.mongodb.perf.MongoDbAccessor;
 
 import static com.mongodb.client.model.Filters.eq;
@@ -7,7 +8,7 @@ import static com.mongodb.client.model.Filters.eq;
 /**
  * Created by kay.agahd on 23.11.16.
  */
-public class CountOperation extends AbstractOperation {
+public class CountOperation extends AbstractAsyncOperation {
 
     public CountOperation(MongoDbAccessor mongoDbAccessor, String db, String collection, String field){
         super(mongoDbAccessor, db, collection, field);
@@ -18,6 +19,12 @@ public class CountOperation extends AbstractOperation {
          return mongoCollection.count(eq(queriedField, selectorId));
     }
 
+    @Override
+    @SuppressWarnings("deprecation")
+    void executeQueryAsync(int threadId, long threadRunCount, long globalRunCount, long selectorId, long randomId, SingleResultCallback<Long> callback) {
+        getAsyncMongoCollection().count(eq(queriedField, selectorId), callback);
+    }
+
     @Override
     public OperationModes getOperationMode(){
         if(IOperation.THREAD_RUN_COUNT.equals(queriedField)) return OperationModes.COUNT_MANY;
@@ -1,6 +1,7 @@
 package de.idealo.mongodb.perf.operations;
 
 import com.mongodb.client.result.DeleteResult;
+import com.mongodb.async.SingleResultCallback;
 import de.idealo.mongodb.perf.MongoDbAccessor;
 
 import static com.mongodb.client.model.Filters.eq;
@@ -8,7 +9,7 @@ import static com.mongodb.client.model.Filters.eq;
 /**
  * Created by kay.agahd on 23.11.16.
  */
-public class DeleteOperation extends AbstractOperation {
+public class DeleteOperation extends AbstractAsyncOperation {
 
 
     public DeleteOperation(MongoDbAccessor mongoDbAccessor, String db, String collection, String field){
@@ -25,6 +26,19 @@ public class DeleteOperation extends AbstractOperation {
 
     }
 
+    @Override
+    @SuppressWarnings("deprecation")
+    void executeQueryAsync(int threadId, long threadRunCount, long globalRunCount, long selectorId, long randomId, SingleResultCallback<Long> callback) {
+        final SingleResultCallback<DeleteResult> resultCallback = (res, t) -> callback.onResult(res!=null?res.getDeletedCount():0l, t);
+        if(THREAD_RUN_COUNT.equals(queriedField)) {
+            getAsyncMongoCollection().deleteMany(eq(queriedField, selectorId), resultCallback);
+        } else if(ID.equals(queriedField)) {
+            getAsyncMongoCollection().deleteOne(eq(queriedField, selectorId), resultCallback);
+        } else {
+            callback.onResult(0l, null);
+        }
+    }
+
     @Override
     public OperationModes getOperationMode() {
         if (IOperation.THREAD_RUN_COUNT.equals(queriedField)) return OperationModes.DELETE_MANY;
@@ -0,0 +1,15 @@
+package de.idealo.mongodb.perf.operations;
+
+import org.bson.RawBsonDocument;
+
+/**
+ * Creates the documents to be inserted, each with the fields queried and updated by the other modes.
+ */
+public interface DocumentGenerator {
+
+    /**
+     * @return BSON encoded document with at least the fields {@link IOperation#ID}, {@link IOperation#THREAD_ID},
+     * {@link IOperation#THREAD_RUN_COUNT}, {@link IOperation#RANDOM_LONG} and {@link IOperation#VERSION}
+     */
+    RawBsonDocument createDocument(long id, int threadId, long threadRunCount, long randomId);
+}
@@ -0,0 +1,119 @@
+package de.idealo.mongodb.perf.operations;
+
+import org.bson.BsonType;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The BSON encoded document inserted by {@link InsertOperation} and the {@link de.idealo.mongodb.perf.DataLoader}, created once with placeholders.
+ *
+ * Each insert copies the encoded bytes and only overwrites the values of the fields which differ from one document to the next,
+ * so neither a {@link Document} has to be built nor encoded by the driver for each insert.
+ */
+public class DocumentTemplate implements DocumentGenerator {
+
+    private final byte[] template;
+    private final int idOffset;
+    private final int threadIdOffset;
+    private final int threadRunCountOffset;
+    private final int randomLongOffset;
+    private final int randomTextOffset;
+    private final PayloadPool payloadPool;
+
+    /**
+     *
+     * @param randomFieldLength length of the random text, absent if 0
+     */
+    public DocumentTemplate(int randomFieldLength) {
+        final Document doc = new Document(IOperation.ID, 0l);
+        doc.put(IOperation.THREAD_ID, 0);
+        doc.put(IOperation.THREAD_RUN_COUNT, 0l);
+        doc.put(IOperation.RANDOM_LONG, 0l);
+        if(randomFieldLength > 0){
+            final char[] placeholder = new char[randomFieldLength];
+            Arrays.fill(placeholder, 'x');
+            doc.put(IOperation.RANDOM_TEXT, new String(placeholder));
+        }
+        doc.put(IOperation.VERSION, Integer.valueOf(1));
+
+        final RawBsonDocument raw = new RawBsonDocument(doc, new DocumentCodec());
+        this.template = new byte[raw.getByteBuffer().remaining()];
+        raw.getByteBuffer().get(template);
+
+        final Map<String, Integer> offsets = valueOffsets(template);
+        this.idOffset = offsets.get(IOperation.ID);
+        this.threadIdOffset = offsets.get(IOperation.THREAD_ID);
+        this.threadRunCountOffset = offsets.get(IOperation.THREAD_RUN_COUNT);
+        this.randomLongOffset = offsets.get(IOperation.RANDOM_LONG);
+        // a string value starts with its length as int32
+        this.randomTextOffset = randomFieldLength > 0 ? offsets.get(IOperation.RANDOM_TEXT) + 4 : -1;
+        this.payloadPool = randomFieldLength > 0 ? new PayloadPool(randomFieldLength) : null;
+    }
+
+    @Override
+    public RawBsonDocument createDocument(long id, int threadId, long threadRunCount, long randomId) {
+        final byte[] bytes = template.clone();
+        putLong(bytes, idOffset, id);
+        putInt(bytes, threadIdOffset, threadId);
+        putLong(bytes, threadRunCountOffset, threadRunCount);
+        putLong(bytes, randomLongOffset, randomId);
+        if(payloadPool != null){
+            payloadPool.copyTo(bytes, randomTextOffset);
+        }
+        return new RawBsonDocument(bytes);
+    }
+
+    /**
+     * @return offsets of the values of the top level fields of the given BSON document, by field name
+     */
+    private static Map<String, Integer> valueOffsets(byte[] bson) {
+        final Map<String, Integer> offsets = new HashMap<>();
+        int pos = 4; // skip document size
+        while (bson[pos] != 0) {
+            final BsonType type = BsonType.findByValue(bson[pos++]);
+            final int nameStart = pos;
+            while (bson[pos] != 0) {
+                pos++;
+            }
+            final String name = new String(bson, nameStart, pos - nameStart);
+            pos++;
+            offsets.put(name, pos);
+            switch (type) {
+                case INT32:
+                    pos += 4;
+                    break;
+                case INT64:
+                    pos += 8;
+                    break;
+                case STRING:
+                    pos += 4 + getInt(bson, pos);
+                    break;
+                default:
+                    throw new IllegalStateException("Unexpected BSON type " + type + " of field " + name);
+            }
+        }
+        return offsets;
+    }
+
+    // BSON is little-endian
+    private static void putLong(byte[] bytes, int offset, long value) {
+        for (int i = 0; i < 8; i++) {
+            bytes[offset + i] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value) {
+        for (int i = 0; i < 4; i++) {
+            bytes[offset + i] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    private static int getInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8 | (bytes[offset + 2] & 0xff) << 16 | (bytes[offset + 3] & 0xff) << 24;
+    }
+}
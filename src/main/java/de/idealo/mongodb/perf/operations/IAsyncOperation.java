@@ -0,0 +1,17 @@
+package de.idealo.mongodb.perf.operations;
+
+import com.mongodb.async.SingleResultCallback;
+
+/**
+ * An operation which can also be executed by the async driver, thus by the async engine (-async).
+ */
+public interface IAsyncOperation extends IOperation {
+
+    /**
+     * Executes the operation by the async driver without blocking the calling thread.
+     *
+     * @param callback to be called with the number of affected documents once the operation has been executed, or with the error it failed with
+     */
+    @SuppressWarnings("deprecation")
+    void operationAsync(int threadId, long localRunCount, long globalRunCount, SingleResultCallback<Long> callback);
+}
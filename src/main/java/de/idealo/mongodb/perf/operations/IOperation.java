@@ -10,12 +10,30 @@ public interface IOperation {
 
     Logger LOG = LoggerFactory.getLogger(IOperation.class);
 
-    void operation(int threadId, long localRunCount, long globalRunCount);
+    /**
+     *
+     * @param threadId
+     * @param localRunCount
+     * @param globalRunCount
+     * @return number of affected documents
+     * @throws RuntimeException if the operation failed, so the caller records it as failed
+     */
+    long operation(int threadId, long localRunCount, long globalRunCount);
 
     OperationModes getOperationMode();
 
+    /**
+     * @return name of the operation as used in the names of the statistics files, i.e. the operation mode optionally followed by its settings
+     */
+    String getName();
+
     long getAffectedDocuments();
 
+    /**
+     * @return number of bytes of the documents returned, or 0 if the operation does not measure them
+     */
+    long getReceivedBytes();
+
     //document field names:
     String ID = "_id";
     String THREAD_ID = "threadId";
@@ -24,4 +42,5 @@ public interface IOperation {
     String RANDOM_LONG = "rnd";
     String RANDOM_TEXT = "rndTxt";
     String VERSION = "v";
+    String CLIENT_TIME = "cts";
 }
@@ -1,56 +1,204 @@
 package de.idealo.mongodb.perf.operations;
 
+import com.mongodb.async.SingleResultCallback;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.InsertManyOptions;
 import de.idealo.mongodb.perf.MongoDbAccessor;
-import org.bson.Document;
+import org.bson.BsonType;
+import org.bson.RawBsonDocument;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Created by kay.agahd on 23.11.16.
  */
-public class InsertOperation extends AbstractOperation {
-
-    private final ThreadLocalRandom random;
-    private int randomFieldLength = 0;
+public class InsertOperation extends AbstractAsyncOperation {
 
+    private DocumentGenerator documentGenerator = new DocumentTemplate(0);
+    private String schemaName = null;
+    // assigned by initCollectionInfo(), which is already called by the super constructor, thus no initializer
+    private MongoCollection<RawBsonDocument> rawMongoCollection;
+    @SuppressWarnings("deprecation")
+    private volatile com.mongodb.async.client.MongoCollection<RawBsonDocument> asyncRawMongoCollection;
+    private boolean bulk = false;
+    private int batchSize = 1;
+    private boolean ordered = true;
+    private int partitionIndex = 0;
+    private int partitionCount = 1;
+    private boolean stampClientTime = false;
 
     public InsertOperation(MongoDbAccessor mongoDbAccessor, String db, String collection, String field){
         super(mongoDbAccessor, db, collection, field);
-        random = ThreadLocalRandom.current();
+    }
+
+    @Override
+    public void initCollectionInfo() {
+        super.initCollectionInfo();
+        rawMongoCollection = mongoCollection.withDocumentClass(RawBsonDocument.class);
+    }
+
+    @SuppressWarnings("deprecation")
+    private com.mongodb.async.client.MongoCollection<RawBsonDocument> getAsyncRawMongoCollection() {
+        if (asyncRawMongoCollection == null) {
+            asyncRawMongoCollection = getAsyncMongoCollection().withDocumentClass(RawBsonDocument.class);
+        }
+        return asyncRawMongoCollection;
     }
 
     @Override
     long executeQuery(int threadId, long threadRunCount, long globalRunCount, long selectorId, long randomId) {
 
-        final Document doc = new Document("_id", maxId + globalRunCount);
-        doc.put(THREAD_ID, threadId);
-        doc.put(THREAD_RUN_COUNT, threadRunCount);
-        doc.put(RANDOM_LONG, randomId);
-        if(randomFieldLength > 0){
-            doc.put(RANDOM_TEXT, generateRandomString(randomFieldLength));
+        if(bulk){
+            return executeBulk(threadId, threadRunCount, globalRunCount, randomId);
         }
-        doc.put(VERSION, Integer.valueOf(1));
 
-        mongoCollection.insertOne(doc);
+        final long id = maxId + slot(globalRunCount);
+        rawMongoCollection.insertOne(createDocument(id, threadId, threadRunCount, randomId));
+        keySpace.include(id);
 
         return 1l;
     }
 
+    @Override
+    @SuppressWarnings("deprecation")
+    void executeQueryAsync(int threadId, long threadRunCount, long globalRunCount, long selectorId, long randomId, SingleResultCallback<Long> callback) {
+
+        if(bulk){
+            getAsyncRawMongoCollection().insertMany(createBatch(threadId, threadRunCount, globalRunCount, randomId), new InsertManyOptions().ordered(ordered),
+                    (v, t) -> {
+                        if (t == null) {
+                            keySpace.include(lastIdOfBatch(globalRunCount));
+                        }
+                        callback.onResult((long) batchSize, t);
+                    });
+            return;
+        }
+
+        final long id = maxId + slot(globalRunCount);
+        getAsyncRawMongoCollection().insertOne(createDocument(id, threadId, threadRunCount, randomId),
+                (v, t) -> {
+                    if (t == null) {
+                        keySpace.include(id);
+                    }
+                    callback.onResult(1l, t);
+                });
+    }
+
+    /**
+     * Inserts batchSize documents at once. Each operation claims its own block of batchSize ids,
+     * so _id and threadRunCount stay unique and gapless as if the documents were inserted one by one.
+     */
+    private long executeBulk(int threadId, long threadRunCount, long globalRunCount, long randomId) {
+        rawMongoCollection.insertMany(createBatch(threadId, threadRunCount, globalRunCount, randomId), new InsertManyOptions().ordered(ordered));
+        keySpace.include(lastIdOfBatch(globalRunCount));
+
+        return batchSize;
+    }
+
+    private long lastIdOfBatch(long globalRunCount) {
+        return maxId + slot(globalRunCount) * batchSize;
+    }
+
+    /**
+     * @return the globalRunCount-th id resp. block of ids of this partition, the partitions taking turns
+     */
+    private long slot(long globalRunCount) {
+        return (globalRunCount - 1) * partitionCount + partitionIndex + 1;
+    }
+
+    private List<RawBsonDocument> createBatch(int threadId, long threadRunCount, long globalRunCount, long randomId) {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final long firstId = maxId + (slot(globalRunCount) - 1) * batchSize + 1;
+        final long firstThreadRunCount = (threadRunCount - 1) * batchSize + 1;
+        final List<RawBsonDocument> docs = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            docs.add(createDocument(firstId + i, threadId, firstThreadRunCount + i, i == 0 ? randomId : random.nextLong()));
+        }
+        return docs;
+    }
+
+    private RawBsonDocument createDocument(long id, int threadId, long threadRunCount, long randomId) {
+        final RawBsonDocument doc = documentGenerator.createDocument(id, threadId, threadRunCount, randomId);
+        return stampClientTime ? appendLong(doc, CLIENT_TIME, ChangeStreamOperation.clientTime()) : doc;
+    }
+
+    /**
+     * @return copy of the given document with an int64 field appended, so any generator's documents can be stamped without being decoded
+     */
+    static RawBsonDocument appendLong(RawBsonDocument doc, String name, long value) {
+        final ByteBuffer source = doc.getByteBuffer().asNIO();
+        final int size = source.remaining();
+        final byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        final byte[] bytes = new byte[size + 1 + nameBytes.length + 1 + 8];
+        // the document without its terminating zero, followed by the new element
+        source.get(bytes, 0, size - 1);
+        final ByteBuffer target = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        target.position(size - 1);
+        target.put((byte) BsonType.INT64.getValue()).put(nameBytes).put((byte) 0).putLong(value).put((byte) 0);
+        target.putInt(0, bytes.length);
+        return new RawBsonDocument(bytes);
+    }
+
     @Override
     public OperationModes getOperationMode(){
-        return OperationModes.INSERT;
+        return bulk ? OperationModes.INSERT_BULK : OperationModes.INSERT;
     };
 
+    @Override
+    public String getName() {
+        final String schemaSuffix = schemaName != null ? "-" + schemaName : "";
+        if(bulk){
+            return getOperationMode().name() + "-" + batchSize + (ordered ? "" : "-unordered") + schemaSuffix;
+        }
+        return super.getName() + schemaSuffix;
+    }
+
     public void setRandomFieldLength(int randomFieldLength){
-        this.randomFieldLength = randomFieldLength;
+        this.documentGenerator = new DocumentTemplate(randomFieldLength);
+    }
+
+    /**
+     * @param stampClientTime add field {@link IOperation#CLIENT_TIME} to the inserted documents, e.g. to measure the lag of change streams
+     */
+    public void setStampClientTime(boolean stampClientTime){
+        this.stampClientTime = stampClientTime;
+    }
+
+    /**
+     * Inserts documents generated by the given schema instead of the flat default documents.
+     */
+    public void setSchema(SchemaTemplate schema){
+        this.documentGenerator = schema;
+        this.schemaName = schema.getName();
+    }
+
+    /**
+     * Switches to bulk mode where each operation inserts batchSize documents by a single insertMany.
+     *
+     * @param batchSize number of documents per operation
+     * @param ordered if false, the server may apply the inserts of a batch in any order and continues after an error
+     */
+    public void setBulk(int batchSize, boolean ordered){
+        this.bulk = true;
+        this.batchSize = batchSize;
+        this.ordered = ordered;
     }
 
-    private String generateRandomString(int length){
-        return random.ints(48,123)
-                .filter(i -> (i < 58) || (i > 64 && i < 91) || (i > 96))
-                .limit(length)
-                .collect(StringBuilder::new, (sb, i) -> sb.append((char) i), StringBuilder::append)
-                .toString();
+    /**
+     * Lets several processes insert into the same collection without id collisions, e.g. the workers of a distributed
+     * test, by interleaving their ids. All of them must start with the same maxId.
+     *
+     * @param index index of this process, starting at 0
+     * @param count number of processes
+     */
+    public void setPartition(int index, int count){
+        this.partitionIndex = index;
+        this.partitionCount = count;
     }
 
 }
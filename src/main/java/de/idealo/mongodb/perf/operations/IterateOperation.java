@@ -1,25 +1,55 @@
 package de.idealo.mongodb.perf.operations;
 
+import com.mongodb.async.SingleResultCallback;
 import com.mongodb.client.MongoCursor;
 import de.idealo.mongodb.perf.MongoDbAccessor;
 import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.util.ArrayList;
+import java.util.List;
 
 import static com.mongodb.client.model.Filters.eq;
-//import static com.mongodb.client.model.Filters.in;
+import static com.mongodb.client.model.Filters.in;
 
 /**
  * Created by kay.agahd on 23.11.16.
  */
-public class IterateOperation extends AbstractOperation {
+public class IterateOperation extends AbstractAsyncOperation {
+
+    private int inKeys = 0;
+    private boolean contiguous = false;
 
     public IterateOperation(MongoDbAccessor mongoDbAccessor, String db, String collection, String field){
         super(mongoDbAccessor, db, collection, field);
     }
 
+    /**
+     * Queries several values per operation by $in instead of a single one by equality.
+     *
+     * @param inKeys number of values per operation
+     * @param contiguous true to query the values following the selected one, false to select each value by the key distribution
+     */
+    public void setInKeys(int inKeys, boolean contiguous) {
+        this.inKeys = inKeys;
+        this.contiguous = contiguous;
+    }
+
+    private Bson filter(long selectorId) {
+        if (inKeys == 0) {
+            return eq(queriedField, selectorId);
+        }
+        final List<Long> keys = new ArrayList<>(inKeys);
+        keys.add(selectorId);
+        for (int i = 1; i < inKeys; i++) {
+            keys.add(contiguous ? selectorId + i : nextSelectorId());
+        }
+        return in(queriedField, keys);
+    }
+
     @Override
     long executeQuery(int threadId, long threadRunCount, long globalRunCount, long selectorId, long randomId){
-        final MongoCursor<Document> cursor = mongoCollection.find(eq(queriedField, selectorId)).iterator();
-        //final MongoCursor<Document> cursor = mongoCollection.find(in(queriedField, selectorId, selectorId+1, selectorId+2, selectorId+3, selectorId+4)).iterator();
+        final MongoCursor<Document> cursor = mongoCollection.find(filter(selectorId)).iterator();
         long result = 0;
         try {
             while (cursor.hasNext()) {
@@ -34,10 +64,28 @@ public class IterateOperation extends AbstractOperation {
         return result;
     }
 
+    @Override
+    @SuppressWarnings("deprecation")
+    void executeQueryAsync(int threadId, long threadRunCount, long globalRunCount, long selectorId, long randomId, SingleResultCallback<Long> callback) {
+        final long[] result = new long[1];
+        getAsyncMongoCollection().find(filter(selectorId)).forEach(
+                doc -> result[0]++,
+                (v, t) -> callback.onResult(result[0], t));
+    }
+
     @Override
     public OperationModes getOperationMode(){
+        if(inKeys > 0) return OperationModes.ITERATE_IN;
         if(IOperation.THREAD_RUN_COUNT.equals(queriedField)) return OperationModes.ITERATE_MANY;
         else return OperationModes.ITERATE_ONE;
     };
 
+    @Override
+    String getModeName() {
+        if(inKeys > 0) {
+            return getOperationMode().name() + "-" + inKeys + (contiguous ? "-contiguous" : "");
+        }
+        return super.getModeName();
+    }
+
 }
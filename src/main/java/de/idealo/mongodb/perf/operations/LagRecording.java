@@ -0,0 +1,30 @@
+package de.idealo.mongodb.perf.operations;
+
+import de.idealo.mongodb.perf.stats.LatencySeries;
+
+import java.util.List;
+
+/**
+ * An operation recording, besides its own latency, the lag until its effect becomes visible elsewhere, e.g. the
+ * delivery of change events or the replication to the members of a replica set. The executor creates one series per
+ * lag name, saved in files [lag name]-per-second-[mode].csv and [lag name]-per-run-[mode].csv.
+ */
+public interface LagRecording {
+
+    /**
+     * @return name of each lag series, e.g. one per member of the replica set
+     */
+    List<String> getLagNames();
+
+    /**
+     * Called once the warm-up is over, so lags before aren't recorded.
+     *
+     * @param lagSeries one series per lag name in the same order, written by the thread of the operation
+     */
+    void setLagSeries(List<LatencySeries> lagSeries);
+
+    /**
+     * Logs what's not part of the lag series and releases the resources of the operation at the end of the run.
+     */
+    void close(double durationInSeconds);
+}
@@ -0,0 +1,133 @@
+package de.idealo.mongodb.perf.operations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executes one of several operations per request, chosen randomly by their weights, so the ratio between
+ * the operations holds regardless of how long each of them takes.
+ *
+ * Each operation gets its own global run count, so e.g. inserted documents get gapless ids
+ * as if the inserts were executed by a mode of their own.
+ */
+public class MixedOperation implements IOperation {
+
+    final IOperation[] operations;
+    private final double[] weights;
+    private final double[] cumulativeWeights;
+    private final AtomicLong[] globalRunCounts;
+
+    /**
+     *
+     * @param operations operations to be mixed
+     * @param weights weight of each operation, the probability of an operation being chosen is its weight divided by the sum of all weights
+     */
+    public MixedOperation(List<? extends IOperation> operations, List<Double> weights) {
+        if (operations.isEmpty() || operations.size() != weights.size()) {
+            throw new IllegalArgumentException("Each of the mixed operations needs a weight");
+        }
+        this.operations = operations.toArray(new IOperation[0]);
+        this.weights = new double[weights.size()];
+        this.cumulativeWeights = new double[weights.size()];
+        this.globalRunCounts = new AtomicLong[weights.size()];
+        double sum = 0;
+        for (int i = 0; i < this.weights.length; i++) {
+            if (!(weights.get(i) > 0) || Double.isInfinite(weights.get(i))) {
+                throw new IllegalArgumentException("Weight of mixed operation " + this.operations[i].getName() + " must be > 0 but was " + weights.get(i));
+            }
+            this.weights[i] = weights.get(i);
+            sum += this.weights[i];
+            cumulativeWeights[i] = sum;
+            globalRunCounts[i] = new AtomicLong();
+        }
+    }
+
+    /**
+     * @return an {@link AsyncMixedOperation} if all operations can be executed asynchronously, otherwise a mixed operation for threads only
+     */
+    public static MixedOperation of(List<? extends IOperation> operations, List<Double> weights) {
+        final List<IAsyncOperation> asyncOperations = new ArrayList<>(operations.size());
+        for (IOperation operation : operations) {
+            if (!(operation instanceof IAsyncOperation)) {
+                return new MixedOperation(operations, weights);
+            }
+            asyncOperations.add((IAsyncOperation) operation);
+        }
+        return new AsyncMixedOperation(asyncOperations, weights);
+    }
+
+    /**
+     * @return index of the operation to be executed next
+     */
+    public int nextOperationIndex() {
+        final double r = ThreadLocalRandom.current().nextDouble(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length - 1; i++) {
+            if (r < cumulativeWeights[i]) {
+                return i;
+            }
+        }
+        return cumulativeWeights.length - 1;
+    }
+
+    public long operation(int index, int threadId, long localRunCount) {
+        return operations[index].operation(threadId, localRunCount, nextGlobalRunCount(index));
+    }
+
+    long nextGlobalRunCount(int index) {
+        return globalRunCounts[index].incrementAndGet();
+    }
+
+    @Override
+    public long operation(int threadId, long localRunCount, long globalRunCount) {
+        return operation(nextOperationIndex(), threadId, localRunCount);
+    }
+
+    public int getOperationCount() {
+        return operations.length;
+    }
+
+    public IOperation getOperation(int index) {
+        return operations[index];
+    }
+
+    @Override
+    public OperationModes getOperationMode() {
+        return OperationModes.MIX;
+    }
+
+    /**
+     * @return e.g. MIX-95xITERATE_ONE-5xUPDATE_ONE
+     */
+    @Override
+    public String getName() {
+        final StringBuilder sb = new StringBuilder(getOperationMode().name());
+        for (int i = 0; i < operations.length; i++) {
+            sb.append('-').append(format(weights[i])).append('x').append(operations[i].getName());
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public long getAffectedDocuments() {
+        long affectedDocs = 0;
+        for (IOperation operation : operations) {
+            affectedDocs += operation.getAffectedDocuments();
+        }
+        return affectedDocs;
+    }
+
+    @Override
+    public long getReceivedBytes() {
+        long receivedBytes = 0;
+        for (IOperation operation : operations) {
+            receivedBytes += operation.getReceivedBytes();
+        }
+        return receivedBytes;
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) ? Long.toString((long) value) : Double.toString(value);
+    }
+}
@@ -0,0 +1,47 @@
+package de.idealo.mongodb.perf.operations;
+
+import com.mongodb.async.SingleResultCallback;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Does nothing but counting, so a run of this operation measures the maximum number of operations per second
+ * the load generator itself is able to execute and record.
+ */
+public class NoopOperation implements IAsyncOperation {
+
+    private final LongAdder affectedDocs = new LongAdder();
+
+    @Override
+    public long operation(int threadId, long localRunCount, long globalRunCount) {
+        affectedDocs.increment();
+        return 1;
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void operationAsync(int threadId, long localRunCount, long globalRunCount, SingleResultCallback<Long> callback) {
+        affectedDocs.increment();
+        callback.onResult(1l, null);
+    }
+
+    @Override
+    public OperationModes getOperationMode() {
+        return OperationModes.NOOP;
+    }
+
+    @Override
+    public String getName() {
+        return getOperationMode().name();
+    }
+
+    @Override
+    public long getAffectedDocuments() {
+        return affectedDocs.sum();
+    }
+
+    @Override
+    public long getReceivedBytes() {
+        return 0;
+    }
+}
@@ -4,5 +4,5 @@ package de.idealo.mongodb.perf.operations;
  * Created by kay.agahd on 24.11.16.
  */
 public enum OperationModes {
-    INSERT, UPDATE_ONE, UPDATE_MANY, COUNT_ONE, COUNT_MANY, ITERATE_ONE, ITERATE_MANY, DELETE_ONE, DELETE_MANY, WAIT
+    INSERT, INSERT_BULK, UPDATE_ONE, UPDATE_MANY, COUNT_ONE, COUNT_MANY, ITERATE_ONE, ITERATE_MANY, ITERATE_IN, DELETE_ONE, DELETE_MANY, RANGE_SCAN, PAGE_SKIP, PAGE_KEYSET, AGGREGATE, QUERY, TRANSACTION, CHANGE_STREAM, VISIBILITY, MIX, NOOP, WAIT
 }
@@ -0,0 +1,164 @@
+package de.idealo.mongodb.perf.operations;
+
+import com.mongodb.async.SingleResultCallback;
+import com.mongodb.client.FindIterable;
+import de.idealo.mongodb.perf.MongoDbAccessor;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+import org.bson.conversions.Bson;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.mongodb.client.model.Filters.gt;
+import static com.mongodb.client.model.Filters.gte;
+import static com.mongodb.client.model.Sorts.ascending;
+
+/**
+ * Pages through the documents sorted by the queried field, one page per operation, so the statistics are per page.
+ * Each thread starts at a selected value and fetches the following pages by its subsequent operations, either by
+ * skipping the documents of the previous pages (skip/limit) or by continuing after the last value of the previous
+ * page (keyset). After the maximum number of pages or the last page, the thread starts over at a newly selected value.
+ */
+public class PageOperation extends AbstractAsyncOperation {
+
+    private final boolean keyset;
+    private final int pageSize;
+    private final int maxPages;
+    private Bson projection = null;
+    private int batchSize = 0;
+    // each thread resp. slot of the async engine pages on its own, never concurrently
+    private final Map<Integer, Pagination> paginations = new ConcurrentHashMap<>();
+
+    /**
+     * @param keyset true to continue after the last value of the previous page, false to skip the documents of the previous pages
+     * @param pageSize number of documents per page
+     * @param maxPages number of pages fetched before starting over at a newly selected value
+     */
+    public PageOperation(MongoDbAccessor mongoDbAccessor, String db, String collection, String field, boolean keyset, int pageSize, int maxPages){
+        super(mongoDbAccessor, db, collection, field);
+        this.keyset = keyset;
+        this.pageSize = pageSize;
+        this.maxPages = maxPages;
+    }
+
+    /**
+     * @param projection JSON document of the fields to be returned, which must include the queried field for keyset pagination, or null to return whole documents
+     */
+    public void setProjection(String projection) {
+        this.projection = projection != null ? BsonDocument.parse(projection) : null;
+    }
+
+    /**
+     * @param batchSize number of documents per batch of the cursor, 0 for the server's default
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Position of a thread resp. slot of the async engine within its pages.
+     */
+    static final class Pagination {
+        private final String field;
+        private final boolean keyset;
+        private final int pageSize;
+        private final int maxPages;
+        private long start;
+        private int page;
+        private BsonValue lastValue;
+
+        Pagination(String field, boolean keyset, int pageSize, int maxPages) {
+            this.field = field;
+            this.keyset = keyset;
+            this.pageSize = pageSize;
+            this.maxPages = maxPages;
+        }
+
+        /**
+         * @param selectorId value the pages start at if the previous pagination is over
+         */
+        void nextPage(long selectorId) {
+            if (page == 0) {
+                start = selectorId;
+                lastValue = null;
+            }
+        }
+
+        Bson filter() {
+            return keyset && lastValue != null ? gt(field, lastValue) : gte(field, start);
+        }
+
+        int skip() {
+            return keyset ? 0 : page * pageSize;
+        }
+
+        /**
+         * @param docs number of documents of the page, 0 if it failed
+         * @param lastValue value of the queried field of the last document of the page, null if it failed or was empty
+         */
+        void pageDone(long docs, BsonValue lastValue) {
+            this.lastValue = lastValue;
+            page = docs < pageSize || page + 1 >= maxPages ? 0 : page + 1;
+        }
+
+        int getPage() {
+            return page;
+        }
+    }
+
+    private Pagination nextPage(int threadId, long selectorId) {
+        final Pagination pagination = paginations.computeIfAbsent(threadId, id -> new Pagination(queriedField, keyset, pageSize, maxPages));
+        pagination.nextPage(selectorId);
+        return pagination;
+    }
+
+    @Override
+    long executeQuery(int threadId, long threadRunCount, long globalRunCount, long selectorId, long randomId) {
+        final Pagination pagination = nextPage(threadId, selectorId);
+        final FindIterable<RawBsonDocument> iterable = mongoCollection.find(pagination.filter(), RawBsonDocument.class)
+                .sort(ascending(queriedField)).skip(pagination.skip()).limit(pageSize).projection(projection);
+        if (batchSize > 0) {
+            iterable.batchSize(batchSize);
+        }
+        final RawBsonDocument[] last = new RawBsonDocument[1];
+        final long result;
+        try {
+            result = drain(iterable, doc -> last[0] = doc);
+        } catch (RuntimeException e) {
+            // a failed page starts over at a newly selected value
+            pagination.pageDone(0, null);
+            throw e;
+        }
+        pagination.pageDone(result, last[0] != null ? last[0].get(queriedField) : null);
+        return result;
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    void executeQueryAsync(int threadId, long threadRunCount, long globalRunCount, long selectorId, long randomId, SingleResultCallback<Long> callback) {
+        final Pagination pagination = nextPage(threadId, selectorId);
+        final com.mongodb.async.client.FindIterable<RawBsonDocument> iterable = getAsyncMongoCollection().find(pagination.filter(), RawBsonDocument.class)
+                .sort(ascending(queriedField)).skip(pagination.skip()).limit(pageSize).projection(projection);
+        if (batchSize > 0) {
+            iterable.batchSize(batchSize);
+        }
+        final RawBsonDocument[] last = new RawBsonDocument[1];
+        drainAsync(iterable, doc -> last[0] = doc, (docs, t) -> {
+            // a failed page starts over at a newly selected value
+            pagination.pageDone(t != null ? 0 : docs, t == null && last[0] != null ? last[0].get(queriedField) : null);
+            callback.onResult(docs, t);
+        });
+    }
+
+    @Override
+    public OperationModes getOperationMode() {
+        return keyset ? OperationModes.PAGE_KEYSET : OperationModes.PAGE_SKIP;
+    }
+
+    @Override
+    String getModeName() {
+        return getOperationMode().name() + "-" + pageSize + (projection != null ? "-projected" : "");
+    }
+}
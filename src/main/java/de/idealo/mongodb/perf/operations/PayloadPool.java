@@ -0,0 +1,50 @@
+package de.idealo.mongodb.perf.operations;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Random alphanumeric text generated once, of which each document gets a slice starting at a random offset,
+ * so that generating random text costs a copy instead of a random number per character.
+ *
+ * The pool is much bigger than a page on disk, so the slices of documents stored side by side hardly overlap
+ * and compress about as badly as text generated for each document.
+ */
+class PayloadPool {
+
+    static final int MIN_POOL_SIZE = 4 * 1024 * 1024;
+    private static final byte[] ALPHANUMERICS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz".getBytes();
+
+    private final byte[] pool;
+    private final int length;
+
+    /**
+     *
+     * @param length number of bytes of each slice
+     */
+    PayloadPool(int length) {
+        this.length = length;
+        this.pool = new byte[Math.max(MIN_POOL_SIZE, 4 * length)];
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < pool.length; i++) {
+            pool[i] = ALPHANUMERICS[random.nextInt(ALPHANUMERICS.length)];
+        }
+    }
+
+    /**
+     * Copies a random slice of the pool to the given position.
+     */
+    void copyTo(byte[] destination, int offset) {
+        System.arraycopy(pool, ThreadLocalRandom.current().nextInt(pool.length - length + 1), destination, offset, length);
+    }
+
+    /**
+     * Copies a random slice of the given length, at most the length of the pool's slices, to the given position.
+     */
+    void copyTo(byte[] destination, int offset, int sliceLength) {
+        System.arraycopy(pool, ThreadLocalRandom.current().nextInt(pool.length - sliceLength + 1), destination, offset, sliceLength);
+    }
+
+    int getLength() {
+        return length;
+    }
+}
@@ -0,0 +1,124 @@
+package de.idealo.mongodb.perf.operations;
+
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonInt64;
+import org.bson.BsonValue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aggregation pipeline parsed once from its JSON, whose placeholders are replaced per operation. A placeholder is a
+ * string value consisting of nothing but {@link #SELECTOR}, {@link #RANDOM}, {@link #THREAD_ID} or
+ * {@link #THREAD_RUN_COUNT}, e.g. <code>[{"$match": {"_id": {"$gte": "#selector"}}}, {"$limit": 100}]</code>.
+ *
+ * Only the stages containing placeholders are copied per operation, the others are shared by all operations.
+ */
+class PipelineTemplate {
+
+    static final String SELECTOR = "#selector";
+    static final String RANDOM = "#random";
+    static final String THREAD_ID = "#threadId";
+    static final String THREAD_RUN_COUNT = "#threadRunCount";
+
+    private final List<BsonDocument> stages;
+    private final boolean[] hasPlaceholders;
+    private final boolean anyPlaceholder;
+
+    /**
+     * @param json JSON array of the stages of the pipeline
+     * @throws IllegalArgumentException if the JSON is not an array of documents
+     */
+    PipelineTemplate(String json) {
+        final BsonArray array;
+        try {
+            array = BsonArray.parse(json);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Pipeline must be a JSON array of stages: " + e.getMessage(), e);
+        }
+        if (array.isEmpty()) {
+            throw new IllegalArgumentException("Pipeline must contain at least one stage!");
+        }
+        final List<BsonDocument> stages = new ArrayList<>(array.size());
+        hasPlaceholders = new boolean[array.size()];
+        boolean any = false;
+        for (int i = 0; i < array.size(); i++) {
+            if (!array.get(i).isDocument()) {
+                throw new IllegalArgumentException("Each stage of the pipeline must be a document but was: " + array.get(i));
+            }
+            stages.add(array.get(i).asDocument());
+            hasPlaceholders[i] = containsPlaceholder(array.get(i));
+            any |= hasPlaceholders[i];
+        }
+        this.stages = Collections.unmodifiableList(stages);
+        this.anyPlaceholder = any;
+    }
+
+    /**
+     * @return the stages of the pipeline with their placeholders replaced by the given values
+     */
+    List<BsonDocument> fill(long selectorId, long randomId, int threadId, long threadRunCount) {
+        if (!anyPlaceholder) {
+            return stages;
+        }
+        final List<BsonDocument> filled = new ArrayList<>(stages.size());
+        for (int i = 0; i < stages.size(); i++) {
+            filled.add(hasPlaceholders[i] ? fill(stages.get(i), selectorId, randomId, threadId, threadRunCount).asDocument() : stages.get(i));
+        }
+        return filled;
+    }
+
+    private static BsonValue fill(BsonValue value, long selectorId, long randomId, int threadId, long threadRunCount) {
+        if (value.isDocument()) {
+            final BsonDocument document = new BsonDocument();
+            for (Map.Entry<String, BsonValue> entry : value.asDocument().entrySet()) {
+                document.append(entry.getKey(), fill(entry.getValue(), selectorId, randomId, threadId, threadRunCount));
+            }
+            return document;
+        }
+        if (value.isArray()) {
+            final BsonArray array = new BsonArray();
+            for (BsonValue element : value.asArray()) {
+                array.add(fill(element, selectorId, randomId, threadId, threadRunCount));
+            }
+            return array;
+        }
+        if (value.isString()) {
+            switch (value.asString().getValue()) {
+                case SELECTOR:
+                    return new BsonInt64(selectorId);
+                case RANDOM:
+                    return new BsonInt64(randomId);
+                case THREAD_ID:
+                    return new BsonInt64(threadId);
+                case THREAD_RUN_COUNT:
+                    return new BsonInt64(threadRunCount);
+                default:
+                    break;
+            }
+        }
+        return value;
+    }
+
+    private static boolean containsPlaceholder(BsonValue value) {
+        if (value.isDocument()) {
+            return value.asDocument().values().stream().anyMatch(PipelineTemplate::containsPlaceholder);
+        }
+        if (value.isArray()) {
+            return value.asArray().stream().anyMatch(PipelineTemplate::containsPlaceholder);
+        }
+        if (value.isString()) {
+            final String s = value.asString().getValue();
+            return s.equals(SELECTOR) || s.equals(RANDOM) || s.equals(THREAD_ID) || s.equals(THREAD_RUN_COUNT);
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return stages.toString();
+    }
+}
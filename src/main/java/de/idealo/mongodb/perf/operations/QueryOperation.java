@@ -0,0 +1,111 @@
+package de.idealo.mongodb.perf.operations;
+
+import com.mongodb.async.SingleResultCallback;
+import com.mongodb.client.FindIterable;
+import de.idealo.mongodb.perf.MongoDbAccessor;
+import org.bson.BsonDocument;
+import org.bson.RawBsonDocument;
+import org.bson.conversions.Bson;
+
+/**
+ * Finds and iterates the documents matching a user defined filter whose placeholders are filled per operation like
+ * those of {@link AggregateOperation}, optionally hinted to use a given index, e.g. one of the declared secondary
+ * indexes. Documents are returned as raw BSON, so they are counted and measured in bytes without being decoded.
+ */
+public class QueryOperation extends AbstractAsyncOperation {
+
+    private final PipelineTemplate filter;
+    private final String filterName;
+    private String hint = null;
+    private Bson sort = null;
+    private Bson projection = null;
+    private int limit = 0;
+    private int batchSize = 0;
+
+    /**
+     * @param field field whose values replace the placeholder {@link PipelineTemplate#SELECTOR} in the filter
+     * @param filter JSON document of the filter, e.g. {"status": "open", "total": {"$gte": "#random"}}
+     * @param filterName name of the filter within the name of the operation, e.g. the name of the file it was read from
+     * @throws IllegalArgumentException if the filter is not a JSON document
+     */
+    public QueryOperation(MongoDbAccessor mongoDbAccessor, String db, String collection, String field, String filter, String filterName){
+        super(mongoDbAccessor, db, collection, field);
+        // a filter is filled like a pipeline of a single stage
+        this.filter = new PipelineTemplate("[" + filter + "]");
+        this.filterName = filterName;
+        LOG.info("Filter of {}: {}", filterName, this.filter);
+    }
+
+    /**
+     * @param hint name of the index to be used, or null to let the query planner choose
+     */
+    public void setHint(String hint) {
+        this.hint = hint;
+    }
+
+    /**
+     * @param sort JSON document of the sort order, or null to return the documents in the order of the index
+     */
+    public void setSort(String sort) {
+        this.sort = sort != null ? BsonDocument.parse(sort) : null;
+    }
+
+    /**
+     * @param projection JSON document of the fields to be returned, or null to return whole documents
+     */
+    public void setProjection(String projection) {
+        this.projection = projection != null ? BsonDocument.parse(projection) : null;
+    }
+
+    /**
+     * @param limit maximum number of documents returned per operation, 0 for all
+     */
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * @param batchSize number of documents per batch of the cursor, 0 for the server's default
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    long executeQuery(int threadId, long threadRunCount, long globalRunCount, long selectorId, long randomId) {
+        final FindIterable<RawBsonDocument> iterable = mongoCollection.find(filter.fill(selectorId, randomId, threadId, threadRunCount).get(0), RawBsonDocument.class)
+                .sort(sort).projection(projection).limit(limit);
+        if (hint != null) {
+            iterable.hintString(hint);
+        }
+        if (batchSize > 0) {
+            iterable.batchSize(batchSize);
+        }
+        return drain(iterable);
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    void executeQueryAsync(int threadId, long threadRunCount, long globalRunCount, long selectorId, long randomId, SingleResultCallback<Long> callback) {
+        final com.mongodb.async.client.FindIterable<RawBsonDocument> iterable = getAsyncMongoCollection()
+                .find(filter.fill(selectorId, randomId, threadId, threadRunCount).get(0), RawBsonDocument.class)
+                .sort(sort).projection(projection).limit(limit);
+        if (hint != null) {
+            iterable.hintString(hint);
+        }
+        if (batchSize > 0) {
+            iterable.batchSize(batchSize);
+        }
+        drainAsync(iterable, callback);
+    }
+
+    @Override
+    public OperationModes getOperationMode() {
+        return OperationModes.QUERY;
+    }
+
+    @Override
+    String getModeName() {
+        return getOperationMode().name() + "-" + filterName + (hint != null ? "-" + hint : "");
+    }
+}
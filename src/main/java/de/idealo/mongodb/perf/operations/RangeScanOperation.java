@@ -0,0 +1,88 @@
+package de.idealo.mongodb.perf.operations;
+
+import com.mongodb.async.SingleResultCallback;
+import com.mongodb.client.FindIterable;
+import de.idealo.mongodb.perf.MongoDbAccessor;
+import org.bson.BsonDocument;
+import org.bson.RawBsonDocument;
+import org.bson.conversions.Bson;
+
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.gte;
+import static com.mongodb.client.model.Filters.lt;
+
+/**
+ * Finds and iterates all documents whose queried field is within a range starting at the selected value, optionally
+ * sorted and projected. Documents are returned as raw BSON, so they are counted and measured in bytes without being decoded.
+ */
+public class RangeScanOperation extends AbstractAsyncOperation {
+
+    private final long rangeWidth;
+    private Bson sort = null;
+    private Bson projection = null;
+    private int batchSize = 0;
+
+    /**
+     * @param rangeWidth number of values of the queried field covered by the range, i.e. from the selected value inclusive to the selected value plus rangeWidth exclusive
+     */
+    public RangeScanOperation(MongoDbAccessor mongoDbAccessor, String db, String collection, String field, long rangeWidth){
+        super(mongoDbAccessor, db, collection, field);
+        this.rangeWidth = rangeWidth;
+    }
+
+    /**
+     * @param sort JSON document of the sort order, e.g. {"rnd": -1}, or null to return the documents in the order of the index
+     */
+    public void setSort(String sort) {
+        this.sort = sort != null ? BsonDocument.parse(sort) : null;
+    }
+
+    /**
+     * @param projection JSON document of the fields to be returned, e.g. {"_id": 1, "v": 1}, or null to return whole documents
+     */
+    public void setProjection(String projection) {
+        this.projection = projection != null ? BsonDocument.parse(projection) : null;
+    }
+
+    /**
+     * @param batchSize number of documents per batch of the cursor, 0 for the server's default
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    private Bson filter(long selectorId) {
+        return and(gte(queriedField, selectorId), lt(queriedField, selectorId + rangeWidth));
+    }
+
+    @Override
+    long executeQuery(int threadId, long threadRunCount, long globalRunCount, long selectorId, long randomId) {
+        final FindIterable<RawBsonDocument> iterable = mongoCollection.find(filter(selectorId), RawBsonDocument.class)
+                .sort(sort).projection(projection);
+        if (batchSize > 0) {
+            iterable.batchSize(batchSize);
+        }
+        return drain(iterable);
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    void executeQueryAsync(int threadId, long threadRunCount, long globalRunCount, long selectorId, long randomId, SingleResultCallback<Long> callback) {
+        final com.mongodb.async.client.FindIterable<RawBsonDocument> iterable = getAsyncMongoCollection().find(filter(selectorId), RawBsonDocument.class)
+                .sort(sort).projection(projection);
+        if (batchSize > 0) {
+            iterable.batchSize(batchSize);
+        }
+        drainAsync(iterable, callback);
+    }
+
+    @Override
+    public OperationModes getOperationMode() {
+        return OperationModes.RANGE_SCAN;
+    }
+
+    @Override
+    String getModeName() {
+        return getOperationMode().name() + "-" + rangeWidth + (sort != null ? "-sorted" : "") + (projection != null ? "-projected" : "");
+    }
+}
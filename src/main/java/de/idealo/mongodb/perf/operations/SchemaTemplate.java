@@ -0,0 +1,393 @@
+package de.idealo.mongodb.perf.operations;
+
+import org.bson.BsonArray;
+import org.bson.BsonBinary;
+import org.bson.BsonBinaryWriter;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.BsonWriter;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonValueCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Document schema parsed once from its JSON and compiled into a tree of generators, which write each document directly
+ * as BSON. Values are copied as they are, except documents containing the key {@link #GENERATOR}, which are replaced
+ * per document by a generated value, e.g.
+ * <code>{"price": {"#gen": "decimal", "min": 1, "max": 500}, "tags": {"#gen": "array", "min": 0, "max": 8, "of": {"#gen": "string", "min": 3, "max": 12}}}</code>.
+ *
+ * Generators: int, long, double and decimal (min inclusive, max exclusive, scale of decimals), string and binary (size),
+ * date (from, to), bool, objectId, choice (values, optional weights) and array (of, size). Sizes are given by either
+ * size or min and max (inclusive) and an optional distribution: uniform (default), normal (mean, stddev) or exponential
+ * (mean), clamped to min and max.
+ *
+ * Each document starts with the fields of the default document except the random text, so the other modes query and
+ * update generated documents the same way.
+ */
+public class SchemaTemplate implements DocumentGenerator {
+
+    static final String GENERATOR = "#gen";
+    private static final List<String> RESERVED_FIELDS = Arrays.asList(IOperation.ID, IOperation.THREAD_ID, IOperation.THREAD_RUN_COUNT, IOperation.RANDOM_LONG, IOperation.VERSION,
+            IOperation.CLIENT_TIME);
+    private static final BsonValueCodec LITERAL_CODEC = new BsonValueCodec();
+    private static final EncoderContext ENCODER_CONTEXT = EncoderContext.builder().build();
+    private static final int MAX_STRING_LENGTH = 16 * 1024 * 1024;
+
+    private final String name;
+    private final String[] fieldNames;
+    private final ValueGenerator[] fieldGenerators;
+    // a pool big enough for the longest string resp. binary of the schema
+    private final PayloadPool payloadPool;
+    private int maxSliceLength = 0;
+    // size of the previous document, so the buffer of the next one hardly ever grows
+    private volatile int expectedSize = 1024;
+
+    /**
+     * @param name name of the schema, e.g. its file name without extension
+     * @param json JSON document of the schema
+     * @throws IllegalArgumentException if the JSON is not a document, a generator is unknown or invalid, or a field of the default document is redefined
+     */
+    public SchemaTemplate(String name, String json) {
+        this.name = name;
+        final BsonDocument schema;
+        try {
+            schema = BsonDocument.parse(json);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Schema must be a JSON document: " + e.getMessage(), e);
+        }
+        fieldNames = new String[schema.size()];
+        fieldGenerators = new ValueGenerator[schema.size()];
+        int i = 0;
+        for (Map.Entry<String, BsonValue> field : schema.entrySet()) {
+            if (RESERVED_FIELDS.contains(field.getKey())) {
+                throw new IllegalArgumentException("Field '" + field.getKey() + "' is set by each insert and must not be defined by the schema!");
+            }
+            fieldNames[i] = field.getKey();
+            fieldGenerators[i] = compile(field.getKey(), field.getValue());
+            i++;
+        }
+        payloadPool = maxSliceLength > 0 ? new PayloadPool(maxSliceLength) : null;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public RawBsonDocument createDocument(long id, int threadId, long threadRunCount, long randomId) {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final BasicOutputBuffer buffer = new BasicOutputBuffer(expectedSize);
+        try (BsonBinaryWriter writer = new BsonBinaryWriter(buffer)) {
+            writer.writeStartDocument();
+            writer.writeInt64(IOperation.ID, id);
+            writer.writeInt32(IOperation.THREAD_ID, threadId);
+            writer.writeInt64(IOperation.THREAD_RUN_COUNT, threadRunCount);
+            writer.writeInt64(IOperation.RANDOM_LONG, randomId);
+            writer.writeInt32(IOperation.VERSION, 1);
+            for (int i = 0; i < fieldNames.length; i++) {
+                writer.writeName(fieldNames[i]);
+                fieldGenerators[i].write(writer, random);
+            }
+            writer.writeEndDocument();
+        }
+        expectedSize = buffer.getPosition() + 64;
+        return new RawBsonDocument(buffer.getInternalBuffer(), 0, buffer.getPosition());
+    }
+
+    /**
+     * @return sizes in bytes of the given number of sample documents: mean, min and max
+     */
+    public long[] sampleSizes(int samples) {
+        long sum = 0;
+        long min = Long.MAX_VALUE;
+        long max = 0;
+        for (int i = 1; i <= samples; i++) {
+            final long size = createDocument(i, 1, i, i).getByteBuffer().remaining();
+            sum += size;
+            min = Math.min(min, size);
+            max = Math.max(max, size);
+        }
+        return new long[]{sum / Math.max(samples, 1), min, max};
+    }
+
+    /**
+     * Writes one value per call.
+     */
+    interface ValueGenerator {
+        void write(BsonWriter writer, ThreadLocalRandom random);
+    }
+
+    private ValueGenerator compile(String path, BsonValue value) {
+        if (value.isDocument() && value.asDocument().containsKey(GENERATOR)) {
+            return compileGenerator(path, value.asDocument());
+        }
+        if (value.isDocument()) {
+            final String[] names = value.asDocument().keySet().toArray(new String[0]);
+            final ValueGenerator[] generators = new ValueGenerator[names.length];
+            for (int i = 0; i < names.length; i++) {
+                generators[i] = compile(path + "." + names[i], value.asDocument().get(names[i]));
+            }
+            return (writer, random) -> {
+                writer.writeStartDocument();
+                for (int i = 0; i < names.length; i++) {
+                    writer.writeName(names[i]);
+                    generators[i].write(writer, random);
+                }
+                writer.writeEndDocument();
+            };
+        }
+        if (value.isArray()) {
+            final BsonArray array = value.asArray();
+            final ValueGenerator[] generators = new ValueGenerator[array.size()];
+            for (int i = 0; i < generators.length; i++) {
+                generators[i] = compile(path + "." + i, array.get(i));
+            }
+            return (writer, random) -> {
+                writer.writeStartArray();
+                for (ValueGenerator generator : generators) {
+                    generator.write(writer, random);
+                }
+                writer.writeEndArray();
+            };
+        }
+        return (writer, random) -> LITERAL_CODEC.encode(writer, value, ENCODER_CONTEXT);
+    }
+
+    private ValueGenerator compileGenerator(String path, BsonDocument spec) {
+        if (!spec.get(GENERATOR).isString()) {
+            throw new IllegalArgumentException("Generator of field '" + path + "' must be a string!");
+        }
+        final String type = spec.getString(GENERATOR).getValue();
+        switch (type) {
+            case "int": {
+                final long min = getLong(path, spec, "min", 0);
+                final long max = getLong(path, spec, "max", Integer.MAX_VALUE);
+                checkRange(path, min, max, Integer.MIN_VALUE, Integer.MAX_VALUE);
+                return (writer, random) -> writer.writeInt32((int) random.nextLong(min, max));
+            }
+            case "long": {
+                final long min = getLong(path, spec, "min", 0);
+                final long max = getLong(path, spec, "max", Long.MAX_VALUE);
+                checkRange(path, min, max, Long.MIN_VALUE, Long.MAX_VALUE);
+                return (writer, random) -> writer.writeInt64(random.nextLong(min, max));
+            }
+            case "double": {
+                final double min = getDouble(path, spec, "min", 0);
+                final double max = getDouble(path, spec, "max", 1);
+                checkRange(path, min, max);
+                return (writer, random) -> writer.writeDouble(random.nextDouble(min, max));
+            }
+            case "decimal": {
+                final double min = getDouble(path, spec, "min", 0);
+                final double max = getDouble(path, spec, "max", 1000);
+                final int scale = (int) getLong(path, spec, "scale", 2);
+                checkRange(path, min, max);
+                return (writer, random) -> writer.writeDecimal128(new Decimal128(BigDecimal.valueOf(random.nextDouble(min, max)).setScale(scale, RoundingMode.HALF_UP)));
+            }
+            case "string": {
+                final SizeDistribution size = SizeDistribution.parse(path, spec, 10, 10);
+                maxSliceLength = Math.max(maxSliceLength, size.max);
+                return (writer, random) -> writer.writeString(new String(nextPayload(size, random), StandardCharsets.US_ASCII));
+            }
+            case "binary": {
+                final SizeDistribution size = SizeDistribution.parse(path, spec, 16, 16);
+                maxSliceLength = Math.max(maxSliceLength, size.max);
+                return (writer, random) -> writer.writeBinaryData(new BsonBinary(nextPayload(size, random)));
+            }
+            case "date": {
+                final long now = System.currentTimeMillis();
+                final long from = getDateTime(path, spec, "from", now - TimeUnit.DAYS.toMillis(365));
+                final long to = getDateTime(path, spec, "to", now);
+                checkRange(path, from, to, Long.MIN_VALUE, Long.MAX_VALUE);
+                return (writer, random) -> writer.writeDateTime(random.nextLong(from, to));
+            }
+            case "bool":
+                return (writer, random) -> writer.writeBoolean(random.nextBoolean());
+            case "objectId":
+                return (writer, random) -> writer.writeObjectId(new ObjectId());
+            case "choice":
+                return compileChoice(path, spec);
+            case "array": {
+                if (!spec.containsKey("of")) {
+                    throw new IllegalArgumentException("Array generator of field '" + path + "' requires the value of its elements (of)!");
+                }
+                final ValueGenerator element = compile(path + ".of", spec.get("of"));
+                final SizeDistribution size = SizeDistribution.parse(path, spec, 0, 10);
+                return (writer, random) -> {
+                    writer.writeStartArray();
+                    for (int i = size.next(random); i > 0; i--) {
+                        element.write(writer, random);
+                    }
+                    writer.writeEndArray();
+                };
+            }
+            default:
+                throw new IllegalArgumentException("Unknown generator '" + type + "' of field '" + path + "'!");
+        }
+    }
+
+    private byte[] nextPayload(SizeDistribution size, ThreadLocalRandom random) {
+        final byte[] bytes = new byte[size.next(random)];
+        // there is no pool if all strings and binaries are empty
+        if (bytes.length > 0) {
+            payloadPool.copyTo(bytes, 0, bytes.length);
+        }
+        return bytes;
+    }
+
+    private ValueGenerator compileChoice(String path, BsonDocument spec) {
+        if (!spec.containsKey("values") || !spec.get("values").isArray() || spec.getArray("values").isEmpty()) {
+            throw new IllegalArgumentException("Choice generator of field '" + path + "' requires a non-empty array of values!");
+        }
+        final BsonArray values = spec.getArray("values");
+        final ValueGenerator[] generators = new ValueGenerator[values.size()];
+        for (int i = 0; i < generators.length; i++) {
+            generators[i] = compile(path + "." + i, values.get(i));
+        }
+        final double[] cumulativeWeights = new double[generators.length];
+        if (spec.containsKey("weights") && !spec.get("weights").isArray()) {
+            throw new IllegalArgumentException("Weights of field '" + path + "' must be an array!");
+        }
+        final BsonArray weights = spec.containsKey("weights") ? spec.getArray("weights") : null;
+        if (weights != null && weights.size() != values.size()) {
+            throw new IllegalArgumentException("Choice generator of field '" + path + "' requires as many weights as values!");
+        }
+        double sum = 0;
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (weights != null && !weights.get(i).isNumber()) {
+                throw new IllegalArgumentException("Weight " + i + " of field '" + path + "' must be a number!");
+            }
+            final double weight = weights != null ? weights.get(i).asNumber().doubleValue() : 1;
+            if (weight < 0) {
+                throw new IllegalArgumentException("Weights of field '" + path + "' must be >= 0!");
+            }
+            sum += weight;
+            cumulativeWeights[i] = sum;
+        }
+        if (!(sum > 0)) {
+            throw new IllegalArgumentException("Weights of field '" + path + "' must sum up to > 0!");
+        }
+        final double total = sum;
+        return (writer, random) -> {
+            int i = Arrays.binarySearch(cumulativeWeights, random.nextDouble(total));
+            i = i >= 0 ? i + 1 : -i - 1;
+            generators[Math.min(i, generators.length - 1)].write(writer, random);
+        };
+    }
+
+    private static long getLong(String path, BsonDocument spec, String key, long defaultValue) {
+        if (!spec.containsKey(key)) {
+            return defaultValue;
+        }
+        if (!spec.get(key).isNumber()) {
+            throw new IllegalArgumentException("Value of '" + key + "' of field '" + path + "' must be a number!");
+        }
+        return spec.get(key).asNumber().longValue();
+    }
+
+    private static double getDouble(String path, BsonDocument spec, String key, double defaultValue) {
+        if (!spec.containsKey(key)) {
+            return defaultValue;
+        }
+        if (!spec.get(key).isNumber()) {
+            throw new IllegalArgumentException("Value of '" + key + "' of field '" + path + "' must be a number!");
+        }
+        return spec.get(key).asNumber().doubleValue();
+    }
+
+    private static long getDateTime(String path, BsonDocument spec, String key, long defaultValue) {
+        if (!spec.containsKey(key)) {
+            return defaultValue;
+        }
+        if (!spec.get(key).isDateTime()) {
+            throw new IllegalArgumentException("Value of '" + key + "' of field '" + path + "' must be a date, e.g. {\"$date\": \"2024-01-01T00:00:00Z\"}!");
+        }
+        return spec.get(key).asDateTime().getValue();
+    }
+
+    private static void checkRange(String path, long min, long max, long lowest, long highest) {
+        if (min >= max || min < lowest || max > highest) {
+            throw new IllegalArgumentException("Range [" + min + ", " + max + ") of field '" + path + "' is empty or out of bounds!");
+        }
+    }
+
+    private static void checkRange(String path, double min, double max) {
+        if (!(min < max)) {
+            throw new IllegalArgumentException("Range [" + min + ", " + max + ") of field '" + path + "' is empty!");
+        }
+    }
+
+    /**
+     * Length of strings and binaries resp. number of array elements.
+     */
+    static final class SizeDistribution {
+        private final String distribution;
+        private final int min;
+        private final int max;
+        private final double mean;
+        private final double stddev;
+
+        private SizeDistribution(String distribution, int min, int max, double mean, double stddev) {
+            this.distribution = distribution;
+            this.min = min;
+            this.max = max;
+            this.mean = mean;
+            this.stddev = stddev;
+        }
+
+        static SizeDistribution parse(String path, BsonDocument spec, int defaultMin, int defaultMax) {
+            final int min;
+            final int max;
+            if (spec.containsKey("size")) {
+                min = (int) getLong(path, spec, "size", defaultMin);
+                max = min;
+            } else {
+                min = (int) getLong(path, spec, "min", defaultMin);
+                max = (int) getLong(path, spec, "max", Math.max(min, defaultMax));
+            }
+            if (min < 0 || max < min || max > MAX_STRING_LENGTH) {
+                throw new IllegalArgumentException("Size [" + min + ", " + max + "] of field '" + path + "' is invalid!");
+            }
+            if (spec.containsKey("distribution") && !spec.get("distribution").isString()) {
+                throw new IllegalArgumentException("Distribution of field '" + path + "' must be a string!");
+            }
+            final String distribution = spec.containsKey("distribution") ? spec.getString("distribution").getValue() : "uniform";
+            final double mean = getDouble(path, spec, "mean", (min + max) / 2d);
+            final double stddev = getDouble(path, spec, "stddev", (max - min) / 6d);
+            if (!distribution.equals("uniform") && !distribution.equals("normal") && !distribution.equals("exponential")) {
+                throw new IllegalArgumentException("Distribution of field '" + path + "' must be uniform, normal or exponential!");
+            }
+            return new SizeDistribution(distribution, min, max, mean, stddev);
+        }
+
+        int next(ThreadLocalRandom random) {
+            if (min == max) {
+                return min;
+            }
+            final double size;
+            switch (distribution) {
+                case "normal":
+                    size = mean + random.nextGaussian() * stddev;
+                    break;
+                case "exponential":
+                    size = -mean * Math.log(1 - random.nextDouble());
+                    break;
+                default:
+                    return random.nextInt(min, max + 1);
+            }
+            return (int) Math.max(min, Math.min(max, Math.round(size)));
+        }
+    }
+}
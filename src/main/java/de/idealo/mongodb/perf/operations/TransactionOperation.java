@@ -0,0 +1,175 @@
+package de.idealo.mongodb.perf.operations;
+
+import com.mongodb.MongoException;
+import com.mongodb.ReadConcern;
+import com.mongodb.ReadPreference;
+import com.mongodb.TransactionOptions;
+import com.mongodb.WriteConcern;
+import com.mongodb.client.ClientSession;
+import de.idealo.mongodb.perf.MongoDbAccessor;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.mongodb.client.model.Filters.eq;
+
+/**
+ * Executes a sequence of reads and writes, each on a randomly selected document, within a multi-document transaction
+ * by {@link ClientSession#withTransaction}, which retries the whole transaction on a TransientTransactionError, e.g. a
+ * write conflict. A write updates the document like {@link UpdateOperation}. The smaller the hot set the documents are
+ * selected from, the more transactions conflict.
+ *
+ * Besides the latency of the whole transaction, i.e. of all its attempts, the latency of the commit, the number of
+ * attempts, write conflicts and finally failed transactions are counted. They are logged and appended to the csv-file
+ * {@link #FILE_PREFIX}[mode].csv at the end of each run. Transactions require a replica set, e.g. a single-node one.
+ */
+public class TransactionOperation extends AbstractOperation {
+
+    public static final String FILE_PREFIX = "transactions-per-run-";
+    static final String CSV_HEADER = "t,hot_set,transactions,failed,attempts,retries,retries_per_transaction,write_conflicts,conflict_percent,abort_percent,"
+            + "commit_mean,commit_p50,commit_p99,commit_max,duration_unit";
+    public static final String DEFAULT_STEPS = "rw";
+    static final char READ = 'r';
+    static final char WRITE = 'w';
+    private static final int WRITE_CONFLICT = 112;
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final TransactionOptions OPTIONS = TransactionOptions.builder()
+            .readPreference(ReadPreference.primary()).readConcern(ReadConcern.SNAPSHOT).writeConcern(WriteConcern.MAJORITY).build();
+
+    private final String steps;
+    private long hotSet = 0;
+    private final LongAdder committed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder attempts = new LongAdder();
+    private final LongAdder writeConflicts = new LongAdder();
+    private final Recorder commitRecorder = new Recorder(3);
+
+    /**
+     * @param steps sequence of {@link #READ} and {@link #WRITE}, e.g. "rrw" to read two documents and to update a third one
+     * @throws IllegalArgumentException if the steps contain anything else
+     */
+    public TransactionOperation(MongoDbAccessor mongoDbAccessor, String db, String collection, String steps){
+        super(mongoDbAccessor, db, collection, ID);
+        this.steps = steps.toLowerCase(Locale.ENGLISH);
+        if (this.steps.isEmpty() || !this.steps.chars().allMatch(c -> c == READ || c == WRITE)) {
+            throw new IllegalArgumentException("Steps of a transaction must be a sequence of '" + READ + "' and '" + WRITE + "' but were: " + steps);
+        }
+    }
+
+    /**
+     * @param hotSet number of the smallest values of {@link #ID} the documents of the transactions are selected from, or 0 to select from all documents
+     */
+    public void setHotSet(long hotSet) {
+        this.hotSet = hotSet;
+    }
+
+    @Override
+    long executeQuery(int threadId, long threadRunCount, long globalRunCount, long selectorId, long randomId) {
+        final long[] bodyEndNanos = new long[1];
+        final long[] attemptCount = new long[1];
+        try (ClientSession session = mongoDbAccessor.startSession()) {
+            final long modified = session.withTransaction(() -> {
+                attemptCount[0]++;
+                try {
+                    long result = 0;
+                    for (int i = 0; i < steps.length(); i++) {
+                        final long id = nextSelectorId(hotSet);
+                        if (steps.charAt(i) == WRITE) {
+                            result += mongoCollection.updateOne(session, eq(ID, id), createUpdate(randomId)).getModifiedCount();
+                        } else {
+                            mongoCollection.find(session, eq(ID, id), RawBsonDocument.class).first();
+                        }
+                    }
+                    bodyEndNanos[0] = System.nanoTime();
+                    return result;
+                } catch (MongoException e) {
+                    if (e.getCode() == WRITE_CONFLICT) {
+                        writeConflicts.increment();
+                    }
+                    throw e;
+                }
+            }, OPTIONS);
+            // the commit is the last thing withTransaction does after the body of the successful attempt
+            commitRecorder.recordValue(System.nanoTime() - bodyEndNanos[0]);
+            committed.increment();
+            return modified;
+        } catch (RuntimeException e) {
+            failed.increment();
+            throw e;
+        } finally {
+            attempts.add(attemptCount[0]);
+        }
+    }
+
+    private Document createUpdate(long randomId) {
+        return new Document("$set", new Document(RANDOM_LONG, randomId))
+                .append("$inc", new Document(VERSION, 1));
+    }
+
+    /**
+     * Forgets the transactions executed so far, e.g. during the warm-up.
+     */
+    public void startMeasurement() {
+        committed.reset();
+        failed.reset();
+        attempts.reset();
+        writeConflicts.reset();
+        commitRecorder.reset();
+    }
+
+    /**
+     * Logs the statistics of the transactions executed since the start of the measurement and appends them to the csv-file.
+     */
+    public void reportRun(File folder) {
+        final Histogram commit = commitRecorder.getIntervalHistogram();
+        final long transactions = committed.sum();
+        final long failures = failed.sum();
+        final long attemptSum = attempts.sum();
+        final long retries = Math.max(attemptSum - transactions - failures, 0);
+        final long conflicts = writeConflicts.sum();
+        final double conflictPercent = attemptSum > 0 ? 100d * conflicts / attemptSum : 0;
+        final double abortPercent = attemptSum > 0 ? 100d * (attemptSum - transactions) / attemptSum : 0;
+        final double retriesPerTransaction = transactions + failures > 0 ? retries / (double) (transactions + failures) : 0;
+        LOG.info("{} transactions: {}, failed: {}, attempts: {}, retries: {}, retries per transaction: {}, write conflicts: {} ({}% of attempts), aborted: {}% of attempts",
+                getName(), transactions, failures, attemptSum, retries, String.format(Locale.US, "%.3f", retriesPerTransaction),
+                conflicts, String.format(Locale.US, "%.3f", conflictPercent), String.format(Locale.US, "%.3f", abortPercent));
+        LOG.info("{} commit Mean: {}, 50p: {}, 99p: {}, Max: {}", getName(), commit.getMean() / NANOS_PER_MILLI,
+                commit.getValueAtPercentile(50) / NANOS_PER_MILLI, commit.getValueAtPercentile(99) / NANOS_PER_MILLI, commit.getMaxValue() / NANOS_PER_MILLI);
+
+        final File file = new File(folder, FILE_PREFIX + getName() + ".csv");
+        final boolean exists = file.exists() && file.length() > 0;
+        try (PrintWriter writer = new PrintWriter(new FileWriter(file, true))) {
+            if (!exists) {
+                writer.println(CSV_HEADER);
+            }
+            writer.println(String.format(Locale.US, "%d,%d,%d,%d,%d,%d,%f,%d,%f,%f,%f,%f,%f,%f,milliseconds",
+                    TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()), hotSet, transactions, failures, attemptSum, retries, retriesPerTransaction,
+                    conflicts, conflictPercent, abortPercent,
+                    commit.getMean() / NANOS_PER_MILLI,
+                    commit.getValueAtPercentile(50) / NANOS_PER_MILLI,
+                    commit.getValueAtPercentile(99) / NANOS_PER_MILLI,
+                    commit.getMaxValue() / NANOS_PER_MILLI));
+        } catch (IOException e) {
+            LOG.error("Error while writing csv-file '{}'", file.getAbsolutePath(), e);
+        }
+    }
+
+    @Override
+    public OperationModes getOperationMode() {
+        return OperationModes.TRANSACTION;
+    }
+
+    @Override
+    String getModeName() {
+        return getOperationMode().name() + "-" + steps + (hotSet > 0 ? "-hot" + hotSet : "");
+    }
+}
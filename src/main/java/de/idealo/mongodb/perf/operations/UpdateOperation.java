@@ -1,6 +1,7 @@
 package de.idealo.mongodb.perf.operations;
 
 import com.mongodb.client.result.UpdateResult;
+import com.mongodb.async.SingleResultCallback;
 import de.idealo.mongodb.perf.MongoDbAccessor;
 import org.bson.Document;
 
@@ -9,7 +10,9 @@ import static com.mongodb.client.model.Filters.eq;
 /**
  * Created by kay.agahd on 23.11.16.
  */
-public class UpdateOperation extends AbstractOperation {
+public class UpdateOperation extends AbstractAsyncOperation {
+
+    private boolean stampClientTime = false;
 
     public UpdateOperation(MongoDbAccessor mongoDbAccessor, String db, String collection, String field){
         super(mongoDbAccessor, db, collection, field);
@@ -18,14 +21,43 @@ public class UpdateOperation extends AbstractOperation {
     @Override
     long executeQuery(int threadId, long threadRunCount, long globalRunCount, long selectorId, long randomId){
 
-        final Document doc = new Document("$set", new Document(RANDOM_LONG, randomId))
-                .append("$inc", new Document(VERSION, 1));
+        final Document doc = createUpdate(randomId);
 
         final UpdateResult res = THREAD_RUN_COUNT.equals(queriedField)?mongoCollection.updateMany(eq(queriedField, selectorId), doc)
                 :ID.equals(queriedField)?mongoCollection.updateOne(eq(queriedField, selectorId), doc):null;
         return res!=null?res.getModifiedCount():0l;
     }
 
+    @Override
+    @SuppressWarnings("deprecation")
+    void executeQueryAsync(int threadId, long threadRunCount, long globalRunCount, long selectorId, long randomId, SingleResultCallback<Long> callback) {
+        final Document doc = createUpdate(randomId);
+        final SingleResultCallback<UpdateResult> resultCallback = (res, t) -> callback.onResult(res!=null?res.getModifiedCount():0l, t);
+        if(THREAD_RUN_COUNT.equals(queriedField)) {
+            getAsyncMongoCollection().updateMany(eq(queriedField, selectorId), doc, resultCallback);
+        } else if(ID.equals(queriedField)) {
+            getAsyncMongoCollection().updateOne(eq(queriedField, selectorId), doc, resultCallback);
+        } else {
+            callback.onResult(0l, null);
+        }
+    }
+
+    /**
+     * @param stampClientTime set field {@link IOperation#CLIENT_TIME} of the updated documents, e.g. to measure the lag of change streams
+     */
+    public void setStampClientTime(boolean stampClientTime) {
+        this.stampClientTime = stampClientTime;
+    }
+
+    private Document createUpdate(long randomId) {
+        final Document set = new Document(RANDOM_LONG, randomId);
+        if (stampClientTime) {
+            set.append(CLIENT_TIME, ChangeStreamOperation.clientTime());
+        }
+        return new Document("$set", set)
+                .append("$inc", new Document(VERSION, 1));
+    }
+
     @Override
     public OperationModes getOperationMode(){
         if(IOperation.THREAD_RUN_COUNT.equals(queriedField)) return OperationModes.UPDATE_MANY;
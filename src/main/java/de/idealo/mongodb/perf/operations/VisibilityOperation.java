@@ -0,0 +1,169 @@
+package de.idealo.mongodb.perf.operations;
+
+import com.mongodb.ReadConcern;
+import com.mongodb.ReadPreference;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.UpdateOptions;
+import de.idealo.mongodb.perf.MongoDbAccessor;
+import de.idealo.mongodb.perf.stats.ErrorType;
+import de.idealo.mongodb.perf.stats.LatencySeries;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.gte;
+import static com.mongodb.client.model.Projections.include;
+import static com.mongodb.client.model.Updates.set;
+
+/**
+ * Probes how long a write takes to become visible on each member of the replica set. Each operation sets the marker
+ * document of its thread in collection {@link #MARKER_COLLECTION} to the next sequence number on the primary and then
+ * polls every member by a direct connection until it returns the new sequence number. The time from the
+ * acknowledgement of the write to the first read returning it is recorded into the lag series of the member,
+ * {@link #LAG_PREFIX}[host_port]. It includes one read round trip, so the lag of the primary is the baseline of the others.
+ *
+ * Polling rounds are separated by a pause growing from {@link #MIN_PAUSE_MICROS} to {@link #MAX_PAUSE_MICROS}, so the
+ * probing threads don't load the secondaries to the point of slowing down the replication they measure. Thus a lag is
+ * overestimated by at most the last pause, i.e. by up to 1 ms once a marker has been polled for a few rounds.
+ *
+ * The latency of the operation covers the write and the polling of all members, so its rate is the write throughput
+ * of the probe. A member not returning the marker within {@link #MAX_WAIT_MS} is recorded as timeout in its lag
+ * series. The read concern of the mode (-rc) applies to the polls, e.g. majority to measure when a write becomes
+ * majority committed on each member.
+ */
+public class VisibilityOperation extends AbstractOperation implements LagRecording {
+
+    public static final String LAG_PREFIX = "replication-lag-";
+    static final String MARKER_COLLECTION = "visibilityMarkers";
+    static final String SEQUENCE = "seq";
+    static final long MAX_WAIT_MS = 10000;
+    static final long MIN_PAUSE_MICROS = 100;
+    static final long MAX_PAUSE_MICROS = 1000;
+    private static final UpdateOptions UPSERT = new UpdateOptions().upsert(true);
+
+    private final MongoCollection<Document> markers;
+    private final List<String> members = new ArrayList<>();
+    private final List<MongoCollection<Document>> memberMarkers = new ArrayList<>();
+    private final List<LongAdder> timeouts = new ArrayList<>();
+    // markers of other processes probing simultaneously, e.g. workers of a distributed test, must not be overwritten
+    private final String probeId = new ObjectId().toHexString();
+    // set by the executor once the warm-up is over
+    private volatile List<LatencySeries> lagSeries = null;
+
+    public VisibilityOperation(MongoDbAccessor mongoDbAccessor, String db, String collection){
+        super(mongoDbAccessor, db, collection, ID);
+        markers = mongoDbAccessor.getMongoDatabase(db).getCollection(MARKER_COLLECTION).withReadPreference(ReadPreference.primary());
+        for (Map.Entry<String, MongoDatabase> member : mongoDbAccessor.getMemberDatabases(db).entrySet()) {
+            members.add(member.getKey());
+            memberMarkers.add(member.getValue().getCollection(MARKER_COLLECTION));
+            timeouts.add(new LongAdder());
+        }
+        LOG.info("{} probes members: {}", getName(), members);
+    }
+
+    /**
+     * @param readPreference ignored since each member is polled by a direct connection
+     * @param readConcern read concern of the polls, or null to poll as configured for the client
+     */
+    @Override
+    public void setReadSettings(ReadPreference readPreference, ReadConcern readConcern) {
+        super.setReadSettings(null, readConcern);
+        if (readConcern != null) {
+            memberMarkers.replaceAll(memberMarker -> memberMarker.withReadConcern(readConcern));
+        }
+    }
+
+    @Override
+    public List<String> getLagNames() {
+        final List<String> result = new ArrayList<>();
+        for (String member : members) {
+            result.add(LAG_PREFIX + member.replace(':', '_'));
+        }
+        return result;
+    }
+
+    /**
+     * @param lagSeries one series per member, in the order of {@link #getLagNames()}
+     */
+    @Override
+    public void setLagSeries(List<LatencySeries> lagSeries) {
+        for (LongAdder timeout : timeouts) {
+            timeout.reset();
+        }
+        this.lagSeries = lagSeries;
+    }
+
+    @Override
+    long executeQuery(int threadId, long threadRunCount, long globalRunCount, long selectorId, long randomId) {
+        final String marker = probeId + "-" + threadId;
+        markers.updateOne(eq(ID, marker), set(SEQUENCE, threadRunCount), UPSERT);
+        final long acknowledgedNanos = System.nanoTime();
+        final Bson filter = and(eq(ID, marker), gte(SEQUENCE, threadRunCount));
+        final boolean[] visible = new boolean[members.size()];
+        int pending = members.size();
+        long pauseMicros = MIN_PAUSE_MICROS;
+        while (pending > 0) {
+            for (int i = 0; i < members.size(); i++) {
+                if (!visible[i] && memberMarkers.get(i).find(filter).projection(include(ID)).first() != null) {
+                    visible[i] = true;
+                    pending--;
+                    record(i, threadId, System.nanoTime() - acknowledgedNanos, null);
+                }
+            }
+            final long waitedNanos = System.nanoTime() - acknowledgedNanos;
+            if (pending > 0 && waitedNanos > TimeUnit.MILLISECONDS.toNanos(MAX_WAIT_MS)) {
+                for (int i = 0; i < members.size(); i++) {
+                    if (!visible[i]) {
+                        timeouts.get(i).increment();
+                        record(i, threadId, waitedNanos, ErrorType.TIMEOUT);
+                    }
+                }
+                break;
+            }
+            if (pending > 0) {
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(pauseMicros));
+                pauseMicros = Math.min(pauseMicros * 2, MAX_PAUSE_MICROS);
+            }
+        }
+        return 1;
+    }
+
+    private void record(int member, int threadId, long lagNanos, ErrorType error) {
+        final List<LatencySeries> series = lagSeries;
+        if (series == null) {
+            return;
+        }
+        if (error != null) {
+            series.get(member).recordError(threadId - 1, lagNanos, error);
+        } else {
+            series.get(member).record(threadId - 1, lagNanos, 1);
+        }
+    }
+
+    /**
+     * Logs the members the marker didn't become visible on in time. The direct connections are closed with the client.
+     */
+    @Override
+    public void close(double durationInSeconds) {
+        for (int i = 0; i < members.size(); i++) {
+            if (timeouts.get(i).sum() > 0) {
+                LOG.warn("{} marker not visible on member {} within {} ms: {} times", getName(), members.get(i), MAX_WAIT_MS, timeouts.get(i).sum());
+            }
+        }
+    }
+
+    @Override
+    public OperationModes getOperationMode() {
+        return OperationModes.VISIBILITY;
+    }
+}
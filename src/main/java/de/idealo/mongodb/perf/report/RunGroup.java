@@ -0,0 +1,107 @@
+package de.idealo.mongodb.perf.report;
+
+import org.HdrHistogram.Histogram;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * One or more runs reported as one, e.g. repeated runs of the same mode: their histograms are merged and their
+ * batches pooled, so the confidence intervals of a comparison cover the variation between the runs, too.
+ */
+final class RunGroup {
+
+    private static final String ERRORS_TAG_SUFFIX = "-errors";
+
+    private final String label;
+    private final List<RunLog> runs = new ArrayList<>();
+
+    RunGroup(String label) {
+        this.label = label;
+    }
+
+    void add(RunLog run) {
+        runs.add(run);
+    }
+
+    String getLabel() {
+        return label;
+    }
+
+    List<RunLog> getRuns() {
+        return runs;
+    }
+
+    Set<String> getTags() {
+        final Set<String> tags = new LinkedHashSet<>();
+        for (RunLog run : runs) {
+            tags.addAll(run.getTags());
+        }
+        return tags;
+    }
+
+    static boolean isErrorTag(String tag) {
+        return tag.endsWith(ERRORS_TAG_SUFFIX);
+    }
+
+    /**
+     * @return histogram of all intervals of the tag of all runs
+     */
+    Histogram merged(String tag) {
+        final Histogram merged = new Histogram(3);
+        for (RunLog run : runs) {
+            for (Histogram interval : run.getIntervals(tag)) {
+                merged.add(interval);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * @return sum of the durations of all runs in seconds, measured by the intervals of the tag resp., since intervals
+     * without errors are not logged, by the intervals of the operations the errors belong to
+     */
+    double durationSeconds(String tag) {
+        final String timedTag = isErrorTag(tag) ? tag.substring(0, tag.length() - ERRORS_TAG_SUFFIX.length()) : tag;
+        double seconds = 0;
+        for (RunLog run : runs) {
+            final List<Histogram> intervals = run.getIntervals(timedTag);
+            if (!intervals.isEmpty()) {
+                seconds += (intervals.get(intervals.size() - 1).getEndTimeStamp() - intervals.get(0).getStartTimeStamp()) / 1000d;
+            }
+        }
+        return seconds;
+    }
+
+    /**
+     * Merges consecutive intervals of each run into batches of at least the given duration. Unlike the intervals of
+     * one second, the batches are hardly correlated to each other, so they can be treated as independent samples.
+     * The last batch of a run is dropped if it is shorter than half the given duration.
+     *
+     * @return batches of all runs
+     */
+    List<Histogram> batches(String tag, long batchMillis) {
+        final List<Histogram> batches = new ArrayList<>();
+        for (RunLog run : runs) {
+            Histogram batch = null;
+            for (Histogram interval : run.getIntervals(tag)) {
+                if (batch == null) {
+                    batch = new Histogram(3);
+                    batch.setStartTimeStamp(interval.getStartTimeStamp());
+                }
+                batch.add(interval);
+                batch.setEndTimeStamp(interval.getEndTimeStamp());
+                if (batch.getEndTimeStamp() - batch.getStartTimeStamp() >= batchMillis) {
+                    batches.add(batch);
+                    batch = null;
+                }
+            }
+            if (batch != null && batch.getEndTimeStamp() - batch.getStartTimeStamp() >= batchMillis / 2) {
+                batches.add(batch);
+            }
+        }
+        return batches;
+    }
+}
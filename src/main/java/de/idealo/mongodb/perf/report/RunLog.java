@@ -0,0 +1,114 @@
+package de.idealo.mongodb.perf.report;
+
+import de.idealo.mongodb.perf.stats.StatsReporter;
+import org.HdrHistogram.EncodableHistogram;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogReader;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * One run read back from its histogram log: the metadata written by the {@link StatsReporter} and the interval
+ * histograms of each tag, e.g. service-time or response-time, in the order they were recorded.
+ */
+public class RunLog {
+
+    // start time appended to the name of the histogram log by the StatsReporter
+    private static final Pattern START_TIME_SUFFIX = Pattern.compile("-\\d{8}-\\d{6}$");
+
+    private final String name;
+    private final String label;
+    private final Map<String, String> metadata;
+    private final Map<String, List<Histogram>> intervals;
+
+    private RunLog(String name, String folder, Map<String, String> metadata, Map<String, List<Histogram>> intervals) {
+        this.name = name;
+        this.label = folder + "/" + START_TIME_SUFFIX.matcher(name).replaceFirst("");
+        this.metadata = Collections.unmodifiableMap(metadata);
+        this.intervals = Collections.unmodifiableMap(intervals);
+    }
+
+    /**
+     * @param file histogram log of a run
+     * @throws IOException if the file can't be read or doesn't contain any histogram
+     */
+    public static RunLog read(File file) throws IOException {
+        final Map<String, String> metadata = new LinkedHashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.US_ASCII)) {
+            String line;
+            while ((line = reader.readLine()) != null && line.startsWith("#")) {
+                if (line.startsWith(StatsReporter.RUN_METADATA_PREFIX)) {
+                    final String entry = line.substring(StatsReporter.RUN_METADATA_PREFIX.length());
+                    final int separator = entry.indexOf('=');
+                    if (separator > 0) {
+                        metadata.put(entry.substring(0, separator), entry.substring(separator + 1));
+                    }
+                }
+            }
+        }
+        final Map<String, List<Histogram>> intervals = new LinkedHashMap<>();
+        final HistogramLogReader reader = new HistogramLogReader(file);
+        try {
+            EncodableHistogram histogram;
+            while ((histogram = reader.nextIntervalHistogram()) != null) {
+                if (histogram instanceof Histogram) {
+                    final String tag = histogram.getTag() != null ? histogram.getTag() : "untagged";
+                    intervals.computeIfAbsent(tag, t -> new ArrayList<>()).add((Histogram) histogram);
+                }
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Error while reading histogram log '" + file + "': " + e.getMessage(), e);
+        } finally {
+            reader.close();
+        }
+        if (intervals.isEmpty()) {
+            throw new IOException("Histogram log '" + file + "' doesn't contain any histogram");
+        }
+        final String fileName = file.getName();
+        final String name = fileName.endsWith(StatsReporter.HISTOGRAM_LOG_SUFFIX) ? fileName.substring(0, fileName.length() - StatsReporter.HISTOGRAM_LOG_SUFFIX.length()) : fileName;
+        final File folder = file.getAbsoluteFile().getParentFile();
+        return new RunLog(name, folder != null ? folder.getName() : "", metadata, intervals);
+    }
+
+    /**
+     * @return name of the histogram log without suffix, e.g. stats-per-second-UPDATE_ONE-20240101-120000
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return name of the folder and name without the start time, thus the same for all runs of the same mode in the same folder, e.g. old-hardware/stats-per-second-UPDATE_ONE
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    public Map<String, String> getMetadata() {
+        return metadata;
+    }
+
+    /**
+     * @return tags in the order of their first interval
+     */
+    public List<String> getTags() {
+        return new ArrayList<>(intervals.keySet());
+    }
+
+    /**
+     * @return interval histograms of the tag, with absolute start and end time stamps in milliseconds, empty if the tag is unknown
+     */
+    public List<Histogram> getIntervals(String tag) {
+        return intervals.getOrDefault(tag, Collections.emptyList());
+    }
+}
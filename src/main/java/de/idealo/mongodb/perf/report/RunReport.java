@@ -0,0 +1,320 @@
+package de.idealo.mongodb.perf.report;
+
+import org.HdrHistogram.Histogram;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Subcommand {@value #COMMAND}: reads the histogram logs of one or more runs and writes a static HTML report of their
+ * throughput and latency tables and plots. Runs of the same mode can be merged, and each run resp. merged group can be
+ * compared with the first one: the difference of throughput, mean and p99 latency is given with its 95% confidence
+ * interval, computed from batches of consecutive seconds, so a regression can be told apart from noise.
+ */
+public class RunReport {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RunReport.class);
+
+    public static final String COMMAND = "report";
+    static final String DEFAULT_OUTPUT = "report.html";
+    static final long DEFAULT_BATCH_SECONDS = 10;
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+    private static final String[] SHOWN_METADATA = {"mode", "threads", "rate", "engine", "server", "client_host", "driver"};
+
+    private final List<RunGroup> groups;
+    private final boolean compare;
+    private final long batchSeconds;
+
+    /**
+     * @param groups runs resp. groups of merged runs, the first one being the baseline of the comparison
+     * @param compare compare each group with the first one
+     * @param batchSeconds minimum duration of the batches whose throughput and latency are the samples of the comparison
+     */
+    RunReport(List<RunGroup> groups, boolean compare, long batchSeconds) {
+        this.groups = groups;
+        this.compare = compare;
+        this.batchSeconds = batchSeconds;
+    }
+
+    public static void main(String... args) {
+        final Options cliOptions = new Options()
+                .addOption(new Option("H", "help", false, "print this help"))
+                .addOption(Option.builder("o").longOpt("output").hasArg().argName("FILE").desc("HTML file of the report (default " + DEFAULT_OUTPUT + ")").build())
+                .addOption(new Option("merge", "merge", false, "merge the runs of the same mode in the same folder, i.e. histogram logs whose names differ by their start time only"))
+                .addOption(new Option("compare", "compare", false, "compare each run resp. merged group of runs with the first one, including 95% confidence intervals of the differences"))
+                .addOption(Option.builder("batch").longOpt("batch").hasArg().argName("SECONDS")
+                        .desc("minimum duration of the batches of consecutive seconds which are the samples of the comparison (default " + DEFAULT_BATCH_SECONDS + ")."
+                                + " Batches must be long enough to be independent of each other, yet numerous enough to narrow the confidence intervals.").build());
+        boolean helpRequested = false;
+        try {
+            final CommandLine cmdLine = new DefaultParser().parse(cliOptions, args);
+            helpRequested = cmdLine.hasOption("H");
+            if (!helpRequested) {
+                final long batchSeconds = cmdLine.hasOption("batch") ? Long.parseLong(cmdLine.getOptionValue("batch")) : DEFAULT_BATCH_SECONDS;
+                if (batchSeconds < 1) {
+                    throw new IllegalArgumentException("Batch duration must be >= 1 second!");
+                }
+                final List<RunLog> runs = readRuns(cmdLine.getArgList());
+                if (runs.isEmpty()) {
+                    throw new IllegalArgumentException("No histogram log given!");
+                }
+                final List<RunGroup> groups = group(runs, cmdLine.hasOption("merge"));
+                if (cmdLine.hasOption("compare") && groups.size() < 2) {
+                    throw new IllegalArgumentException("Comparison requires at least two runs resp. groups of merged runs!");
+                }
+                final File output = new File(cmdLine.getOptionValue("o", DEFAULT_OUTPUT));
+                Files.write(output.toPath(), new RunReport(groups, cmdLine.hasOption("compare"), batchSeconds).toHtml().getBytes(StandardCharsets.UTF_8));
+                LOG.info("Report of {} runs saved in file '{}'", runs.size(), output.getAbsolutePath());
+                return;
+            }
+        } catch (Exception e) {
+            LOG.error(e.getMessage());
+        }
+        final HelpFormatter hf = new HelpFormatter();
+        hf.setOptionComparator(null);
+        hf.printHelp(160, COMMAND + " [options] HLOG...", "Writes an HTML report of the runs saved in the given histogram logs ("
+                + "files resp. folders containing them) named 'stats-per-second-[mode]-[start time].hlog'.\nOptions:", cliOptions, "", false);
+        System.exit(helpRequested ? 0 : 1);
+    }
+
+    private static List<RunLog> readRuns(List<String> paths) throws IOException {
+        final List<RunLog> runs = new ArrayList<>();
+        for (String path : paths) {
+            final File file = new File(path);
+            if (file.isDirectory()) {
+                final File[] files = file.listFiles((dir, name) -> name.endsWith(".hlog"));
+                if (files != null) {
+                    Arrays.sort(files);
+                    for (File f : files) {
+                        runs.add(RunLog.read(f));
+                    }
+                }
+            } else {
+                runs.add(RunLog.read(file));
+            }
+        }
+        return runs;
+    }
+
+    static List<RunGroup> group(List<RunLog> runs, boolean merge) {
+        final Map<String, RunGroup> groups = new LinkedHashMap<>();
+        for (RunLog run : runs) {
+            final String label = merge ? run.getLabel() : run.getName();
+            groups.computeIfAbsent(label, RunGroup::new).add(run);
+        }
+        return new ArrayList<>(groups.values());
+    }
+
+    String toHtml() {
+        final StringBuilder html = new StringBuilder();
+        html.append("<!DOCTYPE html>\n<html><head><meta charset=\"utf-8\"><title>MongoDB performance test report</title>\n")
+                .append("<style>body{font-family:sans-serif;font-size:13px;margin:20px}table{border-collapse:collapse;margin:8px 0 16px}")
+                .append("th,td{border:1px solid #ccc;padding:3px 8px;text-align:right}th:first-child,td:first-child{text-align:left}")
+                .append(".better{color:#080}.worse{color:#c00;font-weight:bold}</style></head><body>\n")
+                .append("<h1>MongoDB performance test report</h1>\n<p>Generated ")
+                .append(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date()))
+                .append(". Latencies in milliseconds, throughput in operations per second.</p>\n");
+        appendRuns(html);
+        for (String tag : tags()) {
+            html.append("<h2>").append(escape(tag)).append("</h2>\n");
+            appendSummary(html, tag);
+            if (!RunGroup.isErrorTag(tag)) {
+                html.append(percentileChart(tag).toSvg());
+                html.append(timeChart(tag, "Throughput of " + tag, "operations per second", (h) -> h.getTotalCount() / seconds(h)).toSvg());
+                html.append(timeChart(tag, "p99 of " + tag, "milliseconds", (h) -> h.getValueAtPercentile(99) / NANOS_PER_MILLI).toSvg());
+            }
+        }
+        if (compare) {
+            appendComparison(html);
+        }
+        html.append("</body></html>\n");
+        return html.toString();
+    }
+
+    private Set<String> tags() {
+        final Set<String> tags = new LinkedHashSet<>();
+        for (RunGroup group : groups) {
+            tags.addAll(group.getTags());
+        }
+        return tags;
+    }
+
+    private void appendRuns(StringBuilder html) {
+        html.append("<h2>Runs</h2>\n<table><tr><th>group</th><th>run</th>");
+        for (String key : SHOWN_METADATA) {
+            html.append("<th>").append(key).append("</th>");
+        }
+        html.append("<th>metadata</th></tr>\n");
+        for (RunGroup group : groups) {
+            for (RunLog run : group.getRuns()) {
+                html.append("<tr><td>").append(escape(group.getLabel())).append("</td><td>").append(escape(run.getName())).append("</td>");
+                for (String key : SHOWN_METADATA) {
+                    html.append("<td>").append(escape(run.getMetadata().getOrDefault(key, ""))).append("</td>");
+                }
+                html.append("<td><details><summary>all</summary>");
+                for (Map.Entry<String, String> entry : run.getMetadata().entrySet()) {
+                    html.append(escape(entry.getKey())).append(": ").append(escape(entry.getValue())).append("<br>");
+                }
+                html.append("</details></td></tr>\n");
+            }
+        }
+        html.append("</table>\n");
+    }
+
+    private void appendSummary(StringBuilder html, String tag) {
+        html.append("<table><tr><th>group</th><th>runs</th><th>seconds</th><th>count</th><th>throughput</th><th>mean</th>");
+        for (double percentile : PERCENTILES) {
+            html.append("<th>p").append(format(percentile).replace(".", "")).append("</th>");
+        }
+        html.append("<th>max</th></tr>\n");
+        for (RunGroup group : groups) {
+            final Histogram h = group.merged(tag);
+            if (h.getTotalCount() == 0) {
+                continue;
+            }
+            final double seconds = group.durationSeconds(tag);
+            html.append("<tr><td>").append(escape(group.getLabel())).append("</td><td>").append(group.getRuns().size())
+                    .append("</td><td>").append(format(seconds)).append("</td><td>").append(h.getTotalCount())
+                    .append("</td><td>").append(format(seconds > 0 ? h.getTotalCount() / seconds : 0))
+                    .append("</td><td>").append(format(h.getMean() / NANOS_PER_MILLI)).append("</td>");
+            for (double percentile : PERCENTILES) {
+                html.append("<td>").append(format(h.getValueAtPercentile(percentile) / NANOS_PER_MILLI)).append("</td>");
+            }
+            html.append("<td>").append(format(h.getMaxValue() / NANOS_PER_MILLI)).append("</td></tr>\n");
+        }
+        html.append("</table>\n");
+    }
+
+    /**
+     * @return latency by percentile, the x-axis scaled by log10(1/(1-percentile)) to spread the tail
+     */
+    private SvgChart percentileChart(String tag) {
+        final SvgChart chart = new SvgChart("Latency by percentile of " + tag, "percentile", "milliseconds");
+        chart.setXTicks(new double[]{0, 1, 2, 3, 4, 5}, new String[]{"0%", "90%", "99%", "99.9%", "99.99%", "99.999%"});
+        for (RunGroup group : groups) {
+            final Histogram h = group.merged(tag);
+            if (h.getTotalCount() == 0) {
+                continue;
+            }
+            final int points = 101;
+            final double[] x = new double[points];
+            final double[] y = new double[points];
+            for (int i = 0; i < points; i++) {
+                x[i] = 5d * i / (points - 1);
+                y[i] = h.getValueAtPercentile(100 * (1 - Math.pow(10, -x[i]))) / NANOS_PER_MILLI;
+            }
+            chart.addSeries(group.getLabel(), x, y);
+        }
+        return chart;
+    }
+
+    private SvgChart timeChart(String tag, String title, String yLabel, ToDoubleFunction<Histogram> value) {
+        final SvgChart chart = new SvgChart(title, "seconds since start of run", yLabel);
+        for (RunGroup group : groups) {
+            for (RunLog run : group.getRuns()) {
+                final List<Histogram> intervals = run.getIntervals(tag);
+                if (intervals.isEmpty()) {
+                    continue;
+                }
+                final long startMs = intervals.get(0).getStartTimeStamp();
+                final double[] x = new double[intervals.size()];
+                final double[] y = new double[intervals.size()];
+                for (int i = 0; i < intervals.size(); i++) {
+                    x[i] = (intervals.get(i).getEndTimeStamp() - startMs) / 1000d;
+                    y[i] = value.applyAsDouble(intervals.get(i));
+                }
+                chart.addSeries(run.getName(), x, y);
+            }
+        }
+        return chart;
+    }
+
+    private void appendComparison(StringBuilder html) {
+        final RunGroup baseline = groups.get(0);
+        html.append("<h2>Comparison with ").append(escape(baseline.getLabel())).append("</h2>\n")
+                .append("<p>Samples are batches of at least ").append(batchSeconds).append(" consecutive seconds. ")
+                .append("A difference is significant if its 95% confidence interval (Welch's t-test) doesn't include 0.</p>\n");
+        for (String tag : tags()) {
+            if (RunGroup.isErrorTag(tag)) {
+                continue;
+            }
+            final List<Histogram> baselineBatches = baseline.batches(tag, TimeUnit.SECONDS.toMillis(batchSeconds));
+            if (baselineBatches.isEmpty()) {
+                continue;
+            }
+            html.append("<h3>").append(escape(tag)).append("</h3>\n<table><tr><th>group</th><th>metric</th><th>batches</th><th>baseline</th><th>candidate</th>")
+                    .append("<th>difference</th><th>95% confidence interval</th><th>verdict</th></tr>\n");
+            for (RunGroup candidate : groups.subList(1, groups.size())) {
+                final List<Histogram> candidateBatches = candidate.batches(tag, TimeUnit.SECONDS.toMillis(batchSeconds));
+                if (candidateBatches.isEmpty()) {
+                    continue;
+                }
+                appendComparisonRow(html, candidate, "throughput", true, baselineBatches, candidateBatches, h -> h.getTotalCount() / seconds(h));
+                appendComparisonRow(html, candidate, "mean", false, baselineBatches, candidateBatches, h -> h.getMean() / NANOS_PER_MILLI);
+                appendComparisonRow(html, candidate, "p99", false, baselineBatches, candidateBatches, h -> h.getValueAtPercentile(99) / NANOS_PER_MILLI);
+            }
+            html.append("</table>\n");
+        }
+    }
+
+    private static void appendComparisonRow(StringBuilder html, RunGroup candidate, String metric, boolean higherIsBetter,
+                                            List<Histogram> baselineBatches, List<Histogram> candidateBatches, ToDoubleFunction<Histogram> value) {
+        final double[] b = baselineBatches.stream().mapToDouble(value).toArray();
+        final double[] c = candidateBatches.stream().mapToDouble(value).toArray();
+        final double baselineMean = Welch.mean(b);
+        final double[] difference = Welch.difference(b, c);
+        final String verdict;
+        if (Double.isNaN(difference[1])) {
+            verdict = "too few batches";
+        } else if (difference[1] > 0 || difference[2] < 0) {
+            verdict = (difference[1] > 0) == higherIsBetter ? "<span class=\"better\">better</span>" : "<span class=\"worse\">worse</span>";
+        } else {
+            verdict = "no significant difference";
+        }
+        html.append("<tr><td>").append(escape(candidate.getLabel())).append("</td><td>").append(metric)
+                .append("</td><td>").append(b.length).append(" / ").append(c.length)
+                .append("</td><td>").append(format(baselineMean)).append(" ± ").append(format(Welch.halfWidth(b)))
+                .append("</td><td>").append(format(Welch.mean(c))).append(" ± ").append(format(Welch.halfWidth(c)))
+                .append("</td><td>").append(percent(difference[0], baselineMean))
+                .append("</td><td>").append(percent(difference[1], baselineMean)).append(" … ").append(percent(difference[2], baselineMean))
+                .append("</td><td>").append(verdict).append("</td></tr>\n");
+    }
+
+    private static double seconds(Histogram h) {
+        return Math.max(h.getEndTimeStamp() - h.getStartTimeStamp(), 1) / 1000d;
+    }
+
+    private static String percent(double difference, double baseline) {
+        return Double.isNaN(difference) || baseline == 0 ? "n/a" : String.format(Locale.US, "%+.1f%%", 100 * difference / baseline);
+    }
+
+    private static String format(double value) {
+        return Double.isNaN(value) ? "n/a" : String.format(Locale.US, "%.3f", value).replaceAll("\\.?0+$", "");
+    }
+
+    static String escape(String s) {
+        return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+}
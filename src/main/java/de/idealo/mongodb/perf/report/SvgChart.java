@@ -0,0 +1,143 @@
+package de.idealo.mongodb.perf.report;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Line chart rendered as inline SVG, so the report is a single static HTML file without any scripts or dependencies.
+ * The y-axis starts at 0, the x-axis at the smallest x of all series unless ticks are given.
+ */
+final class SvgChart {
+
+    private static final int WIDTH = 900;
+    private static final int HEIGHT = 320;
+    private static final int LEFT = 70;
+    private static final int RIGHT = 220;
+    private static final int TOP = 30;
+    private static final int BOTTOM = 45;
+    private static final String[] COLORS = {"#1f77b4", "#ff7f0e", "#2ca02c", "#d62728", "#9467bd", "#8c564b", "#e377c2", "#7f7f7f", "#bcbd22", "#17becf"};
+
+    private final String title;
+    private final String xLabel;
+    private final String yLabel;
+    private final List<String> names = new ArrayList<>();
+    private final List<double[]> xs = new ArrayList<>();
+    private final List<double[]> ys = new ArrayList<>();
+    private double[] xTicks;
+    private String[] xTickLabels;
+
+    SvgChart(String title, String xLabel, String yLabel) {
+        this.title = title;
+        this.xLabel = xLabel;
+        this.yLabel = yLabel;
+    }
+
+    void addSeries(String name, double[] x, double[] y) {
+        names.add(name);
+        xs.add(x);
+        ys.add(y);
+    }
+
+    /**
+     * @param ticks positions of the ticks of the x-axis, the first and last one defining its range
+     * @param labels label of each tick
+     */
+    void setXTicks(double[] ticks, String[] labels) {
+        this.xTicks = ticks;
+        this.xTickLabels = labels;
+    }
+
+    String toSvg() {
+        double minX = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE;
+        double maxY = 0;
+        for (int s = 0; s < xs.size(); s++) {
+            for (int i = 0; i < xs.get(s).length; i++) {
+                minX = Math.min(minX, xs.get(s)[i]);
+                maxX = Math.max(maxX, xs.get(s)[i]);
+                maxY = Math.max(maxY, ys.get(s)[i]);
+            }
+        }
+        if (xTicks != null) {
+            minX = xTicks[0];
+            maxX = xTicks[xTicks.length - 1];
+        } else if (minX > maxX) {
+            minX = 0;
+            maxX = 1;
+        }
+        if (maxX <= minX) {
+            maxX = minX + 1;
+        }
+        final double yStep = niceStep(maxY > 0 ? maxY : 1);
+        final double yMax = Math.ceil((maxY > 0 ? maxY : 1) / yStep) * yStep;
+        final int plotWidth = WIDTH - LEFT - RIGHT;
+        final int plotHeight = HEIGHT - TOP - BOTTOM;
+
+        final StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.US, "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"%d\" height=\"%d\" font-family=\"sans-serif\" font-size=\"11\">%n", WIDTH, HEIGHT));
+        sb.append(String.format(Locale.US, "<text x=\"%d\" y=\"18\" font-size=\"13\" font-weight=\"bold\">%s</text>%n", LEFT, RunReport.escape(title)));
+        // grid and y-axis
+        for (double y = 0; y <= yMax + yStep / 2; y += yStep) {
+            final double py = TOP + plotHeight - y / yMax * plotHeight;
+            sb.append(String.format(Locale.US, "<line x1=\"%d\" y1=\"%.1f\" x2=\"%d\" y2=\"%.1f\" stroke=\"#ddd\"/>", LEFT, py, LEFT + plotWidth, py));
+            sb.append(String.format(Locale.US, "<text x=\"%d\" y=\"%.1f\" text-anchor=\"end\">%s</text>%n", LEFT - 5, py + 4, format(y)));
+        }
+        // x-axis
+        final double[] ticks = xTicks != null ? xTicks : autoTicks(minX, maxX);
+        for (int i = 0; i < ticks.length; i++) {
+            final double px = LEFT + (ticks[i] - minX) / (maxX - minX) * plotWidth;
+            final String label = xTickLabels != null ? xTickLabels[i] : format(ticks[i]);
+            sb.append(String.format(Locale.US, "<line x1=\"%.1f\" y1=\"%d\" x2=\"%.1f\" y2=\"%d\" stroke=\"#ddd\"/>", px, TOP, px, TOP + plotHeight));
+            sb.append(String.format(Locale.US, "<text x=\"%.1f\" y=\"%d\" text-anchor=\"middle\">%s</text>%n", px, TOP + plotHeight + 15, RunReport.escape(label)));
+        }
+        sb.append(String.format(Locale.US, "<rect x=\"%d\" y=\"%d\" width=\"%d\" height=\"%d\" fill=\"none\" stroke=\"#888\"/>%n", LEFT, TOP, plotWidth, plotHeight));
+        sb.append(String.format(Locale.US, "<text x=\"%d\" y=\"%d\" text-anchor=\"middle\">%s</text>%n", LEFT + plotWidth / 2, HEIGHT - 8, RunReport.escape(xLabel)));
+        sb.append(String.format(Locale.US, "<text x=\"15\" y=\"%d\" text-anchor=\"middle\" transform=\"rotate(-90 15 %d)\">%s</text>%n", TOP + plotHeight / 2, TOP + plotHeight / 2, RunReport.escape(yLabel)));
+        // series and legend
+        for (int s = 0; s < xs.size(); s++) {
+            final String color = COLORS[s % COLORS.length];
+            sb.append("<polyline fill=\"none\" stroke-width=\"1.5\" stroke=\"").append(color).append("\" points=\"");
+            for (int i = 0; i < xs.get(s).length; i++) {
+                final double px = LEFT + (xs.get(s)[i] - minX) / (maxX - minX) * plotWidth;
+                final double py = TOP + plotHeight - ys.get(s)[i] / yMax * plotHeight;
+                sb.append(String.format(Locale.US, "%.1f,%.1f ", px, py));
+            }
+            sb.append("\"/>\n");
+            final int ly = TOP + 10 + s * 16;
+            sb.append(String.format(Locale.US, "<line x1=\"%d\" y1=\"%d\" x2=\"%d\" y2=\"%d\" stroke=\"%s\" stroke-width=\"3\"/>", LEFT + plotWidth + 10, ly, LEFT + plotWidth + 30, ly, color));
+            sb.append(String.format(Locale.US, "<text x=\"%d\" y=\"%d\">%s</text>%n", LEFT + plotWidth + 35, ly + 4, RunReport.escape(abbreviate(names.get(s)))));
+        }
+        sb.append("</svg>\n");
+        return sb.toString();
+    }
+
+    private static double[] autoTicks(double min, double max) {
+        final double step = niceStep(max - min);
+        final double first = Math.ceil(min / step) * step;
+        final int n = (int) Math.floor((max - first) / step) + 1;
+        final double[] ticks = new double[Math.max(n, 1)];
+        for (int i = 0; i < ticks.length; i++) {
+            ticks[i] = first + i * step;
+        }
+        return ticks;
+    }
+
+    /**
+     * @return 1, 2 or 5 times a power of 10, so the range is divided into about 5 to 10 steps
+     */
+    private static double niceStep(double range) {
+        final double rough = range / 6;
+        final double magnitude = Math.pow(10, Math.floor(Math.log10(rough)));
+        final double normalized = rough / magnitude;
+        return (normalized < 1.5 ? 1 : normalized < 3.5 ? 2 : normalized < 7.5 ? 5 : 10) * magnitude;
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15 ? String.valueOf((long) value) : String.format(Locale.US, "%.3g", value);
+    }
+
+    private static String abbreviate(String name) {
+        return name.length() > 32 ? "…" + name.substring(name.length() - 31) : name;
+    }
+}
@@ -0,0 +1,89 @@
+package de.idealo.mongodb.perf.report;
+
+/**
+ * Confidence intervals of the mean of samples and of the difference between the means of two sets of samples by
+ * Welch's t-test, which doesn't assume both sets to have the same variance.
+ */
+final class Welch {
+
+    private static final double Z_975 = 1.959963984540054;
+    // exact 97.5% quantiles for 1 to 3 degrees of freedom, where the expansion is too small
+    private static final double T_975_DF1 = 12.706204736;
+    private static final double T_975_DF2 = 4.302652730;
+    private static final double T_975_DF3 = 3.182446305;
+    // with fewer samples per set, the variance is too uncertain for a verdict
+    static final int MIN_SAMPLES = 3;
+
+    private Welch() {
+    }
+
+    static double mean(double[] samples) {
+        double sum = 0;
+        for (double sample : samples) {
+            sum += sample;
+        }
+        return samples.length > 0 ? sum / samples.length : Double.NaN;
+    }
+
+    static double variance(double[] samples) {
+        final double mean = mean(samples);
+        double sum = 0;
+        for (double sample : samples) {
+            sum += (sample - mean) * (sample - mean);
+        }
+        return samples.length > 1 ? sum / (samples.length - 1) : Double.NaN;
+    }
+
+    /**
+     * @return half width of the 95% confidence interval of the mean, NaN if there are less than {@link #MIN_SAMPLES} samples
+     */
+    static double halfWidth(double[] samples) {
+        if (samples.length < MIN_SAMPLES) {
+            return Double.NaN;
+        }
+        return tQuantile975(samples.length - 1) * Math.sqrt(variance(samples) / samples.length);
+    }
+
+    /**
+     * @return the difference of the means (candidate minus baseline) and the lower and upper bound of its 95% confidence interval, NaN if either set has less than {@link #MIN_SAMPLES} samples
+     */
+    static double[] difference(double[] baseline, double[] candidate) {
+        final double difference = mean(candidate) - mean(baseline);
+        if (baseline.length < MIN_SAMPLES || candidate.length < MIN_SAMPLES) {
+            return new double[]{difference, Double.NaN, Double.NaN};
+        }
+        final double vb = variance(baseline) / baseline.length;
+        final double vc = variance(candidate) / candidate.length;
+        final double standardError = Math.sqrt(vb + vc);
+        if (standardError == 0) {
+            return new double[]{difference, difference, difference};
+        }
+        // Welch–Satterthwaite degrees of freedom
+        final double df = (vb + vc) * (vb + vc) / (vb * vb / (baseline.length - 1) + vc * vc / (candidate.length - 1));
+        final double halfWidth = tQuantile975(df) * standardError;
+        return new double[]{difference, difference - halfWidth, difference + halfWidth};
+    }
+
+    /**
+     * @return 97.5% quantile of Student's t-distribution by the Cornish-Fisher expansion, accurate to 0.01 for df >= 4,
+     * below the exact quantile of the next smaller integer df, so the interval is rather too wide than too narrow
+     */
+    static double tQuantile975(double df) {
+        if (df < 2) {
+            return T_975_DF1;
+        }
+        if (df < 3) {
+            return T_975_DF2;
+        }
+        if (df < 4) {
+            return T_975_DF3;
+        }
+        final double z = Z_975;
+        final double z3 = z * z * z;
+        final double z5 = z3 * z * z;
+        final double z7 = z5 * z * z;
+        return z + (z3 + z) / (4 * df)
+                + (5 * z5 + 16 * z3 + 3 * z) / (96 * df * df)
+                + (3 * z7 + 19 * z5 + 17 * z3 - 15 * z) / (384 * df * df * df);
+    }
+}
@@ -0,0 +1,357 @@
+package de.idealo.mongodb.perf.stats;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.connection.AsyncCompletionHandler;
+import com.mongodb.connection.Stream;
+import com.mongodb.connection.StreamFactoryFactory;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import com.mongodb.event.ConnectionAddedEvent;
+import com.mongodb.event.ConnectionCheckedInEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionPoolClosedEvent;
+import com.mongodb.event.ConnectionPoolListener;
+import com.mongodb.event.ConnectionPoolOpenedEvent;
+import com.mongodb.event.ConnectionPoolWaitQueueEnteredEvent;
+import com.mongodb.event.ConnectionPoolWaitQueueExitedEvent;
+import com.mongodb.event.ConnectionRemovedEvent;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.bson.ByteBuf;
+
+import javax.net.SocketFactory;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of the driver, i.e. of the client side of all operations: the time waited for a connection of the pool,
+ * the round-trip time of each command sent to the server and the bytes sent and received over the network.
+ * Comparing them with the latencies of the operations tells whether time is spent in the pool, on the wire resp.
+ * in the server, or in the client itself, e.g. decoding documents.
+ *
+ * Registered as listener of the connection pool and the commands, and as wrapper of the sockets resp. streams of the
+ * clients. The checkout wait is measured for the sync client only, since the async client leaves the wait queue on
+ * another thread. Bytes include the heartbeats of the server monitors but not the TLS connections of the sync client,
+ * whose sockets can't be wrapped.
+ */
+public class ClientMetrics implements CommandListener, ConnectionPoolListener {
+
+    private final Recorder checkoutWaitRecorder = new Recorder(LatencySeries.SIGNIFICANT_VALUE_DIGITS);
+    private final Recorder commandRecorder = new Recorder(LatencySeries.SIGNIFICANT_VALUE_DIGITS);
+    private final LongAdder failedCommands = new LongAdder();
+    private final LongAdder connectionsAdded = new LongAdder();
+    private final LongAdder connectionsRemoved = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    // the sync pool enters and exits the wait queue on the thread checking out the connection
+    private final ThreadLocal<long[]> waitQueueEnteredNanos = ThreadLocal.withInitial(() -> new long[1]);
+
+    private Histogram recycledCheckoutWait;
+    private Histogram recycledCommands;
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void waitQueueEntered(ConnectionPoolWaitQueueEnteredEvent event) {
+        waitQueueEnteredNanos.get()[0] = System.nanoTime();
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void waitQueueExited(ConnectionPoolWaitQueueExitedEvent event) {
+        final long end = System.nanoTime();
+        final long[] start = waitQueueEnteredNanos.get();
+        if (start[0] != 0) {
+            checkoutWaitRecorder.recordValue(end - start[0]);
+            start[0] = 0;
+        }
+    }
+
+    @Override
+    public void connectionAdded(ConnectionAddedEvent event) {
+        connectionsAdded.increment();
+    }
+
+    @Override
+    public void connectionRemoved(ConnectionRemovedEvent event) {
+        connectionsRemoved.increment();
+    }
+
+    @Override
+    public void connectionPoolOpened(ConnectionPoolOpenedEvent event) {
+    }
+
+    @Override
+    public void connectionPoolClosed(ConnectionPoolClosedEvent event) {
+    }
+
+    @Override
+    public void connectionCheckedOut(ConnectionCheckedOutEvent event) {
+    }
+
+    @Override
+    public void connectionCheckedIn(ConnectionCheckedInEvent event) {
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        commandRecorder.recordValue(event.getElapsedTime(TimeUnit.NANOSECONDS));
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        commandRecorder.recordValue(event.getElapsedTime(TimeUnit.NANOSECONDS));
+        failedCommands.increment();
+    }
+
+    /**
+     * @return the checkout waits in nanoseconds since the previous call, to be called by one thread only
+     */
+    public synchronized Histogram collectCheckoutWait() {
+        recycledCheckoutWait = checkoutWaitRecorder.getIntervalHistogram(recycledCheckoutWait);
+        return recycledCheckoutWait;
+    }
+
+    /**
+     * @return the round-trip times of the commands in nanoseconds since the previous call, to be called by one thread only
+     */
+    public synchronized Histogram collectCommands() {
+        recycledCommands = commandRecorder.getIntervalHistogram(recycledCommands);
+        return recycledCommands;
+    }
+
+    public long getFailedCommands() {
+        return failedCommands.sum();
+    }
+
+    public long getConnectionsAdded() {
+        return connectionsAdded.sum();
+    }
+
+    public long getConnectionsRemoved() {
+        return connectionsRemoved.sum();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    /**
+     * @return factory of the sockets of the sync client counting the bytes sent and received, for unencrypted connections only
+     */
+    public SocketFactory countingSocketFactory() {
+        return new CountingSocketFactory();
+    }
+
+    /**
+     * @return factory of the streams of the async client counting the bytes sent and received by the streams of the given factory
+     */
+    public StreamFactoryFactory countingStreamFactoryFactory(StreamFactoryFactory streamFactoryFactory) {
+        return (socketSettings, sslSettings) -> {
+            final com.mongodb.connection.StreamFactory streamFactory = streamFactoryFactory.create(socketSettings, sslSettings);
+            return serverAddress -> new CountingStream(streamFactory.create(serverAddress));
+        };
+    }
+
+    private final class CountingStream implements Stream {
+
+        private final Stream stream;
+
+        private CountingStream(Stream stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public void open() throws IOException {
+            stream.open();
+        }
+
+        @Override
+        public void openAsync(AsyncCompletionHandler<Void> handler) {
+            stream.openAsync(handler);
+        }
+
+        @Override
+        public void write(List<ByteBuf> buffers) throws IOException {
+            final long bytes = remaining(buffers);
+            stream.write(buffers);
+            bytesSent.add(bytes);
+        }
+
+        @Override
+        public ByteBuf read(int numBytes) throws IOException {
+            final ByteBuf buffer = stream.read(numBytes);
+            bytesReceived.add(numBytes);
+            return buffer;
+        }
+
+        @Override
+        public void writeAsync(List<ByteBuf> buffers, AsyncCompletionHandler<Void> handler) {
+            final long bytes = remaining(buffers);
+            stream.writeAsync(buffers, new AsyncCompletionHandler<Void>() {
+                @Override
+                public void completed(Void v) {
+                    bytesSent.add(bytes);
+                    handler.completed(v);
+                }
+
+                @Override
+                public void failed(Throwable t) {
+                    handler.failed(t);
+                }
+            });
+        }
+
+        @Override
+        public void readAsync(int numBytes, AsyncCompletionHandler<ByteBuf> handler) {
+            stream.readAsync(numBytes, new AsyncCompletionHandler<ByteBuf>() {
+                @Override
+                public void completed(ByteBuf buffer) {
+                    bytesReceived.add(numBytes);
+                    handler.completed(buffer);
+                }
+
+                @Override
+                public void failed(Throwable t) {
+                    handler.failed(t);
+                }
+            });
+        }
+
+        @Override
+        public ServerAddress getAddress() {
+            return stream.getAddress();
+        }
+
+        @Override
+        public void close() {
+            stream.close();
+        }
+
+        @Override
+        public boolean isClosed() {
+            return stream.isClosed();
+        }
+
+        @Override
+        public ByteBuf getBuffer(int size) {
+            return stream.getBuffer(size);
+        }
+
+        private long remaining(List<ByteBuf> buffers) {
+            long bytes = 0;
+            for (ByteBuf buffer : buffers) {
+                bytes += buffer.remaining();
+            }
+            return bytes;
+        }
+    }
+
+    private final class CountingSocketFactory extends SocketFactory {
+
+        @Override
+        public Socket createSocket() {
+            return new CountingSocket();
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            return connect(new InetSocketAddress(host, port), null);
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+            return connect(new InetSocketAddress(host, port), new InetSocketAddress(localHost, localPort));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException {
+            return connect(new InetSocketAddress(host, port), null);
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+            return connect(new InetSocketAddress(address, port), new InetSocketAddress(localAddress, localPort));
+        }
+
+        private Socket connect(InetSocketAddress address, InetSocketAddress localAddress) throws IOException {
+            final Socket socket = new CountingSocket();
+            if (localAddress != null) {
+                socket.bind(localAddress);
+            }
+            socket.connect(address);
+            return socket;
+        }
+    }
+
+    private final class CountingSocket extends Socket {
+
+        private InputStream inputStream;
+        private OutputStream outputStream;
+
+        @Override
+        public synchronized InputStream getInputStream() throws IOException {
+            if (inputStream == null) {
+                inputStream = new FilterInputStream(super.getInputStream()) {
+                    @Override
+                    public int read() throws IOException {
+                        final int b = super.read();
+                        if (b >= 0) {
+                            bytesReceived.increment();
+                        }
+                        return b;
+                    }
+
+                    @Override
+                    public int read(byte[] b, int off, int len) throws IOException {
+                        final int n = super.read(b, off, len);
+                        if (n > 0) {
+                            bytesReceived.add(n);
+                        }
+                        return n;
+                    }
+                };
+            }
+            return inputStream;
+        }
+
+        @Override
+        public synchronized OutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                outputStream = new FilterOutputStream(super.getOutputStream()) {
+                    @Override
+                    public void write(int b) throws IOException {
+                        out.write(b);
+                        bytesSent.increment();
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        // FilterOutputStream would write byte by byte
+                        out.write(b, off, len);
+                        bytesSent.add(len);
+                    }
+                };
+            }
+            return outputStream;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package de.idealo.mongodb.perf.stats;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the errors of failed operations per exception class and logs them rate-limited, so a failover or an
+ * overloaded server does not flood the log from the hot path: the first error of each exception class is logged
+ * with its stack trace, further ones at most once per {@link #LOG_INTERVAL_MS} by their message and the number of
+ * errors suppressed in the meantime.
+ */
+public class ErrorLog {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ErrorLog.class);
+
+    static final long LOG_INTERVAL_MS = 1000;
+
+    private final String name;
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    /**
+     * @param name name of the mode whose errors are logged
+     */
+    public ErrorLog(String name) {
+        this.name = name;
+    }
+
+    public void log(Throwable t) {
+        final String exceptionClass = t.getClass().getName();
+        Counter counter = counters.get(exceptionClass);
+        if (counter == null) {
+            final Counter newCounter = new Counter();
+            counter = counters.putIfAbsent(exceptionClass, newCounter);
+            if (counter == null) {
+                newCounter.count.increment();
+                LOG.error("{} failed ({}), further errors of this class are logged at most once per {} ms", name, ErrorType.of(t), LOG_INTERVAL_MS, t);
+                return;
+            }
+        }
+        counter.count.increment();
+        counter.suppressed.increment();
+        final long now = System.currentTimeMillis();
+        final long last = counter.lastLoggedMs.get();
+        if (now - last >= LOG_INTERVAL_MS && counter.lastLoggedMs.compareAndSet(last, now)) {
+            LOG.error("{} failed ({}): {}: {} ({} errors of this class since last logged)", name, ErrorType.of(t), exceptionClass, t.getMessage(), counter.suppressed.sumThenReset());
+        }
+    }
+
+    /**
+     * Logs the number of errors per exception class.
+     */
+    public void logSummary() {
+        counters.forEach((exceptionClass, counter) -> LOG.info("{} errors of class {}: {}", name, exceptionClass, counter.count.sum()));
+    }
+
+    private static final class Counter {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder suppressed = new LongAdder();
+        private final AtomicLong lastLoggedMs = new AtomicLong(System.currentTimeMillis());
+    }
+}
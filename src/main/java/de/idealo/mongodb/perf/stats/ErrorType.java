@@ -0,0 +1,98 @@
+package de.idealo.mongodb.perf.stats;
+
+import com.mongodb.DuplicateKeyException;
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoExecutionTimeoutException;
+import com.mongodb.MongoSocketException;
+import com.mongodb.MongoSocketReadTimeoutException;
+import com.mongodb.MongoTimeoutException;
+import com.mongodb.MongoWaitQueueFullException;
+import com.mongodb.MongoWriteConcernException;
+import com.mongodb.MongoWriteException;
+import com.mongodb.WriteConcernException;
+import com.mongodb.bulk.BulkWriteError;
+
+/**
+ * Classifies the errors of failed operations, so the statistics show why operations failed.
+ */
+public enum ErrorType {
+    /**
+     * no server selected or no connection obtained in time, socket read timed out or maxTimeMS exceeded
+     */
+    TIMEOUT("timeouts"),
+    /**
+     * the write was applied but the write concern was not satisfied
+     */
+    WRITE_CONCERN("write_concern_errors"),
+    /**
+     * connection could not be opened or was interrupted, e.g. during a failover
+     */
+    NETWORK("network_errors"),
+    /**
+     * the write violated a unique index
+     */
+    DUPLICATE_KEY("duplicate_keys"),
+    /**
+     * any other error
+     */
+    OTHER("other_errors");
+
+    // the cause of wrapped errors is classified up to this depth
+    private static final int MAX_CAUSE_DEPTH = 4;
+
+    private final String columnName;
+
+    ErrorType(String columnName) {
+        this.columnName = columnName;
+    }
+
+    /**
+     * @return name of the column of this error type in the csv-files
+     */
+    public String getColumnName() {
+        return columnName;
+    }
+
+    public static ErrorType of(Throwable t) {
+        Throwable cause = t;
+        for (int depth = 0; cause != null && depth < MAX_CAUSE_DEPTH; depth++) {
+            final ErrorType type = classify(cause);
+            if (type != OTHER) {
+                return type;
+            }
+            cause = cause.getCause();
+        }
+        return OTHER;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static ErrorType classify(Throwable t) {
+        if (t instanceof MongoTimeoutException || t instanceof MongoSocketReadTimeoutException
+                || t instanceof MongoExecutionTimeoutException || t instanceof MongoWaitQueueFullException) {
+            return TIMEOUT;
+        }
+        if (t instanceof MongoSocketException) {
+            return NETWORK;
+        }
+        if (t instanceof DuplicateKeyException) {
+            return DUPLICATE_KEY;
+        }
+        if (t instanceof MongoWriteConcernException || t instanceof WriteConcernException) {
+            return WRITE_CONCERN;
+        }
+        if (t instanceof MongoWriteException) {
+            return ErrorCategory.fromErrorCode(((MongoWriteException) t).getError().getCode()) == ErrorCategory.DUPLICATE_KEY ? DUPLICATE_KEY : OTHER;
+        }
+        if (t instanceof MongoBulkWriteException) {
+            final MongoBulkWriteException e = (MongoBulkWriteException) t;
+            for (BulkWriteError error : e.getWriteErrors()) {
+                if (ErrorCategory.fromErrorCode(error.getCode()) == ErrorCategory.DUPLICATE_KEY) {
+                    return DUPLICATE_KEY;
+                }
+            }
+            return e.getWriteConcernError() != null ? WRITE_CONCERN : OTHER;
+        }
+        return OTHER;
+    }
+}
@@ -0,0 +1,247 @@
+package de.idealo.mongodb.perf.stats;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.IntervalHistogramProvider;
+import org.HdrHistogram.Recorder;
+import org.HdrHistogram.SingleWriterRecorder;
+import org.HdrHistogram.ValueRecorder;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies and affected documents of one statistics series, e.g. the service time of one mode.
+ *
+ * Each worker records into its own recorder and counter, so recording is wait-free and workers never contend with
+ * each other. Only the {@link StatsReporter} collects and merges them, once per interval, into exact histograms
+ * covering the last interval and the whole run.
+ *
+ * Since each recorder takes a few hundred KB, a series with more than {@link #MAX_STRIPES} workers, e.g. thousands of
+ * virtual threads, uses {@link #MAX_STRIPES} multi-writer recorders instead, each shared by every MAX_STRIPES-th worker.
+ *
+ * Failed operations are recorded apart from the successful ones, into a single multi-writer recorder and counters per
+ * {@link ErrorType}, so the latencies of the series are never improved by operations failing fast.
+ */
+public class LatencySeries {
+
+    static final int SIGNIFICANT_VALUE_DIGITS = 3;
+    // 16 longs = 128 bytes between the counters of two workers, so they never share a cache line
+    private static final int PADDING = 16;
+    static final int MAX_STRIPES = Math.max(64, 4 * Runtime.getRuntime().availableProcessors());
+
+    private final String perSecondName;
+    private final String perRunName;
+    private final String tag;
+    private final ValueRecorder[] recorders;
+    private final IntervalHistogramProvider<Histogram>[] providers;
+    private final boolean shared;
+    private final AtomicLongArray docs;
+    private final Recorder errorRecorder = new Recorder(SIGNIFICANT_VALUE_DIGITS);
+    private final LongAdder[] errorCounts = new LongAdder[ErrorType.values().length];
+    // values added by other processes, e.g. the workers of a distributed test, guarded by addedHistogram
+    private final Histogram addedHistogram = new Histogram(SIGNIFICANT_VALUE_DIGITS);
+    private final Histogram addedErrorHistogram = new Histogram(SIGNIFICANT_VALUE_DIGITS);
+    private final LongAdder addedDocs = new LongAdder();
+
+    // accessed by the reporter thread only
+    private final Histogram[] recycledHistograms;
+    private final Histogram intervalHistogram = new Histogram(SIGNIFICANT_VALUE_DIGITS);
+    private final Histogram runHistogram = new Histogram(SIGNIFICANT_VALUE_DIGITS);
+    private long intervalDocs;
+    private long runDocs;
+    private Histogram recycledErrorHistogram;
+    private final Histogram intervalErrorHistogram = new Histogram(SIGNIFICANT_VALUE_DIGITS);
+    private final Histogram runErrorHistogram = new Histogram(SIGNIFICANT_VALUE_DIGITS);
+    private final long[] runErrorCounts = new long[errorCounts.length];
+    private final long[] intervalErrorCounts = new long[errorCounts.length];
+
+    /**
+     *
+     * @param perSecondName name of the csv-file containing one row per interval
+     * @param perRunName name of the csv-file containing one row per run
+     * @param tag tag of the interval histograms of this series in the histogram log
+     * @param writers number of workers, each recording with its own writer index from 0 to writers-1
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public LatencySeries(String perSecondName, String perRunName, String tag, int writers) {
+        this.perSecondName = perSecondName;
+        this.perRunName = perRunName;
+        this.tag = tag;
+        this.shared = writers > MAX_STRIPES;
+        final int stripes = shared ? MAX_STRIPES : writers;
+        this.recorders = new ValueRecorder[stripes];
+        this.providers = new IntervalHistogramProvider[stripes];
+        this.recycledHistograms = new Histogram[stripes];
+        for (int i = 0; i < stripes; i++) {
+            if (shared) {
+                final Recorder recorder = new Recorder(SIGNIFICANT_VALUE_DIGITS);
+                recorders[i] = recorder;
+                providers[i] = recorder;
+            } else {
+                final SingleWriterRecorder recorder = new SingleWriterRecorder(SIGNIFICANT_VALUE_DIGITS);
+                recorders[i] = recorder;
+                providers[i] = recorder;
+            }
+        }
+        this.docs = new AtomicLongArray(stripes * PADDING);
+        for (int i = 0; i < errorCounts.length; i++) {
+            errorCounts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Must be called only by the worker owning the given writer index.
+     *
+     * @param writer index of the recording worker
+     * @param latencyNanos latency of one operation in nanoseconds
+     * @param affectedDocs number of documents affected by the operation
+     */
+    public void record(int writer, long latencyNanos, long affectedDocs) {
+        final int stripe = shared ? writer % MAX_STRIPES : writer;
+        recorders[stripe].recordValue(latencyNanos);
+        if (affectedDocs != 0) {
+            final int i = stripe * PADDING;
+            if (shared) {
+                docs.getAndAdd(i, affectedDocs);
+            } else {
+                docs.lazySet(i, docs.get(i) + affectedDocs);
+            }
+        }
+    }
+
+    /**
+     * May be called by any worker.
+     *
+     * @param writer index of the recording worker
+     * @param latencyNanos latency of one failed operation in nanoseconds
+     * @param type type of the error the operation failed with
+     */
+    public void recordError(int writer, long latencyNanos, ErrorType type) {
+        errorRecorder.recordValue(latencyNanos);
+        errorCounts[type.ordinal()].increment();
+    }
+
+    /**
+     * Adds the values of an interval recorded by another process, e.g. a worker of a distributed test, to the current interval.
+     * May be called by any thread.
+     *
+     * @param interval latencies of the successful operations in nanoseconds
+     * @param affectedDocs number of documents affected by the operations
+     * @param errors latencies of the failed operations in nanoseconds
+     * @param errorCounts number of failed operations per {@link ErrorType}, by ordinal
+     */
+    public void add(Histogram interval, long affectedDocs, Histogram errors, long[] errorCounts) {
+        synchronized (addedHistogram) {
+            addedHistogram.add(interval);
+            addedErrorHistogram.add(errors);
+        }
+        addedDocs.add(affectedDocs);
+        for (int i = 0; i < errorCounts.length && i < this.errorCounts.length; i++) {
+            this.errorCounts[i].add(errorCounts[i]);
+        }
+    }
+
+    /**
+     * Merges the values recorded by all workers since the previous call into the interval histogram
+     * and adds them to the run histogram.
+     *
+     * @return histogram of the values recorded since the previous call
+     */
+    Histogram collectInterval(long startTimeStampMs, long endTimeStampMs) {
+        intervalHistogram.reset();
+        for (int i = 0; i < recorders.length; i++) {
+            recycledHistograms[i] = providers[i].getIntervalHistogram(recycledHistograms[i]);
+            intervalHistogram.add(recycledHistograms[i]);
+        }
+        recycledErrorHistogram = errorRecorder.getIntervalHistogram(recycledErrorHistogram);
+        intervalErrorHistogram.reset();
+        intervalErrorHistogram.add(recycledErrorHistogram);
+        synchronized (addedHistogram) {
+            intervalHistogram.add(addedHistogram);
+            intervalErrorHistogram.add(addedErrorHistogram);
+            addedHistogram.reset();
+            addedErrorHistogram.reset();
+        }
+        intervalHistogram.setStartTimeStamp(startTimeStampMs);
+        intervalHistogram.setEndTimeStamp(endTimeStampMs);
+        intervalHistogram.setTag(tag);
+        runHistogram.add(intervalHistogram);
+
+        long totalDocs = addedDocs.sum();
+        for (int i = 0; i < recorders.length; i++) {
+            totalDocs += docs.get(i * PADDING);
+        }
+        intervalDocs = totalDocs - runDocs;
+        runDocs = totalDocs;
+
+        intervalErrorHistogram.setStartTimeStamp(startTimeStampMs);
+        intervalErrorHistogram.setEndTimeStamp(endTimeStampMs);
+        intervalErrorHistogram.setTag(tag + "-errors");
+        runErrorHistogram.add(intervalErrorHistogram);
+        for (int i = 0; i < errorCounts.length; i++) {
+            final long count = errorCounts[i].sum();
+            intervalErrorCounts[i] = count - runErrorCounts[i];
+            runErrorCounts[i] = count;
+        }
+        return intervalHistogram;
+    }
+
+    public String getPerSecondName() {
+        return perSecondName;
+    }
+
+    public String getPerRunName() {
+        return perRunName;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    /**
+     * @return histogram of all values collected so far, thus exact over the whole run once the reporter has been stopped
+     */
+    public Histogram getRunHistogram() {
+        return runHistogram;
+    }
+
+    long getIntervalDocs() {
+        return intervalDocs;
+    }
+
+    public long getRunDocs() {
+        return runDocs;
+    }
+
+    /**
+     * @return histogram of the failed operations of the last interval
+     */
+    Histogram getIntervalErrorHistogram() {
+        return intervalErrorHistogram;
+    }
+
+    /**
+     * @return histogram of all failed operations collected so far
+     */
+    public Histogram getRunErrorHistogram() {
+        return runErrorHistogram;
+    }
+
+    /**
+     * @return number of failed operations of the last interval per {@link ErrorType}, by ordinal
+     */
+    long[] getIntervalErrorCounts() {
+        return intervalErrorCounts;
+    }
+
+    public long getRunErrors(ErrorType type) {
+        return runErrorCounts[type.ordinal()];
+    }
+
+    /**
+     * @return number of all failed operations collected so far
+     */
+    public long getRunErrors() {
+        return runErrorHistogram.getTotalCount();
+    }
+}
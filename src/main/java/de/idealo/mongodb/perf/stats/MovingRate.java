@@ -0,0 +1,35 @@
+package de.idealo.mongodb.perf.stats;
+
+/**
+ * Exponentially weighted moving rate over a window of minutes, like the columns m1_rate, m5_rate and m15_rate
+ * of the former Dropwizard timers, but updated once per second instead of once per 5 seconds.
+ */
+final class MovingRate {
+
+    private final double windowInSeconds;
+    private double rate = Double.NaN;
+
+    MovingRate(int windowInMinutes) {
+        this.windowInSeconds = windowInMinutes * 60d;
+    }
+
+    /**
+     * @param count number of operations in the interval
+     * @param intervalInSeconds length of the interval
+     */
+    void update(long count, double intervalInSeconds) {
+        final double intervalRate = count / intervalInSeconds;
+        if (Double.isNaN(rate)) {
+            rate = intervalRate;
+        } else {
+            rate += (1 - Math.exp(-intervalInSeconds / windowInSeconds)) * (intervalRate - rate);
+        }
+    }
+
+    /**
+     * @return the moving rate per second, or 0 before the first update
+     */
+    double getRate() {
+        return Double.isNaN(rate) ? 0 : rate;
+    }
+}
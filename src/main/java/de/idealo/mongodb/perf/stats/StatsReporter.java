@@ -0,0 +1,299 @@
+package de.idealo.mongodb.perf.stats;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Collects the interval histograms of its series once per second, prints them to the log and appends them
+ * to the csv-file per second of each series as well as to a histogram log (.hlog) which can be post-processed
+ * by the HdrHistogram tools. The histogram log starts with the metadata of the run as comments, so it is a compact,
+ * self-describing record of the run. At the end of the run, one row per series is appended to the csv-file per run.
+ *
+ * Durations are reported in milliseconds, rates in operations resp. documents per second. The columns up to
+ * duration_unit are those of the former Dropwizard timers, in the same order, so existing tools keep reading them.
+ * They are followed by p9999, the rates of operations and documents of the interval and, starting with errors,
+ * the columns of the failed operations: their number, rate, mean and p99 latency as well as their number per
+ * {@link ErrorType}. All columns before errors cover the successful operations only.
+ */
+public class StatsReporter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StatsReporter.class);
+
+    public static final String CSV_HEADER = "t,count,max,mean,min,stddev,p50,p75,p95,p98,p99,p999,mean_rate,m1_rate,m5_rate,m15_rate,rate_unit,duration_unit,"
+            + "p9999,rate,docs,docs_rate,errors,error_rate,error_mean,error_p99," + errorTypeColumns();
+    private static final int[] MOVING_RATE_MINUTES = {1, 5, 15};
+    public static final String HISTOGRAM_LOG_SUFFIX = ".hlog";
+    // comment lines of the histogram log, ignored by the HdrHistogram tools
+    public static final String RUN_METADATA_PREFIX = "#[Run] ";
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final File folder;
+    private final String histogramLogName;
+    private final List<LatencySeries> series;
+    private final List<PrintWriter> perSecondWriters = new ArrayList<>();
+    private final List<MovingRate[]> movingRates = new ArrayList<>();
+    private final ScheduledExecutorService scheduler;
+    private HistogramLogWriter histogramLogWriter;
+    private Map<String, String> runMetadata = Collections.emptyMap();
+    private boolean localOutput = true;
+    private IntervalListener intervalListener = null;
+    private long startMs;
+    private long lastReportMs;
+
+    /**
+     *
+     * @param folder folder of the csv-files and histogram log
+     * @param histogramLogPrefix name of the histogram log which is completed by the start time of the run, so each run gets its own log
+     * @param series series to be reported
+     */
+    public StatsReporter(File folder, String histogramLogPrefix, List<LatencySeries> series) {
+        this.folder = folder;
+        this.histogramLogName = histogramLogPrefix + "-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + HISTOGRAM_LOG_SUFFIX;
+        this.series = series;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "stats-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @param runMetadata description of the run, e.g. its options, the server and the client, written into the histogram log as comments
+     */
+    public void setRunMetadata(Map<String, String> runMetadata) {
+        this.runMetadata = runMetadata;
+    }
+
+    /**
+     * @param localOutput false to neither write csv-files nor a histogram log, e.g. because the intervals are sent to the coordinator of a distributed test
+     */
+    public void setLocalOutput(boolean localOutput) {
+        this.localOutput = localOutput;
+    }
+
+    /**
+     * @param intervalListener called by the reporter thread with the interval of each series once it has been collected
+     */
+    public void setIntervalListener(IntervalListener intervalListener) {
+        this.intervalListener = intervalListener;
+    }
+
+    public void start() {
+        startMs = System.currentTimeMillis();
+        lastReportMs = startMs;
+        for (LatencySeries s : series) {
+            perSecondWriters.add(localOutput ? openCsv(s.getPerSecondName()) : new PrintWriter(Writer.nullWriter()));
+            final MovingRate[] rates = new MovingRate[MOVING_RATE_MINUTES.length];
+            for (int i = 0; i < rates.length; i++) {
+                rates[i] = new MovingRate(MOVING_RATE_MINUTES[i]);
+            }
+            movingRates.add(rates);
+        }
+        if (localOutput) {
+            try {
+                histogramLogWriter = new HistogramLogWriter(new File(folder, histogramLogName));
+                histogramLogWriter.outputLogFormatVersion();
+                histogramLogWriter.outputStartTime(startMs);
+                histogramLogWriter.setBaseTime(startMs);
+                for (Map.Entry<String, String> entry : runMetadata.entrySet()) {
+                    histogramLogWriter.outputComment(RUN_METADATA_PREFIX.substring(1) + entry.getKey() + "=" + entry.getValue().replace('\n', ' '));
+                }
+                histogramLogWriter.outputLegend();
+            } catch (IOException e) {
+                LOG.error("Error while creating histogram log '{}'", histogramLogName, e);
+            }
+        }
+        scheduler.scheduleAtFixedRate(this::reportInterval, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops the periodic reporting after having reported the values recorded since the last interval.
+     */
+    public void stop() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        reportInterval();
+        for (PrintWriter writer : perSecondWriters) {
+            writer.close();
+        }
+        if (histogramLogWriter != null) {
+            histogramLogWriter.close();
+        }
+        if (localOutput) {
+            LOG.info("csv-files per second and histogram log '{}' saved in folder: {}", histogramLogName, folder.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Appends one row per series, aggregated over the whole run, to its csv-file per run. Must be called after {@link #stop()}.
+     */
+    public void reportRun() {
+        if (!localOutput) {
+            return;
+        }
+        final double durationInSeconds = Math.max(lastReportMs - startMs, 1) / 1000d;
+        for (int i = 0; i < series.size(); i++) {
+            final LatencySeries s = series.get(i);
+            final Histogram histogram = s.getRunHistogram();
+            final double rate = histogram.getTotalCount() / durationInSeconds;
+            final double docsRate = s.getRunDocs() / durationInSeconds;
+            try (PrintWriter writer = openCsv(s.getPerRunName())) {
+                writer.println(csvRow(lastReportMs, histogram, histogram.getTotalCount(), rate, movingRates.get(i), rate, s.getRunDocs(), docsRate)
+                        + errorColumns(s, s.getRunErrorHistogram(), s.getRunErrors() / durationInSeconds));
+            }
+            LOG.info("Summary of statistics saved in csv-file '{}.csv' located in folder: {}", s.getPerRunName(), folder.getAbsolutePath());
+        }
+    }
+
+    public long getStartMs() {
+        return startMs;
+    }
+
+    public long getLastReportMs() {
+        return lastReportMs;
+    }
+
+    private synchronized void reportInterval() {
+        try {
+            final long nowMs = System.currentTimeMillis();
+            final double intervalInSeconds = Math.max(nowMs - lastReportMs, 1) / 1000d;
+            final double runInSeconds = Math.max(nowMs - startMs, 1) / 1000d;
+            for (int i = 0; i < series.size(); i++) {
+                final LatencySeries s = series.get(i);
+                final Histogram interval = s.collectInterval(lastReportMs, nowMs);
+                final long runCount = s.getRunHistogram().getTotalCount();
+                final double rate = interval.getTotalCount() / intervalInSeconds;
+                final double docsRate = s.getIntervalDocs() / intervalInSeconds;
+                final Histogram errors = s.getIntervalErrorHistogram();
+                final double errorRate = errors.getTotalCount() / intervalInSeconds;
+                for (MovingRate movingRate : movingRates.get(i)) {
+                    movingRate.update(interval.getTotalCount(), intervalInSeconds);
+                }
+                if (intervalListener != null) {
+                    intervalListener.interval(i, interval, s.getIntervalDocs(), errors, s.getIntervalErrorCounts());
+                }
+                perSecondWriters.get(i).println(csvRow(nowMs, interval, runCount, runCount / runInSeconds, movingRates.get(i), rate, s.getRunDocs(), docsRate)
+                        + errorColumns(s, errors, errorRate));
+                if (histogramLogWriter != null) {
+                    histogramLogWriter.outputIntervalHistogram((lastReportMs - startMs) / 1000d, (nowMs - startMs) / 1000d, interval, NANOS_PER_MILLI);
+                    if (errors.getTotalCount() > 0) {
+                        histogramLogWriter.outputIntervalHistogram((lastReportMs - startMs) / 1000d, (nowMs - startMs) / 1000d, errors, NANOS_PER_MILLI);
+                    }
+                }
+                LOG.info("{} count: {}, rate: {} ops/s, docs rate: {} docs/s, mean: {} ms, p99: {} ms, max: {} ms, errors: {}, error rate: {} ops/s",
+                        s.getPerSecondName(), runCount, format(rate), format(docsRate),
+                        format(interval.getMean() / NANOS_PER_MILLI),
+                        format(interval.getValueAtPercentile(99) / NANOS_PER_MILLI),
+                        format(interval.getMaxValue() / NANOS_PER_MILLI),
+                        s.getRunErrors(), format(errorRate));
+            }
+            lastReportMs = nowMs;
+        } catch (RuntimeException e) {
+            // an exception would cancel all further executions of the scheduler
+            LOG.error("Error while reporting statistics", e);
+        }
+    }
+
+    private PrintWriter openCsv(String name) {
+        final File file = new File(folder, name + ".csv");
+        final boolean exists = file.exists() && file.length() > 0;
+        try {
+            final PrintWriter writer = new PrintWriter(new FileWriter(file, true), true);
+            if (!exists) {
+                writer.println(CSV_HEADER);
+            }
+            return writer;
+        } catch (IOException e) {
+            LOG.error("Error while opening csv-file '{}'", file.getAbsolutePath(), e);
+            return new PrintWriter(Writer.nullWriter());
+        }
+    }
+
+    private static String csvRow(long timeStampMs, Histogram h, long count, double meanRate, MovingRate[] movingRates, double rate, long docs, double docsRate) {
+        return String.format(Locale.US, "%d,%d,%f,%f,%f,%f,%f,%f,%f,%f,%f,%f,%f,%f,%f,%f,calls/second,milliseconds,%f,%f,%d,%f",
+                TimeUnit.MILLISECONDS.toSeconds(timeStampMs),
+                count,
+                h.getMaxValue() / NANOS_PER_MILLI,
+                h.getMean() / NANOS_PER_MILLI,
+                h.getMinValue() / NANOS_PER_MILLI,
+                h.getStdDeviation() / NANOS_PER_MILLI,
+                h.getValueAtPercentile(50) / NANOS_PER_MILLI,
+                h.getValueAtPercentile(75) / NANOS_PER_MILLI,
+                h.getValueAtPercentile(95) / NANOS_PER_MILLI,
+                h.getValueAtPercentile(98) / NANOS_PER_MILLI,
+                h.getValueAtPercentile(99) / NANOS_PER_MILLI,
+                h.getValueAtPercentile(99.9) / NANOS_PER_MILLI,
+                meanRate,
+                movingRates[0].getRate(),
+                movingRates[1].getRate(),
+                movingRates[2].getRate(),
+                h.getValueAtPercentile(99.99) / NANOS_PER_MILLI,
+                rate,
+                docs,
+                docsRate);
+    }
+
+    /**
+     * Like the count of successful operations, the error counts are cumulated over the run.
+     */
+    private static String errorColumns(LatencySeries s, Histogram errors, double errorRate) {
+        final StringBuilder sb = new StringBuilder(String.format(Locale.US, ",%d,%f,%f,%f",
+                s.getRunErrors(),
+                errorRate,
+                errors.getMean() / NANOS_PER_MILLI,
+                errors.getValueAtPercentile(99) / NANOS_PER_MILLI));
+        for (ErrorType type : ErrorType.values()) {
+            sb.append(',').append(s.getRunErrors(type));
+        }
+        return sb.toString();
+    }
+
+    private static String errorTypeColumns() {
+        return Arrays.stream(ErrorType.values()).map(ErrorType::getColumnName).collect(Collectors.joining(","));
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.US, "%.3f", value);
+    }
+
+    /**
+     * Receives the intervals of the series, e.g. to send them to the coordinator of a distributed test.
+     */
+    public interface IntervalListener {
+
+        /**
+         * The histograms are reused by the next interval, so they must be copied or encoded before returning.
+         *
+         * @param seriesIndex index of the series in the list of series of the reporter
+         * @param interval latencies of the successful operations of the interval in nanoseconds
+         * @param affectedDocs number of documents affected by the operations of the interval
+         * @param errors latencies of the failed operations of the interval in nanoseconds
+         * @param errorCounts number of failed operations of the interval per {@link ErrorType}, by ordinal
+         */
+        void interval(int seriesIndex, Histogram interval, long affectedDocs, Histogram errors, long[] errorCounts);
+    }
+}
@@ -0,0 +1,70 @@
+package de.idealo.mongodb.perf;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class CapacitySearchTest {
+
+    @Test
+    public void parsesSpecification() {
+        final CapacitySearch search = new CapacitySearch(" rate:100:50:400 ", 10, 1);
+        assertEquals(CapacitySearch.Dimension.RATE, search.getDimension());
+        assertEquals(100, search.getStart(), 0);
+        assertEquals(400, search.getMax(), 0);
+    }
+
+    @Test
+    public void addsStep() {
+        final CapacitySearch search = new CapacitySearch("RATE:100:50:400", 10, 1);
+        assertEquals(150, search.next(100), 0);
+        assertEquals(450, search.next(400), 0);
+    }
+
+    @Test
+    public void multipliesStep() {
+        final CapacitySearch search = new CapacitySearch("threads:10:x2:100", 10, 1);
+        assertEquals(CapacitySearch.Dimension.THREADS, search.getDimension());
+        assertEquals(20, search.next(10), 0);
+        assertEquals(160, search.next(80), 0);
+    }
+
+    @Test
+    public void raisesThreadsByAtLeastOne() {
+        final CapacitySearch multiplied = new CapacitySearch("threads:1:X1.1:10", 10, 1);
+        assertEquals(2, multiplied.next(1), 0);
+        assertEquals(11, multiplied.next(10), 0);
+        final CapacitySearch added = new CapacitySearch("threads:1:0.5:10", 10, 1);
+        assertEquals(2, added.next(1), 0);
+    }
+
+    @Test
+    public void keepsFractionalRates() {
+        final CapacitySearch search = new CapacitySearch("rate:1:x1.5:10", 10, 1);
+        assertEquals(1.5, search.next(1), 1e-12);
+    }
+
+    @Test
+    public void rejectsInvalidSpecifications() {
+        for (String specification : new String[]{"threads:1:1", "threads:1:1:10:20", "clients:1:1:10", "threads:a:1:10", "threads:0:1:10",
+                "threads:10:1:5", "threads:1:0:10", "threads:1:-1:10", "threads:1:x1:10", "rate:1:x0.5:10"}) {
+            try {
+                new CapacitySearch(specification, 10, 1);
+                fail("accepted: " + specification);
+            } catch (IllegalArgumentException expected) {
+                // invalid specification
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsSloOfZero() {
+        new CapacitySearch("threads:1:1:10", 0, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsErrorBudgetAbove100() {
+        new CapacitySearch("threads:1:1:10", 10, 101);
+    }
+}
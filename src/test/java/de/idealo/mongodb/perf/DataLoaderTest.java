@@ -0,0 +1,48 @@
+package de.idealo.mongodb.perf;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DataLoaderTest {
+
+    @Test
+    public void rangesCoverAllIdsOnce() {
+        for (long documents : new long[]{1, 2, 10, 999, 1000, 1001}) {
+            for (int ranges : new int[]{1, 3, 4, 8}) {
+                final long rangeSize = DataLoader.rangeSize(documents, ranges);
+                long expectedFirstId = 100;
+                for (int range = 0; range < ranges; range++) {
+                    final long firstId = DataLoader.firstId(100, rangeSize, range);
+                    final long lastId = DataLoader.lastId(100, documents, rangeSize, range);
+                    if (firstId <= lastId) {
+                        assertEquals(documents + " documents in " + ranges + " ranges", expectedFirstId, firstId);
+                        assertTrue(lastId - firstId + 1 <= rangeSize);
+                        expectedFirstId = lastId + 1;
+                    }
+                }
+                assertEquals(documents + " documents in " + ranges + " ranges", 100 + documents, expectedFirstId);
+            }
+        }
+    }
+
+    @Test
+    public void lastRangeIsSmallerOrEmpty() {
+        assertEquals(4, DataLoader.rangeSize(10, 3));
+        assertEquals(9, DataLoader.firstId(1, 4, 2));
+        assertEquals(10, DataLoader.lastId(1, 10, 4, 2));
+        // 2 documents in 4 ranges leave the last 2 ranges empty
+        assertEquals(1, DataLoader.rangeSize(2, 4));
+        assertTrue(DataLoader.firstId(1, 1, 2) > DataLoader.lastId(1, 2, 1, 2));
+    }
+
+    @Test
+    public void resumesAtBatchOfHighestLoadedId() {
+        assertEquals(101, DataLoader.resumeId(101, 101, 10));
+        assertEquals(101, DataLoader.resumeId(101, 110, 10));
+        assertEquals(111, DataLoader.resumeId(101, 111, 10));
+        assertEquals(121, DataLoader.resumeId(101, 125, 10));
+        assertEquals(125, DataLoader.resumeId(101, 125, 1));
+    }
+}
@@ -0,0 +1,41 @@
+package de.idealo.mongodb.perf;
+
+import org.bson.BsonDocument;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class IndexSetTest {
+
+    @Test
+    public void defaultNameAsGivenByServer() {
+        assertEquals("a_1", IndexSet.defaultName(BsonDocument.parse("{\"a\": 1}")));
+        assertEquals("customer.name_1_total_-1", IndexSet.defaultName(BsonDocument.parse("{\"customer.name\": 1, \"total\": -1}")));
+        assertEquals("a_1", IndexSet.defaultName(BsonDocument.parse("{\"a\": 1.0}")));
+        assertEquals("text_text_loc_2dsphere", IndexSet.defaultName(BsonDocument.parse("{\"text\": \"text\", \"loc\": \"2dsphere\"}")));
+    }
+
+    @Test
+    public void namesIndexes() {
+        final IndexSet indexSet = new IndexSet("[{\"key\": {\"a\": 1, \"b\": -1}}, {\"key\": {\"c\": 1}, \"name\": \"byC\", \"unique\": true, \"sparse\": true},"
+                + " {\"key\": {\"d\": 1}, \"partialFilterExpression\": {\"d\": {\"$gt\": 5}}, \"expireAfterSeconds\": 60, \"collation\": {\"locale\": \"de\"}}]");
+        assertEquals(3, indexSet.size());
+        assertEquals(Arrays.asList("a_1_b_-1", "byC", "d_1"), indexSet.getNames());
+    }
+
+    @Test
+    public void rejectsInvalidDeclarations() {
+        for (String json : new String[]{"{\"key\": {\"a\": 1}}", "[{\"key\": {\"a\": 1}", "[{\"a\": 1}]", "[{\"key\": {}}]", "[1]",
+                "[{\"key\": {\"a\": 1}, \"hidden\": true}]"}) {
+            try {
+                new IndexSet(json);
+                fail("accepted: " + json);
+            } catch (IllegalArgumentException expected) {
+                // invalid declaration
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package de.idealo.mongodb.perf;
+
+import de.idealo.mongodb.perf.operations.FakeOperation;
+import de.idealo.mongodb.perf.operations.IOperation;
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OperationExecutorTest {
+
+    @Test
+    public void openLoopStartsEachOperationNotBeforeItIsDue() {
+        final int operations = 100;
+        final double rate = 500;
+        final long nanosPerOperation = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        final long[] startNanos = new long[operations + 1];
+        final IOperation operation = FakeOperation.of("OPEN_LOOP", (threadId, localRunCount, globalRunCount) -> {
+            startNanos[(int) globalRunCount] = System.nanoTime();
+            return 1;
+        });
+        final CountDownLatch runModeLatch = new CountDownLatch(1);
+        final long before = System.nanoTime();
+        new OperationExecutor(4, operations, 60, rate, operation, runModeLatch).run();
+
+        assertEquals(0, runModeLatch.getCount());
+        for (int n = 1; n <= operations; n++) {
+            assertTrue("operation " + n + " not executed", startNanos[n] != 0);
+            // the n-th operation is due at the start of the run + (n-1) / rate, however fast the operations return
+            assertTrue("operation " + n + " started too early", startNanos[n] - before >= (n - 1) * nanosPerOperation);
+        }
+        assertTrue("schedule fell far behind", startNanos[operations] - before < (operations - 1) * nanosPerOperation + TimeUnit.SECONDS.toNanos(5));
+    }
+
+    @Test
+    public void closedLoopExecutesEachRunCountOnce() {
+        final int operations = 10_000;
+        final int[] executions = new int[operations + 1];
+        final IOperation operation = FakeOperation.of("CLOSED_LOOP", (threadId, localRunCount, globalRunCount) -> {
+            synchronized (executions) {
+                executions[(int) globalRunCount]++;
+            }
+            return 1;
+        });
+        new OperationExecutor(4, operations, 60, operation, new CountDownLatch(1)).run();
+
+        for (int n = 1; n <= operations; n++) {
+            assertEquals("run count " + n, 1, executions[n]);
+        }
+    }
+
+    @Test
+    public void asyncKeepsEachSlotBusyWithOneOperationAtATime() {
+        final int slots = 8;
+        final int operations = 2000;
+        final ScheduledExecutorService eventLoop = Executors.newSingleThreadScheduledExecutor();
+        final AtomicInteger started = new AtomicInteger();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final Set<Integer> busySlots = ConcurrentHashMap.newKeySet();
+        final AtomicBoolean slotShared = new AtomicBoolean();
+        final IOperation operation = FakeOperation.of("ASYNC", (threadId, localRunCount, globalRunCount) -> 1,
+                (threadId, localRunCount, globalRunCount, callback) -> {
+                    started.incrementAndGet();
+                    if (!busySlots.add(threadId)) {
+                        slotShared.set(true);
+                    }
+                    maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                    if (globalRunCount % 100 == 0) {
+                        // an operation failing before it has been started must free its slot as well
+                        busySlots.remove(threadId);
+                        inFlight.decrementAndGet();
+                        throw new IllegalStateException("not started");
+                    }
+                    eventLoop.schedule(() -> {
+                        busySlots.remove(threadId);
+                        inFlight.decrementAndGet();
+                        callback.onResult(globalRunCount % 7 == 0 ? null : 1L, globalRunCount % 7 == 0 ? new IllegalStateException("failed") : null);
+                    }, 2, TimeUnit.MILLISECONDS);
+                });
+        final OperationExecutor executor = new OperationExecutor(slots, operations, 60, operation, new CountDownLatch(1));
+        executor.setEngine(ExecutionEngine.ASYNC);
+        executor.run();
+        eventLoop.shutdown();
+
+        assertEquals(operations, started.get());
+        // the executor returns once all operations in flight have called back
+        assertEquals(0, inFlight.get());
+        assertFalse("slot used by two operations in flight", slotShared.get());
+        assertEquals(slots, maxInFlight.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAsyncEngineForSyncOnlyOperation() {
+        new OperationExecutor(1, 1, 60, FakeOperation.syncOf("SYNC", (threadId, localRunCount, globalRunCount) -> 1), new CountDownLatch(1))
+                .setEngine(ExecutionEngine.ASYNC);
+    }
+}
@@ -0,0 +1,50 @@
+package de.idealo.mongodb.perf;
+
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WorkerTest {
+
+    @Test
+    public void startsAtStartTimeOfCoordinator() throws Exception {
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            final Thread coordinator = new Thread(() -> {
+                try (Socket socket = serverSocket.accept()) {
+                    final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                    final DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                    out.writeByte(WorkerProtocol.CONFIG);
+                    out.writeInt(1);
+                    out.writeInt(2);
+                    out.writeInt(0);
+                    WorkerProtocol.expect(in, WorkerProtocol.READY);
+                    assertEquals(0, in.readInt());
+                    out.writeByte(WorkerProtocol.START);
+                    out.writeLong(System.currentTimeMillis() + Coordinator.START_DELAY_MS);
+                    // keeps the connection open until the worker closes it
+                    in.read();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            coordinator.start();
+
+            final Worker worker = new Worker("localhost", serverSocket.getLocalPort());
+            assertEquals(1, worker.getIndex());
+            assertEquals(2, worker.getCount());
+            final long readyMs = System.currentTimeMillis();
+            worker.ready(Collections.emptyList());
+            assertTrue(System.currentTimeMillis() - readyMs >= Coordinator.START_DELAY_MS - 50);
+            worker.close();
+            coordinator.join();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package de.idealo.mongodb.perf.distribution;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class KeyDistributionTest {
+
+    @Test
+    public void parsesNamesAndParameters() {
+        assertSame(UniformKeyDistribution.INSTANCE, KeyDistribution.parse("uniform"));
+        assertEquals("zipfian-0.99", KeyDistribution.parse("zipfian").getName());
+        assertEquals("zipfian-1.2", KeyDistribution.parse(" Zipfian:1.2 ").getName());
+        assertEquals("hotspot-90-10", KeyDistribution.parse("hotspot").getName());
+        assertEquals("hotspot-80-2.5", KeyDistribution.parse("hotspot:80:2.5").getName());
+        assertEquals("latest-0.5", KeyDistribution.parse("latest:0.5").getName());
+        assertEquals("sequential", KeyDistribution.parse("SEQUENTIAL").getName());
+    }
+
+    @Test
+    public void rejectsInvalidSpecifications() {
+        for (String specification : new String[]{"", "gaussian", "uniform:1", "zipfian:1:2", "zipfian:0", "zipfian:-1",
+                "zipfian:abc", "hotspot:80", "hotspot:80:20:5", "hotspot:101:10", "hotspot:80:0", "latest:0", "sequential:1"}) {
+            try {
+                KeyDistribution.parse(specification);
+                fail("accepted: " + specification);
+            } catch (IllegalArgumentException expected) {
+                // NumberFormatException is an IllegalArgumentException as well
+            }
+        }
+    }
+
+    @Test
+    public void keysAreWithinRange() {
+        for (String specification : new String[]{"uniform", "zipfian", "hotspot", "latest", "sequential"}) {
+            final KeyDistribution distribution = KeyDistribution.parse(specification);
+            for (int i = 0; i < 10_000; i++) {
+                final long key = distribution.nextKey(100, 199);
+                assertTrue(specification + " key " + key + " out of [100, 199]", key >= 100 && key <= 199);
+            }
+        }
+    }
+
+    @Test
+    public void latestPrefersBiggestKeys() {
+        final KeyDistribution distribution = KeyDistribution.parse("latest");
+        final long[] counts = new long[100];
+        for (int i = 0; i < 100_000; i++) {
+            counts[(int) distribution.nextKey(0, 99)]++;
+        }
+        assertTrue(counts[99] > counts[98]);
+        assertTrue(counts[98] > counts[0]);
+    }
+
+    @Test
+    public void hotspotQueriesHotSetAsOften() {
+        final KeyDistribution distribution = KeyDistribution.parse("hotspot:80:10");
+        int hot = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (distribution.nextKey(1, 1000) <= 100) {
+                hot++;
+            }
+        }
+        assertEquals(0.8, hot / 100_000d, 0.01);
+    }
+
+    @Test
+    public void sequentialWrapsAround() {
+        final KeyDistribution distribution = KeyDistribution.parse("sequential");
+        for (long expected : new long[]{5, 6, 7, 5, 6}) {
+            assertEquals(expected, distribution.nextKey(5, 7));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package de.idealo.mongodb.perf.distribution;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ZipfianKeyDistributionTest {
+
+    @Test
+    public void rejectsEmptyKeyRange() {
+        try {
+            new ZipfianKeyDistribution(0.99).nextKey(10, 9);
+            fail("accepted empty key range");
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains("[10, 9]"));
+        }
+    }
+
+    @Test
+    public void returnsOnlyKeyOfSingleKeyRange() {
+        final ZipfianKeyDistribution distribution = new ZipfianKeyDistribution(0.99);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(7, distribution.nextKey(7, 7));
+        }
+    }
+
+    @Test
+    public void keepsPopularKeysWhileKeySpaceGrowsSlightly() {
+        final ZipfianKeyDistribution distribution = new ZipfianKeyDistribution(0.99);
+        sample(distribution, 1, 100);
+        // keys 101 to 199 are inserted after the popular keys have been chosen among the first 100
+        for (long key : sample(distribution, 1, 199)) {
+            assertTrue("key " + key + " out of [1, 100]", key >= 1 && key <= 100);
+        }
+    }
+
+    @Test
+    public void queriesNewKeysOnceKeySpaceHasDoubled() {
+        final ZipfianKeyDistribution distribution = new ZipfianKeyDistribution(0.5);
+        sample(distribution, 1, 100);
+        final Set<Long> keys = sample(distribution, 1, 200);
+        assertFalse(keys.stream().allMatch(key -> key <= 100));
+        for (long key : keys) {
+            assertTrue(key >= 1 && key <= 200);
+        }
+    }
+
+    @Test
+    public void staysWithinShrunkKeySpace() {
+        final ZipfianKeyDistribution distribution = new ZipfianKeyDistribution(0.99);
+        sample(distribution, 1, 1000);
+        for (long key : sample(distribution, 1, 10)) {
+            assertTrue("key " + key + " out of [1, 10]", key >= 1 && key <= 10);
+        }
+    }
+
+    private static Set<Long> sample(KeyDistribution distribution, long min, long max) {
+        final Set<Long> keys = new HashSet<>();
+        for (int i = 0; i < 10_000; i++) {
+            keys.add(distribution.nextKey(min, max));
+        }
+        return keys;
+    }
+}
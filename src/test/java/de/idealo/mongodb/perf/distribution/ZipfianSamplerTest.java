@@ -0,0 +1,70 @@
+package de.idealo.mongodb.perf.distribution;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ZipfianSamplerTest {
+
+    private static final int SAMPLES = 200_000;
+
+    @Test
+    public void ranksAreWithinRange() {
+        final ZipfianSampler sampler = new ZipfianSampler(0.99);
+        for (long n : new long[]{1, 2, 10, 1000, Long.MAX_VALUE / 2}) {
+            for (int i = 0; i < 10_000; i++) {
+                final long rank = sampler.nextRank(n);
+                assertTrue("rank " + rank + " out of [1, " + n + "]", rank >= 1 && rank <= n);
+            }
+        }
+    }
+
+    @Test
+    public void frequenciesFollowSkew() {
+        for (double skew : new double[]{0.5, 0.99, 1.5}) {
+            final int n = 100;
+            final long[] counts = sample(new ZipfianSampler(skew), n);
+            double normalization = 0;
+            for (int k = 1; k <= n; k++) {
+                normalization += Math.pow(k, -skew);
+            }
+            for (int k : new int[]{1, 2, 10}) {
+                final double expected = Math.pow(k, -skew) / normalization;
+                final double actual = (double) counts[k] / SAMPLES;
+                // within 5 standard deviations of the binomially distributed count, so the test fails by chance in less than 1e-6 of the runs
+                assertEquals("skew " + skew + ", rank " + k, expected, actual, 5 * Math.sqrt(expected * (1 - expected) / SAMPLES));
+            }
+        }
+    }
+
+    @Test
+    public void biggerSkewConcentratesOnFirstRank() {
+        final long[] low = sample(new ZipfianSampler(0.5), 1000);
+        final long[] high = sample(new ZipfianSampler(1.5), 1000);
+        assertTrue(high[1] > 2 * low[1]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroSkew() {
+        new ZipfianSampler(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInfiniteSkew() {
+        new ZipfianSampler(Double.POSITIVE_INFINITY);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNaNSkew() {
+        new ZipfianSampler(Double.NaN);
+    }
+
+    private static long[] sample(ZipfianSampler sampler, int n) {
+        final long[] counts = new long[n + 1];
+        for (int i = 0; i < SAMPLES; i++) {
+            counts[(int) sampler.nextRank(n)]++;
+        }
+        return counts;
+    }
+}
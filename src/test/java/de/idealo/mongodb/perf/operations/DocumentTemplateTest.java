@@ -0,0 +1,48 @@
+package de.idealo.mongodb.perf.operations;
+
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.RawBsonDocument;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DocumentTemplateTest {
+
+    @Test
+    public void patchesValuesOfDefaultDocument() {
+        final DocumentTemplate template = new DocumentTemplate(0);
+        for (long value : new long[]{0, 1, 255, 256, -1, Long.MAX_VALUE, Long.MIN_VALUE}) {
+            final RawBsonDocument document = template.createDocument(value, (int) value, value + 1, value - 1);
+            assertEquals(new BsonDocument(IOperation.ID, new BsonInt64(value))
+                    .append(IOperation.THREAD_ID, new BsonInt32((int) value))
+                    .append(IOperation.THREAD_RUN_COUNT, new BsonInt64(value + 1))
+                    .append(IOperation.RANDOM_LONG, new BsonInt64(value - 1))
+                    .append(IOperation.VERSION, new BsonInt32(1)), document);
+        }
+    }
+
+    @Test
+    public void copiesRandomTextIntoPlaceholder() {
+        final DocumentTemplate template = new DocumentTemplate(100);
+        final RawBsonDocument first = template.createDocument(1, 2, 3, 4);
+        final RawBsonDocument second = template.createDocument(5, 6, 7, 8);
+        final String text = first.getString(IOperation.RANDOM_TEXT).getValue();
+        assertEquals(100, text.length());
+        assertTrue(text, text.matches("[0-9A-Za-z]+"));
+        assertNotEquals(text, second.getString(IOperation.RANDOM_TEXT).getValue());
+        // the fields following the random text are intact
+        assertEquals(1, first.getInt32(IOperation.VERSION).getValue());
+        assertEquals(4L, first.getInt64(IOperation.RANDOM_LONG).getValue());
+        assertEquals(5L, second.getInt64(IOperation.ID).getValue());
+    }
+
+    @Test
+    public void omitsRandomTextOfLength0() {
+        assertFalse(new DocumentTemplate(0).createDocument(1, 1, 1, 1).containsKey(IOperation.RANDOM_TEXT));
+    }
+}
@@ -0,0 +1,85 @@
+package de.idealo.mongodb.perf.operations;
+
+import com.mongodb.async.SingleResultCallback;
+
+import java.lang.reflect.Proxy;
+
+/**
+ * Operations for tests which don't need a database. They are proxies of {@link IAsyncOperation}, so methods not relevant to
+ * a test return 0, false or null.
+ */
+public final class FakeOperation {
+
+    public interface Body {
+        long execute(int threadId, long localRunCount, long globalRunCount);
+    }
+
+    public interface AsyncBody {
+        void execute(int threadId, long localRunCount, long globalRunCount, SingleResultCallback<Long> callback);
+    }
+
+    private FakeOperation() {
+    }
+
+    /**
+     * @param name name of the operation, as used in the names of the statistics files
+     * @param body executed by each call of {@link IOperation#operation(int, long, long)}
+     */
+    public static IAsyncOperation of(String name, Body body) {
+        return of(name, body, (threadId, localRunCount, globalRunCount, callback) -> callback.onResult(body.execute(threadId, localRunCount, globalRunCount), null));
+    }
+
+    /**
+     * @param asyncBody executed by each call of {@link IAsyncOperation#operationAsync(int, long, long, SingleResultCallback)}
+     */
+    public static IAsyncOperation of(String name, Body body, AsyncBody asyncBody) {
+        return (IAsyncOperation) proxy(IAsyncOperation.class, name, body, asyncBody);
+    }
+
+    /**
+     * @return an operation which can be executed by threads only
+     */
+    public static IOperation syncOf(String name, Body body) {
+        return (IOperation) proxy(IOperation.class, name, body, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object proxy(Class<? extends IOperation> type, String name, Body body, AsyncBody asyncBody) {
+        return Proxy.newProxyInstance(FakeOperation.class.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "operation":
+                    return body.execute((Integer) args[0], (Long) args[1], (Long) args[2]);
+                case "operationAsync":
+                    asyncBody.execute((Integer) args[0], (Long) args[1], (Long) args[2], (SingleResultCallback<Long>) args[3]);
+                    return null;
+                case "getName":
+                case "toString":
+                    return name;
+                case "getOperationMode":
+                    return OperationModes.INSERT;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == double.class) {
+            return 0d;
+        }
+        if (type == boolean.class) {
+            return false;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,44 @@
+package de.idealo.mongodb.perf.operations;
+
+import org.bson.BsonBinaryReader;
+import org.bson.BsonDocument;
+import org.bson.BsonInt64;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.codecs.DecoderContext;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+
+public class InsertOperationTest {
+
+    @Test
+    public void appendsLongToEmptyDocument() {
+        final RawBsonDocument document = InsertOperation.appendLong(new RawBsonDocument(new BsonDocument(), new BsonDocumentCodec()), IOperation.CLIENT_TIME, 42);
+        assertEquals(new BsonDocument(IOperation.CLIENT_TIME, new BsonInt64(42)), decode(document));
+    }
+
+    @Test
+    public void appendsLongAfterLastField() {
+        final RawBsonDocument original = new DocumentTemplate(50).createDocument(7, 2, 3, 4);
+        final RawBsonDocument document = InsertOperation.appendLong(original, IOperation.CLIENT_TIME, Long.MIN_VALUE);
+        final BsonDocument expected = decode(original).append(IOperation.CLIENT_TIME, new BsonInt64(Long.MIN_VALUE));
+        assertEquals(expected, decode(document));
+        assertEquals(original.getByteBuffer().remaining() + 1 + IOperation.CLIENT_TIME.length() + 1 + Long.BYTES, document.getByteBuffer().remaining());
+    }
+
+    /**
+     * Decodes the document strictly, so that a wrong size header or a missing terminator fails.
+     */
+    private static BsonDocument decode(RawBsonDocument document) {
+        final ByteBuffer buffer = document.getByteBuffer().asNIO().order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(buffer.remaining(), buffer.getInt(0));
+        assertEquals(0, buffer.get(buffer.remaining() - 1));
+        try (BsonBinaryReader reader = new BsonBinaryReader(buffer)) {
+            return new BsonDocumentCodec().decode(reader, DecoderContext.builder().build());
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package de.idealo.mongodb.perf.operations;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MixedOperationTest {
+
+    @Test
+    public void choosesOperationsByWeight() {
+        final MixedOperation mixed = new MixedOperation(Arrays.asList(operation("A"), operation("B"), operation("C")), Arrays.asList(1d, 3d, 6d));
+        final int[] counts = new int[3];
+        for (int i = 0; i < 100_000; i++) {
+            counts[mixed.nextOperationIndex()]++;
+        }
+        assertEquals(0.1, counts[0] / 100_000d, 0.01);
+        assertEquals(0.3, counts[1] / 100_000d, 0.01);
+        assertEquals(0.6, counts[2] / 100_000d, 0.01);
+    }
+
+    @Test
+    public void eachOperationGetsGaplessRunCounts() throws InterruptedException {
+        final List<Set<Long>> runCounts = Arrays.asList(ConcurrentHashMap.newKeySet(), ConcurrentHashMap.newKeySet());
+        final AtomicBoolean duplicate = new AtomicBoolean();
+        final MixedOperation mixed = new MixedOperation(Arrays.asList(
+                recording("A", runCounts.get(0), duplicate), recording("B", runCounts.get(1), duplicate)),
+                Arrays.asList(1d, 1d));
+        final Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int threadId = t + 1;
+            threads[t] = new Thread(() -> {
+                for (int i = 1; i <= 10_000; i++) {
+                    mixed.operation(threadId, (long) i, 0L);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertFalse("run count given twice to the same operation", duplicate.get());
+        assertEquals(40_000, runCounts.get(0).size() + runCounts.get(1).size());
+        for (Set<Long> operationRunCounts : runCounts) {
+            // unique run counts from 1 to their number
+            assertEquals(operationRunCounts.size(), Collections.max(operationRunCounts).longValue());
+        }
+    }
+
+    @Test
+    public void namesOperationsByWeight() {
+        final MixedOperation mixed = new MixedOperation(Arrays.asList(operation("ITERATE_ONE"), operation("UPDATE_ONE")), Arrays.asList(95d, 2.5d));
+        assertEquals("MIX-95xITERATE_ONE-2.5xUPDATE_ONE", mixed.getName());
+    }
+
+    @Test
+    public void rejectsInvalidWeights() {
+        final List<List<Double>> invalid = Arrays.asList(Arrays.asList(1d, 0d), Arrays.asList(1d, -1d), Arrays.asList(1d, Double.NaN),
+                Arrays.asList(1d, Double.POSITIVE_INFINITY), Collections.singletonList(1d));
+        for (List<Double> weights : invalid) {
+            try {
+                new MixedOperation(Arrays.asList(operation("A"), operation("B")), weights);
+                fail("accepted: " + weights);
+            } catch (IllegalArgumentException expected) {
+                // invalid weights
+            }
+        }
+    }
+
+    @Test
+    public void mixesAsyncOnlyIfAllOperationsAreAsync() {
+        assertTrue(MixedOperation.of(Arrays.asList(operation("A"), operation("B")), Arrays.asList(1d, 1d)) instanceof AsyncMixedOperation);
+        assertFalse(MixedOperation.of(Arrays.asList(operation("A"), FakeOperation.syncOf("B", (threadId, localRunCount, globalRunCount) -> 1)),
+                Arrays.asList(1d, 1d)) instanceof IAsyncOperation);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNoOperations() {
+        new MixedOperation(Collections.emptyList(), Collections.emptyList());
+    }
+
+    private static IOperation operation(String name) {
+        return FakeOperation.of(name, (threadId, localRunCount, globalRunCount) -> 1);
+    }
+
+    private static IOperation recording(String name, Set<Long> runCounts, AtomicBoolean duplicate) {
+        return FakeOperation.of(name, (threadId, localRunCount, globalRunCount) -> {
+            if (!runCounts.add(globalRunCount)) {
+                duplicate.set(true);
+            }
+            return 1;
+        });
+    }
+}
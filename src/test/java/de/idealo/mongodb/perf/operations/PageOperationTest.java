@@ -0,0 +1,75 @@
+package de.idealo.mongodb.perf.operations;
+
+import com.mongodb.MongoClientSettings;
+import org.bson.BsonDocument;
+import org.bson.BsonInt64;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class PageOperationTest {
+
+    @Test
+    public void skipsDocumentsOfPreviousPages() {
+        final PageOperation.Pagination pagination = new PageOperation.Pagination("price", false, 10, 3);
+        pagination.nextPage(42);
+        assertEquals(0, pagination.skip());
+        assertEquals(condition("$gte", 42), filter(pagination));
+        pagination.pageDone(10, new BsonInt64(60));
+        pagination.nextPage(7);
+        // the second page continues at the start value of the first one
+        assertEquals(10, pagination.skip());
+        assertEquals(condition("$gte", 42), filter(pagination));
+        pagination.pageDone(10, new BsonInt64(80));
+        pagination.nextPage(7);
+        assertEquals(20, pagination.skip());
+    }
+
+    @Test
+    public void continuesAfterLastValueOfPreviousPage() {
+        final PageOperation.Pagination pagination = new PageOperation.Pagination("price", true, 10, 3);
+        pagination.nextPage(42);
+        assertEquals(condition("$gte", 42), filter(pagination));
+        pagination.pageDone(10, new BsonInt64(60));
+        pagination.nextPage(7);
+        assertEquals(0, pagination.skip());
+        assertEquals(condition("$gt", 60), filter(pagination));
+    }
+
+    @Test
+    public void startsOverAfterMaxPages() {
+        final PageOperation.Pagination pagination = new PageOperation.Pagination("price", true, 10, 2);
+        pagination.nextPage(42);
+        pagination.pageDone(10, new BsonInt64(60));
+        assertEquals(1, pagination.getPage());
+        pagination.nextPage(7);
+        pagination.pageDone(10, new BsonInt64(80));
+        assertEquals(0, pagination.getPage());
+        pagination.nextPage(7);
+        assertEquals(condition("$gte", 7), filter(pagination));
+    }
+
+    @Test
+    public void startsOverAfterLastOrFailedPage() {
+        final PageOperation.Pagination pagination = new PageOperation.Pagination("price", false, 10, 5);
+        pagination.nextPage(42);
+        pagination.pageDone(3, new BsonInt64(60));
+        assertEquals(0, pagination.getPage());
+        pagination.nextPage(7);
+        pagination.pageDone(10, new BsonInt64(60));
+        pagination.nextPage(1);
+        pagination.pageDone(0, null);
+        assertEquals(0, pagination.getPage());
+        pagination.nextPage(9);
+        assertEquals(0, pagination.skip());
+        assertEquals(condition("$gte", 9), filter(pagination));
+    }
+
+    private static BsonDocument condition(String operator, long value) {
+        return new BsonDocument("price", new BsonDocument(operator, new BsonInt64(value)));
+    }
+
+    private static BsonDocument filter(PageOperation.Pagination pagination) {
+        return pagination.filter().toBsonDocument(BsonDocument.class, MongoClientSettings.getDefaultCodecRegistry());
+    }
+}
@@ -0,0 +1,57 @@
+package de.idealo.mongodb.perf.operations;
+
+import org.bson.BsonDocument;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class PipelineTemplateTest {
+
+    @Test
+    public void replacesPlaceholders() {
+        final PipelineTemplate template = new PipelineTemplate("[{\"$match\": {\"_id\": {\"$gte\": \"#selector\"}, \"rnd\": {\"$in\": [\"#random\", \"#threadId\"]}}},"
+                + " {\"$set\": {\"n\": \"#threadRunCount\", \"s\": \"#other\"}}]");
+        final List<BsonDocument> stages = template.fill(10, 20, 3, 40);
+        assertEquals(BsonDocument.parse("{\"$match\": {\"_id\": {\"$gte\": {\"$numberLong\": \"10\"}}, \"rnd\": {\"$in\": [{\"$numberLong\": \"20\"}, {\"$numberLong\": \"3\"}]}}}"), stages.get(0));
+        assertEquals(BsonDocument.parse("{\"$set\": {\"n\": {\"$numberLong\": \"40\"}, \"s\": \"#other\"}}"), stages.get(1));
+    }
+
+    @Test
+    public void sharesStagesWithoutPlaceholders() {
+        final PipelineTemplate template = new PipelineTemplate("[{\"$match\": {\"_id\": \"#selector\"}}, {\"$limit\": 100}]");
+        final List<BsonDocument> first = template.fill(1, 1, 1, 1);
+        final List<BsonDocument> second = template.fill(2, 2, 2, 2);
+        assertSame(first.get(1), second.get(1));
+        assertEquals(1L, first.get(0).getDocument("$match").getInt64("_id").getValue());
+        assertEquals(2L, second.get(0).getDocument("$match").getInt64("_id").getValue());
+    }
+
+    @Test
+    public void sharesPipelineWithoutPlaceholders() {
+        final PipelineTemplate template = new PipelineTemplate("[{\"$limit\": 100}]");
+        assertSame(template.fill(1, 1, 1, 1), template.fill(2, 2, 2, 2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsDocument() {
+        new PipelineTemplate("{\"$limit\": 100}");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidJson() {
+        new PipelineTemplate("[{\"$limit\": ]");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyPipeline() {
+        new PipelineTemplate("[]");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsStageNotBeingDocument() {
+        new PipelineTemplate("[{\"$limit\": 100}, 5]");
+    }
+}
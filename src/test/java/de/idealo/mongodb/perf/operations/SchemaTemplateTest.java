@@ -0,0 +1,142 @@
+package de.idealo.mongodb.perf.operations;
+
+import org.bson.BsonDocument;
+import org.bson.RawBsonDocument;
+import org.junit.Test;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SchemaTemplateTest {
+
+    @Test
+    public void writesDefaultFieldsFirst() {
+        final RawBsonDocument document = new SchemaTemplate("test", "{\"a\": 1, \"b\": {\"c\": [true, \"x\"]}}").createDocument(7, 2, 3, 4);
+        assertEquals(BsonDocument.parse("{\"_id\": {\"$numberLong\": \"7\"}, \"threadId\": 2, \"threadRunCount\": {\"$numberLong\": \"3\"},"
+                + " \"rnd\": {\"$numberLong\": \"4\"}, \"v\": 1, \"a\": 1, \"b\": {\"c\": [true, \"x\"]}}"), document);
+    }
+
+    @Test
+    public void generatesValuesWithinRange() {
+        final SchemaTemplate template = new SchemaTemplate("test", "{\"i\": {\"#gen\": \"int\", \"min\": 5, \"max\": 8},"
+                + " \"d\": {\"#gen\": \"double\", \"min\": -1, \"max\": 1},"
+                + " \"s\": {\"#gen\": \"string\", \"min\": 2, \"max\": 4},"
+                + " \"a\": {\"#gen\": \"array\", \"size\": 3, \"of\": {\"#gen\": \"bool\"}}}");
+        for (int n = 0; n < 1000; n++) {
+            final RawBsonDocument document = template.createDocument(n, 1, n, n);
+            final int i = document.getInt32("i").getValue();
+            final double d = document.getDouble("d").getValue();
+            final int s = document.getString("s").getValue().length();
+            assertTrue("int " + i, i >= 5 && i < 8);
+            assertTrue("double " + d, d >= -1 && d < 1);
+            assertTrue("string length " + s, s >= 2 && s <= 4);
+            assertEquals(3, document.getArray("a").size());
+        }
+    }
+
+    @Test
+    public void choosesByWeight() {
+        final SchemaTemplate template = new SchemaTemplate("test", "{\"c\": {\"#gen\": \"choice\", \"values\": [\"a\", \"b\", \"c\"], \"weights\": [0, 1, 0]}}");
+        for (int n = 0; n < 1000; n++) {
+            assertEquals("b", template.createDocument(n, 1, n, n).getString("c").getValue());
+        }
+    }
+
+    @Test
+    public void generatesEmptyStringsAndBinaries() {
+        final RawBsonDocument document = new SchemaTemplate("test", "{\"s\": {\"#gen\": \"string\", \"size\": 0},"
+                + " \"b\": {\"#gen\": \"binary\", \"min\": 0, \"max\": 0}}").createDocument(1, 1, 1, 1);
+        assertEquals("", document.getString("s").getValue());
+        assertEquals(0, document.getBinary("b").getData().length);
+    }
+
+    @Test
+    public void fixedSize() {
+        final SchemaTemplate.SizeDistribution size = sizeDistribution("{\"size\": 7, \"distribution\": \"normal\"}");
+        for (int i = 0; i < 100; i++) {
+            assertEquals(7, size.next(ThreadLocalRandom.current()));
+        }
+    }
+
+    @Test
+    public void uniformSizeCoversRange() {
+        final int[] counts = sample(sizeDistribution("{\"min\": 2, \"max\": 5}"), 5);
+        for (int i = 2; i <= 5; i++) {
+            assertEquals("size " + i, 0.25, counts[i] / 100_000d, 0.01);
+        }
+        assertEquals(0, counts[0] + counts[1]);
+    }
+
+    @Test
+    public void normalSizeIsClampedAroundMean() {
+        final int[] counts = sample(sizeDistribution("{\"min\": 0, \"max\": 100, \"distribution\": \"normal\", \"mean\": 50, \"stddev\": 30}"), 100);
+        assertTrue(counts[0] > 0 && counts[100] > 0);
+        assertTrue(counts[50] > counts[10]);
+        assertEquals(50, mean(counts), 0.5);
+    }
+
+    @Test
+    public void exponentialSizeHasMean() {
+        final int[] counts = sample(sizeDistribution("{\"min\": 0, \"max\": 10000, \"distribution\": \"exponential\", \"mean\": 20}"), 10000);
+        assertTrue(counts[0] > counts[40]);
+        assertEquals(20, mean(counts), 0.5);
+    }
+
+    @Test
+    public void rejectsInvalidSchemas() {
+        for (String json : new String[]{
+                "[1, 2]",
+                "{\"_id\": 1}",
+                "{\"cts\": 1}",
+                "{\"v\": {\"#gen\": \"int\"}}",
+                "{\"a\": {\"#gen\": \"uuid\"}}",
+                "{\"a\": {\"#gen\": 1}}",
+                "{\"a\": {\"#gen\": \"int\", \"min\": 5, \"max\": 5}}",
+                "{\"a\": {\"#gen\": \"int\", \"max\": 3000000000}}",
+                "{\"a\": {\"#gen\": \"double\", \"min\": \"1\"}}",
+                "{\"a\": {\"#gen\": \"date\", \"from\": 1}}",
+                "{\"a\": {\"#gen\": \"string\", \"min\": 5, \"max\": 4}}",
+                "{\"a\": {\"#gen\": \"string\", \"min\": -1}}",
+                "{\"a\": {\"#gen\": \"string\", \"distribution\": \"pareto\"}}",
+                "{\"a\": {\"#gen\": \"string\", \"distribution\": 1}}",
+                "{\"a\": {\"#gen\": \"array\"}}",
+                "{\"a\": {\"#gen\": \"choice\", \"values\": []}}",
+                "{\"a\": {\"#gen\": \"choice\", \"values\": [1, 2], \"weights\": [1]}}",
+                "{\"a\": {\"#gen\": \"choice\", \"values\": [1, 2], \"weights\": [1, -1]}}",
+                "{\"a\": {\"#gen\": \"choice\", \"values\": [1, 2], \"weights\": [1, \"2\"]}}",
+                "{\"a\": {\"#gen\": \"choice\", \"values\": [1, 2], \"weights\": 1}}",
+                "{\"a\": {\"#gen\": \"choice\", \"values\": [1, 2], \"weights\": [0, 0]}}"}) {
+            try {
+                new SchemaTemplate("test", json);
+                fail("accepted: " + json);
+            } catch (IllegalArgumentException expected) {
+                // invalid schema
+            }
+        }
+    }
+
+    private static SchemaTemplate.SizeDistribution sizeDistribution(String json) {
+        return SchemaTemplate.SizeDistribution.parse("test", BsonDocument.parse(json), 0, 10);
+    }
+
+    private static int[] sample(SchemaTemplate.SizeDistribution size, int max) {
+        final int[] counts = new int[max + 1];
+        for (int i = 0; i < 100_000; i++) {
+            counts[size.next(ThreadLocalRandom.current())]++;
+        }
+        return counts;
+    }
+
+    private static double mean(int[] counts) {
+        double sum = 0;
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            sum += (double) i * counts[i];
+            total += counts[i];
+        }
+        return sum / total;
+    }
+}
@@ -0,0 +1,87 @@
+package de.idealo.mongodb.perf.report;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WelchTest {
+
+    @Test
+    public void meanAndVariance() {
+        assertEquals(2.5, Welch.mean(new double[]{1, 2, 3, 4}), 1e-12);
+        assertEquals(5d / 3, Welch.variance(new double[]{1, 2, 3, 4}), 1e-12);
+        assertTrue(Double.isNaN(Welch.mean(new double[0])));
+        assertTrue(Double.isNaN(Welch.variance(new double[]{1})));
+    }
+
+    @Test
+    public void tQuantileIsExactBelowFourDegreesOfFreedom() {
+        assertEquals(12.706, Welch.tQuantile975(1), 0.001);
+        assertEquals(12.706, Welch.tQuantile975(1.7), 0.001);
+        assertEquals(4.303, Welch.tQuantile975(2), 0.001);
+        assertEquals(4.303, Welch.tQuantile975(2.9), 0.001);
+        assertEquals(3.182, Welch.tQuantile975(3), 0.001);
+        assertEquals(3.182, Welch.tQuantile975(3.5), 0.001);
+    }
+
+    @Test
+    public void tQuantileIsAccurateFromFourDegreesOfFreedom() {
+        final double[][] exact = {{4, 2.776}, {5, 2.571}, {10, 2.228}, {30, 2.042}, {1000, 1.962}};
+        for (double[] quantile : exact) {
+            assertEquals("df " + quantile[0], quantile[1], Welch.tQuantile975(quantile[0]), 0.01);
+        }
+    }
+
+    @Test
+    public void tQuantileIsNotBelowExactQuantileOfSmallerDegreesOfFreedom() {
+        assertTrue(Welch.tQuantile975(4.5) <= 2.776445105);
+        assertTrue(Welch.tQuantile975(4.5) > 2.570581836);
+    }
+
+    @Test
+    public void tQuantileDecreasesWithDegreesOfFreedom() {
+        double previous = Double.MAX_VALUE;
+        for (double df = 1; df <= 100; df += 0.25) {
+            final double quantile = Welch.tQuantile975(df);
+            assertTrue("df " + df, quantile <= previous);
+            previous = quantile;
+        }
+    }
+
+    @Test
+    public void halfWidth() {
+        assertEquals(4.302652730 * Math.sqrt(1d / 3), Welch.halfWidth(new double[]{1, 2, 3}), 1e-9);
+        assertTrue(Double.isNaN(Welch.halfWidth(new double[]{1, 2})));
+    }
+
+    @Test
+    public void differenceOfDistinctSetsExcludesZero() {
+        final double[] difference = Welch.difference(new double[]{10, 11, 9, 10, 10}, new double[]{20, 21, 19, 20, 20});
+        assertEquals(10, difference[0], 1e-9);
+        assertTrue(difference[1] > 0 && difference[1] < 10);
+        assertTrue(difference[2] > 10);
+    }
+
+    @Test
+    public void differenceOfOverlappingSetsIncludesZero() {
+        final double[] difference = Welch.difference(new double[]{10, 15, 5, 12}, new double[]{11, 4, 16, 9});
+        assertTrue(difference[1] < 0 && difference[2] > 0);
+    }
+
+    @Test
+    public void differenceWithoutVariance() {
+        final double[] difference = Welch.difference(new double[]{1, 1, 1}, new double[]{3, 3, 3});
+        assertEquals(2, difference[0], 1e-12);
+        assertEquals(2, difference[1], 1e-12);
+        assertEquals(2, difference[2], 1e-12);
+    }
+
+    @Test
+    public void differenceOfTooFewSamplesHasNoInterval() {
+        final double[] difference = Welch.difference(new double[]{1, 2}, new double[]{3, 4, 5});
+        assertEquals(2.5, difference[0], 1e-12);
+        assertTrue(Double.isNaN(difference[1]));
+        assertTrue(Double.isNaN(difference[2]));
+    }
+}
@@ -0,0 +1,77 @@
+package de.idealo.mongodb.perf.stats;
+
+import com.mongodb.DuplicateKeyException;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoExecutionTimeoutException;
+import com.mongodb.MongoSocketOpenException;
+import com.mongodb.MongoSocketReadTimeoutException;
+import com.mongodb.MongoTimeoutException;
+import com.mongodb.MongoWriteConcernException;
+import com.mongodb.MongoWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.WriteConcernResult;
+import com.mongodb.WriteError;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.WriteConcernError;
+import org.bson.BsonDocument;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ErrorTypeTest {
+
+    private static final ServerAddress SERVER = new ServerAddress();
+
+    @Test
+    public void classifiesTimeouts() {
+        assertEquals(ErrorType.TIMEOUT, ErrorType.of(new MongoTimeoutException("no server selected")));
+        assertEquals(ErrorType.TIMEOUT, ErrorType.of(new MongoSocketReadTimeoutException("read timed out", SERVER, new IOException())));
+        assertEquals(ErrorType.TIMEOUT, ErrorType.of(new MongoExecutionTimeoutException(50, "operation exceeded time limit")));
+    }
+
+    @Test
+    public void classifiesNetworkErrors() {
+        assertEquals(ErrorType.NETWORK, ErrorType.of(new MongoSocketOpenException("connection refused", SERVER, new IOException())));
+    }
+
+    @Test
+    public void classifiesDuplicateKeys() {
+        assertEquals(ErrorType.DUPLICATE_KEY, ErrorType.of(new MongoWriteException(new WriteError(11000, "E11000 duplicate key", new BsonDocument()), SERVER)));
+        assertEquals(ErrorType.DUPLICATE_KEY, ErrorType.of(new DuplicateKeyException(new BsonDocument(), SERVER, WriteConcernResult.acknowledged(0, false, null))));
+        assertEquals(ErrorType.DUPLICATE_KEY, ErrorType.of(bulkWriteException(Collections.singletonList(new BulkWriteError(11000, "E11000 duplicate key", new BsonDocument(), 0)), null)));
+    }
+
+    @Test
+    public void classifiesWriteConcernErrors() {
+        final WriteConcernError error = new WriteConcernError(64, "waiting for replication timed out", new BsonDocument());
+        assertEquals(ErrorType.WRITE_CONCERN, ErrorType.of(new MongoWriteConcernException(error, WriteConcernResult.acknowledged(1, false, null), SERVER)));
+        assertEquals(ErrorType.WRITE_CONCERN, ErrorType.of(bulkWriteException(Collections.emptyList(), error)));
+    }
+
+    @Test
+    public void classifiesOtherErrors() {
+        assertEquals(ErrorType.OTHER, ErrorType.of(new IllegalStateException()));
+        assertEquals(ErrorType.OTHER, ErrorType.of(new MongoWriteException(new WriteError(2, "bad value", new BsonDocument()), SERVER)));
+        assertEquals(ErrorType.OTHER, ErrorType.of(bulkWriteException(Collections.singletonList(new BulkWriteError(2, "bad value", new BsonDocument(), 0)), null)));
+    }
+
+    @Test
+    public void classifiesCauseOfWrappedErrors() {
+        assertEquals(ErrorType.TIMEOUT, ErrorType.of(new RuntimeException(new IllegalStateException(new MongoTimeoutException("no server selected")))));
+        Throwable deep = new MongoTimeoutException("no server selected");
+        for (int i = 0; i < 4; i++) {
+            deep = new RuntimeException(deep);
+        }
+        // causes are followed to a limited depth only
+        assertEquals(ErrorType.OTHER, ErrorType.of(deep));
+    }
+
+    private static MongoBulkWriteException bulkWriteException(List<BulkWriteError> errors, WriteConcernError writeConcernError) {
+        return new MongoBulkWriteException(BulkWriteResult.acknowledged(0, 0, 0, 0, Collections.emptyList()), errors, writeConcernError, SERVER);
+    }
+}
@@ -0,0 +1,72 @@
+package de.idealo.mongodb.perf.stats;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StatsReporterTest {
+
+    // columns of the csv-files written by the Dropwizard timers before
+    private static final String LEGACY_HEADER = "t,count,max,mean,min,stddev,p50,p75,p95,p98,p99,p999,mean_rate,m1_rate,m5_rate,m15_rate,rate_unit,duration_unit";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void keepsLegacyColumnsInPlace() {
+        assertTrue(StatsReporter.CSV_HEADER.startsWith(LEGACY_HEADER + ","));
+    }
+
+    @Test
+    public void writesAllColumnsOfRows() throws IOException {
+        final LatencySeries series = new LatencySeries("per-second", "per-run", "test", 1);
+        final StatsReporter reporter = new StatsReporter(folder.getRoot(), "test", Collections.singletonList(series));
+        reporter.start();
+        for (int i = 1; i <= 100; i++) {
+            series.record(0, TimeUnit.MILLISECONDS.toNanos(i), 2);
+        }
+        reporter.stop();
+        reporter.reportRun();
+
+        final List<String> header = Arrays.asList(StatsReporter.CSV_HEADER.split(","));
+        for (String name : new String[]{"per-second", "per-run"}) {
+            final List<String> lines = Files.readAllLines(new File(folder.getRoot(), name + ".csv").toPath());
+            assertEquals(StatsReporter.CSV_HEADER, lines.get(0));
+            final String[] row = lines.get(lines.size() - 1).split(",");
+            assertEquals(name, header.size(), row.length);
+            assertEquals(name, "100", row[header.indexOf("count")]);
+            assertEquals(name, "calls/second", row[header.indexOf("rate_unit")]);
+            assertEquals(name, "milliseconds", row[header.indexOf("duration_unit")]);
+            assertEquals(name, "200", row[header.indexOf("docs")]);
+            assertTrue(name, Double.parseDouble(row[header.indexOf("m1_rate")]) > 0);
+        }
+    }
+
+    @Test
+    public void movingRateConvergesByItsWindow() {
+        final MovingRate m1 = new MovingRate(1);
+        final MovingRate m15 = new MovingRate(15);
+        assertEquals(0, m1.getRate(), 0);
+        m1.update(1000, 1);
+        m15.update(1000, 1);
+        assertEquals(1000, m1.getRate(), 1e-9);
+        for (int i = 0; i < 60; i++) {
+            m1.update(0, 1);
+            m15.update(0, 1);
+        }
+        // after one window, the rate has decayed to 1/e
+        assertEquals(1000 / Math.E, m1.getRate(), 1e-6);
+        assertEquals(1000 * Math.exp(-60d / 900), m15.getRate(), 1e-6);
+    }
+}